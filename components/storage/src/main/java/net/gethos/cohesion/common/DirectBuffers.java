@@ -0,0 +1,75 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.common;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Releases the native memory behind direct buffers without waiting for the garbage collector.
+ * <p>
+ * There is no public API for this, so the platform internals are located reflectively:
+ * <code>sun.misc.Unsafe.invokeCleaner(ByteBuffer)</code> on newer runtimes, otherwise the
+ * buffer's own <code>cleaner()</code>. If neither is available the memory is left for the
+ * garbage collector to reclaim.
+ * <p>
+ * A buffer must not be accessed once it has been released, nor may any slice or duplicate
+ * of it, as the memory may have been handed out again.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ */
+public class DirectBuffers {
+
+	private static final Object UNSAFE;
+	private static final Method INVOKE_CLEANER;
+
+	static {
+		Object unsafe = null;
+		Method invokeCleaner = null;
+		try {
+			Class<?> c = Class.forName("sun.misc.Unsafe");
+			invokeCleaner = c.getMethod("invokeCleaner", ByteBuffer.class);
+			Field f = c.getDeclaredField("theUnsafe");
+			f.setAccessible(true);
+			unsafe = f.get(null);
+		} catch (Exception e) {
+			unsafe = null;
+			invokeCleaner = null;
+		}
+		UNSAFE = unsafe;
+		INVOKE_CLEANER = invokeCleaner;
+	}
+
+	private DirectBuffers() {
+	}
+
+	/**
+	 * Release the native memory of a direct buffer.
+	 *
+	 * @param buffer - a direct buffer that was allocated via {@link ByteBuffer#allocateDirect(int)}, or mapped from a file, and is not a slice or duplicate
+	 * @return true if the memory was released, false if it is left to the garbage collector
+	 */
+	public static boolean release(ByteBuffer buffer) {
+		if (buffer == null || !buffer.isDirect()) return false;
+		try {
+			if (INVOKE_CLEANER != null) {
+				INVOKE_CLEANER.invoke(UNSAFE, buffer);
+				return true;
+			}
+			Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+			Object cleaner = cleanerMethod.invoke(buffer);
+			if (cleaner == null) return false;
+			Method clean = cleaner.getClass().getMethod("clean");
+			clean.setAccessible(true);
+			clean.invoke(cleaner);
+			return true;
+		} catch (Exception e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,349 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.common;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An open addressing hash map from primitive <code>long</code> keys to values.
+ * <p>
+ * The primitive operations ({@link #get(long)}, {@link #put(long, Object)}, {@link #remove(long)},
+ * {@link #containsKey(long)} and iteration via a {@link Cursor}) neither box the key nor allocate
+ * map entries. Collisions are resolved by linear probing and removals shift the following
+ * entries back, so that no tombstones accumulate.
+ * <p>
+ * The map also implements {@link java.util.Map} so that it can be handed to code that expects a
+ * <code>Map&lt;Long,V&gt;</code>, however, access via the boxed interface allocates as usual.
+ * Null values are not supported. Note, a value that is autoboxed makes <code>put</code> ambiguous
+ * between the primitive and boxed keys, so such values should be boxed explicitly.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ */
+public class LongHashMap<V> extends AbstractMap<Long, V> {
+
+	private static final int MIN_CAPACITY = 8;
+	private static final long FREE_KEY = 0L;
+	private static final long MIX = 0x9E3779B97F4A7C15L;
+
+	private long[] keys;
+	private Object[] values;
+	private int mask;
+	private int shift;
+	private int size;
+	private int threshold;
+
+	// the free key marks empty slots, so it is stored separately
+	private boolean hasFreeKey;
+	private Object freeValue;
+
+	private int modifications;
+
+	public LongHashMap() {
+		this(MIN_CAPACITY);
+	}
+
+	/**
+	 * @param expected - the number of entries that may be held before the table is resized
+	 */
+	public LongHashMap(int expected) {
+		if (expected < 0) throw new IllegalArgumentException("expected size must not be negative");
+		allocate(tableSize(expected));
+	}
+
+	public LongHashMap(LongHashMap<? extends V> m) {
+		this(m.size());
+		for (Cursor<? extends V> c = m.cursor(); c.advance();) put(c.key(), c.value());
+	}
+
+	private static int tableSize(int expected) {
+		int capacity = MIN_CAPACITY;
+		// keep the load factor at or below 1/2
+		while (capacity < (1 << 30) && capacity / 2 < expected) capacity <<= 1;
+		return capacity;
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new Object[capacity];
+		mask = capacity - 1;
+		shift = 64 - Integer.numberOfTrailingZeros(capacity);
+		threshold = capacity / 2;
+	}
+
+	private int slot(long key) {
+		return (int)((key * MIX) >>> shift);
+	}
+
+	private int find(long key) {
+		int i = slot(key);
+		while (true) {
+			long k = keys[i];
+			if (k == FREE_KEY) return -1;
+			if (k == key) return i;
+			i = (i + 1) & mask;
+		}
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean containsKey(long key) {
+		if (key == FREE_KEY) return hasFreeKey;
+		return find(key) >= 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		if (key == FREE_KEY) return (V)freeValue;
+		int i = find(key);
+		return i < 0 ? null : (V)values[i];
+	}
+
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		if (value == null) throw new IllegalArgumentException("null values are not supported");
+		if (key == FREE_KEY) {
+			V previous = (V)freeValue;
+			if (!hasFreeKey) {
+				hasFreeKey = true;
+				size++;
+				modifications++;
+			}
+			freeValue = value;
+			return previous;
+		}
+
+		int i = slot(key);
+		while (true) {
+			long k = keys[i];
+			if (k == FREE_KEY) break;
+			if (k == key) {
+				V previous = (V)values[i];
+				values[i] = value;
+				return previous;
+			}
+			i = (i + 1) & mask;
+		}
+
+		keys[i] = key;
+		values[i] = value;
+		size++;
+		modifications++;
+		if (size > threshold) rehash(keys.length * 2);
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		if (key == FREE_KEY) {
+			if (!hasFreeKey) return null;
+			V previous = (V)freeValue;
+			hasFreeKey = false;
+			freeValue = null;
+			size--;
+			modifications++;
+			return previous;
+		}
+
+		int i = find(key);
+		if (i < 0) return null;
+		V previous = (V)values[i];
+		size--;
+		modifications++;
+
+		// shift back any entries that would no longer be reachable across the gap
+		int gap = i;
+		int j = i;
+		while (true) {
+			j = (j + 1) & mask;
+			long k = keys[j];
+			if (k == FREE_KEY) break;
+			int home = slot(k);
+			// move the entry if its home slot does not lie cyclically within (gap, j]
+			if (gap <= j ? (home <= gap || home > j) : (home <= gap && home > j)) {
+				keys[gap] = k;
+				values[gap] = values[j];
+				gap = j;
+			}
+		}
+		keys[gap] = FREE_KEY;
+		values[gap] = null;
+
+		return previous;
+	}
+
+	@Override
+	public void clear() {
+		if (size == 0) return;
+		Arrays.fill(keys, FREE_KEY);
+		Arrays.fill(values, null);
+		hasFreeKey = false;
+		freeValue = null;
+		size = 0;
+		modifications++;
+	}
+
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		allocate(capacity);
+		for (int i = 0; i < oldKeys.length; i++) {
+			long k = oldKeys[i];
+			if (k == FREE_KEY) continue;
+			int j = slot(k);
+			while (keys[j] != FREE_KEY) j = (j + 1) & mask;
+			keys[j] = k;
+			values[j] = oldValues[i];
+		}
+	}
+
+	/* java.util.Map */
+
+	@Override
+	public boolean containsKey(Object key) {
+		return key instanceof Long && containsKey(((Long)key).longValue());
+	}
+
+	@Override
+	public V get(Object key) {
+		return key instanceof Long ? get(((Long)key).longValue()) : null;
+	}
+
+	@Override
+	public V put(Long key, V value) {
+		return put(key.longValue(), value);
+	}
+
+	@Override
+	public V remove(Object key) {
+		return key instanceof Long ? remove(((Long)key).longValue()) : null;
+	}
+
+	@Override
+	public Set<Map.Entry<Long, V>> entrySet() {
+		return new AbstractSet<Map.Entry<Long,V>>() {
+			@Override
+			public Iterator<Map.Entry<Long, V>> iterator() {
+				final Cursor<V> c = cursor();
+				return new Iterator<Map.Entry<Long,V>>() {
+					private boolean hasNext = c.advance();
+
+					@Override
+					public boolean hasNext() {
+						return hasNext;
+					}
+
+					@Override
+					public Map.Entry<Long, V> next() {
+						if (!hasNext) throw new NoSuchElementException();
+						Map.Entry<Long, V> e = new AbstractMap.SimpleImmutableEntry<Long, V>(c.key(), c.value());
+						hasNext = c.advance();
+						return e;
+					}
+
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	/**
+	 * Walks over the entries without allocating an entry per step.
+	 * <p>
+	 * Usage:
+	 * <pre>
+	 * for (LongHashMap.Cursor&lt;V&gt; c = map.cursor(); c.advance();) {
+	 *     long k = c.key();
+	 *     V v = c.value();
+	 * }
+	 * </pre>
+	 * The map must not be structurally modified while the cursor is in use,
+	 * although the value of the current entry may be replaced via {@link Cursor#value(Object)}.
+	 */
+	public interface Cursor<V> {
+		/**
+		 * Move on to the next entry.
+		 *
+		 * @return true if there is a current entry
+		 */
+		public boolean advance();
+
+		public long key();
+
+		public V value();
+
+		/**
+		 * Replace the value of the current entry.
+		 */
+		public void value(V value);
+	}
+
+	/**
+	 * @return a cursor positioned before the first entry
+	 */
+	public Cursor<V> cursor() {
+		return new HashCursor();
+	}
+
+	private class HashCursor implements Cursor<V> {
+		private final int expectedModifications = modifications;
+		// -1 is the free key, otherwise the table slot
+		private int position = -2;
+
+		@Override
+		public boolean advance() {
+			if (modifications != expectedModifications) throw new ConcurrentModificationException();
+			if (position == -2) {
+				position = -1;
+				if (hasFreeKey) return true;
+			}
+			while (++position < keys.length) {
+				if (keys[position] != FREE_KEY) return true;
+			}
+			return false;
+		}
+
+		@Override
+		public long key() {
+			return position < 0 ? FREE_KEY : keys[position];
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public V value() {
+			return (V)(position < 0 ? freeValue : values[position]);
+		}
+
+		@Override
+		public void value(V value) {
+			if (value == null) throw new IllegalArgumentException("null values are not supported");
+			if (position < 0) freeValue = value;
+			else values[position] = value;
+		}
+	}
+}
@@ -0,0 +1,144 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.common;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+
+/**
+ * A {@link LongHashMap} that is iterated in ascending key order.
+ * <p>
+ * Point operations remain those of the hash map. The sorted order is only established,
+ * by sorting a copy of the keys, when the map is next iterated after a key was added or removed.
+ * This suits maps that are filled and probed heavily and walked in order only occasionally,
+ * such as the set of nodes modified by a transaction, which is walked in order at commit.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ */
+public class LongSortedMap<V> extends LongHashMap<V> {
+
+	private long[] sorted;
+	private boolean sortedValid;
+
+	private long first;
+	private boolean firstValid;
+
+	public LongSortedMap() {
+		super();
+		this.sorted = new long[0];
+		this.sortedValid = true;
+		this.firstValid = false;
+	}
+
+	@Override
+	public V put(long key, V value) {
+		int before = size();
+		V previous = super.put(key, value);
+		if (size() != before) {
+			sortedValid = false;
+			if (before == 0 || (firstValid && key < first)) {
+				first = key;
+				firstValid = true;
+			}
+		}
+		return previous;
+	}
+
+	@Override
+	public V remove(long key) {
+		V previous = super.remove(key);
+		if (previous != null) {
+			sortedValid = false;
+			if (firstValid && key == first) firstValid = false;
+		}
+		return previous;
+	}
+
+	@Override
+	public void clear() {
+		super.clear();
+		sortedValid = false;
+		firstValid = false;
+	}
+
+	/**
+	 * @return the lowest key in the map
+	 * @throws NoSuchElementException if the map is empty
+	 */
+	public long firstKey() {
+		if (isEmpty()) throw new NoSuchElementException();
+		if (!firstValid) {
+			if (sortedValid) {
+				first = sorted[0];
+			} else {
+				Cursor<V> c = super.cursor();
+				c.advance();
+				long lowest = c.key();
+				while (c.advance()) if (c.key() < lowest) lowest = c.key();
+				first = lowest;
+			}
+			firstValid = true;
+		}
+		return first;
+	}
+
+	/**
+	 * The keys in ascending order.
+	 * <p>
+	 * The returned array is shared with the map and must not be modified,
+	 * nor used after the keys of the map have been changed.
+	 */
+	public long[] sortedKeys() {
+		if (!sortedValid) {
+			if (sorted.length != size()) sorted = new long[size()];
+			int i = 0;
+			for (Cursor<V> c = super.cursor(); c.advance();) sorted[i++] = c.key();
+			Arrays.sort(sorted);
+			sortedValid = true;
+		}
+		return sorted;
+	}
+
+	/**
+	 * @return a cursor that walks the entries in ascending key order
+	 */
+	@Override
+	public Cursor<V> cursor() {
+		return new SortedCursor(sortedKeys());
+	}
+
+	private class SortedCursor implements Cursor<V> {
+		private final long[] keys;
+		private int position;
+
+		SortedCursor(long[] keys) {
+			this.keys = keys;
+			this.position = -1;
+		}
+
+		@Override
+		public boolean advance() {
+			if (!sortedValid || keys != sorted) throw new ConcurrentModificationException();
+			return ++position < keys.length;
+		}
+
+		@Override
+		public long key() {
+			return keys[position];
+		}
+
+		@Override
+		public V value() {
+			return get(keys[position]);
+		}
+
+		@Override
+		public void value(V value) {
+			put(keys[position], value);
+		}
+	}
+}
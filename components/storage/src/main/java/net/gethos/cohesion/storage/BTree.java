@@ -44,6 +44,10 @@ import net.gethos.cohesion.storage.backing.BTreeLeafNode;
  * the order, <code>m</code>, of the tree in usual terms. However, we allow for variable
  * entry sizes in the leaves.
  * <p>
+ * Following the same refinement, the keys in non-leaf nodes need only separate their
+ * children, so a node may hold the shortest separator between two adjacent children
+ * (see {@link Key#separatorLength(Key, Key)}) rather than a complete key of an item.
+ * <p>
  * The key provides the data needed to find an interpret the object it references.
  *
  * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
@@ -70,6 +74,17 @@ public interface BTree extends ReadOnlyBTree {
 		 */
 		public static final int SIZE = 32;
 
+		/**
+		 * Number of leading bytes of the serialised key that take part in comparisons.
+		 */
+		public static final int COMPARABLE_SIZE = 24;
+
+		/**
+		 * Positions of the leading bytes of the signed fields within the serialised key.
+		 */
+		private static final int IDX_BYTE = 0;
+		private static final int TYPE_BYTE = 22;
+
 		static {
 			MAX_KEY = new Key();
 			MAX_KEY.idx       = Short.MAX_VALUE; //0x7fff; +32767
@@ -221,6 +236,108 @@ public interface BTree extends ReadOnlyBTree {
 			data.putLong (offset, this.parameter);
 		}
 
+		/**
+		 * Compare this key with a key serialised into the buffer at the given offset.
+		 * <p>
+		 * This follows the same semantics as {@link #compareTo(Key)}, with the serialised
+		 * key taking the place of the argument, but reads the 24 comparable bytes in place
+		 * rather than first materialising a new key.
+		 *
+		 * @param data - buffer holding a serialised key
+		 * @param offset - absolute position of the serialised key within the buffer
+		 * @return negative, zero or positive as this key is less than, equal to, or greater than the serialised key
+		 */
+		public int compareTo(ByteBuffer data, int offset) {
+			int c = this.idx - data.getShort(offset);
+			if (c != 0) return c;
+			offset += StorageConstants.SIZEOF_SHORT;
+			c = UnsignedUtils.compareUnsigned(this.idHigh, data.getLong(offset));
+			if (c != 0) return c;
+			offset += StorageConstants.SIZEOF_LONG;
+			c = UnsignedUtils.compareUnsigned(this.idMiddle, data.getLong(offset));
+			if (c != 0) return c;
+			offset += StorageConstants.SIZEOF_LONG;
+			c = UnsignedUtils.compareUnsigned(this.idLow, data.getInt(offset));
+			if (c != 0) return c;
+			offset += StorageConstants.SIZEOF_INT;
+			return this.type - data.getShort(offset);
+		}
+
+		/**
+		 * Obtain a single byte of the serialised key.
+		 *
+		 * @param b - position of the byte within the serialised key
+		 * @return the byte as it would be written by {@link #write(ByteBuffer)}
+		 */
+		public byte byteAt(int b) {
+			if (b <  2) return (byte)(idx       >>> (8*( 1-b)));
+			if (b < 10) return (byte)(idHigh    >>> (8*( 9-b)));
+			if (b < 18) return (byte)(idMiddle  >>> (8*(17-b)));
+			if (b < 22) return (byte)(idLow     >>> (8*(21-b)));
+			if (b < 24) return (byte)(type      >>> (8*(23-b)));
+			return             (byte)(parameter >>> (8*(31-b)));
+		}
+
+		/**
+		 * Obtain a byte of the serialised key in a form that orders lexicographically.
+		 *
+		 * @see #comparableByte(int, byte)
+		 */
+		public int comparableByte(int b) {
+			return comparableByte(b, byteAt(b));
+		}
+
+		/**
+		 * Map a byte of a serialised key such that comparing the first {@link #COMPARABLE_SIZE}
+		 * mapped bytes in turn agrees with {@link #compareTo(Key)}. That is, the bytes
+		 * are treated as unsigned, except that the sign bit of the signed fields is flipped.
+		 *
+		 * @param b - position of the byte within the serialised key
+		 * @param x - the serialised byte
+		 * @return the mapped byte, in the range [0,255]
+		 */
+		public static int comparableByte(int b, byte x) {
+			int v = x & 0xff;
+			return (b == IDX_BYTE || b == TYPE_BYTE) ? v ^ 0x80 : v;
+		}
+
+		/**
+		 * Determine the shortest separator between two adjacent keys.
+		 * <p>
+		 * The separator is formed from the first <code>length</code> bytes of the <code>left</code>
+		 * key, with the remaining comparable bytes taken from {@link #MAX_KEY}
+		 * (see {@link #separator(Key, int)}), and it satisfies <code>left &le; separator &lt; right</code>.
+		 *
+		 * @param left - the larger key of the left hand child
+		 * @param right - the smallest key of the right hand child, or null if not known
+		 * @return the number of leading bytes of <code>left</code> needed by the separator
+		 */
+		public static int separatorLength(Key left, Key right) {
+			// trailing bytes that already match the maximal fill need not be kept
+			int length = COMPARABLE_SIZE;
+			while (length > 0 && left.byteAt(length-1) == MAX_KEY.byteAt(length-1)) length--;
+			if (right == null) return length;
+			for (int b = 0; b < length; b++) {
+				if (left.byteAt(b) != right.byteAt(b)) return b+1;
+			}
+			return length;
+		}
+
+		/**
+		 * Create the separator that retains the leading bytes of a key.
+		 *
+		 * @param key - the key from which to take the leading bytes
+		 * @param length - number of leading bytes to retain
+		 * @return a new key, not less than <code>key</code>, and with a zero parameter
+		 */
+		public static Key separator(Key key, int length) {
+			ByteBuffer b = ByteBuffer.allocate(SIZE);
+			b.order(StorageConstants.NETWORK_ORDER);
+			MAX_KEY.write(b, 0);
+			for (int i = 0; i < length; i++) b.put(i, key.byteAt(i));
+			return new Key(b);
+		}
+
 		@Override
 		public Key clone() {
 			try {
@@ -75,6 +75,32 @@ public interface BTreeTransaction extends ReadOnlyBTreeTransaction {
 	 */
 	public BTree.Reference store(BTree.Key key, long objectOffset, ByteBuffer buffer); // XXX consider returning null if the key already existed.
 
+	// -- batch methods
+
+	/**
+	 * Truncate the object data associated with each of a batch of keys.
+	 * <p>
+	 * Equivalent to <code>truncate(keys[i],lengths[i])</code> for each key in turn. However, the keys
+	 * that fall within the same leaf are provisioned together after a single walk down the tree.
+	 * 
+	 * @param keys - in ascending order
+	 * @param lengths
+	 * @return the number of keys provisioned, which is less than the number of keys if space could not be allocated.
+	 */
+	public int truncateAll(BTree.Key[] keys, long[] lengths);
+
+	/**
+	 * Store a batch of data items in the tree.
+	 * <p>
+	 * Equivalent to <code>store(keys[i],0,buffers[i])</code> for each key in turn. However, the keys
+	 * that fall within the same leaf are stored together after a single walk down the tree.
+	 * 
+	 * @param keys - in ascending order
+	 * @param buffers
+	 * @return the number of items stored, which is less than the number of keys if space could not be allocated.
+	 */
+	public int storeAll(BTree.Key[] keys, ByteBuffer[] buffers);
+
 	/**
 	 * Modify the non-index parameter component of the key.
 	 * <p>
@@ -11,14 +11,17 @@ import java.util.Map;
 import net.gethos.cohesion.storage.buffer.BufferRegion;
 import net.gethos.cohesion.storage.buffer.ByteBufferNodeCapacities;
 import net.gethos.cohesion.storage.buffer.NodeCapacities;
+import net.gethos.cohesion.storage.buffer.NodeFormat;
 import net.gethos.cohesion.storage.contiguous.Integrity;
 import net.gethos.cohesion.storage.contiguous.RandomAccessNodeCapacities;
 import net.gethos.cohesion.storage.contiguous.WinnowingContiguousBacking;
 import net.gethos.cohesion.storage.contiguous.WinnowingIntegrity;
 import net.gethos.cohesion.storage.heap.HeapBacking;
-import net.gethos.cohesion.storage.store.ByteBufferContiguousStore;
 import net.gethos.cohesion.storage.store.ContiguousStore;
+import net.gethos.cohesion.storage.store.DirectContiguousStore;
+import net.gethos.cohesion.storage.store.MappedContiguousStore;
 import net.gethos.cohesion.storage.store.RandomAccessContiguousStore;
+import net.gethos.cohesion.storage.store.SegmentedContiguousStore;
 
 /**
  * Factory for BTrees.
@@ -40,6 +43,7 @@ public class BTrees {
 	}
 
 	// -- contiguous heap storage
+	//    (held in fixed size segments, so that the store grows without being copied)
 
 	/**
 	 * A new BTree stored in contiguous space in the heap.
@@ -58,10 +62,37 @@ public class BTrees {
 	 * @return heap backed B-Tree
 	 */
 	public static BTree newContiguousInstance(int capacity) {
-		ContiguousStore contiguousStore = new ByteBufferContiguousStore(capacity);
-		NodeCapacities nodeCapacities = new ByteBufferNodeCapacities();
+		return newContiguousInstance(capacity, NodeFormat.DEFAULT);
+	}
+
+	/**
+	 * A new BTree stored in contiguous space in the heap,
+	 * and initialised with provisioning for <code>capacity</code> space,
+	 * with nodes laid out according to the given format.
+	 * 
+	 * @param capacity
+	 * @param format
+	 * @return heap backed B-Tree
+	 */
+	public static BTree newContiguousInstance(int capacity, NodeFormat format) {
+		return newContiguousInstance(capacity, format, SplitPolicy.BALANCED);
+	}
+
+	/**
+	 * A new BTree stored in contiguous space in the heap,
+	 * and initialised with provisioning for <code>capacity</code> space,
+	 * with nodes laid out according to the given format and leaves split according to the given policy.
+	 * 
+	 * @param capacity
+	 * @param format
+	 * @param splitPolicy
+	 * @return heap backed B-Tree
+	 */
+	public static BTree newContiguousInstance(int capacity, NodeFormat format, SplitPolicy splitPolicy) {
+		ContiguousStore contiguousStore = new SegmentedContiguousStore(capacity);
+		NodeCapacities nodeCapacities = new ByteBufferNodeCapacities(StorageConstants.DEFAULT_NODE_CAPACITY, format);
 		WinnowingContiguousBacking backing = new WinnowingContiguousBacking(contiguousStore, nodeCapacities, true, false, true);
-		BackedBTree btree = new BackedBTree(backing);
+		BackedBTree btree = new BackedBTree(backing, splitPolicy);
 		return btree;
 	}
 
@@ -100,7 +131,35 @@ public class BTrees {
 	public static BTree newInstance(File storage, boolean sync) {
 		boolean newStore = !storage.exists();
 		ContiguousStore contiguousStore = new RandomAccessContiguousStore(storage, sync, MIN_CAPACITY);
-		return newInstance(contiguousStore, newStore, sync, true);
+		return newInstance(contiguousStore, newStore, sync, true, NodeFormat.DEFAULT);
+	}
+
+	/**
+	 * A new BTree stored in a memory mapped file.
+	 * <p>
+	 * Nodes that are not cached are read directly from the page cache, rather than via a system call per node.
+	 * 
+	 * @param sync - true to enable flushing of the mapped file and integrity checking
+	 * @return file backed B-Tree
+	 */
+	public static BTree newMappedInstance(File storage, boolean sync) {
+		boolean newStore = !storage.exists();
+		ContiguousStore contiguousStore = new MappedContiguousStore(storage, sync, MIN_CAPACITY);
+		return newInstance(contiguousStore, newStore, sync, true, NodeFormat.DEFAULT);
+	}
+
+	/**
+	 * A new BTree stored in a file accessed via direct I/O, where the platform supports it.
+	 * <p>
+	 * Nodes are then only cached by the tree itself, rather than also by the operating system page cache.
+	 * 
+	 * @param sync - true to enable synchronous file access and integrity checking
+	 * @return file backed B-Tree
+	 */
+	public static BTree newDirectInstance(File storage, boolean sync) {
+		boolean newStore = !storage.exists();
+		ContiguousStore contiguousStore = new DirectContiguousStore(storage, sync, MIN_CAPACITY);
+		return newInstance(contiguousStore, newStore, sync, true, NodeFormat.DEFAULT);
 	}
 
 	// -- contiguous storage
@@ -116,10 +175,20 @@ public class BTrees {
 	 * @return contiguous backed B-Tree
 	 */
 	public static BTree newInstance(ContiguousStore store, boolean bootstrap, boolean integrity) {
-		return newInstance(store,bootstrap,integrity,false);
+		return newInstance(store,bootstrap,integrity,NodeFormat.DEFAULT);
+	}
+
+	/**
+	 * A new BTree stored in a contiguous store, with new nodes laid out according to the given format.
+	 * 
+	 * @see #newInstance(ContiguousStore, boolean, boolean)
+	 * @return contiguous backed B-Tree
+	 */
+	public static BTree newInstance(ContiguousStore store, boolean bootstrap, boolean integrity, NodeFormat format) {
+		return newInstance(store,bootstrap,integrity,false,format);
 	}
 
-	private static BTree newInstance(ContiguousStore store, boolean bootstrap, boolean integrity, boolean closeStore) {
+	private static BTree newInstance(ContiguousStore store, boolean bootstrap, boolean integrity, boolean closeStore, NodeFormat format) {
 		if (integrity && !bootstrap) {
 			// automatic crash check and recovery
 			WinnowingIntegrity wi = new WinnowingIntegrity();
@@ -132,7 +201,7 @@ public class BTrees {
 			}
 		}
 
-		NodeCapacities nodeCapacities = new RandomAccessNodeCapacities();
+		NodeCapacities nodeCapacities = new RandomAccessNodeCapacities(format);
 
 		WinnowingContiguousBacking backing = new WinnowingContiguousBacking(store, nodeCapacities, bootstrap, integrity, closeStore);
 		BackedBTree btree = new BackedBTree(backing);
@@ -16,9 +16,15 @@ import net.gethos.cohesion.storage.backing.ReadOnlyBTreeBackingTransaction;
 public class BackedBTree implements BTree {
 
 	private final BTreeBacking backing;
+	private final SplitPolicy splitPolicy;
 	
 	public BackedBTree(BTreeBacking backing) {
+		this(backing, SplitPolicy.BALANCED);
+	}
+	
+	public BackedBTree(BTreeBacking backing, SplitPolicy splitPolicy) {
 		this.backing = backing;
+		this.splitPolicy = splitPolicy;
 	}
 	
 	@Override
@@ -35,7 +41,7 @@ public class BackedBTree implements BTree {
 	@Override
 	public BTreeTransaction open() {
 		BTreeBackingTransaction t = backing.open();
-		return new TransactionBTree(t);
+		return new TransactionBTree(t, splitPolicy);
 	}
 
 	public BTreeBacking backing() {
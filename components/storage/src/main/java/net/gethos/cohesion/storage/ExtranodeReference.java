@@ -25,9 +25,16 @@ class ExtranodeReference {
 	public long offset;
 	public long size;
 	
+	/**
+	 * Reused by {@link #readFrom(int, BTreeLeafNode)}, so that a reference
+	 * that is read repeatedly does not allocate.
+	 */
+	private ByteBuffer scratch;
+	
 	public ExtranodeReference() {
 		this.offset = 0;
 		this.size = 0;
+		this.scratch = null;
 	}
 	
 	@Override
@@ -52,8 +59,13 @@ class ExtranodeReference {
 	}
 	
 	public boolean readFrom(int idx, BTreeLeafNode nl) {
-		ByteBuffer bb = ByteBuffer.allocate(StorageConstants.SIZEOF_LONG*2);
-		bb.order(StorageConstants.NETWORK_ORDER);
+		ByteBuffer bb = scratch;
+		if (bb == null) {
+			bb = ByteBuffer.allocate(SIZE);
+			bb.order(StorageConstants.NETWORK_ORDER);
+			scratch = bb;
+		}
+		bb.clear();
 		int r = nl.read(idx, 0, bb);
 		if (r != bb.capacity()) return false;
 		bb.flip();
@@ -23,6 +23,18 @@ public interface ReadOnlyBTreeKeyHandlingTransaction extends Transaction {
 	 */
 	public BTree.Reference search(BTree.Key key);
 
+	/**
+	 * Find an item stored in the tree, filling in a caller supplied reference.
+	 * <p>
+	 * Unlike {@link #search(BTree.Key)} this does not allocate, so a holder can be
+	 * reused across many lookups.
+	 *
+	 * @param key
+	 * @param ref - set to refer to the item, left unchanged if the key does not exist
+	 * @return true if the key exists in the tree
+	 */
+	public boolean search(BTree.Key key, BTree.Reference ref);
+
 	/**
 	 * Find the key that would select the object
 	 * referenced by this reference.
@@ -33,6 +33,15 @@ public interface ReadOnlyBTreeTransaction extends ReadOnlyBTreeKeyHandlingTransa
 	 */
 	public BTree.Stat stat(BTree.Key key);
 
+	/**
+	 * Fetch item stats into a caller supplied holder.
+	 *
+	 * @param key
+	 * @param stat - filled in with the stats, left unchanged if the item was not found
+	 * @return true if the item was found
+	 */
+	public boolean stat(BTree.Key key, BTree.Stat stat);
+
 	// -- convenience methods
 	
 	/**
@@ -47,4 +56,21 @@ public interface ReadOnlyBTreeTransaction extends ReadOnlyBTreeKeyHandlingTransa
 	 */
 	public int fetch(BTree.Key key, long objectOffset, ByteBuffer buffer);
 
+	/**
+	 * Fetch the data associated with the key, using a caller supplied reference
+	 * to hold the result of the search.
+	 * <p>
+	 * Equivalent to <code>search(key,ref) ? fetch(ref,objectOffset,buffer) : 0</code>.
+	 * Once the nodes on the path are resident in the backing, a lookup via this method
+	 * (or via {@link #search(BTree.Key, BTree.Reference)} and {@link #fetch(BTree.Reference, long, ByteBuffer)})
+	 * does not allocate, so reusing the holder gives an allocation free steady state.
+	 *
+	 * @param key
+	 * @param objectOffset
+	 * @param buffer
+	 * @param ref - holder for the item reference
+	 * @return number of bytes copied.
+	 */
+	public int fetch(BTree.Key key, long objectOffset, ByteBuffer buffer, BTree.Reference ref);
+
 }
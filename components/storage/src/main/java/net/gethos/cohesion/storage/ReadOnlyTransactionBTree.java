@@ -19,6 +19,17 @@ public class ReadOnlyTransactionBTree implements ReadOnlyBTreeTransaction {
 
 	private final ReadOnlyBTreeBackingTransaction transaction;
 
+	/**
+	 * Reused when reading external item metadata, so that lookups do not allocate.
+	 * (Like the transaction itself, this is not safe for concurrent use.)
+	 */
+	private final ExtranodeReference xref;
+
+	/**
+	 * Reused by lookups that do not hand a reference back to the caller.
+	 */
+	private final BTree.Reference lookup;
+
 	/**
 	 * Note, the backing must contain a representation of
 	 * a valid, albeit possibly empty, tree.
@@ -27,6 +38,8 @@ public class ReadOnlyTransactionBTree implements ReadOnlyBTreeTransaction {
 	 */
 	public ReadOnlyTransactionBTree(ReadOnlyBTreeBackingTransaction transaction) {
 		this.transaction = transaction;
+		this.xref = new ExtranodeReference();
+		this.lookup = new BTree.Reference();
 	}
 
 	@Override
@@ -47,39 +60,62 @@ public class ReadOnlyTransactionBTree implements ReadOnlyBTreeTransaction {
 
 	@Override
 	public BTree.Stat stat(BTree.Key key) {
-		BTree.Reference ref = search(key);
-		if (ref == null) return null;
-
 		BTree.Stat stat = new BTree.Stat();
-		stat.itemNodeOffset = ref.offset;
-		stat.itemIndex = ref.index;
+		return stat(key, stat) ? stat : null;
+	}
+
+	@Override
+	public boolean stat(BTree.Key key, BTree.Stat stat) {
+		if (!search(transaction, key, lookup, xref)) return false;
+
+		stat.itemNodeOffset = lookup.offset;
+		stat.itemIndex = lookup.index;
 
 		// obtain the leaf
-		BTreeLeafNode nl = node(transaction,ref);
-		stat.itemSize = nl.size(ref.index);
-		stat.itemFlags = nl.flags(ref.index);
+		BTreeLeafNode nl = node(transaction,lookup);
+		stat.itemSize = nl.size(lookup.index);
+		stat.itemFlags = nl.flags(lookup.index);
 
 		if ((stat.itemFlags & BTreeLeafNode.Flags.EXTERNAL.mask) != 0) {
-			ExtranodeReference xr = new ExtranodeReference();
-			xr.readFrom(ref.index, nl);
+			xref.readFrom(lookup.index, nl);
 
-			stat.externalOffset = xr.offset;
-			stat.externalSize = xr.size;
+			stat.externalOffset = xref.offset;
+			stat.externalSize = xref.size;
 
 		} else {
 			stat.externalOffset = -1;
 			stat.externalSize = -1;
 		}
 
-		return stat;
+		return true;
 	}
 
 	@Override
 	public BTree.Reference search(BTree.Key key) {
-		return search(transaction, key);
+		BTree.Reference ref = new BTree.Reference();
+		return search(transaction, key, ref, xref) ? ref : null;
+	}
+
+	@Override
+	public boolean search(BTree.Key key, BTree.Reference ref) {
+		return search(transaction, key, ref, xref);
 	}
 
 	protected static BTree.Reference search(final ReadOnlyBTreeBackingTransaction t, BTree.Key key) {
+		BTree.Reference ref = new BTree.Reference();
+		return search(t, key, ref, null) ? ref : null;
+	}
+
+	/**
+	 * Find the item for the key without allocating (given a non-null <code>xr</code>).
+	 *
+	 * @param t
+	 * @param key
+	 * @param ref - set to refer to the item, if found
+	 * @param xr - scratch used to read the size of external items, or null
+	 * @return true if the key was found
+	 */
+	protected static boolean search(final ReadOnlyBTreeBackingTransaction t, BTree.Key key, BTree.Reference ref, ExtranodeReference xr) {
 		// start at root and find the correct leaf
 		long nOffset = t.root();
 		int depth = t.depth();
@@ -90,7 +126,7 @@ public class ReadOnlyTransactionBTree implements ReadOnlyBTreeTransaction {
 			int x = c.find(key);
 			if (x < 0) x = -x-1;
 			nOffset = c.offset(x);
-			if (nOffset == BTreeIndexNode.INVALID_OFFSET) return null;
+			if (nOffset == BTreeIndexNode.INVALID_OFFSET) return false;
 			n = t.retrieve(nOffset);
 		}
 
@@ -99,22 +135,25 @@ public class ReadOnlyTransactionBTree implements ReadOnlyBTreeTransaction {
 		assert(n instanceof BTreeLeafNode);
 		BTreeLeafNode nl = (BTreeLeafNode)n;
 		int x = nl.find(key);
-		if (x < 0) return null;
+		if (x < 0) return false;
 
+		ref.offset = nOffset;
+		ref.index = x;
 		if ((nl.flags(x) & BTreeLeafNode.Flags.EXTERNAL.mask) != 0) {
-			ExtranodeReference er = new ExtranodeReference();
-			er.readFrom(x, nl);
-			return new BTree.Reference(nOffset, x, er.size);
+			if (xr == null) xr = new ExtranodeReference();
+			xr.readFrom(x, nl);
+			ref.size = xr.size;
 		} else {
-			return new BTree.Reference(nOffset, x, nl.size(x));
+			ref.size = nl.size(x);
 		}
+		return true;
 	}
 
 	@Override
 	public int fetch(BTree.Reference ref, long objectOffset, ByteBuffer buffer) {
 		BTreeLeafNode h = node(transaction, ref);
 		if ((h.flags(ref.index) & BTreeLeafNode.Flags.EXTERNAL.mask) != 0) {
-			ExtranodeReference er = new ExtranodeReference();
+			ExtranodeReference er = xref;
 			er.readFrom(ref.index, h);
 			int br = buffer.remaining();
 			if (er.size - objectOffset < br) {
@@ -146,50 +185,74 @@ public class ReadOnlyTransactionBTree implements ReadOnlyBTreeTransaction {
 
 	@Override
 	public BTree.Key floor(BTree.Key key) {
-		// start at root and find the correct leaf
-		BTree.Key floor = null;
+		// start at root and find the correct leaf,
+		// while tracking the nearest subtree to the left of the path
+		BTreeIndexNode floorNode = null;
+		int floorIndex = -1;
+		int floorDepth = -1;
 		long nOffset = transaction.root();
 		int depth = transaction.depth();
 		BTreeNode n = transaction.retrieve(nOffset);
 		assert(n != null);
-		for (int d = 0; d < depth; d++) {
-			int x = n.find(key);
-			if (x >= 0) return key; // the key exists in the tree, so return itself
-			// key does not exist at this level
-
+		int d;
+		for (d = 0; d < depth; d++) {
+			// Note, the index keys might only be separators, so even an exact match
+			// does not show that the key exists, but it does lie within the child.
 			BTreeIndexNode c = (BTreeIndexNode)n;
-			x = -x-1; // find the item index where this key would be inserted
-			if (x > 0) floor = c.key(x-1);
+			int x = c.find(key);
+			if (x < 0) x = -x-1; // find the item index where this key would be inserted
+			if (x > 0) {
+				floorNode = c;
+				floorIndex = x-1;
+				floorDepth = d;
+			}
 			nOffset = c.offset(x);
-			if (nOffset == BTreeIndexNode.INVALID_OFFSET) return floor;
+			if (nOffset == BTreeIndexNode.INVALID_OFFSET) break;
 
 			n = transaction.retrieve(nOffset);
 		}
 
-		// check that we're on a leaf
-		assert(n instanceof BTreeLeafNode);
-		int x = n.find(key);
-		if (x >= 0) return key;
-		x = -x-1;
-		if (x > 0) floor = n.key(x-1);
+		if (d == depth) {
+			// check that we're on a leaf
+			assert(n instanceof BTreeLeafNode);
+			int x = n.find(key);
+			if (x >= 0) return key;
+			x = -x-1;
+			if (x > 0) return n.key(x-1);
+		}
 
-		return floor;
+		// the floor is the largest key in the subtree to the left of the path
+		if (floorNode == null) return null;
+		if (floorNode.hasExactKeys()) return floorNode.key(floorIndex);
+		n = transaction.retrieve(floorNode.offset(floorIndex));
+		for (d = floorDepth+1; d < depth; d++) {
+			BTreeIndexNode c = (BTreeIndexNode)n;
+			n = transaction.retrieve(c.offset(c.children()-1));
+		}
+		int size = n.children();
+		return size > 0 ? n.key(size-1) : null;
 	}
 
 	@Override
 	public BTree.Key ceiling(BTree.Key key) {
-		// start at root and find the correct leaf
+		// start at root and find the correct leaf,
+		// while tracking the nearest subtree to the right of the path
+		BTreeIndexNode ceilingNode = null;
+		int ceilingIndex = -1;
+		int ceilingDepth = -1;
 		long nOffset = transaction.root();
 		int depth = transaction.depth();
 		BTreeNode n = transaction.retrieve(nOffset);
 		assert(n != null);
 		for (int d = 0; d < depth; d++) {
-			int x = n.find(key);
-			if (x >= 0) return key; // the key exists in the tree, so return itself
-			// key does not exist at this level
-
 			BTreeIndexNode c = (BTreeIndexNode)n;
-			x = -x-1; // find the item index where this key would be inserted
+			int x = c.find(key);
+			if (x < 0) x = -x-1; // find the item index where this key would be inserted
+			if (x+1 < c.children()) {
+				ceilingNode = c;
+				ceilingIndex = x+1;
+				ceilingDepth = d;
+			}
 			nOffset = c.offset(x);
 			if (nOffset == BTreeIndexNode.INVALID_OFFSET) return null;
 			n = transaction.retrieve(nOffset);
@@ -200,10 +263,17 @@ public class ReadOnlyTransactionBTree implements ReadOnlyBTreeTransaction {
 		int x = n.find(key);
 		if (x >= 0) return key;
 		x = -x-1;
+		if (x < n.children()) return n.key(x);
 
-		BTree.Key k = n.key(x);
-
-		return k;
+		// the key is beyond this leaf, which is only possible if the index held a separator
+		// larger than the leaf, so the ceiling is the smallest key in the subtree to the right
+		if (ceilingNode == null) return null;
+		n = transaction.retrieve(ceilingNode.offset(ceilingIndex));
+		for (int d = ceilingDepth+1; d < depth; d++) {
+			BTreeIndexNode c = (BTreeIndexNode)n;
+			n = transaction.retrieve(c.offset(0));
+		}
+		return n.children() > 0 ? n.key(0) : null;
 	}
 
 	@Override
@@ -235,8 +305,12 @@ public class ReadOnlyTransactionBTree implements ReadOnlyBTreeTransaction {
 
 	@Override
 	public int fetch(BTree.Key key, long objectOffset, ByteBuffer buffer) {
-		BTree.Reference ref = search(key);
-		if (ref != null) return fetch(ref,objectOffset,buffer);
+		return fetch(key, objectOffset, buffer, lookup);
+	}
+
+	@Override
+	public int fetch(BTree.Key key, long objectOffset, ByteBuffer buffer, BTree.Reference ref) {
+		if (search(key, ref)) return fetch(ref,objectOffset,buffer);
 		else return 0;
 	}
 
@@ -432,6 +506,12 @@ public class ReadOnlyTransactionBTree implements ReadOnlyBTreeTransaction {
 
 		private boolean skipCeiling;
 
+		/**
+		 * true if the walk has followed a leaf sibling link, in which case the
+		 * index nodes recorded in the path no longer lead to the current leaf
+		 */
+		private boolean hopped;
+
 		public RangeWalkerBase(BTree.Key fromKey, BTree.Key toKey, boolean skipCeiling) {
 			this.transaction = ReadOnlyTransactionBTree.this.transaction;
 
@@ -523,6 +603,24 @@ public class ReadOnlyTransactionBTree implements ReadOnlyBTreeTransaction {
 								next = k;
 								break walk;
 							} else {
+								// move directly across to the next leaf, if the leaf is linked to it
+								long sibling = ((BTreeLeafNode)n).rightSibling();
+								if (sibling == BTreeLeafNode.NO_RIGHT_SIBLING) {
+									next = null;
+									path.clear();
+									break walk;
+								}
+								if (sibling != BTreeLeafNode.UNKNOWN_RIGHT_SIBLING) {
+									l.offset = sibling;
+									l.index = 0;
+									hopped = true;
+									continue walk;
+								}
+								if (hopped && n.children() > 0) {
+									// the path is stale, so walk down to this leaf again before moving up
+									reseek(n.rightHandKey());
+									continue walk;
+								}
 								path.removeLast();
 								if (!path.isEmpty()) path.peekLast().index++;
 								continue walk;
@@ -550,6 +648,26 @@ public class ReadOnlyTransactionBTree implements ReadOnlyBTreeTransaction {
 				//				if (next == null && transaction.isOpen()) transaction.close();
 			}
 		}
+
+		/**
+		 * Rebuild the path from the root to the leaf holding the given key,
+		 * positioned after the key.
+		 */
+		private void reseek(BTree.Key key) {
+			path.clear();
+			hopped = false;
+			long nOffset = transaction.root();
+			BTreeNode n = transaction.retrieve(nOffset);
+			for (int d = 0; d < depth; d++) {
+				int x = n.find(key);
+				if (x < 0) x = -x-1;
+				path.addLast(new BTree.Reference(nOffset, x, 0));
+				nOffset = ((BTreeIndexNode)n).offset(x);
+				n = transaction.retrieve(nOffset);
+			}
+			int x = n.find(key);
+			path.addLast(new BTree.Reference(nOffset, x < 0 ? -x-1 : x+1, 0));
+		}
 	}
 
 	private abstract class RangeWalker extends RangeWalkerBase {
@@ -0,0 +1,32 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage;
+
+/**
+ * How a full leaf is split in order to make space for a new item.
+ * 
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public enum SplitPolicy {
+
+	/**
+	 * Always share the items evenly between the leaf and its new sibling.
+	 */
+	BALANCED,
+
+	/**
+	 * Share the items evenly, except when the new item lands beyond the last
+	 * item of the right-most leaf of its parent. In that case the existing
+	 * items are kept together in a full node and the new item starts a new one.
+	 * <p>
+	 * This suits keys that increase monotonically (e.g. time or counter based
+	 * ids), which would otherwise leave every leaf half empty.
+	 */
+	APPEND,
+	;
+
+}
@@ -31,6 +31,7 @@ public class TransactionBTree extends ReadOnlyTransactionBTree implements BTreeT
 	private static final long TRANSFER_BLOCK = 4*1024*1024;
 
 	private final BTreeBackingTransaction transaction;
+	private final SplitPolicy splitPolicy;
 
 	/**
 	 * Note, the backing must contain a representation of
@@ -39,8 +40,17 @@ public class TransactionBTree extends ReadOnlyTransactionBTree implements BTreeT
 	 * @param transaction
 	 */
 	public TransactionBTree(BTreeBackingTransaction transaction) {
+		this(transaction, SplitPolicy.BALANCED);
+	}
+
+	/**
+	 * @param transaction
+	 * @param splitPolicy - how full leaves are split
+	 */
+	public TransactionBTree(BTreeBackingTransaction transaction, SplitPolicy splitPolicy) {
 		super(transaction);
 		this.transaction = transaction;
+		this.splitPolicy = splitPolicy;
 	}
 
 	// -- convenience
@@ -48,14 +58,14 @@ public class TransactionBTree extends ReadOnlyTransactionBTree implements BTreeT
 	@Override
 	public BTree.Reference truncate(BTree.Reference ref, long length) {
 		BTree.Key k = key(ref);
-		BTree.Reference r = realloc(transaction, k, length);
+		BTree.Reference r = realloc(transaction, splitPolicy, k, length);
 		return r;
 	}
 
 	@Override
 	public BTree.Reference store(BTree.Key key, long objectOffset, ByteBuffer buffer) {
 		int rx = buffer.remaining();
-		BTree.Reference ref = realloc(transaction, key, objectOffset + rx);
+		BTree.Reference ref = realloc(transaction, splitPolicy, key, objectOffset + rx);
 		int r = store(ref,objectOffset,buffer);
 		assert(r == rx);
 		return ref;
@@ -65,10 +75,22 @@ public class TransactionBTree extends ReadOnlyTransactionBTree implements BTreeT
 
 	@Override
 	public BTree.Reference truncate(BTree.Key key, long length) {
-		BTree.Reference ref = realloc(transaction, key, length);
+		BTree.Reference ref = realloc(transaction, splitPolicy, key, length);
 		return ref;
 	}
 
+	@Override
+	public int truncateAll(BTree.Key[] keys, long[] lengths) {
+		if (lengths.length != keys.length) throw new IllegalArgumentException("A length is required for each key.");
+		return reallocAll(keys, lengths, null);
+	}
+
+	@Override
+	public int storeAll(BTree.Key[] keys, ByteBuffer[] buffers) {
+		if (buffers.length != keys.length) throw new IllegalArgumentException("A buffer is required for each key.");
+		return reallocAll(keys, null, buffers);
+	}
+
 	@Override
 	public int store(BTree.Reference ref, long objectOffset, ByteBuffer buffer) {
 		// obtain the leaf
@@ -165,7 +187,7 @@ public class TransactionBTree extends ReadOnlyTransactionBTree implements BTreeT
 
 	// -- internals
 
-	private static BTree.Reference realloc(BTreeBackingTransaction t, BTree.Key key, long length) {
+	private static BTree.Reference realloc(BTreeBackingTransaction t, SplitPolicy policy, BTree.Key key, long length) {
 
 		// basic process:
 		//   search for node in which to insert data,
@@ -173,7 +195,92 @@ public class TransactionBTree extends ReadOnlyTransactionBTree implements BTreeT
 		//     if so, then split node and update parent
 		//   insert data
 
+		Descent l = descend(t, key);
+		if (l == null) return null;
+
+		return realloc_provision(t, policy, key, l.pOffset, l.p, l.nOffset, l.nl, length);
+	}
+
+	/**
+	 * Provision, and optionally store, a sorted batch of items.
+	 * <p>
+	 * Each walk down the tree finds the leaf for the next key, and then as many of the
+	 * following keys as fall within the leaf are placed in the leaf directly. Only when
+	 * the leaf overflows (or an item is to be held externally) is the next key placed
+	 * individually, splitting the leaf.
+	 * 
+	 * @return the number of items provisioned
+	 */
+	private int reallocAll(BTree.Key[] keys, long[] lengths, ByteBuffer[] buffers) {
+		for (int i = 1; i < keys.length; i++) {
+			if (keys[i].compareTo(keys[i-1]) < 0) throw new IllegalArgumentException(String.format("The keys are not in ascending order at %d.", i));
+		}
+
+		final BTreeBackingTransaction t = transaction;
+		int i = 0;
+		while (i < keys.length) {
+			Descent l = descend(t, keys[i]);
+			if (l == null) return i;
+
+			// place the run of keys that fall within this leaf
+			final int start = i;
+			boolean inLeaf = true;
+			while (i < keys.length) {
+				BTree.Key key = keys[i];
+				inLeaf = l.bound == null || key.compareTo(l.bound) <= 0;
+				if (!inLeaf) break;
+
+				long length = buffers == null ? lengths[i] : buffers[i].remaining();
+				if (length > t.maxItemData()) break;
+				int ni = l.nl.find(key);
+				if (ni >= 0 && (l.nl.flags(ni) & BTreeLeafNode.Flags.EXTERNAL.mask) != 0) break;
+
+				ni = l.nl.realloc(key, (int)length);
+				if (ni < 0) break;
+				if (buffers != null) {
+					int r = l.nl.write(ni, 0, buffers[i]);
+					assert(r == length);
+				}
+				i++;
+			}
+			if (i > start) t.record(l.nOffset, l.nl);
+
+			if (i < keys.length && inLeaf) {
+				// the leaf is full, so place the next key on its own
+				BTree.Reference ref = realloc(t, splitPolicy, keys[i], buffers == null ? lengths[i] : buffers[i].remaining());
+				if (ref == null) return i;
+				if (buffers != null) store(ref, 0, buffers[i]);
+				i++;
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * The leaf in which a key is to be placed, along with its parent.
+	 */
+	private static final class Descent {
+		long pOffset;
+		BTreeIndexNode p;
+		long nOffset;
+		BTreeLeafNode nl;
+
+		/**
+		 * the largest key that may be placed in the leaf, or null if there is no limit
+		 */
+		BTree.Key bound;
+	}
+
+	/**
+	 * Walk down to the leaf in which the key is to be placed, splitting any full index
+	 * nodes along the way so that the leaf can be split in turn.
+	 * 
+	 * @return the leaf, or null if a node could not be allocated
+	 */
+	private static Descent descend(BTreeBackingTransaction t, BTree.Key key) {
+
 		// start at root
+		BTree.Key bound = null;
 		BTreeIndexNode p = null;
 		long pOffset = -1;
 		long nOffset = t.root();
@@ -249,6 +356,10 @@ public class TransactionBTree extends ReadOnlyTransactionBTree implements BTreeT
 			}
 			if (x < 0) x = -x-1;
 
+			// the child only holds keys up to the key that refers to it
+			BTree.Key k = c.key(x);
+			if (k != null && (bound == null || k.compareTo(bound) < 0)) bound = k;
+
 			// find the offset of the child
 			nOffset = c.offset(x);
 
@@ -258,10 +369,12 @@ public class TransactionBTree extends ReadOnlyTransactionBTree implements BTreeT
 			if (nOffset == BTreeIndexNode.INVALID_OFFSET) {
 				//				assert(c.rightChild < 0);
 				// allocate a new right-hand-child
-				nOffset = t.alloc(d+1 == t.depth());
+				boolean isLeaf = d+1 == t.depth();
+				nOffset = t.alloc(isLeaf);
 				if (nOffset == BTreeBackingTransaction.ALLOC_FAILED) return null;
 				c.writeRight(nOffset);
 				t.record(cOffset,c);
+				if (isLeaf) link(t, c, x, nOffset);
 			}
 
 			p = c;
@@ -272,9 +385,13 @@ public class TransactionBTree extends ReadOnlyTransactionBTree implements BTreeT
 		}
 
 		// obtain the leaf
-		BTreeLeafNode nl = (BTreeLeafNode)n;
-
-		return realloc_provision(t, key, pOffset, p, nOffset, nl, length);
+		Descent l = new Descent();
+		l.pOffset = pOffset;
+		l.p = p;
+		l.nOffset = nOffset;
+		l.nl = (BTreeLeafNode)n;
+		l.bound = bound;
+		return l;
 	}
 
 	/**
@@ -323,6 +440,7 @@ public class TransactionBTree extends ReadOnlyTransactionBTree implements BTreeT
 	 */
 	private static BTree.Reference realloc_provision(
 			final BTreeBackingTransaction t,
+			final SplitPolicy policy,
 			final BTree.Key key,
 			final long pOffset, final BTreeIndexNode p,
 			final long nOffset, final BTreeLeafNode nl,
@@ -332,10 +450,10 @@ public class TransactionBTree extends ReadOnlyTransactionBTree implements BTreeT
 		// check if should be stored as extranode data or intranode data
 		if (length > t.maxItemData()) {
 			// should be external
-			return realloc_provision_external(t,key,pOffset,p,nOffset,nl,length);
+			return realloc_provision_external(t,policy,key,pOffset,p,nOffset,nl,length);
 		} else {
 			// should be internal
-			return realloc_provision_internal(t,key,pOffset,p,nOffset,nl,length);
+			return realloc_provision_internal(t,policy,key,pOffset,p,nOffset,nl,length);
 		}
 	}
 
@@ -344,6 +462,7 @@ public class TransactionBTree extends ReadOnlyTransactionBTree implements BTreeT
 	 */
 	private static BTree.Reference realloc_provision_external(
 			final BTreeBackingTransaction t,
+			final SplitPolicy policy,
 			final BTree.Key key,
 			final long pOffset, final BTreeIndexNode p,
 			final long nOffset, final BTreeLeafNode nl,
@@ -370,7 +489,7 @@ public class TransactionBTree extends ReadOnlyTransactionBTree implements BTreeT
 				ByteBuffer buffer = ByteBuffer.allocate(nl.size(ni));
 				nl.read(ni, 0, buffer);
 				buffer.flip();
-				Reference r = realloc_inline(t, p, pOffset, nl, nOffset, key, ExtranodeReference.SIZE);
+				Reference r = realloc_inline(t, policy, p, pOffset, nl, nOffset, key, ExtranodeReference.SIZE);
 				assert(r != null);
 				// --
 				long xoffset = t.alloc(length);
@@ -400,7 +519,7 @@ public class TransactionBTree extends ReadOnlyTransactionBTree implements BTreeT
 			// does not exist
 			// alloc a new internal ref
 			// alloc the raw data
-			Reference r = realloc_inline(t, p, pOffset, nl, nOffset, key, ExtranodeReference.SIZE);
+			Reference r = realloc_inline(t, policy, p, pOffset, nl, nOffset, key, ExtranodeReference.SIZE);
 			assert(r != null);
 			// --
 			long xoffset = t.alloc(length); // TODO btree extranode: rounding?
@@ -430,6 +549,7 @@ public class TransactionBTree extends ReadOnlyTransactionBTree implements BTreeT
 	 */
 	private static BTree.Reference realloc_provision_internal(
 			final BTreeBackingTransaction t,
+			final SplitPolicy policy,
 			final BTree.Key key,
 			final long pOffset, final BTreeIndexNode p,
 			final long nOffset, final BTreeLeafNode nl,
@@ -440,13 +560,13 @@ public class TransactionBTree extends ReadOnlyTransactionBTree implements BTreeT
 			// check if currently internal
 			if ((nl.flags(ni) & BTreeLeafNode.Flags.EXTERNAL.mask) == 0) {
 				// normal inline realloc
-				return realloc_inline(t,p,pOffset,nl,nOffset,key,(int)length);
+				return realloc_inline(t,policy,p,pOffset,nl,nOffset,key,(int)length);
 			} else {
 				// realloc inline data
 				// copy extranode data into node
 				// free extranode data
 				ExtranodeReference xr = ExtranodeReference.read(ni, nl);
-				Reference r = realloc_inline(t, p, pOffset, nl, nOffset, key, (int)length);
+				Reference r = realloc_inline(t, policy, p, pOffset, nl, nOffset, key, (int)length);
 				BTreeLeafNode nlr = node(t,r);
 				ByteBuffer buffer = ByteBuffer.allocate((int)(length < xr.size ? length : xr.size));
 				t.read(xr.offset, 0, buffer);
@@ -461,11 +581,11 @@ public class TransactionBTree extends ReadOnlyTransactionBTree implements BTreeT
 			}
 		} else {
 			// normal inline alloc inline
-			return realloc_inline(t,p,pOffset,nl,nOffset,key,(int)length);
+			return realloc_inline(t,policy,p,pOffset,nl,nOffset,key,(int)length);
 		}
 	}
 
-	private static Reference realloc_inline(BTreeBackingTransaction t, BTreeIndexNode p, long pOffset, BTreeLeafNode nl, long nOffset, BTree.Key key, int nrequired) {
+	private static Reference realloc_inline(BTreeBackingTransaction t, SplitPolicy policy, BTreeIndexNode p, long pOffset, BTreeLeafNode nl, long nOffset, BTree.Key key, int nrequired) {
 		int ni = nl.realloc(key, nrequired);
 
 		if (ni < 0) {
@@ -483,22 +603,41 @@ public class TransactionBTree extends ReadOnlyTransactionBTree implements BTreeT
 
 			BTreeLeafNode target = null;
 			long targetOffset = 0;
+			long rightSibling = nl.rightSibling();
+
+			boolean append = policy == SplitPolicy.APPEND && isAppend(p, nl, nOffset, key);
+			if (append) {
+				// keep the existing items together by moving them all into the new sibling on
+				// the left, leaving this node to start afresh with the new item
+				boolean dok = nl.balance(sibling,true);
+				assert(dok);
+				ni = nl.realloc(key, nrequired);
+				assert(ni >= 0);
+			} else {
+				// balance by splitting the node into two
+				boolean dok = nl.balance(sibling,key,nrequired,false);
+				assert(dok);
+			}
 
-			// balance by splitting the node into two
-			boolean dok = nl.balance(sibling,key,nrequired,false);
-			assert(dok);
+			// The balancing leaves the low keys in the new sibling, so swap the nodes between the two
+			// offsets. This keeps the low keys at the original offset, where the leaf to the left can
+			// continue to link to them, and places the new offset to the right.
+			BTreeLeafNode left = sibling;
+			BTreeLeafNode right = nl;
+			left.rightSibling(siblingOffset);
+			right.rightSibling(rightSibling);
 
 			// select target
-			if (key.compareTo(sibling.rightHandKey()) > 0) {
-				target = nl;
-				targetOffset = nOffset;
-			} else {
-				target = sibling;
+			if (key.compareTo(left.rightHandKey()) > 0) {
+				target = right;
 				targetOffset = siblingOffset;
+			} else {
+				target = left;
+				targetOffset = nOffset;
 			}
 
 			ni = target.find(key);
-			assert(ni >= 0) : String.format("key=%s ni=%d nrequired=%d from=%d where sibling:%d=%s and nl:%d=%s",key,ni,nrequired,targetOffset,siblingOffset,sibling,nOffset,nl);
+			assert(ni >= 0) : String.format("key=%s ni=%d nrequired=%d from=%d where left:%d=%s and right:%d=%s",key,ni,nrequired,targetOffset,nOffset,left,siblingOffset,right);
 
 			//			{
 			//				System.out.printf("nl keys = ");
@@ -513,9 +652,11 @@ public class TransactionBTree extends ReadOnlyTransactionBTree implements BTreeT
 			// create the new parent item and insert
 			// (note, the parent would have space for at least one
 			//  node, as if it was full it would have been preemptively split)
-			int ri = p.alloc(sibling.rightHandKey());
+			int ri = p.alloc(left.rightHandKey(), leftHandKey(right));
 			assert(ri >= 0);
-			p.write(ri, siblingOffset);
+			assert(p.offset(ri+1) == nOffset);
+			p.write(ri, nOffset);
+			p.write(ri+1, siblingOffset);
 
 			// write the data into the node
 			BTree.Reference r = new BTree.Reference();
@@ -524,8 +665,8 @@ public class TransactionBTree extends ReadOnlyTransactionBTree implements BTreeT
 			r.size = target.size(r.index);
 
 			// note, all these nodes will need to be persisted again
-			t.record(nOffset,nl);
-			t.record(siblingOffset,sibling);
+			t.record(nOffset,left);
+			t.record(siblingOffset,right);
 			t.record(pOffset,p);
 
 			return r;
@@ -553,6 +694,15 @@ public class TransactionBTree extends ReadOnlyTransactionBTree implements BTreeT
 		}
 	}
 
+	/**
+	 * @return true if the key would be placed after all the items in the right-most child of the parent
+	 */
+	private static boolean isAppend(BTreeIndexNode p, BTreeLeafNode nl, long nOffset, BTree.Key key) {
+		if (p == null || nl.children() == 0) return false;
+		if (p.offset(p.children()-1) != nOffset) return false;
+		return key.compareTo(nl.rightHandKey()) > 0;
+	}
+
 	private static void balance(BTreeBackingTransaction t, long[] pathOffsets, BTreeIndexNode[] pathNodes, int[] pathIndexes, int balanceDepth, long nOffset, BTreeNode n, boolean nRightHandKeyChanged) {
 
 		assert(balanceDepth >= 0);
@@ -579,10 +729,35 @@ public class TransactionBTree extends ReadOnlyTransactionBTree implements BTreeT
 
 							BTreeNode sibling = t.retrieve(siblingOffset);
 
+							if (n instanceof BTreeLeafNode && !isLeft) {
+								// merge the right sibling into this leaf instead, so that the leaf
+								// to the left can continue to link to the merged leaf
+								if (sibling.isCompressibleWith(n) && sibling.balance(n, true)) {
+									((BTreeLeafNode)n).rightSibling(((BTreeLeafNode)sibling).rightSibling());
+
+									// record the changes at this balance level
+									t.free(siblingOffset);
+									t.record(nOffset,n);
+
+									// check if the change in the parent will affect the right-hand-key of the parent
+									pRightHandKeyChanged = parent.isRightHandItem(siblingIndex) || parent.isRightHandItem(nIndex);
+
+									// the key of the sibling still bounds the merged node
+									parent.write(siblingIndex, nOffset);
+									parent.delete(nIndex);
+
+									break balanced;
+								}
+								continue mergeSides;
+							}
+
 							//						System.err.printf("about to push n=%s sibling=%s%n", n,sibling);
 							if (n.isCompressibleWith(sibling) && n.balance(sibling, true)) {
 								//							System.err.printf("push succeeded n=%s sibling=%s%n", n,sibling);
 
+								// the merged leaf takes over the link from the node being removed
+								if (n instanceof BTreeLeafNode) ((BTreeLeafNode)sibling).rightSibling(((BTreeLeafNode)n).rightSibling());
+
 								// record the changes at this balance level
 								t.free(nOffset);
 								t.record(siblingOffset,sibling);
@@ -590,12 +765,19 @@ public class TransactionBTree extends ReadOnlyTransactionBTree implements BTreeT
 								// check if the change in the parent will affect the right-hand-key of the parent
 								pRightHandKeyChanged = parent.isRightHandItem(siblingIndex) || parent.isRightHandItem(nIndex);
 
-								// start rippling up
-								// since we removed this node, and balanced with its sibling, make sure we fix keys in the parent
-								// (do this before removing the child so that the sibling index is still valid)
-								parent.modify(siblingIndex,sibling.rightHandKey());
-								// now remove the freed node from the parent
-								parent.delete(nIndex);
+								if (parent.hasExactKeys()) {
+									// start rippling up
+									// since we removed this node, and balanced with its sibling, make sure we fix keys in the parent
+									// (do this before removing the child so that the sibling index is still valid)
+									parent.modify(siblingIndex,sibling.rightHandKey());
+									// now remove the freed node from the parent
+									parent.delete(nIndex);
+								} else {
+									// the key to the right of the pair still separates the merged node from
+									// the following node, so keep it and remove the key to the left
+									parent.write(Math.max(nIndex, siblingIndex), siblingOffset);
+									parent.delete(Math.min(nIndex, siblingIndex));
+								}
 
 								break balanced;
 							} else {
@@ -610,6 +792,9 @@ public class TransactionBTree extends ReadOnlyTransactionBTree implements BTreeT
 						long siblingOffset = parent.offset(siblingIndex);
 						if (siblingOffset == BTreeIndexNode.INVALID_OFFSET) continue drainSides; // it's possible that there is no sibling to the right or left
 
+						// a parent holding separators may need space for a longer separator
+						if (!parent.hasExactKeys() && parent.isFull()) continue drainSides;
+
 						BTreeNode sibling = t.retrieve(siblingOffset);
 						//						System.err.printf("about to pull n=%s sibling=%s on %s%n", n,sibling, isLeft ? "left" : "right");
 						if (n.balance(sibling, false)) {
@@ -622,11 +807,19 @@ public class TransactionBTree extends ReadOnlyTransactionBTree implements BTreeT
 							// check if the change in the parent will affect the right-hand-key of the parent
 							pRightHandKeyChanged = parent.isRightHandItem(siblingIndex) || parent.isRightHandItem(nIndex);
 
-							// start rippling up
-							// since we balanced this node, make sure we fix keys in parent
-							// (ignoring updates to the 'rightChild' since there is no explicit reference key for it)
-							parent.modify(siblingIndex, sibling.rightHandKey());
-							parent.modify(nIndex, n.rightHandKey());
+							if (parent.hasExactKeys()) {
+								// start rippling up
+								// since we balanced this node, make sure we fix keys in parent
+								// (ignoring updates to the 'rightChild' since there is no explicit reference key for it)
+								parent.modify(siblingIndex, sibling.rightHandKey());
+								parent.modify(nIndex, n.rightHandKey());
+							} else {
+								// only the boundary between the pair has moved, so only the separator
+								// between them needs to be replaced
+								BTreeNode left = isLeft ? sibling : n;
+								BTreeNode right = isLeft ? n : sibling;
+								parent.modify(isLeft ? siblingIndex : nIndex, left.rightHandKey(), leftHandKey(right));
+							}
 
 							break balanced;
 						} else {
@@ -657,6 +850,13 @@ public class TransactionBTree extends ReadOnlyTransactionBTree implements BTreeT
 						//                      This might be handled by changing deletion to use preemptive merging as
 						//                      per Ohad Rodeh, in B-trees, Shadowing, and Clones (btree_TOS_rodeh.pdf)
 
+						// a parent holding separators might not have had space to drain, in which
+						// case we leave this node under-full rather than overflow the parent
+						if (!parent.hasExactKeys() && parent.isFull()) {
+							t.record(nOffset,n);
+							break balanced;
+						}
+
 						// we should always be able to merge or drain, otherwise one of the other edge cases should have kicked in earlier
 						assert(false);
 				}
@@ -669,7 +869,8 @@ public class TransactionBTree extends ReadOnlyTransactionBTree implements BTreeT
 				t.record(nOffset,n);
 
 				// check if we still need to ripple up...
-				if (nRightHandKeyChanged) {
+				// (separators remain valid as the node shrinks, so only exact keys need to be updated)
+				if (nRightHandKeyChanged && parent.hasExactKeys()) {
 					pRightHandKeyChanged = parent.isRightHandItem(nIndex);
 					parent.modify(nIndex, n.rightHandKey());
 					balance(t, pathOffsets, pathNodes, pathIndexes, balanceDepth - 1, pathOffsets[balanceDepth-1], parent, pRightHandKeyChanged);
@@ -699,6 +900,33 @@ public class TransactionBTree extends ReadOnlyTransactionBTree implements BTreeT
 		}
 	}
 
+	/**
+	 * Link a newly allocated leaf, referenced at index <code>x</code> of its parent, into the
+	 * chain of leaf siblings.
+	 */
+	private static void link(BTreeBackingTransaction t, BTreeIndexNode parent, int x, long nOffset) {
+		BTreeLeafNode n = (BTreeLeafNode)t.retrieve(nOffset);
+		if (x > 0) {
+			long lOffset = parent.offset(x-1);
+			BTreeLeafNode l = (BTreeLeafNode)t.retrieve(lOffset);
+			n.rightSibling(l.rightSibling());
+			l.rightSibling(nOffset);
+			t.record(lOffset,l);
+		} else {
+			// the leaf is only known to be alone if it is the first leaf of the tree
+			n.rightSibling(t.depth() == 1 ? BTreeLeafNode.NO_RIGHT_SIBLING : BTreeLeafNode.UNKNOWN_RIGHT_SIBLING);
+		}
+		t.record(nOffset,n);
+	}
+
+	/**
+	 * @return the smallest key in a leaf, or null if the node is not a leaf or is empty
+	 */
+	private static BTree.Key leftHandKey(BTreeNode n) {
+		if (!(n instanceof BTreeLeafNode) || n.children() == 0) return null;
+		return n.key(0);
+	}
+
 	// -- special purpose
 
 	/**
@@ -777,6 +1005,8 @@ public class TransactionBTree extends ReadOnlyTransactionBTree implements BTreeT
 			long pOffset = pathOffsets[d-1];
 			BTreeIndexNode parent = pathNodes[d-1];
 			int nIndex = pathIndexes[d-1];
+			// the replacement followed the same path, so it is already bounded by any separators
+			if (!parent.hasExactKeys()) break;
 			ok = parent.modify(nIndex, n.rightHandKey());
 			assert(ok);
 			transaction.record(pOffset,parent);
@@ -24,6 +24,41 @@ public interface BTreeIndexNode extends BTreeNode {
 	 */
 	public int alloc(Key key);
 
+	/**
+	 * Provision storage space for a new index item that separates a child, whose
+	 * largest key is <code>left</code>, from the following child, whose smallest key
+	 * is <code>right</code>.
+	 * <p>
+	 * The node may choose to address the item by any key <code>s</code> such that
+	 * <code>left &le; s &lt; right</code>, rather than by <code>left</code> itself.
+	 * 
+	 * @param left - the largest key of the child that will be referenced by the new item
+	 * @param right - the smallest key of the following child, or null if not known
+	 * @return the index of the new item
+	 */
+	public int alloc(Key left, Key right);
+
+	/**
+	 * Change the key of an item to separate the children with the given bounds.
+	 * 
+	 * @param idx
+	 * @param left - the largest key of the child referenced by the item
+	 * @param right - the smallest key of the following child, or null if not known
+	 * @return true if modified
+	 * @see #alloc(Key, Key)
+	 */
+	public boolean modify(int idx, Key left, Key right);
+
+	/**
+	 * Check if the keys in this node are the exact right-hand-keys of the children.
+	 * <p>
+	 * If not, then the keys are only separators, which remain valid as the children
+	 * shrink, and so need not be updated when items are removed.
+	 * 
+	 * @return true if the node holds exact keys
+	 */
+	public boolean hasExactKeys();
+
 	/**
 	 * Write offset data into the right-hand-child offset storage.
 	 * 
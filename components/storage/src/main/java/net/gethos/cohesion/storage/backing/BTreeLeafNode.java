@@ -15,6 +15,17 @@ import net.gethos.cohesion.storage.BTree;
  */
 public interface BTreeLeafNode extends BTreeNode {
 	
+	/**
+	 * Right sibling link of the right most leaf in the tree.
+	 */
+	public static final long NO_RIGHT_SIBLING = BTreeIndexNode.INVALID_OFFSET + 1;
+	
+	/**
+	 * Right sibling link of a leaf for which the link has not been maintained
+	 * (e.g. a leaf written before leaves were linked).
+	 */
+	public static final long UNKNOWN_RIGHT_SIBLING = BTreeIndexNode.INVALID_OFFSET;
+	
 	public static enum Flags {
 		NONE((byte)0)
 		, EXTERNAL((byte)(1<<0))
@@ -114,4 +125,20 @@ public interface BTreeLeafNode extends BTreeNode {
 	 * @param idx
 	 */
 	public void flags(int idx, byte flags);
+
+	/**
+	 * Obtain the offset of the leaf holding the keys that immediately follow
+	 * the keys in this leaf.
+	 * 
+	 * @return the offset of the right sibling, <code>NO_RIGHT_SIBLING</code> if this is the
+	 *         right most leaf, or <code>UNKNOWN_RIGHT_SIBLING</code> if the link is not known.
+	 */
+	public long rightSibling();
+	
+	/**
+	 * Link this leaf to its right sibling.
+	 * 
+	 * @param offset
+	 */
+	public void rightSibling(long offset);
 }
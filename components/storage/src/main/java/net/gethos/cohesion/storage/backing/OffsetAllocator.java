@@ -0,0 +1,67 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage.backing;
+
+import java.util.Arrays;
+
+/**
+ * Hands out the synthetic offsets used by the in-memory backings.
+ * <p>
+ * Offsets are taken from a progression <code>first, first+stride, first+2*stride, ...</code>
+ * and freed offsets are kept on a stack so that they are recycled before the progression
+ * is extended. Both allocation and release are therefore constant time, irrespective of
+ * the number of offsets in use.
+ * <p>
+ * The allocator does not track which offsets are in use, it is up to the caller to only
+ * release offsets that it previously allocated and has not already released.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ */
+public class OffsetAllocator {
+
+	private static final int INITIAL_FREE_CAPACITY = 16;
+
+	private final long stride;
+	private long next;
+	private long[] free;
+	private int freeCount;
+
+	public OffsetAllocator(long first, long stride) {
+		if (first < 0) throw new IllegalArgumentException("first offset must not be negative");
+		if (stride < 1) throw new IllegalArgumentException("stride must be positive");
+		this.stride = stride;
+		this.next = first;
+		this.free = new long[INITIAL_FREE_CAPACITY];
+		this.freeCount = 0;
+	}
+
+	/**
+	 * @return an offset that is not in use, or {@link BTreeBackingTransaction#ALLOC_FAILED} if the offsets are exhausted
+	 */
+	public long alloc() {
+		if (freeCount > 0) return free[--freeCount];
+		if (next > Long.MAX_VALUE - stride) return BTreeBackingTransaction.ALLOC_FAILED;
+		long l = next;
+		next += stride;
+		return l;
+	}
+
+	/**
+	 * Return an offset so that it may be handed out again.
+	 */
+	public void free(long offset) {
+		assert(offset >= 0 && offset < next);
+		if (freeCount == free.length) free = Arrays.copyOf(free, free.length * 2);
+		free[freeCount++] = offset;
+	}
+
+	/**
+	 * @return the number of freed offsets that are waiting to be recycled
+	 */
+	public int available() {
+		return freeCount;
+	}
+}
@@ -10,7 +10,6 @@ import java.nio.ByteBuffer;
 import net.gethos.cohesion.storage.BTree;
 import net.gethos.cohesion.storage.BTree.Key;
 import net.gethos.cohesion.storage.backing.BTreeIndexNode;
-import net.gethos.cohesion.storage.backing.BTreeLeafNode;
 import net.gethos.cohesion.storage.backing.BTreeNode;
 import net.gethos.cohesion.storage.StorageConstants;
 
@@ -23,6 +22,29 @@ import net.gethos.cohesion.storage.StorageConstants;
  * +------+----------------------------------+
  * </pre>
  * 
+ * If the node was created with truncated separators (see {@link NodeFormat}), then
+ * the keys are instead the shortest separators between adjacent children (see
+ * {@link BTree.Key#separatorLength(Key, Key)}). The separators have variable length
+ * and are held at the end of the node, while the fixed size items refer to them:
+ * <pre>
+ * +------+-----------------------------------------+---------+--------------+
+ * |header|( child | separator offset | length )...|(free)...|(separator)...|
+ * +------+-----------------------------------------+---------+--------------+
+ * </pre>
+ * 
+ * Only the leading 'length' bytes of each separator are stored, the remaining bytes
+ * being those of {@link BTree.Key#MAX_KEY}. Since the separator offsets are held as
+ * unsigned shorts, this format is only used by nodes with a capacity of at most 64KiB.
+ * <p>
+ * In either layout, a node created with compact children holds each child as a signed 32-bit
+ * value rather than a 64-bit offset, and keeps a 64-bit base at the very end of the node. A
+ * non-negative value is the distance of the child from the base, in units of 2<sup>scale</sup>
+ * bytes, while a negative value (e.g. a virtual node within a transaction) is held as is. The
+ * scale starts out as that of the page size given by the node format, and the children are
+ * re-encoded against a lower base or a finer scale whenever a child is written that can not
+ * otherwise be represented. Only should the children then span more than 31 bits of that scale
+ * does the node revert to 64-bit children.
+ * 
  * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
  *
  */
@@ -30,9 +52,226 @@ public class BufferIndexNode extends BufferNode implements BTreeIndexNode {
 
 	private static final int ITEM_OFFSET_CHILD = ITEM_OFFSET_KEY + BTree.Key.SIZE;
 	protected static final int ITEM_ENTRY_SIZE = ITEM_OFFSET_CHILD + StorageConstants.SIZEOF_LONG;
+
+	private static final int SLOT_OFFSET_CHILD     = 0;
+	private static final int SLOT_OFFSET_SEPARATOR = SLOT_OFFSET_CHILD     + StorageConstants.SIZEOF_LONG;  // offset of the separator bytes
+	private static final int SLOT_OFFSET_LENGTH    = SLOT_OFFSET_SEPARATOR + StorageConstants.SIZEOF_SHORT; // number of separator bytes
+	protected static final int SLOT_SIZE           = SLOT_OFFSET_LENGTH    + StorageConstants.SIZEOF_BYTE;
+
+	// the space saved in each item or slot by holding the child as an int
+	private static final int COMPACT_CHILD_SAVING = StorageConstants.SIZEOF_LONG - StorageConstants.SIZEOF_INT;
+
+	// the space at the end of a compact node that holds the base of the children
+	private static final int COMPACT_BASE_SIZE = StorageConstants.SIZEOF_LONG;
+
+	private static final int HEADER_OFFSET_FORMAT      = HEADER_OFFSET_RESERVED_1; // index format flags
+	private static final int HEADER_OFFSET_CHILD_UNIT  = HEADER_OFFSET_RESERVED_2; // log2 of the compact child unit
+	private static final int HEADER_OFFSET_CHILD_SCALE = HEADER_OFFSET_RESERVED_3; // log2 of the current compact child scale
+
+	private static final byte FORMAT_TRUNCATED_SEPARATORS = (byte)(1<<0);
+	private static final byte FORMAT_COMPACT_CHILDREN     = (byte)(1<<1);
+	private static final byte FORMAT_INTERPOLATION_SEARCH = (byte)(1<<2);
+
+	private static final int MAX_TRUNCATED_CAPACITY = 0xffff;
+	
+	/**
+	 * Optional decoded copy of the items, only present while the node is held read-only
+	 * (e.g. by a node cache) and dropped by any modification.
+	 */
+	private DecodedIndexView decoded;
 	
 	public BufferIndexNode(ByteBuffer n) {
 		super(n);
+		this.decoded = null;
+	}
+	
+	static void initialiseFormat(ByteBuffer buffer, NodeFormat format) {
+		boolean truncated = format.truncatedSeparators() && buffer.capacity() <= MAX_TRUNCATED_CAPACITY;
+		byte flags = 0;
+		if (truncated) flags |= FORMAT_TRUNCATED_SEPARATORS;
+		if (format.compactChildren()) flags |= FORMAT_COMPACT_CHILDREN;
+		if (format.interpolationSearch()) flags |= FORMAT_INTERPOLATION_SEARCH;
+		buffer.put(HEADER_OFFSET_FORMAT, flags);
+		byte unit = (byte)(format.compactChildren() ? Integer.numberOfTrailingZeros(format.compactChildUnit()) : 0);
+		buffer.put(HEADER_OFFSET_CHILD_UNIT, unit);
+		buffer.put(HEADER_OFFSET_CHILD_SCALE, unit);
+		if (format.compactChildren()) {
+			buffer.putInt(HEADER_OFFSET_FREE, buffer.getInt(HEADER_OFFSET_FREE) - COMPACT_BASE_SIZE);
+			buffer.putLong(buffer.capacity() - COMPACT_BASE_SIZE, 0L);
+		}
+	}
+	
+	private byte format() {
+		return buffer.get(HEADER_OFFSET_FORMAT);
+	}
+	
+	private int childUnit() {
+		return buffer.get(HEADER_OFFSET_CHILD_UNIT);
+	}
+	
+	private int childScale() {
+		return buffer.get(HEADER_OFFSET_CHILD_SCALE);
+	}
+	
+	private long childBase() {
+		return isCompact() ? buffer.getLong(buffer.capacity() - COMPACT_BASE_SIZE) : 0L;
+	}
+	
+	boolean isTruncated() {
+		return isTruncated(format());
+	}
+	
+	boolean isCompact() {
+		return isCompact(format());
+	}
+	
+	@Override
+	protected boolean isInterpolationSearch() {
+		return (format() & FORMAT_INTERPOLATION_SEARCH) != 0;
+	}
+	
+	@Override
+	protected int keyEntrySize() {
+		return isTruncated() ? -1 : entrySize(format());
+	}
+	
+	private static boolean isTruncated(byte format) {
+		return (format & FORMAT_TRUNCATED_SEPARATORS) != 0;
+	}
+	
+	private static boolean isCompact(byte format) {
+		return (format & FORMAT_COMPACT_CHILDREN) != 0;
+	}
+	
+	/**
+	 * @return the size of each item (or slot) in a node of the given format
+	 */
+	private static int entrySize(byte format) {
+		int size = isTruncated(format) ? SLOT_SIZE : ITEM_ENTRY_SIZE;
+		return isCompact(format) ? size - COMPACT_CHILD_SAVING : size;
+	}
+	
+	/**
+	 * @return the space, in addition to the items, that a node of the given format sets aside
+	 */
+	private static int overhead(byte format) {
+		return isCompact(format) ? COMPACT_BASE_SIZE : 0;
+	}
+	
+	/**
+	 * @return the position of the child within each item (or slot)
+	 */
+	private static int childOffset(byte format) {
+		return isTruncated(format) ? SLOT_OFFSET_CHILD : ITEM_OFFSET_CHILD;
+	}
+	
+	/**
+	 * @return the position of the separator offset within each slot
+	 */
+	private static int separatorOffsetOffset(byte format) {
+		return isCompact(format) ? SLOT_OFFSET_SEPARATOR - COMPACT_CHILD_SAVING : SLOT_OFFSET_SEPARATOR;
+	}
+	
+	/**
+	 * @return the position of the separator length within each slot
+	 */
+	private static int separatorLengthOffset(byte format) {
+		return isCompact(format) ? SLOT_OFFSET_LENGTH - COMPACT_CHILD_SAVING : SLOT_OFFSET_LENGTH;
+	}
+	
+	/**
+	 * @return true if the child offset can be held as a compact child with the given base and scale
+	 */
+	static boolean isCompactable(long offset, long base, int scale) {
+		if (offset < 0) return offset >= Integer.MIN_VALUE;
+		if (offset < base) return false;
+		long delta = offset - base;
+		return (delta & ((1L << scale) - 1)) == 0 && (delta >>> scale) <= Integer.MAX_VALUE;
+	}
+	
+	/**
+	 * @return the base against which the children in [from,to) are held compactly,
+	 *         being the least of the non-negative children
+	 */
+	static long compactBase(long[] children, int from, int to) {
+		long base = -1;
+		for (int i = from; i < to; i++) {
+			long c = children[i];
+			if (c >= 0 && (base < 0 || c < base)) base = c;
+		}
+		return base < 0 ? 0L : base;
+	}
+	
+	/**
+	 * @return the largest scale, no greater than <code>unit</code>, at which the children in [from,to)
+	 *         can be held compactly against their {@link #compactBase(long[], int, int) base}, or -1 if there is none
+	 */
+	static int compactScale(long[] children, int from, int to, int unit) {
+		long base = compactBase(children, from, to);
+		int scale = unit;
+		long span = 0;
+		for (int i = from; i < to; i++) {
+			long c = children[i];
+			if (c < 0) {
+				if (c < Integer.MIN_VALUE) return -1;
+				continue;
+			}
+			long delta = c - base;
+			if (delta != 0) scale = Math.min(scale, Long.numberOfTrailingZeros(delta));
+			span = Math.max(span, delta);
+		}
+		return (span >>> scale) <= Integer.MAX_VALUE ? scale : -1;
+	}
+	
+	private static void writeChild(ByteBuffer dst, int pos, byte format, long base, int scale, long offset) {
+		if (isCompact(format)) {
+			assert(isCompactable(offset, base, scale));
+			dst.putInt(pos, offset < 0 ? (int)offset : (int)((offset - base) >>> scale));
+		} else {
+			dst.putLong(pos, offset);
+		}
+	}
+	
+	private static long readChild(ByteBuffer src, int pos, byte format, long base, int scale) {
+		if (isCompact(format)) {
+			int value = src.getInt(pos);
+			return value < 0 ? value : base + (((long)value) << scale);
+		} else {
+			return src.getLong(pos);
+		}
+	}
+	
+	/**
+	 * Build the decoded view of the node items, if not already present.
+	 * <p>
+	 * Subsequent searches are served from the decoded view until the
+	 * node is modified or {@link #discardDecoded()} is called.
+	 */
+	public void decode() {
+		if (decoded != null) return;
+		if (isTruncated() || isCompact()) {
+			int size = items();
+			Key[] keys = new Key[size];
+			long[] children = new long[size];
+			for (int i = 0; i < size; i++) {
+				keys[i] = key(i);
+				children[i] = child(i);
+			}
+			decoded = new DecodedIndexView(keys, children);
+		} else {
+			decoded = new DecodedIndexView(buffer, items(), ITEM_ENTRIES_OFFSET, ITEM_ENTRY_SIZE, ITEM_OFFSET_CHILD);
+		}
+	}
+	
+	/**
+	 * Drop the decoded view, reverting to searching the node buffer directly.
+	 */
+	public void discardDecoded() {
+		decoded = null;
+	}
+	
+	boolean isDecoded() {
+		return decoded != null;
 	}
 	
 	@Override
@@ -70,17 +309,66 @@ public class BufferIndexNode extends BufferNode implements BTreeIndexNode {
 
 	@Override
 	public boolean isFull() {
-		return !hasAvailable(ITEM_ENTRY_SIZE);
+		int required = isTruncated() ? entrySize(format()) + BTree.Key.COMPARABLE_SIZE : entrySize(format());
+		return !hasAvailable(required);
+	}
+	
+	@Override
+	public boolean hasExactKeys() {
+		return !isTruncated();
+	}
+
+	@Override
+	public int find(Key key) {
+		DecodedIndexView d = decoded;
+		if (d != null) return d.find(key);
+		return super.find(key);
 	}
 
 	@Override
 	public boolean modify(int idx, Key key) {
+		decoded = null;
+		own();
 		if (idx < 0) return false;
 		int size = items();
 		if (idx > size) return false;
 		if (idx == size) return true;
 
-		return writeKey(ITEM_ENTRY_SIZE, idx, key);
+		if (isTruncated()) return modifySeparator(idx, key, BTree.Key.separatorLength(key, null));
+		return writeKey(entrySize(format()), idx, key);
+	}
+	
+	@Override
+	public boolean modify(int idx, Key left, Key right) {
+		if (!isTruncated()) return modify(idx, left);
+		decoded = null;
+		own();
+		if (idx < 0) return false;
+		int size = items();
+		if (idx > size) return false;
+		if (idx == size) return true;
+		
+		return modifySeparator(idx, left, BTree.Key.separatorLength(left, right));
+	}
+	
+	private boolean modifySeparator(int idx, Key key, int length) {
+		int pos = ipos(idx);
+		int current = separatorLength(pos);
+		if (length == current) {
+			writeSeparator(buffer, separatorOffset(pos), key, length);
+			return true;
+		}
+		if (length - current > free()) return false;
+		
+		// the separator changes size, so rebuild the node to keep the separators packed
+		int size = items();
+		Entries entries = new Entries(size);
+		for (int i = 0; i < size; i++) {
+			if (i == idx) entries.add(key, length, child(i));
+			else entries.add(this, i);
+		}
+		rebuild(entries);
+		return true;
 	}
 
 	@Override
@@ -98,25 +386,73 @@ public class BufferIndexNode extends BufferNode implements BTreeIndexNode {
 			}
 		}
 		
-		return readKey(ITEM_ENTRY_SIZE, idx);
+		if (isTruncated()) return readSeparator(idx);
+		return readKey(entrySize(format()), idx);
+	}
+
+	@Override
+	protected int compareKey(int idx, Key key) {
+		if (!isTruncated()) return compareKey(entrySize(format()), idx, key);
+		
+		int pos = ipos(idx);
+		int offset = separatorOffset(pos);
+		int length = separatorLength(pos);
+		for (int b = 0; b < length; b++) {
+			int c = key.comparableByte(b) - BTree.Key.comparableByte(b, buffer.get(offset + b));
+			if (c != 0) return c;
+		}
+		// the remaining bytes are those of the maximal key
+		for (int b = length; b < BTree.Key.COMPARABLE_SIZE; b++) {
+			int c = key.comparableByte(b) - BTree.Key.MAX_KEY.comparableByte(b);
+			if (c != 0) return c;
+		}
+		return 0;
+	}
+	
+	private int separatorOffset(int pos) {
+		return buffer.getShort(pos + separatorOffsetOffset(format())) & 0xffff;
+	}
+	
+	private int separatorLength(int pos) {
+		return buffer.get(pos + separatorLengthOffset(format()));
+	}
+	
+	private Key readSeparator(int idx) {
+		int pos = ipos(idx);
+		int offset = separatorOffset(pos);
+		int length = separatorLength(pos);
+		ByteBuffer k = ByteBuffer.allocate(BTree.Key.SIZE);
+		k.order(StorageConstants.NETWORK_ORDER);
+		BTree.Key.MAX_KEY.write(k, 0);
+		for (int b = 0; b < length; b++) k.put(b, buffer.get(offset + b));
+		return new BTree.Key(k);
+	}
+	
+	private static void writeSeparator(ByteBuffer dst, int offset, Key key, int length) {
+		for (int b = 0; b < length; b++) dst.put(offset + b, key.byteAt(b));
 	}
 
 	@Override
 	public boolean writeRight(long nOffset) {
+		decoded = null;
+		own();
 		buffer.putLong(HEADER_OFFSET_RIGHT_HAND_CHILD, nOffset);
 		return true;
 	}
 
 	@Override
 	public boolean write(int idx, long data) {
+		own();
 		
 //		System.out.printf("index node write [%d] = %d%n",idx,data);
 //		System.out.printf("index node before write:%s%n",dump());
 //		try {
+		decoded = null;
 		if (idx < 0) return false;
 		int size = items();
 		if (idx < size) {
-			buffer.putLong(ipos(idx) + ITEM_OFFSET_CHILD, data);
+			if (isCompact() && !isCompactable(data, childBase(), childScale())) rebase(idx, data);
+			writeChild(buffer, cpos(idx), format(), childBase(), childScale(), data);
 			return true;
 		}
 		if (idx == size) {
@@ -140,8 +476,16 @@ public class BufferIndexNode extends BufferNode implements BTreeIndexNode {
 		return NO_SUCH_OFFSET;
 	}
 
+	@Override
+	public int alloc(Key left, Key right) {
+		if (!isTruncated()) return alloc(left);
+		return allocSeparator(left, BTree.Key.separatorLength(left, right));
+	}
+	
 	@Override
 	public int alloc(Key key) {
+		own();
+		if (isTruncated()) return allocSeparator(key, BTree.Key.separatorLength(key, null));
 		
 //		System.out.printf("index node alloc k.idHigh=%d%n",key.idHigh);
 //		System.out.printf("index node before alloc:%s%n",dump());
@@ -149,11 +493,13 @@ public class BufferIndexNode extends BufferNode implements BTreeIndexNode {
 		int idx = find(key);
 		if (idx >= 0) return idx;
 		int free = free();
-		if (free < ITEM_ENTRY_SIZE) {
+		final int entrySize = entrySize(format());
+		if (free < entrySize) {
 			// since we are full return (-insertion-1)
 			return idx;
 		}
 		idx = -idx-1;
+		decoded = null;
 		
 		// now move all data from idx onwards up
 		int size = items();
@@ -164,15 +510,15 @@ public class BufferIndexNode extends BufferNode implements BTreeIndexNode {
 		ByteBuffer upper = buffer.slice();
 		
 		buffer.limit(buffer.capacity());
-		buffer.position(start + ITEM_ENTRY_SIZE);
+		buffer.position(start + entrySize);
 		buffer.put(upper);
 		
 		// update header
-		free(free-ITEM_ENTRY_SIZE);
+		free(free-entrySize);
 		items(size+1);
 		
 		// copy in the key
-		writeKey(ITEM_ENTRY_SIZE, idx, key);
+		writeKey(entrySize, idx, key);
 		
 		return idx;
 //		} finally {
@@ -180,12 +526,57 @@ public class BufferIndexNode extends BufferNode implements BTreeIndexNode {
 //		}
 	}
 	
+	private int allocSeparator(Key key, int length) {
+		own();
+		int idx = find(key);
+		if (idx >= 0) return idx;
+		int free = free();
+		final byte format = format();
+		final int slotSize = entrySize(format);
+		if (free < slotSize + length) {
+			// since we are full return (-insertion-1)
+			return idx;
+		}
+		idx = -idx-1;
+		decoded = null;
+		
+		// the separators are packed against the end of the node
+		int size = items();
+		int offset = ipos(size) + free - length;
+		
+		// now move all items from idx onwards up
+		int start = ipos(idx);
+		int end = ipos(size);
+		buffer.position(start);
+		buffer.limit(end);
+		ByteBuffer upper = buffer.slice();
+		
+		buffer.limit(buffer.capacity());
+		buffer.position(start + slotSize);
+		buffer.put(upper);
+		
+		// update header
+		free(free-(slotSize+length));
+		items(size+1);
+		
+		// copy in the separator
+		writeSeparator(buffer, offset, key, length);
+		buffer.putShort(start + separatorOffsetOffset(format), (short)offset);
+		buffer.put(start + separatorLengthOffset(format), (byte)length);
+		
+		return idx;
+	}
+	
 	@Override
 	public boolean delete(int idx) {
 		if (idx < 0) return false;
+		own();
 		int size = items();
 		if (idx > size) return false;
+		decoded = null;
+		if (isTruncated()) return deleteSeparator(idx);
 		int free = free();
+		final int entrySize = entrySize(format());
 		long rightChild = rightChild();
 		if (idx == size && rightChild != NO_RIGHT_HAND_CHILD) {
 			if (size > 0) {
@@ -194,7 +585,7 @@ public class BufferIndexNode extends BufferNode implements BTreeIndexNode {
 //				assert(false);
 				rightChild = child(size-1);
 				// shrink
-				free(free+ITEM_ENTRY_SIZE);
+				free(free+entrySize);
 				items(size-1);
 			} else {
 				rightChild = NO_RIGHT_HAND_CHILD;
@@ -210,32 +601,112 @@ public class BufferIndexNode extends BufferNode implements BTreeIndexNode {
 			ByteBuffer upper = buffer.slice();
 			
 			buffer.clear();
-			buffer.position(start - ITEM_ENTRY_SIZE);
+			buffer.position(start - entrySize);
 			buffer.put(upper);
 			
 			// update header
-			free(free+ITEM_ENTRY_SIZE);
+			free(free+entrySize);
 			items(size-1);
 			
 			return true;
 		}
 	}
 	
+	private boolean deleteSeparator(int idx) {
+		int size = items();
+		long rightChild = rightChild();
+		if (idx == size) {
+			if (rightChild == NO_RIGHT_HAND_CHILD) return false;
+			if (size > 0) {
+				// Promote the right-hand-item to the right-hand-child.
+				rightChild = child(size-1);
+				idx = size-1;
+			} else {
+				writeRight(NO_RIGHT_HAND_CHILD);
+				return true;
+			}
+		}
+		
+		// removing a separator leaves a gap, so rebuild the node to keep the separators packed
+		Entries entries = new Entries(size-1);
+		for (int i = 0; i < size; i++) {
+			if (i != idx) entries.add(this, i);
+		}
+		rebuild(entries);
+		writeRight(rightChild);
+		return true;
+	}
+	
+	private void rebuild(Entries entries) {
+		rebuild(entries, format());
+	}
+	
+	private void rebuild(Entries entries, byte format) {
+		ByteBuffer dst = allocateBuffer(buffer.capacity());
+		entries.encode(dst, 0, entries.size(), format, childUnit(), rightChild());
+		swb(dst);
+		decoded = null;
+	}
+	
+	/**
+	 * Re-encode the compact children against a new base and scale, in order to hold
+	 * a child that can not be represented relative to the current ones.
+	 */
+	private void rebase(int idx, long child) {
+		int size = items();
+		long[] children = new long[size];
+		for (int i = 0; i < size; i++) children[i] = i == idx ? child : child(i);
+		int scale = compactScale(children, 0, size, childUnit());
+		if (scale < 0) {
+			widen();
+			return;
+		}
+		long base = compactBase(children, 0, size);
+		byte format = format();
+		for (int i = 0; i < size; i++) writeChild(buffer, cpos(i), format, base, scale, children[i]);
+		buffer.put(HEADER_OFFSET_CHILD_SCALE, (byte)scale);
+		buffer.putLong(buffer.capacity() - COMPACT_BASE_SIZE, base);
+	}
+	
+	/**
+	 * Revert from compact children to full 64-bit children, in order to hold
+	 * children that span too wide a range to be represented as compact children.
+	 */
+	private void widen() {
+		int size = items();
+		Entries entries = new Entries(size);
+		for (int i = 0; i < size; i++) entries.add(this, i);
+		byte wide = (byte)(format() & ~FORMAT_COMPACT_CHILDREN);
+		if (entries.cost(0, size, wide) > capacity() - HEADER_SIZE) {
+			throw new IllegalStateException("The index node is too full to revert to 64-bit child offsets.");
+		}
+		rebuild(entries, wide);
+	}
+	
 	private int ipos(int idx) {
-		return (ITEM_ENTRIES_OFFSET + idx*ITEM_ENTRY_SIZE);
+		return (ITEM_ENTRIES_OFFSET + idx*entrySize(format()));
+	}
+	
+	/**
+	 * @return position of the child offset of the item
+	 */
+	private int cpos(int idx) {
+		return ipos(idx) + childOffset(format());
 	}
 	
 	private long child(int idx) {
-		long child = buffer.getLong(ipos(idx) + ITEM_OFFSET_CHILD);
+		DecodedIndexView d = decoded;
+		if (d != null) return d.child(idx);
+		long child = readChild(buffer, cpos(idx), format(), childBase(), childScale());
 		return child;
 	}
 	
 	@Override
 	public boolean balance(BTreeNode sibling, boolean requireEmpty) {
-		return balance(sibling,null,0,requireEmpty ? capacity() - HEADER_SIZE : 0);
+		return balance(sibling,requireEmpty ? capacity() - HEADER_SIZE - overhead(format()) : 0);
 	}
 	
-	private boolean balance(BTreeNode sibling, final BTree.Key nitemKey, final long nitemChild, final int requiredFree) {
+	private boolean balance(BTreeNode sibling, final int requiredFree) {
 		
 		// decide which node is left versus right
 		BufferIndexNode left;
@@ -243,6 +714,8 @@ public class BufferIndexNode extends BufferNode implements BTreeIndexNode {
 		int leftRequiredFree;
 		int rightRequiredFree;
 		BufferIndexNode sl = (BufferIndexNode)sibling;
+		this.own();
+		sl.own();
 		assert(!(sl.hasRightChild() && this.hasRightChild()));
 		if (sl.children() == 0 || this.hasRightChild()) {
 			left = sl;
@@ -268,222 +741,65 @@ public class BufferIndexNode extends BufferNode implements BTreeIndexNode {
 			}
 		}
 		
-		// find slot for new key relative to left and right
-		boolean nexists = false;
-		boolean nleft = false;
-		boolean ncopied = false;
-		int nidx = -1;
-		if (nitemKey != null) {
-			int lidx = left.find(nitemKey);
-			if (lidx >= 0) {
-				nidx = lidx;
-				nexists = true;
-				nleft = true;
-			} else {
-				int ridx = right.find(nitemKey);
-				if (ridx >= 0) {
-					// ah - this already exists
-					nidx = ridx;
-					nexists = true;
-					nleft = false;
-				} else {
-					lidx = -lidx-1;
-					ridx = -ridx-1;
-					if (ridx == 0) {
-						// either inside left, or at start of right,
-						// so just assume placement in left
-						nidx = lidx;
-						nexists = false;
-						nleft = true;
-					} else {
-						// ok, this will be place squarly in the right.
-						nidx = ridx;
-						nexists = false;
-						nleft = false;
-					}
-				}
-			}
-		}
-		
-		// create new left and right buffers
-		ByteBuffer bleft = ByteBuffer.allocate(left.buffer.capacity());
-		ByteBuffer bright = ByteBuffer.allocate(right.buffer.capacity());
+		// gather the items in order
+		final int lcount = left.items();
+		final int rcount = right.items();
+		Entries entries = new Entries(lcount + rcount);
+		for (int i = 0; i < lcount; i++) entries.add(left, i);
+		for (int i = 0; i < rcount; i++) entries.add(right, i);
 		
 		// total amount of space available for items, given the free space requirements
-		final int lavailable = left.capacity()-HEADER_SIZE;
-		final int ravailable = right.capacity()-HEADER_SIZE;
-		int available = lavailable+ravailable-leftRequiredFree-rightRequiredFree;
-		// amount of data to balance (i.e size of all items, considering both the item data and item headers)
-		int outstanding = left.used() + right.used() + (nitemKey == null ? 0 : ITEM_ENTRY_SIZE);
-		final int balance = outstanding/2;
-		
-		// check that there is enough space to hold all the data and meet free requirements
-		if (available < outstanding) return false;
+		final byte lformat = entries.format(left);
+		final byte rformat = entries.format(right);
+		final int lavailable = left.capacity()-HEADER_SIZE-overhead(lformat);
+		final int ravailable = right.capacity()-HEADER_SIZE-overhead(rformat);
+		// amount of data to balance
+		final int count = entries.size();
+		final int balance = entries.cost(0, count, lformat)/2;
 		
 		// check 1/2 full invariant
 		// Note, strictly speaking we should only balance if all nodes are kept at least half full.
 		// However, given that we have variable length items, we will instead relax the invariant
 		// to: don't balance if all the data could fit into a single node.
-//		System.err.printf("outstanding=%d lremaining=%d rremainining=%d%n", outstanding, lavailable - leftRequiredFree, ravailable - rightRequiredFree);
-//		if ((outstanding <= lavailable - leftRequiredFree) && (outstanding <= ravailable - rightRequiredFree)) return false;
-		
-		// check variables
-		int lremaining;
-		int rremaining;
-		boolean lok;
-		boolean rok;
-		
-		// source
-		BufferIndexNode src = left;
-		int srcIdx = 0;
-		int srcCount = src.items();
-		
-		// destination
-		ByteBuffer dst = null;
-		int transfered = 0;
-		int dstIdx = 0;
 		
+		// fill the left until it holds at least half of the data, while meeting the free space requirements
+		int split = 0;
 		boolean allOk = false;
-		boolean rightChildCopied = false;
-		
-		copy:
-		while(true) {
-						
-			// switch destination
-			if (dst == null) {
-				dst = bleft;
-				allOk = false;
-			} else if (dst == bleft) {
-				
-				// initialise header in new left
-				long lrightChild;
-				if (outstanding == 0) {
-					lrightChild = right.rightChild();
-					rightChildCopied = true;
-				} else {
-					lrightChild = NO_RIGHT_HAND_CHILD;
-					rightChildCopied = false;
-				}
-				BufferNode.header(dst, NodeType.INDEX, dst.capacity(), lavailable - transfered, dstIdx, lrightChild);
-				
-				// check if we have actually failed
-				// update check variables
-				lremaining = lavailable - transfered;
-				rremaining = ravailable - outstanding;
-				lok = lremaining >= leftRequiredFree;
-				rok = rremaining >= rightRequiredFree;
-				boolean previousRequiredOk = lok && rok;
-
-				if (!allOk && !previousRequiredOk) {
-					// oops, we can't fit stuff in correctly
-					return false;
-				}
-				
-				dst = bright;
-			} else if (dst == bright) {
-				// initialise header in new right				
-				BufferNode.header(dst, NodeType.INDEX, dst.capacity(), ravailable - transfered, dstIdx,
-										rightChildCopied ? NO_RIGHT_HAND_CHILD : right.rightChild());
-				break copy;
-			} else {
-				assert(false) : "Unexpected dst state";
-			}
-			
-			// amount of data transfered to the destination
-			transfered = 0;
-			dstIdx = 0;
-			
-			filldst:
-			while(outstanding > 0) {
-				src.buffer.limit(src.capacity());
-				
-				// get the next item data size
-				boolean copyItem;
-				if (
-						(!ncopied && src == left  && nleft  && srcIdx == nidx)
-						||
-						(!ncopied && src == right && !nleft && srcIdx == nidx)
-					) {
-					copyItem = true;
-				} else {
-					copyItem = false;
-					if (srcIdx >= srcCount) {
-						assert(src != right);
-						src = right;
-						srcIdx = 0;
-						srcCount = src.items();
-					}
-				}
-				
-				int isize = ITEM_ENTRY_SIZE;
-				
-				outstanding -= isize;
-				transfered  += isize;
-				
-				if (dst == bleft) {
-					// update check variables
-					lremaining = lavailable - transfered;
-					rremaining = ravailable - outstanding;
-					lok = lremaining >= leftRequiredFree;
-					rok = rremaining >= rightRequiredFree;
-					boolean requiredOk = lok && rok;
-					
-					boolean pastBalance = transfered >= balance;
-					allOk = requiredOk && pastBalance;
-					
-					if (!lok) {
-						// undo
-						outstanding += isize;
-						transfered -= isize;
-						break filldst;
-					}
-				} else {
-					// when copying to the right we only
-					// terminate once all data is transfers
-					// (i.e. nothing outstanding)
-					allOk = false;
-				}
-
-				// leave space for new item data
-				int dstPos = ipos(dstIdx);
-				assert(dstPos + ITEM_ENTRY_SIZE <= dst.capacity());
-				dstIdx++;
-				
-				// perform actual copy
-				if (copyItem) {
-					
-					// insert new item
-					dst.position(dstPos);
-					nitemKey.write(dst);                         // put key
-					dst.putShort(BTreeLeafNode.Flags.NONE.mask); // put flags
-					dst.putLong(nitemChild);                     // put child
-					
-					if (nexists) srcIdx++;
-					
-					ncopied = true;
-				} else {
-					int srcPos = src.ipos(srcIdx);
-					
-					// copy across and update item
-					src.buffer.limit(srcPos+ITEM_ENTRY_SIZE);
-					src.buffer.position(srcPos);
-					dst.position(dstPos);
-					dst.put(src.buffer);
-					
-					srcIdx++;
-				}
-				
-				if (dst == bleft) {
-					if(allOk) break filldst;
-				}
+		while (split < count) {
+			int transfered = entries.cost(0, split+1, lformat);
+			boolean lok = lavailable - entries.cost(0, split+1, lformat) >= leftRequiredFree;
+			if (!lok) break;
+			split++;
+			boolean rok = ravailable - entries.cost(split, count, rformat) >= rightRequiredFree;
+			boolean pastBalance = transfered >= balance;
+			allOk = rok && pastBalance;
+			if (allOk) break;
+		}
+		
+		if (!allOk) {
+			// check if we have actually failed
+			boolean lok = lavailable - entries.cost(0, split, lformat) >= leftRequiredFree;
+			boolean rok = ravailable - entries.cost(split, count, rformat) >= rightRequiredFree;
+			if (!(lok && rok)) {
+				// oops, we can't fit stuff in correctly
+				return false;
 			}
 		}
 		
-		assert(outstanding == 0);
+		// the right-hand-child follows the last item, so moves to the left only if all items do
+		final boolean rightChildCopied = split == count;
+		
+		// create new left and right buffers
+		ByteBuffer bleft = left.allocateBuffer(left.buffer.capacity());
+		ByteBuffer bright = right.allocateBuffer(right.buffer.capacity());
+		entries.encode(bleft, 0, split, lformat, left.childUnit(), rightChildCopied ? right.rightChild() : NO_RIGHT_HAND_CHILD);
+		entries.encode(bright, split, count, rformat, right.childUnit(), rightChildCopied ? NO_RIGHT_HAND_CHILD : right.rightChild());
 		
 		// copy across newly created data
 		left.swb(bleft);
 		right.swb(bright);
+		left.decoded = null;
+		right.decoded = null;
 		
 		return true;
 	}
@@ -491,16 +807,121 @@ public class BufferIndexNode extends BufferNode implements BTreeIndexNode {
 	@Override
 	public boolean isCompressibleWith(BTreeNode sibling) {
 		BufferIndexNode sn = (BufferIndexNode)sibling;
-		int outstanding = this.used() + sn.used();
 		
 		final int tavailable = this.capacity()-HEADER_SIZE;
 		final int savailable = sn.capacity()-HEADER_SIZE;
 		
-		return ((
-				(outstanding <= tavailable)
-				|| (outstanding <= savailable)
-			) && (
-			    !this.hasRightChild() || !((BufferIndexNode)sibling).hasRightChild())
-			);
+		boolean fits;
+		if (this.format() == 0 && sn.format() == 0) {
+			int outstanding = this.used() + sn.used();
+			fits = (outstanding <= tavailable) || (outstanding <= savailable);
+		} else {
+			Entries entries = new Entries(this.items() + sn.items());
+			for (int i = 0; i < this.items(); i++) entries.add(this, i);
+			for (int i = 0; i < sn.items(); i++) entries.add(sn, i);
+			byte tformat = entries.format(this);
+			byte sformat = entries.format(sn);
+			fits = (entries.cost(0, entries.size(), tformat) <= tavailable - overhead(tformat))
+				|| (entries.cost(0, entries.size(), sformat) <= savailable - overhead(sformat));
+		}
+		
+		return fits && (!this.hasRightChild() || !sn.hasRightChild());
+	}
+	
+	/**
+	 * The explicit items of one or more index nodes, gathered in order
+	 * so that they can be written into nodes of either format.
+	 */
+	private static final class Entries {
+		
+		private final Key[] keys;
+		private final int[] lengths;
+		private final long[] children;
+		
+		// running total of the separator lengths, such that ltotal[i] = lengths[0] + ... + lengths[i-1]
+		private final int[] ltotal;
+		
+		private int n;
+		
+		Entries(int capacity) {
+			this.keys = new Key[capacity];
+			this.lengths = new int[capacity];
+			this.children = new long[capacity];
+			this.ltotal = new int[capacity+1];
+			this.n = 0;
+		}
+		
+		int size() {
+			return n;
+		}
+		
+		void add(BufferIndexNode node, int idx) {
+			Key key = node.key(idx);
+			int length = node.isTruncated()
+					? node.separatorLength(node.ipos(idx))
+					: BTree.Key.separatorLength(key, null);
+			add(key, length, node.child(idx));
+		}
+		
+		void add(Key key, int length, long child) {
+			keys[n] = key;
+			lengths[n] = length;
+			children[n] = child;
+			ltotal[n+1] = ltotal[n] + length;
+			n++;
+		}
+		
+		/**
+		 * @return the format that the node should use to hold any of the items,
+		 *         which is the node's own format unless it can not hold some child compactly
+		 */
+		byte format(BufferIndexNode node) {
+			byte format = node.format();
+			if (!isCompact(format)) return format;
+			if (compactScale(children, 0, n, node.childUnit()) < 0) return (byte)(format & ~FORMAT_COMPACT_CHILDREN);
+			return format;
+		}
+		
+		/**
+		 * @return the space, excluding the header and any {@link BufferIndexNode#overhead(byte) overhead}, needed to hold the items in [from,to)
+		 */
+		int cost(int from, int to, byte format) {
+			int count = to - from;
+			if (count <= 0) return 0;
+			if (!isTruncated(format)) return count*entrySize(format);
+			return count*entrySize(format) + (ltotal[to] - ltotal[from]);
+		}
+		
+		/**
+		 * Write the items in [from,to) into an empty index buffer.
+		 */
+		void encode(ByteBuffer dst, int from, int to, byte format, int unit, long rightChild) {
+			dst.order(StorageConstants.NETWORK_ORDER);
+			final int capacity = dst.capacity();
+			final int entrySize = entrySize(format);
+			final int childOffset = childOffset(format);
+			final long base = compactBase(children, from, to);
+			final int scale = isCompact(format) ? compactScale(children, from, to, unit) : unit;
+			assert(scale >= 0);
+			int separatorPos = capacity - overhead(format);
+			for (int i = from, dstIdx = 0; i < to; i++, dstIdx++) {
+				int pos = ITEM_ENTRIES_OFFSET + dstIdx*entrySize;
+				if (isTruncated(format)) {
+					separatorPos -= lengths[i];
+					writeSeparator(dst, separatorPos, keys[i], lengths[i]);
+					dst.putShort(pos + separatorOffsetOffset(format), (short)separatorPos);
+					dst.put(pos + separatorLengthOffset(format), (byte)lengths[i]);
+				} else {
+					keys[i].write(dst, pos + ITEM_OFFSET_KEY);
+				}
+				writeChild(dst, pos + childOffset, format, base, scale, children[i]);
+			}
+			
+			BufferNode.header(dst, NodeType.INDEX, capacity, capacity - HEADER_SIZE - overhead(format) - cost(from, to, format), to - from, rightChild);
+			dst.put(HEADER_OFFSET_FORMAT, format);
+			dst.put(HEADER_OFFSET_CHILD_UNIT, (byte)unit);
+			dst.put(HEADER_OFFSET_CHILD_SCALE, (byte)scale);
+			if (isCompact(format)) dst.putLong(capacity - COMPACT_BASE_SIZE, base);
+		}
 	}
 }
@@ -24,6 +24,27 @@ import net.gethos.cohesion.storage.StorageConstants;
  * Note, the size of the 'offset' and 'size' data could depend on the capacity.
  * That is, if the total node size is &lt;2<sup>15</sup> = 32768 then a <code>short</code>
  * might be used, otherwise an <code>int</code> is used.
+ * <p>
+ * If the node was created as prefix compressed (see {@link NodeFormat}), then the
+ * leading 'p' bytes that are common to all keys in the node are stored once and
+ * each item entry only holds the remainder of its key:
+ * <pre>
+ * +------+------+-----------------------------------------+---------+---------+
+ * |header|prefix|( key suffix | flags | offset | size )...|(free)...|(data)...|
+ * +------+------+-----------------------------------------+---------+---------+
+ * </pre>
+ * 
+ * The prefix directly precedes the first entry, so that together they hold the
+ * complete low key of the node, which serves as the fence from which the prefix is
+ * derived. Since the node keys are ordered, the prefix is simply the common prefix
+ * of the low and high keys, and is recalculated whenever the node is rebuilt. Keys
+ * are compared byte-wise (see {@link BTree.Key#comparableByte(int, byte)}) so that
+ * the prefix only needs to be compared once per search.
+ * <p>
+ * Since a leaf has no right-hand child, the header field that would otherwise hold
+ * the right-hand child instead links the leaf to its right sibling (see
+ * {@link BTreeLeafNode#rightSibling()}).
+ * 
  * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
  *
  */
@@ -34,10 +55,55 @@ public class BufferLeafNode extends BufferNode implements BTreeLeafNode {
 	private static final int ITEM_OFFSET_SIZE   = ITEM_OFFSET_OFFSET + StorageConstants.SIZEOF_INT;
 	public static final int ITEM_ENTRY_SIZE  = ITEM_OFFSET_SIZE   + StorageConstants.SIZEOF_INT;
 
+	private static final int HEADER_OFFSET_FORMAT = HEADER_OFFSET_RESERVED_1; // leaf format flags
+	private static final int HEADER_OFFSET_PREFIX = HEADER_OFFSET_RESERVED_2; // length of the shared key prefix
+	private static final int PREFIX_OFFSET        = ITEM_ENTRIES_OFFSET;      // the shared key prefix precedes the item entries
+	private static final int HEADER_OFFSET_RIGHT_SIBLING = HEADER_OFFSET_RIGHT_HAND_CHILD; // link to the next leaf
+
+	private static final byte FORMAT_PREFIX_COMPRESSED    = (byte)(1<<0);
+	private static final byte FORMAT_INTERPOLATION_SEARCH = (byte)(1<<1);
+
 	public BufferLeafNode(ByteBuffer n) {
 		super(n);
 	}
 	
+	static void initialiseFormat(ByteBuffer buffer, NodeFormat format) {
+		byte flags = 0;
+		if (format.prefixCompressedLeaves()) flags |= FORMAT_PREFIX_COMPRESSED;
+		if (format.interpolationSearch()) flags |= FORMAT_INTERPOLATION_SEARCH;
+		buffer.put(HEADER_OFFSET_FORMAT, flags);
+		buffer.put(HEADER_OFFSET_PREFIX, (byte)0);
+	}
+	
+	private byte format() {
+		return buffer.get(HEADER_OFFSET_FORMAT);
+	}
+	
+	boolean isPrefixCompressed() {
+		return (format() & FORMAT_PREFIX_COMPRESSED) != 0;
+	}
+	
+	@Override
+	protected boolean isInterpolationSearch() {
+		return (format() & FORMAT_INTERPOLATION_SEARCH) != 0;
+	}
+	
+	@Override
+	protected int keyEntrySize() {
+		return prefix() == 0 ? ITEM_ENTRY_SIZE : -1;
+	}
+	
+	/**
+	 * @return the number of leading key bytes shared by all items in the node
+	 */
+	int prefix() {
+		return buffer.get(HEADER_OFFSET_PREFIX);
+	}
+	
+	private void prefix(int p) {
+		buffer.put(HEADER_OFFSET_PREFIX, (byte)p);
+	}
+	
 	@Override
 	public String dump() {
 		StringBuilder s = new StringBuilder();
@@ -63,6 +129,7 @@ public class BufferLeafNode extends BufferNode implements BTreeLeafNode {
 	
 	@Override
 	public void flags(int idx, byte flags) {
+		own();
 		buffer.put(ipos(idx) + ITEM_OFFSET_FLAGS,flags);
 	}
 
@@ -74,17 +141,31 @@ public class BufferLeafNode extends BufferNode implements BTreeLeafNode {
 
 	@Override
 	public boolean isFull() {
-		return !hasAvailable(ITEM_ENTRY_SIZE);
+		return !hasAvailable(ITEM_ENTRY_SIZE - prefix());
 	}
 
 	@Override
 	public boolean modify(int idx, Key key) {
 		
 		if (idx < 0) return false;
+		own();
 		int size = items();
 		if (idx >= size) return false;
 		
-		return writeKey(ITEM_ENTRY_SIZE, idx, key);
+		int p = prefix();
+		if (p == 0) return writeKey(ITEM_ENTRY_SIZE, idx, key);
+		if (comparePrefix(key, p) == 0) {
+			writeSuffix(idx, p, key);
+			return true;
+		}
+		
+		// the key no longer shares the prefix, so rebuild with a shorter prefix
+		Items items = new Items(size);
+		for (int i = 0; i < size; i++) {
+			if (i == idx) items.add(key, this, i);
+			else items.add(this, i);
+		}
+		return rebuild(items);
 	}
 
 	@Override
@@ -94,9 +175,76 @@ public class BufferLeafNode extends BufferNode implements BTreeLeafNode {
 		int size = items();
 		if (idx >= size) return null;
 		
-		return readKey(ITEM_ENTRY_SIZE, idx);
+		int p = prefix();
+		if (p == 0) return readKey(ITEM_ENTRY_SIZE, idx);
+		
+		ByteBuffer k = ByteBuffer.allocate(BTree.Key.SIZE);
+		k.order(StorageConstants.NETWORK_ORDER);
+		copy(buffer, PREFIX_OFFSET, k, 0, p);
+		copy(buffer, ipos(idx) + p, k, p, BTree.Key.SIZE - p);
+		k.rewind();
+		return new BTree.Key(k);
+	}
+	
+	@Override
+	protected int compareKey(int idx, Key key) {
+		int p = prefix();
+		if (p == 0) return compareKey(ITEM_ENTRY_SIZE, idx, key);
+		int c = comparePrefix(key, p);
+		if (c != 0) return c;
+		return compareSuffix(idx, p, key);
+	}
+	
+	@Override
+	public int find(Key key) {
+		int p = prefix();
+		if (p == 0) return super.find(key);
+		
+		// all the keys share the prefix, so it need only be compared once
+		int size = items();
+		int c = comparePrefix(key, p);
+		if (c < 0) return -1;
+		if (c > 0) return (-(size)-1);
+		
+		int min = 0;
+		int max = size-1;
+		while(min <= max) {
+			int mid = min + ((max - min) / 2);
+			c = compareSuffix(mid, p, key);
+			if (c == 0) return mid;
+			if (c > 0) {
+				min = mid + 1;
+			} else {
+				max = mid - 1;
+			}
+		}
+		return (-(min)-1);
+	}
+	
+	private int comparePrefix(Key key, int p) {
+		return compareComparable(key, 0, p, PREFIX_OFFSET);
 	}
 	
+	private int compareSuffix(int idx, int p, Key key) {
+		return compareComparable(key, p, BTree.Key.COMPARABLE_SIZE, ipos(idx) + p);
+	}
+	
+	/**
+	 * Compare the comparable key bytes [from,to) with those stored from <code>pos</code>.
+	 */
+	private int compareComparable(Key key, int from, int to, int pos) {
+		for (int b = from; b < to; b++, pos++) {
+			int c = key.comparableByte(b) - BTree.Key.comparableByte(b, buffer.get(pos));
+			if (c != 0) return c;
+		}
+		return 0;
+	}
+	
+	private void writeSuffix(int idx, int p, Key key) {
+		int pos = ipos(idx);
+		for (int b = p; b < BTree.Key.SIZE; b++) buffer.put(pos + b, key.byteAt(b));
+	}
+
 	@Override
 	public int size(int idx) {
 
@@ -112,18 +260,26 @@ public class BufferLeafNode extends BufferNode implements BTreeLeafNode {
 	protected long rightChild() {
 		return NO_RIGHT_HAND_CHILD;
 	}
+	
+	@Override
+	public long rightSibling() {
+		return buffer.getLong(HEADER_OFFSET_RIGHT_SIBLING);
+	}
+	
+	@Override
+	public void rightSibling(long offset) {
+		own();
+		buffer.putLong(HEADER_OFFSET_RIGHT_SIBLING, offset);
+	}
 
 	@Override
 	public int realloc(Key key, int length) {
+		own();
 		int idx = find(key);
 		if (idx >= 0) {
 			return realloc(idx,length);
 		} else {
-			idx = alloc(-idx-1, length);
-			if (idx >= 0) {
-				writeKey(ITEM_ENTRY_SIZE, idx, key);
-			}
-			return idx;
+			return alloc(-idx-1, key, length);
 		}
 	}
 
@@ -132,15 +288,17 @@ public class BufferLeafNode extends BufferNode implements BTreeLeafNode {
 		int cur = size(idx);
 		if (cur < 0) throw new ArrayIndexOutOfBoundsException("The item index does not exist: " + idx + ". Note, there are only: " + items() + " items in the node.");
 		if (cur == length) return idx; // Yay! We're done...
+		own();
 		int free = free();
 		if (free + cur - length < 0) return -idx-1; // insufficient space
-		if (repack(idx,length)) return idx;
+		if (resize(idx,length)) return idx;
 		else return -idx-1;
 	}
 	
 	@Override
 	public int write(int idx, long objectOffset, ByteBuffer xbuffer) {
 		if (idx < 0) return -1;
+		own();
 		int nsize = items();
 		if (idx >= nsize) return -1;
 		
@@ -183,11 +341,17 @@ public class BufferLeafNode extends BufferNode implements BTreeLeafNode {
 	
 	@Override
 	public boolean delete(int idx) {
-		return repack(idx,-1);
+		own();
+		return resize(idx,-1);
 	}
 	
+	/**
+	 * Position of the item entry, as if it held the complete key. That is, the key
+	 * suffix starts at <code>ipos(idx) + prefix()</code> and the remaining fields
+	 * are at their usual offsets relative to this position.
+	 */
 	private int ipos(int idx) {
-		return ITEM_ENTRIES_OFFSET + idx*ITEM_ENTRY_SIZE;	
+		return ITEM_ENTRIES_OFFSET + idx*(ITEM_ENTRY_SIZE - prefix());
 	}
 	
 	private int offset(int idx) {
@@ -200,108 +364,132 @@ public class BufferLeafNode extends BufferNode implements BTreeLeafNode {
 		return buffer.getInt(o);
 	}
 	
-	private int alloc(int idx, int length) {
+	private int alloc(int idx, Key key, int length) {
 		if (idx < 0) return idx;
 		int size = items();
 		int free = free();
-		if (free < (ITEM_ENTRY_SIZE + length)) return -idx-1; // insufficient space
+		int p = prefix();
+		int esize = ITEM_ENTRY_SIZE - p;
+		if ((p > 0 && comparePrefix(key, p) != 0) || free < (esize + length)) {
+			// either the key does not share the prefix, or there is insufficient space,
+			// but in both cases a prefix compressed node could still fit the item by
+			// deriving a new prefix
+			if (isPrefixCompressed()) {
+				Items items = new Items(size+1);
+				for (int i = 0; i < idx; i++) items.add(this, i);
+				items.add(key, length);
+				for (int i = idx; i < size; i++) items.add(this, i);
+				if (rebuild(items)) return idx;
+			}
+			return -idx-1; // insufficient space
+		}
 		
 		// create space by shifting upper items
-		int start = ipos(idx);
-		int end = ipos(size);
+		int start = ipos(idx) + p;
+		int end = ipos(size) + p;
 		buffer.limit(end);
 		buffer.position(start);
 		ByteBuffer upper = buffer.slice();
 		
 		buffer.clear();
-		buffer.position(start + ITEM_ENTRY_SIZE);
+		buffer.position(start + esize);
 		buffer.put(upper);
 		
 		// update header
-		free(free-(ITEM_ENTRY_SIZE+length));
+		free(free-(esize+length));
 		items(size+1);
 		
 		// store the offset and size
-		int offset = HEADER_SIZE + size*ITEM_ENTRY_SIZE + free - length;
-		buffer.put(start + ITEM_OFFSET_FLAGS, (byte)0);
-		buffer.putInt(start + ITEM_OFFSET_OFFSET, offset);
-		int isizepos = start + ITEM_OFFSET_SIZE;
+		int ipos = ipos(idx);
+		int offset = PREFIX_OFFSET + p + size*esize + free - length;
+		buffer.put(ipos + ITEM_OFFSET_FLAGS, (byte)0);
+		buffer.putInt(ipos + ITEM_OFFSET_OFFSET, offset);
+		int isizepos = ipos + ITEM_OFFSET_SIZE;
 		buffer.putInt(isizepos, length);
-//		System.out.printf("storing buffer@%h offset@%d=%d size@%d=%d%n",System.identityHashCode(buffer), start + ITEM_OFFSET_OFFSET, offset,isizepos, length);
+//		System.out.printf("storing buffer@%h offset@%d=%d size@%d=%d%n",System.identityHashCode(buffer), ipos + ITEM_OFFSET_OFFSET, offset,isizepos, length);
+		
+		// copy in the key
+		if (p == 0) writeKey(ITEM_ENTRY_SIZE, idx, key);
+		else writeSuffix(idx, p, key);
 		
 //		dump(System.out);
 		
 		return idx;
 	}
 	
-	private boolean repack(int idx, int newSize) {
+	/**
+	 * Resize, or delete, an item in place.
+	 * <p>
+	 * The item data is kept packed against the end of the node, below which lies the
+	 * free space. So the data stored below the item (along with the part of the item
+	 * that is retained) is simply shifted by the change in size, and the offsets of
+	 * the shifted items adjusted, without needing to rebuild the node.
+	 * 
+	 * @param idx - the item to resize
+	 * @param newSize - the new size of the item data, or -1 to delete the item
+	 * @return true if the item could be resized
+	 */
+	private boolean resize(int idx, int newSize) {
 		if (idx < 0) return false;
-		int srcCount = items();
-		if (idx >= srcCount) return false;
-		
-		// to delete, we need to re-pack the node because the data may be out of order
-		int srcIdx = 0;
-		int dstIdx = 0;
-		
-		ByteBuffer dst = ByteBuffer.allocate(buffer.capacity());
-		int dstUsed = 0;
-		int dstDataPos = dst.capacity();
-		
-		while(srcIdx < srcCount) {
-
-			if (srcIdx == idx && newSize < 0) {
-				// simply skip, and therefore delete, the item
-				srcIdx++;
-				continue;
+		final int count = items();
+		if (idx >= count) return false;
+		
+		final int p = prefix();
+		final int esize = ITEM_ENTRY_SIZE - p;
+		final int free = free();
+		final int ipos = ipos(idx);
+		final int offset = buffer.getInt(ipos + ITEM_OFFSET_OFFSET);
+		final int current = buffer.getInt(ipos + ITEM_OFFSET_SIZE);
+		final boolean delete = newSize < 0;
+		final int retained = delete ? 0 : Math.min(current, newSize);
+		final int growth = (delete ? 0 : newSize) - current;
+		if (growth > free) return false;
+		
+		// shift the data below the item, along with the retained part of the item
+		// (empty items at the same offset are also shifted, so that they stay within the data)
+		final int dataStart = PREFIX_OFFSET + p + count*esize + free;
+		move(dataStart, dataStart - growth, offset + retained - dataStart);
+		for (int i = 0; i < count; i++) {
+			if (i == idx) continue;
+			int pos = ipos(i);
+			int o = buffer.getInt(pos + ITEM_OFFSET_OFFSET);
+			if (o < offset || (o == offset && buffer.getInt(pos + ITEM_OFFSET_SIZE) == 0)) {
+				buffer.putInt(pos + ITEM_OFFSET_OFFSET, o - growth);
 			}
+		}
 		
-			int srcPos = ipos(srcIdx);
-			int srcSizePos = srcPos + ITEM_OFFSET_SIZE;
-			int srcOffsetPos = srcPos + ITEM_OFFSET_OFFSET;
-			int srcSize = this.buffer.getInt(srcSizePos);
-			int srcOffset = this.buffer.getInt(srcOffsetPos);
-//			System.out.printf("buffer@%h srcLeft=%s srcCount=%d srcIdx=%d srcPos=%d srcSize@%d=%d srcOffset@%d=%d%n",
-//						System.identityHashCode(src.buffer),srcLeft,srcCount,srcIdx,srcPos,srcSizePos,srcSize,srcOffsetPos,srcOffset);
-			
-			int copySize = srcSize;
-			int dstSize = srcSize;
-			if (srcIdx == idx && newSize >= 0) {
-				copySize = Math.min(srcSize, newSize);
-				dstSize = newSize;
-			}
-
-			// copy across item data
-			this.buffer.limit(srcOffset+copySize);
-			this.buffer.position(srcOffset);
-			dstDataPos -= dstSize;
-			dst.position(dstDataPos);
-			dst.put(this.buffer);
-			
-			// copy across and update item
-			this.buffer.limit(srcPos+ITEM_ENTRY_SIZE);
-			this.buffer.position(srcPos);
-			int dstPos = ipos(dstIdx);
-			dst.position(dstPos);
-			dst.put(this.buffer);
-			int dstOffsetPos = dstPos + ITEM_OFFSET_OFFSET;
-			dst.putInt(dstOffsetPos, dstDataPos);
-			
-			if (srcIdx == idx && newSize != srcSize) {
-				// fix item size
-				int dstSizePos = dstPos + ITEM_OFFSET_SIZE;
-				dst.putInt(dstSizePos, newSize);
+		if (delete) {
+			// close up the item entries
+			int start = ipos(idx+1) + p;
+			int end = ipos(count) + p;
+			move(start, start - esize, end - start);
+			items(count-1);
+			free(free + esize + current);
+			if (count == 1 && p > 0) {
+				// with no items left there is no prefix to share
+				prefix(0);
+				free(free() + p);
 			}
-			
-			dstUsed += ITEM_ENTRY_SIZE + dstSize;
-			
-			dstIdx++;			
-			srcIdx++;
-			
-			this.buffer.clear();
+		} else {
+			// any additional space is zeroed, as it would be if the node were rebuilt
+			zero(offset - growth + retained, newSize - retained);
+			buffer.putInt(ipos + ITEM_OFFSET_OFFSET, offset - growth);
+			buffer.putInt(ipos + ITEM_OFFSET_SIZE, newSize);
+			free(free - growth);
 		}
 		
-		// update the header in the dst
-		BufferNode.header(dst, NodeType.LEAF, dst.capacity(), dst.capacity()-HEADER_SIZE-dstUsed, dstIdx, NO_RIGHT_HAND_CHILD);
+		return true;
+	}
+	
+	/**
+	 * Replace the contents of this node with the given items, if they fit.
+	 */
+	private boolean rebuild(Items items) {
+		boolean compressed = isPrefixCompressed();
+		if (items.cost(0, items.size(), compressed) > capacity() - HEADER_SIZE) return false;
+		
+		ByteBuffer dst = allocateBuffer(buffer.capacity());
+		items.encode(dst, 0, items.size(), format(), rightSibling());
 		swb(dst);
 	
 		return true;
@@ -346,6 +534,8 @@ public class BufferLeafNode extends BufferNode implements BTreeLeafNode {
 		int leftRequiredFree;
 		int rightRequiredFree;
 		BufferLeafNode sl = (BufferLeafNode)sibling;
+		this.own();
+		sl.own();
 		if (sl.children() == 0) {
 			left = sl;
 			leftRequiredFree = 0;
@@ -409,190 +599,72 @@ public class BufferLeafNode extends BufferNode implements BTreeLeafNode {
 			assert(nitemSize == 0);
 		}
 		
-		// create new left and right buffers
-		ByteBuffer bleft = ByteBuffer.allocate(left.buffer.capacity());
-		ByteBuffer bright = ByteBuffer.allocate(right.buffer.capacity());
+		// gather the items in order, including the new item
+		final int lcount = left.items();
+		final int rcount = right.items();
+		Items items = new Items(lcount + rcount + 1);
+		for (int i = 0; i < lcount; i++) {
+			if (nitemKey != null && nleft && i == nidx) {
+				items.add(nitemKey, nitemSize);
+				if (nexists) continue;
+			}
+			items.add(left, i);
+		}
+		if (nitemKey != null && nleft && nidx == lcount) items.add(nitemKey, nitemSize);
+		for (int i = 0; i < rcount; i++) {
+			if (nitemKey != null && !nleft && i == nidx) {
+				items.add(nitemKey, nitemSize);
+				if (nexists) continue;
+			}
+			items.add(right, i);
+		}
+		if (nitemKey != null && !nleft && nidx == rcount) items.add(nitemKey, nitemSize);
 		
 		// total amount of space available for items, given the free space requirements
 		final int lavailable = left.capacity()-HEADER_SIZE;
 		final int ravailable = right.capacity()-HEADER_SIZE;
-		// amount of space available during the copy
-		int available = lavailable+ravailable-leftRequiredFree-rightRequiredFree;
+		final boolean lcompressed = left.isPrefixCompressed();
+		final boolean rcompressed = right.isPrefixCompressed();
 		// amount of data to balance (i.e size of all items, considering both the item data and item headers)
-		int outstanding = (nitemKey == null ? 0 : ITEM_ENTRY_SIZE + nitemSize) + left.used() + right.used();
-		final int balance = outstanding/2;
-		
-		// check that there is enough space to hold all the data and meet free requirements
-		if (available < outstanding) return false;
+		final int count = items.size();
+		final int balance = items.cost(0, count, lcompressed)/2;
 		
 		// check 1/2 full invariant
 		// Note, strictly speaking we should only balance if all nodes are kept at least half full.
 		// However, given that we have variable length items, we will instead relax the invariant
 		// to: don't balance if all the data could fit into a single node.
-//		System.err.printf("outstanding=%d lremaining=%d rremainining=%d%n", outstanding, lavailable - leftRequiredFree, ravailable - rightRequiredFree);
-//		if ((outstanding <= lavailable - leftRequiredFree) && (outstanding <= ravailable - rightRequiredFree)) return false;
-		
-		// check variables
-		int lremaining;
-		int rremaining;
-		boolean lok;
-		boolean rok;
-		
-		// source
-		BufferLeafNode src = left;
-		int srcIdx = 0;
-		int srcCount = src.items();
-		
-		// destination
-		ByteBuffer dst = null;
-		int transfered = 0;
-		int dstDataPos = 0;
-		int dstIdx = 0;
 		
+		// Fill the left until it holds at least half of the data, while meeting the free space requirements.
+		// Note, the space used by a run of items only grows as items are added, even when prefix compressed,
+		// since the prefix of a longer run can only be shorter.
+		int split = 0;
 		boolean allOk = false;
+		while (split < count) {
+			int transfered = items.cost(0, split+1, lcompressed);
+			boolean lok = lavailable - transfered >= leftRequiredFree;
+			if (!lok) break;
+			split++;
+			boolean rok = ravailable - items.cost(split, count, rcompressed) >= rightRequiredFree;
+			boolean pastBalance = transfered >= balance;
+			allOk = rok && pastBalance;
+			if (allOk) break;
+		}
 		
-		copy:
-		while(true) {
-			
-			// switch destination
-			if (dst == null) {
-				dst = bleft;
-				allOk = false;
-			} else if (dst == bleft) {
-				
-				// initialise header in new left
-				BufferNode.header(dst, NodeType.LEAF, dst.capacity(), lavailable - transfered, dstIdx, NO_RIGHT_HAND_CHILD);
-				
-				// check if we have actually failed
-				// update check variables
-				lremaining = lavailable - transfered;
-				rremaining = ravailable - outstanding;
-				lok = lremaining >= leftRequiredFree;
-				rok = rremaining >= rightRequiredFree;
-				boolean previousRequiredOk = lok && rok;
-
-				if (!allOk && !previousRequiredOk) {
-					// oops, we can't fit stuff in correctly
-					return false;
-				}
-				
-				dst = bright;
-			} else if (dst == bright) {
-				// initialise header in new right				
-				BufferNode.header(dst, NodeType.LEAF, dst.capacity(), ravailable - transfered, dstIdx, NO_RIGHT_HAND_CHILD);
-				break copy;
-			} else {
-				assert(false) : "Unexpected dst state";
-			}
-			
-			// amount of data transfered to the destination
-			transfered = 0;
-			dstDataPos = dst.capacity();
-			dstIdx = 0;
-			
-			filldst:
-			while(outstanding > 0) {
-				src.buffer.limit(src.capacity());
-				
-				// get the next item data size
-				boolean copyItem;
-				int dsize;
-				if (
-						(!ncopied && src == left  && nleft  && srcIdx == nidx)
-						||
-						(!ncopied && src == right && !nleft && srcIdx == nidx)
-					) {
-					copyItem = true;
-					dsize = nitemSize;
-				} else {
-					copyItem = false;
-					if (srcIdx >= srcCount) {
-						assert(src != right);
-						src = right;
-						srcIdx = 0;
-						srcCount = src.items();
-					}
-					dsize = src.size(srcIdx);
-				}
-				
-				int isize = ITEM_ENTRY_SIZE + dsize;
-				
-				outstanding -= isize;
-				transfered  += isize;
-				
-				if (dst == bleft) {
-					// update check variables
-					lremaining = lavailable - transfered;
-					rremaining = ravailable - outstanding;
-					lok = lremaining >= leftRequiredFree;
-					rok = rremaining >= rightRequiredFree;
-					boolean requiredOk = lok && rok;
-					
-					boolean pastBalance = transfered >= balance;
-					allOk = requiredOk && pastBalance;
-					
-					if (!lok) {
-						// undo
-						outstanding += isize;
-						transfered -= isize;
-						break filldst;
-					}
-				} else {
-					// when copying to the right we only
-					// terminate once all data is transfers
-					// (i.e. nothing outstanding)
-					allOk = false;
-				}
-
-				// leave space for new item data
-				dstDataPos -= dsize;
-				int dstPos = ipos(dstIdx);
-				assert(dstPos + ITEM_ENTRY_SIZE <= dstDataPos);
-				dstIdx++;
-				
-				// perform actual copy
-				if (copyItem) {
-					
-					// insert new item
-					dst.position(dstPos);
-					nitemKey.write(dst);                         // put key
-					dst.putShort(BTreeLeafNode.Flags.NONE.mask); // put flags
-					dst.putInt(dstDataPos);                      // put data offset
-					dst.putInt(dsize);                           // put data size
-					
-					if (nexists) srcIdx++;
-					
-					ncopied = true;
-				} else {
-					int srcPos = src.ipos(srcIdx);
-					int srcOffsetPos = srcPos + ITEM_OFFSET_OFFSET;
-					int srcOffset = src.buffer.getInt(srcOffsetPos);
-					
-					// copy across item data
-					src.buffer.limit(srcOffset+dsize);
-					src.buffer.position(srcOffset);
-					dst.position(dstDataPos);
-					dst.put(src.buffer);
-					
-					int dstOffsetPos = dstPos + ITEM_OFFSET_OFFSET;
-					
-					// copy across and update item
-					src.buffer.limit(srcPos+ITEM_ENTRY_SIZE);
-					src.buffer.position(srcPos);
-					dst.position(dstPos);
-					dst.put(src.buffer);
-					dst.putInt(dstOffsetPos, dstDataPos);
-					
-					srcIdx++;
-				}
-				
-				if (dst == bleft) {
-					if(allOk) break filldst;
-				}
+		if (!allOk) {
+			// check if we have actually failed
+			boolean lok = lavailable - items.cost(0, split, lcompressed) >= leftRequiredFree;
+			boolean rok = ravailable - items.cost(split, count, rcompressed) >= rightRequiredFree;
+			if (!(lok && rok)) {
+				// oops, we can't fit stuff in correctly
+				return false;
 			}
 		}
 		
-		assert(outstanding == 0);
+		// create new left and right buffers
+		ByteBuffer bleft = left.allocateBuffer(left.buffer.capacity());
+		ByteBuffer bright = right.allocateBuffer(right.buffer.capacity());
+		items.encode(bleft, 0, split, left.format(), left.rightSibling());
+		items.encode(bright, split, count, right.format(), right.rightSibling());
 		
 		// copy across newly created data
 		left.swb(bleft);
@@ -604,14 +676,203 @@ public class BufferLeafNode extends BufferNode implements BTreeLeafNode {
 	@Override
 	public boolean isCompressibleWith(BTreeNode sibling) {
 		BufferLeafNode sn = (BufferLeafNode)sibling;
-		int outstanding = this.used() + sn.used();
 		
 		final int tavailable = this.capacity()-HEADER_SIZE;
 		final int savailable = sn.capacity()-HEADER_SIZE;
 		
+		if (!this.isPrefixCompressed() && !sn.isPrefixCompressed()) {
+			int outstanding = this.used() + sn.used();
+			return (
+					(outstanding <= tavailable)
+					|| (outstanding <= savailable)
+				   );
+		}
+		
+		// the combined prefix depends on the combined low and high keys
+		BufferLeafNode left = this;
+		BufferLeafNode right = sn;
+		if (this.children() > 0 && sn.children() > 0 && this.rightHandKey().compareTo(sn.rightHandKey()) > 0) {
+			left = sn;
+			right = this;
+		}
+		Items items = new Items(left.items() + right.items());
+		for (int i = 0; i < left.items(); i++) items.add(left, i);
+		for (int i = 0; i < right.items(); i++) items.add(right, i);
+		
 		return (
-				(outstanding <= tavailable)
-				|| (outstanding <= savailable)
+				(items.cost(0, items.size(), this.isPrefixCompressed()) <= tavailable)
+				|| (items.cost(0, items.size(), sn.isPrefixCompressed()) <= savailable)
 			   );
 	}
+	
+	private static void copy(ByteBuffer src, int srcPos, ByteBuffer dst, int dstPos, int length) {
+		if (length <= 0) return;
+		src.limit(srcPos + length);
+		src.position(srcPos);
+		dst.position(dstPos);
+		dst.put(src);
+		src.clear();
+	}
+	
+	/**
+	 * An ordered run of items, gathered from one or more leaves and possibly
+	 * including new items, from which leaves can be rebuilt.
+	 */
+	private static final class Items {
+		
+		// item entry: key byte 'b' is held at ((b < eprefix) ? PREFIX_OFFSET : epos) + b,
+		// while the remaining fields are at their usual offsets relative to epos
+		private final ByteBuffer[] ebuf;
+		private final int[] epos;
+		private final int[] eprefix;
+		
+		// item data: the amount to copy across, and the size to provision
+		private final ByteBuffer[] dbuf;
+		private final int[] doffset;
+		private final int[] dcopy;
+		private final int[] dsize;
+		
+		// running total of the provisioned data size, such that dtotal[i] = dsize[0] + ... + dsize[i-1]
+		private final int[] dtotal;
+		
+		private int n;
+		
+		Items(int capacity) {
+			this.ebuf = new ByteBuffer[capacity];
+			this.epos = new int[capacity];
+			this.eprefix = new int[capacity];
+			this.dbuf = new ByteBuffer[capacity];
+			this.doffset = new int[capacity];
+			this.dcopy = new int[capacity];
+			this.dsize = new int[capacity];
+			this.dtotal = new int[capacity+1];
+			this.n = 0;
+		}
+		
+		int size() {
+			return n;
+		}
+		
+		/**
+		 * Add an existing item.
+		 */
+		void add(BufferLeafNode node, int idx) {
+			add(node, idx, node.size(idx));
+		}
+		
+		/**
+		 * Add an existing item, resized to the given size.
+		 */
+		void add(BufferLeafNode node, int idx, int size) {
+			int pos = node.ipos(idx);
+			int offset = node.buffer.getInt(pos + ITEM_OFFSET_OFFSET);
+			int current = node.buffer.getInt(pos + ITEM_OFFSET_SIZE);
+			add(node.buffer, pos, node.prefix(), node.buffer, offset, Math.min(current, size), size);
+		}
+		
+		/**
+		 * Add an existing item, but with a different key.
+		 */
+		void add(Key key, BufferLeafNode node, int idx) {
+			int pos = node.ipos(idx);
+			int offset = node.buffer.getInt(pos + ITEM_OFFSET_OFFSET);
+			int size = node.buffer.getInt(pos + ITEM_OFFSET_SIZE);
+			add(entry(key, node.buffer.getShort(pos + ITEM_OFFSET_FLAGS)), 0, 0, node.buffer, offset, size, size);
+		}
+		
+		/**
+		 * Add a new item.
+		 */
+		void add(Key key, int size) {
+			add(entry(key, BTreeLeafNode.Flags.NONE.mask), 0, 0, null, 0, 0, size);
+		}
+		
+		private void add(ByteBuffer eb, int ep, int epfx, ByteBuffer db, int doff, int dcp, int ds) {
+			ebuf[n] = eb;
+			epos[n] = ep;
+			eprefix[n] = epfx;
+			dbuf[n] = db;
+			doffset[n] = doff;
+			dcopy[n] = dcp;
+			dsize[n] = ds;
+			dtotal[n+1] = dtotal[n] + ds;
+			n++;
+		}
+		
+		private static ByteBuffer entry(Key key, short flags) {
+			ByteBuffer e = ByteBuffer.allocate(ITEM_ENTRY_SIZE);
+			e.order(StorageConstants.NETWORK_ORDER);
+			key.write(e);
+			e.putShort(flags);
+			// the offset and size are filled in when encoding
+			return e;
+		}
+		
+		private byte keyByte(int i, int b) {
+			return ebuf[i].get((b < eprefix[i] ? PREFIX_OFFSET : epos[i]) + b);
+		}
+		
+		/**
+		 * @return the length of the key prefix shared by the items in [from,to)
+		 */
+		int prefix(int from, int to) {
+			if (to - from <= 0) return 0;
+			int last = to - 1;
+			int p = 0;
+			while (p < BTree.Key.COMPARABLE_SIZE && keyByte(from, p) == keyByte(last, p)) p++;
+			return p;
+		}
+		
+		/**
+		 * @return the space, excluding the header, needed to hold the items in [from,to)
+		 */
+		int cost(int from, int to, boolean compressed) {
+			int count = to - from;
+			if (count <= 0) return 0;
+			int p = compressed ? prefix(from, to) : 0;
+			return p + count*(ITEM_ENTRY_SIZE - p) + (dtotal[to] - dtotal[from]);
+		}
+		
+		/**
+		 * Write the items in [from,to) into an empty leaf buffer.
+		 */
+		void encode(ByteBuffer dst, int from, int to, byte format, long rightSibling) {
+			final boolean compressed = (format & FORMAT_PREFIX_COMPRESSED) != 0;
+			final int count = to - from;
+			final int p = compressed ? prefix(from, to) : 0;
+			final int esize = ITEM_ENTRY_SIZE - p;
+			
+			// the shared prefix, taken from the low key
+			for (int b = 0; b < p; b++) dst.put(PREFIX_OFFSET + b, keyByte(from, b));
+			
+			int used = p;
+			int dataPos = dst.capacity();
+			for (int i = from, dstIdx = 0; i < to; i++, dstIdx++) {
+				int dstPos = ITEM_ENTRIES_OFFSET + dstIdx*esize;
+				
+				// copy across the key suffix and flags
+				int q = eprefix[i];
+				if (q <= p) {
+					copy(ebuf[i], epos[i] + p, dst, dstPos + p, ITEM_OFFSET_OFFSET - p);
+				} else {
+					copy(ebuf[i], PREFIX_OFFSET + p, dst, dstPos + p, q - p);
+					copy(ebuf[i], epos[i] + q, dst, dstPos + q, ITEM_OFFSET_OFFSET - q);
+				}
+				
+				// copy across item data
+				dataPos -= dsize[i];
+				copy(dbuf[i], doffset[i], dst, dataPos, dcopy[i]);
+				
+				// update item
+				dst.putInt(dstPos + ITEM_OFFSET_OFFSET, dataPos);
+				dst.putInt(dstPos + ITEM_OFFSET_SIZE, dsize[i]);
+				
+				used += esize + dsize[i];
+			}
+			
+			BufferNode.header(dst, NodeType.LEAF, dst.capacity(), dst.capacity()-HEADER_SIZE-used, count, rightSibling);
+			dst.put(HEADER_OFFSET_FORMAT, format);
+			dst.put(HEADER_OFFSET_PREFIX, (byte)p);
+		}
+	}
 }
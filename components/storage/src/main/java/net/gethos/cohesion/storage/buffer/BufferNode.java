@@ -6,7 +6,9 @@
 package net.gethos.cohesion.storage.buffer;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
+import net.gethos.cohesion.common.UnsignedUtils;
 import net.gethos.cohesion.storage.BTree;
 import net.gethos.cohesion.storage.BTree.Key;
 import net.gethos.cohesion.storage.StorageConstants;
@@ -26,6 +28,21 @@ import net.gethos.cohesion.storage.backing.BTreeNode;
  */
 public abstract class BufferNode extends BufferRegion implements BTreeNode {
 
+	// positions of the fields used to interpolate within a serialised key
+	private static final int KEY_OFFSET_IDX     = 0;
+	private static final int KEY_OFFSET_ID_HIGH = KEY_OFFSET_IDX + StorageConstants.SIZEOF_SHORT;
+
+	/**
+	 * Smallest node for which an interpolation search is attempted.
+	 */
+	private static final int INTERPOLATION_THRESHOLD = 16;
+
+	/**
+	 * Number of items examined either side of an interpolated guess before
+	 * deciding that the keys are skewed and reverting to a binary search.
+	 */
+	private static final int INTERPOLATION_SCAN = 4;
+
 	public BufferNode(ByteBuffer n) {
 		super(n);
 	}
@@ -48,6 +65,21 @@ public abstract class BufferNode extends BufferRegion implements BTreeNode {
 		return (BufferNode)super.clone();
 	}
 
+	@Override
+	public BufferNode borrow() {
+		return (BufferNode)super.borrow();
+	}
+
+	@Override
+	public BufferNode borrow(BufferPool pool) {
+		return (BufferNode)super.borrow(pool);
+	}
+
+	@Override
+	public BufferNode borrow(BufferPool pool, OwnershipListener listener) {
+		return (BufferNode)super.borrow(pool, listener);
+	}
+
 	@Override
 	public abstract boolean balance(BTreeNode sibling, boolean requireEmpty);
 
@@ -60,29 +92,89 @@ public abstract class BufferNode extends BufferRegion implements BTreeNode {
 		return (BufferNode)wrapRegion(n);
 	}
 
+	/**
+	 * Wrap a buffer that was acquired from the given pool, so that the node may later return it.
+	 */
+	public static BufferNode wrap(ByteBuffer n, BufferPool pool) {
+		BufferNode x = wrap(n);
+		if (x != null) {
+			x.pool = pool;
+			x.pooled = true;
+		}
+		return x;
+	}
+
+	/**
+	 * Wrap a read-only view of a node that is held elsewhere (e.g. in a mapped store), without copying it.
+	 * <p>
+	 * The node is treated as borrowed, so a private copy, taken from the pool if one is given, is only made
+	 * once the node is changed (see {@link #own()}).
+	 */
+	public static BufferNode view(ByteBuffer n, BufferPool pool) {
+		BufferNode x = wrap(n);
+		if (x != null) {
+			x.borrowed = true;
+			x.pool = pool;
+			x.pooled = false;
+		}
+		return x;
+	}
+
 	public static BufferNode allocate(int capacity, boolean isLeaf) {
-		if (isLeaf) return allocateLeaf(capacity);
-		else return allocateIndex(capacity);
+		return allocate(capacity, isLeaf, NodeFormat.DEFAULT);
+	}
+
+	public static BufferNode allocate(int capacity, boolean isLeaf, NodeFormat format) {
+		if (isLeaf) return allocateLeaf(capacity, format);
+		else return allocateIndex(capacity, format);
+	}
+
+	/**
+	 * Allocate a node whose buffers are taken from the given pool.
+	 */
+	public static BufferNode allocate(int capacity, boolean isLeaf, NodeFormat format, BufferPool pool) {
+		ByteBuffer buffer = pool.acquire(capacity);
+		if (isLeaf) initialiseLeaf(buffer, format);
+		else initialiseIndex(buffer, format);
+		return wrap(buffer, pool);
 	}
 
 	public static BufferLeafNode allocateLeaf(int capacity) {
+		return allocateLeaf(capacity, NodeFormat.DEFAULT);
+	}
+
+	public static BufferLeafNode allocateLeaf(int capacity, NodeFormat format) {
 		ByteBuffer buffer = ByteBuffer.allocate(capacity);
-		initialise(buffer, NodeType.LEAF);
+		initialiseLeaf(buffer, format);
 		return new BufferLeafNode(buffer);
 	}
 
 	public static BufferIndexNode allocateIndex(int capacity) {
+		return allocateIndex(capacity, NodeFormat.DEFAULT);
+	}
+
+	public static BufferIndexNode allocateIndex(int capacity, NodeFormat format) {
 		ByteBuffer buffer = ByteBuffer.allocate(capacity);
-		initialise(buffer, NodeType.INDEX);
+		initialiseIndex(buffer, format);
 		return new BufferIndexNode(buffer);
 	}
 
 	public static void initialiseLeaf(ByteBuffer buffer) {
+		initialiseLeaf(buffer, NodeFormat.DEFAULT);
+	}
+
+	public static void initialiseLeaf(ByteBuffer buffer, NodeFormat format) {
 		initialise(buffer,NodeType.LEAF);
+		BufferLeafNode.initialiseFormat(buffer, format);
 	}
 
 	public static void initialiseIndex(ByteBuffer buffer) {
+		initialiseIndex(buffer, NodeFormat.DEFAULT);
+	}
+
+	public static void initialiseIndex(ByteBuffer buffer, NodeFormat format) {
 		initialise(buffer, NodeType.INDEX);
+		BufferIndexNode.initialiseFormat(buffer, format);
 	}
 
 	@Override
@@ -99,40 +191,125 @@ public abstract class BufferNode extends BufferRegion implements BTreeNode {
 	public int find(Key key) {
 
 		int size = items();
+		if (size >= INTERPOLATION_THRESHOLD && isInterpolationSearch()) {
+			int entrySize = keyEntrySize();
+			if (entrySize > 0) return interpolationFind(key, size, entrySize);
+		}
 		if (size < 9) {//Integer.MAX_VALUE) {
 			// perform a linear search within the node to find the insertion point
 			int insertion = 0;
 			for (insertion = 0; insertion < size; insertion++) {
-				Key ikey = key(insertion);
-				int c = ikey.compareTo(key);
+				int c = compareKey(insertion, key);
 				if (c == 0) {
 					// if the key exists then return the position
 					return insertion;
 				}
-				if (c > 0) break; // found the first key larger than the key being searched for
+				if (c < 0) break; // found the first key larger than the key being searched for
 			}
 
 			// the key does not exist, so return the position that it would be inserted into
 			return (-(insertion) - 1);
 		} else {
 			// perform a binary search for the item
-			int min = 0;
-			int max = size-1;
-			while(min <= max) {
-				int mid = min + ((max - min) / 2);
-				Key ikey = key(mid);
-				int c = key.compareTo(ikey);
-				if (c == 0) return mid;
-				if (c > 0) {
-					min = mid + 1;
-				} else {
-					max = mid - 1;
-				}
+			return binaryFind(key, 0, size-1);
+		}
+	}
+
+	private int binaryFind(Key key, int min, int max) {
+		while(min <= max) {
+			int mid = min + ((max - min) / 2);
+			int c = compareKey(mid, key);
+			if (c == 0) return mid;
+			if (c > 0) {
+				min = mid + 1;
+			} else {
+				max = mid - 1;
 			}
-			return (-(min)-1);
 		}
+		return (-(min)-1);
 	}
 
+	/**
+	 * Search for the key by estimating its position from the <code>idHigh</code> values
+	 * of the first and last items, on the basis that ids (e.g. SHA1 hashes) are uniformly
+	 * distributed, and then scanning locally from the estimate.
+	 * <p>
+	 * If the key is not found near the estimate, then the keys are not uniformly distributed
+	 * and a binary search is performed over the remaining items.
+	 */
+	private int interpolationFind(Key key, int size, int entrySize) {
+		int lo = 0;
+		int hi = size-1;
+		int lpos = ITEM_ENTRIES_OFFSET + lo*entrySize;
+		int hpos = ITEM_ENTRIES_OFFSET + hi*entrySize;
+
+		// only interpolate between items with the same idx as the search key
+		if (buffer.getShort(lpos + KEY_OFFSET_IDX) != key.idx || buffer.getShort(hpos + KEY_OFFSET_IDX) != key.idx) {
+			return binaryFind(key, lo, hi);
+		}
+		long low = buffer.getLong(lpos + KEY_OFFSET_ID_HIGH);
+		long high = buffer.getLong(hpos + KEY_OFFSET_ID_HIGH);
+		if (UnsignedUtils.compareUnsigned(low, high) >= 0) return binaryFind(key, lo, hi);
+
+		int guess;
+		if (UnsignedUtils.compareUnsigned(key.idHigh, low) <= 0) {
+			guess = lo;
+		} else if (UnsignedUtils.compareUnsigned(key.idHigh, high) >= 0) {
+			guess = hi;
+		} else {
+			double fraction = unsignedToDouble(key.idHigh - low) / unsignedToDouble(high - low);
+			guess = lo + (int)(fraction * (hi - lo));
+			if (guess > hi) guess = hi;
+		}
+
+		int c = compareKey(guess, key);
+		if (c == 0) return guess;
+		if (c > 0) {
+			// scan up from the guess
+			int limit = Math.min(hi, guess + INTERPOLATION_SCAN);
+			for (int i = guess+1; i <= limit; i++) {
+				c = compareKey(i, key);
+				if (c == 0) return i;
+				if (c < 0) return (-(i)-1);
+			}
+			return binaryFind(key, limit+1, hi);
+		} else {
+			// scan down from the guess
+			int limit = Math.max(lo, guess - INTERPOLATION_SCAN);
+			for (int i = guess-1; i >= limit; i--) {
+				c = compareKey(i, key);
+				if (c == 0) return i;
+				if (c > 0) return (-(i+1)-1);
+			}
+			return binaryFind(key, lo, limit-1);
+		}
+	}
+
+	private static double unsignedToDouble(long x) {
+		double d = (double)(x >>> 1) * 2.0;
+		return d + (x & 1L);
+	}
+
+	/**
+	 * @return true if the node was created to be searched by interpolation (see {@link NodeFormat#interpolationSearch()})
+	 */
+	protected abstract boolean isInterpolationSearch();
+
+	/**
+	 * @return the size of each item entry, if the entries hold complete keys at their start, otherwise -1
+	 */
+	protected abstract int keyEntrySize();
+
+	/**
+	 * Compare the search key with the key stored in the <code>idx<sup>th</sup></code> item,
+	 * without materialising the stored key.
+	 * 
+	 * @param idx - index of an explicit item in the node
+	 * @param key - the search key
+	 * @return negative, zero or positive as the search key is less than, equal to, or greater than the item key
+	 */
+	protected abstract int compareKey(int idx, Key key);
+
 	@Override
 	public boolean isHalfEmpty() {
 		int free = free();
@@ -154,7 +331,14 @@ public abstract class BufferNode extends BufferRegion implements BTreeNode {
 		//		this.buffer.put(updated);
 
 		// simply switch the buffers
+		// (a replaced pooled buffer is no longer referenced, and
+		//  the update was obtained via allocateBuffer)
+		ByteBuffer old = this.buffer;
+		boolean wasPooled = this.pooled;
 		this.buffer = updated;
+		this.borrowed = false;
+		this.pooled = pool != null;
+		if (wasPooled) pool.release(old);
 	}
 
 	private static void initialise(ByteBuffer buffer, NodeType nodeType) {
@@ -168,6 +352,41 @@ public abstract class BufferNode extends BufferRegion implements BTreeNode {
 		);
 	}
 
+	/**
+	 * Move bytes within the node buffer, where the source and destination may overlap.
+	 */
+	protected final void move(int from, int to, int length) {
+		if (length <= 0 || from == to) return;
+		if (buffer.hasArray()) {
+			byte[] a = buffer.array();
+			int o = buffer.arrayOffset();
+			System.arraycopy(a, o + from, a, o + to, length);
+		} else {
+			byte[] tmp = new byte[length];
+			ByteBuffer src = buffer.duplicate();
+			src.clear();
+			src.position(from);
+			src.get(tmp);
+			ByteBuffer dst = buffer.duplicate();
+			dst.clear();
+			dst.position(to);
+			dst.put(tmp);
+		}
+	}
+
+	/**
+	 * Zero a range of bytes within the node buffer.
+	 */
+	protected final void zero(int from, int length) {
+		if (length <= 0) return;
+		if (buffer.hasArray()) {
+			int o = buffer.arrayOffset() + from;
+			Arrays.fill(buffer.array(), o, o + length, (byte)0);
+		} else {
+			for (int i = 0; i < length; i++) buffer.put(from + i, (byte)0);
+		}
+	}
+
 	protected boolean hasAvailable(int size) {
 		return size <= free();
 	}
@@ -208,6 +427,10 @@ public abstract class BufferNode extends BufferRegion implements BTreeNode {
 		return true;
 	}
 
+	protected int compareKey(int itemEntrySize, int idx, Key key) {
+		return key.compareTo(buffer, (ITEM_ENTRIES_OFFSET + idx*itemEntrySize) + ITEM_OFFSET_KEY);
+	}
+
 	protected Key readKey(int itemEntrySize, int idx) {
 		buffer.position((ITEM_ENTRIES_OFFSET + idx*itemEntrySize) + ITEM_OFFSET_KEY);
 		return new BTree.Key(buffer);
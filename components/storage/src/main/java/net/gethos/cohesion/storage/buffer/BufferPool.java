@@ -0,0 +1,204 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import net.gethos.cohesion.storage.StorageConstants;
+
+/**
+ * A pool of (by default, heap) buffers, kept per buffer size, so that node buffers can be reused rather than
+ * being allocated afresh for every node that is fetched, copied or rebuilt.
+ * <p>
+ * Buffers are returned in one of two ways:
+ * <ul>
+ *   <li>{@link #release(ByteBuffer)} - the buffer is known to be unreferenced and may be handed out immediately.</li>
+ *   <li>{@link #retire(ByteBuffer)} - the buffer may still be read by open transactions (e.g. a node that was
+ *       evicted from a cache), so it is only reused once every transaction that was open at the time has exited.</li>
+ * </ul>
+ * Transactions bracket their use of pooled buffers with {@link #enter()} and {@link #exit(long)}.
+ * <p>
+ * In debug mode (the default when assertions are enabled) the pool records where each outstanding buffer was
+ * acquired, so that buffers that are never returned can be reported by {@link #checkLeaks()}.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ */
+public class BufferPool {
+
+	public static final int DEFAULT_MAX_RETAINED = 256;
+
+	private final int maxRetained;
+	private final boolean debug;
+
+	private final Map<Integer, Deque<ByteBuffer>> free;
+
+	// retired buffers, in the order retired, along with the last ticket issued at the time
+	private final Deque<ByteBuffer> retired;
+	private final Deque<Long> retiredAt;
+
+	// tickets of the transactions that have entered but not yet exited
+	private final TreeSet<Long> active;
+	private long lastTicket;
+
+	private final Map<ByteBuffer, Throwable> outstanding;
+
+	public BufferPool() {
+		this(DEFAULT_MAX_RETAINED, BufferPool.class.desiredAssertionStatus());
+	}
+
+	/**
+	 * @param maxRetained - the maximum number of free buffers retained for each buffer size
+	 * @param debug - if true, track outstanding buffers for leak detection
+	 */
+	public BufferPool(int maxRetained, boolean debug) {
+		if (maxRetained < 0) throw new IllegalArgumentException("The number of retained buffers must not be negative.");
+		this.maxRetained = maxRetained;
+		this.debug = debug;
+		this.free = new HashMap<Integer, Deque<ByteBuffer>>();
+		this.retired = new ArrayDeque<ByteBuffer>();
+		this.retiredAt = new ArrayDeque<Long>();
+		this.active = new TreeSet<Long>();
+		this.lastTicket = 0;
+		this.outstanding = debug ? new IdentityHashMap<ByteBuffer, Throwable>() : null;
+	}
+
+	public boolean isDebug() {
+		return debug;
+	}
+
+	/**
+	 * Obtain a zeroed buffer of exactly <code>size</code> bytes, in network order.
+	 */
+	public synchronized ByteBuffer acquire(int size) {
+		if (size < 0) throw new IllegalArgumentException("The size must not be negative.");
+		ByteBuffer b = null;
+		Deque<ByteBuffer> q = free.get(size);
+		if (q != null) b = q.pollFirst();
+		if (b == null) {
+			b = allocate(size);
+		} else if (b.hasArray()) {
+			Arrays.fill(b.array(), b.arrayOffset(), b.arrayOffset() + size, (byte)0);
+		} else {
+			b.clear();
+			int i = 0;
+			for (; i + 8 <= size; i += 8) b.putLong(i, 0L);
+			for (; i < size; i++) b.put(i, (byte)0);
+		}
+		b.clear();
+		b.order(StorageConstants.NETWORK_ORDER);
+		if (debug) outstanding.put(b, new Throwable("Buffer of " + size + " bytes acquired here"));
+		return b;
+	}
+
+	/**
+	 * Allocate a new (zeroed) buffer of exactly <code>size</code> bytes.
+	 * <p>
+	 * Subclasses may override this, along with {@link #accepts(ByteBuffer)}, to pool buffers other than heap buffers.
+	 */
+	protected ByteBuffer allocate(int size) {
+		return ByteBuffer.allocate(size);
+	}
+
+	/**
+	 * @return true if the buffer is of the kind allocated by this pool
+	 */
+	protected boolean accepts(ByteBuffer b) {
+		return b.hasArray();
+	}
+
+	/**
+	 * Return a buffer that is no longer referenced, so that it may be reused immediately.
+	 */
+	public synchronized void release(ByteBuffer b) {
+		returned(b);
+		recycle(b);
+	}
+
+	/**
+	 * Return a buffer that may still be read by transactions that are currently open.
+	 */
+	public synchronized void retire(ByteBuffer b) {
+		returned(b);
+		if (active.isEmpty()) {
+			recycle(b);
+		} else {
+			retired.addLast(b);
+			retiredAt.addLast(Long.valueOf(lastTicket));
+		}
+	}
+
+	/**
+	 * Note the start of a transaction that may read pooled buffers.
+	 *
+	 * @return the ticket to hand back to {@link #exit(long)}
+	 */
+	public synchronized long enter() {
+		long ticket = ++lastTicket;
+		active.add(Long.valueOf(ticket));
+		return ticket;
+	}
+
+	/**
+	 * Note the end of a transaction, reclaiming any retired buffers that are no longer visible.
+	 */
+	public synchronized void exit(long ticket) {
+		if (!active.remove(Long.valueOf(ticket))) throw new IllegalStateException("The transaction has already exited the pool.");
+		// a buffer retired after ticket t was issued can only be seen by transactions holding tickets <= t
+		long oldest = active.isEmpty() ? Long.MAX_VALUE : active.first().longValue();
+		while (!retiredAt.isEmpty() && retiredAt.peekFirst().longValue() < oldest) {
+			retiredAt.removeFirst();
+			recycle(retired.removeFirst());
+		}
+	}
+
+	/**
+	 * @return the number of buffers held for reuse, including those waiting on open transactions
+	 */
+	public synchronized int retained() {
+		int n = retired.size();
+		for (Deque<ByteBuffer> q : free.values()) n += q.size();
+		return n;
+	}
+
+	/**
+	 * @return the number of buffers handed out and not yet returned, or -1 if not in debug mode
+	 */
+	public synchronized int outstanding() {
+		return debug ? outstanding.size() : -1;
+	}
+
+	/**
+	 * Report buffers that were acquired but never returned.
+	 *
+	 * @throws IllegalStateException if, in debug mode, there are outstanding buffers, with the acquisition site of one of them as the cause
+	 */
+	public synchronized void checkLeaks() {
+		if (!debug || outstanding.isEmpty()) return;
+		Throwable site = outstanding.values().iterator().next();
+		throw new IllegalStateException(String.format("%d pooled buffer(s) were not returned.", outstanding.size()), site);
+	}
+
+	private void returned(ByteBuffer b) {
+		if (b == null || b.isReadOnly() || !accepts(b)) throw new IllegalArgumentException("The buffer was not acquired from this pool.");
+		if (debug && outstanding.remove(b) == null) throw new IllegalStateException("The buffer is not outstanding, it may have been returned twice.");
+	}
+
+	private void recycle(ByteBuffer b) {
+		Deque<ByteBuffer> q = free.get(b.capacity());
+		if (q == null) {
+			q = new ArrayDeque<ByteBuffer>();
+			free.put(b.capacity(), q);
+		}
+		if (q.size() < maxRetained) q.addFirst(b);
+	}
+}
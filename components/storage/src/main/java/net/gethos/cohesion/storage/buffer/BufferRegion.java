@@ -35,6 +35,9 @@ public abstract class BufferRegion implements Cloneable {
 
 	protected static final int ITEM_OFFSET_KEY = 0;
 
+	private static final byte[] ZERO_CHECKSUM = new byte[StorageConstants.SIZEOF_INT];
+	private static final int CHECKSUM_CHUNK = 1024;
+
 	protected static final long NO_SUCH_OFFSET = BTreeIndexNode.INVALID_OFFSET;
 	protected static final long NO_RIGHT_HAND_CHILD = NO_SUCH_OFFSET;
 
@@ -64,9 +67,40 @@ public abstract class BufferRegion implements Cloneable {
 
 	protected /* final */ ByteBuffer buffer;
 
+	/**
+	 * Set while the buffer is a read-only view that is shared with another region.
+	 */
+	boolean borrowed;
+
+	/**
+	 * The pool that supplies new buffers for this region, if any.
+	 */
+	BufferPool pool;
+
+	/**
+	 * Set while the buffer was taken from the pool and is referenced by this region alone.
+	 */
+	boolean pooled;
+
+	/**
+	 * Notified if this borrowed region takes a private buffer from its pool.
+	 */
+	OwnershipListener listener;
+
+	/**
+	 * Receives the borrowed regions that take a private buffer from their pool (see {@link BufferRegion#own()}).
+	 */
+	public interface OwnershipListener {
+		void owned(BufferRegion region);
+	}
+
 	public BufferRegion(ByteBuffer n) {
 		this.buffer = n;
 		this.buffer.order(StorageConstants.NETWORK_ORDER);
+		this.borrowed = false;
+		this.pool = null;
+		this.pooled = false;
+		this.listener = null;
 	}
 
 	@Override
@@ -75,17 +109,125 @@ public abstract class BufferRegion implements Cloneable {
 		try {
 			x = (BufferRegion)super.clone();
 			// now copy the buffer
-			ByteBuffer xb = x.buffer;
-			x.buffer = ByteBuffer.allocate(xb.capacity());
-			x.buffer.order(StorageConstants.NETWORK_ORDER);
-			xb.rewind();
+			ByteBuffer xb = x.buffer.duplicate();
+			x.buffer = allocateBuffer(xb.capacity());
+			xb.clear();
 			x.buffer.put(xb);
+			x.buffer.clear();
+			x.borrowed = false;
+			x.pooled = pool != null;
+			x.listener = null;
+			return x;
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Create a copy-on-write copy of the region.
+	 * <p>
+	 * The copy reads through a read-only view of this region's buffer, and only takes a private
+	 * copy of the data once it is first changed (see {@link #own()}). This region must not be
+	 * changed while the copy is still borrowing its buffer.
+	 */
+	public BufferRegion borrow() {
+		return borrow(null);
+	}
+
+	/**
+	 * Create a copy-on-write copy of the region, whose private copy is taken from the given pool.
+	 *
+	 * @see #borrow()
+	 */
+	public BufferRegion borrow(BufferPool pool) {
+		return borrow(pool, null);
+	}
+
+	/**
+	 * Create a copy-on-write copy of the region, whose private copy is taken from the given pool.
+	 * <p>
+	 * The listener is notified, once, if the copy takes a private buffer from the pool, so that
+	 * the buffer can be returned even if the copy is not kept. Copies that are only read are not reported.
+	 *
+	 * @see #borrow()
+	 */
+	public BufferRegion borrow(BufferPool pool, OwnershipListener listener) {
+		BufferRegion x;
+		try {
+			x = (BufferRegion)super.clone();
+			x.buffer = buffer.asReadOnlyBuffer();
+			x.buffer.order(StorageConstants.NETWORK_ORDER);
+			x.buffer.clear();
+			x.borrowed = true;
+			x.pool = pool;
+			x.pooled = false;
+			x.listener = listener;
 			return x;
 		} catch (CloneNotSupportedException e) {
 			throw new IllegalStateException(e);
 		}
 	}
 
+	/**
+	 * @return true if the region is still reading through a borrowed buffer
+	 */
+	public boolean isBorrowed() {
+		return borrowed;
+	}
+
+	/**
+	 * Ensure that the region holds a private, writable, copy of its data.
+	 * <p>
+	 * This must be invoked before the buffer of a region that may be borrowed is changed.
+	 */
+	public final void own() {
+		if (!borrowed) return;
+		ByteBuffer src = buffer.duplicate();
+		src.clear();
+		ByteBuffer b = allocateBuffer(src.capacity());
+		b.put(src);
+		b.clear();
+		buffer = b;
+		borrowed = false;
+		pooled = pool != null;
+		OwnershipListener l = listener;
+		listener = null;
+		if (pooled && l != null) l.owned(this);
+	}
+
+	/**
+	 * Return the buffer of this region to its pool for immediate reuse.
+	 * <p>
+	 * The region must not be used afterwards. This has no effect if the buffer did not come from a pool.
+	 */
+	public void release() {
+		if (!pooled) return;
+		pooled = false;
+		pool.release(buffer);
+		buffer = null;
+	}
+
+	/**
+	 * Return the buffer of this region to its pool, once no open transaction can still be reading it.
+	 * <p>
+	 * This has no effect if the buffer did not come from a pool.
+	 */
+	public void retire() {
+		if (!pooled) return;
+		pooled = false;
+		pool.retire(buffer);
+	}
+
+	/**
+	 * Obtain a new buffer, from the pool of this region if it has one.
+	 */
+	protected final ByteBuffer allocateBuffer(int capacity) {
+		if (pool != null) return pool.acquire(capacity);
+		ByteBuffer b = ByteBuffer.allocate(capacity);
+		b.order(StorageConstants.NETWORK_ORDER);
+		return b;
+	}
+
 	public abstract String dump();
 
 	public static BufferRegion wrapRegion(ByteBuffer n) {
@@ -160,16 +302,37 @@ public abstract class BufferRegion implements Cloneable {
 	}
 
 	private static int checksum(BufferRegion n, boolean record) {
+		if (record) n.own();
+		ByteBuffer b = n.buffer;
+		// the checksum is calculated as if the recorded checksum was zero, without changing the
+		// buffer, so that read-only views can be checked
 		Adler32 adler32 = new Adler32();
-		int old = record ? 0 : n.buffer.getInt(HEADER_OFFSET_CHECKSUM);
-		n.buffer.putInt(HEADER_OFFSET_CHECKSUM, 0);
-		assert (n.buffer.hasArray());
-		adler32.update(n.buffer.array());
+		update(adler32, b, 0, HEADER_OFFSET_CHECKSUM);
+		adler32.update(ZERO_CHECKSUM, 0, ZERO_CHECKSUM.length);
+		update(adler32, b, HEADER_OFFSET_CHECKSUM + ZERO_CHECKSUM.length, b.capacity());
 		int v = (int) adler32.getValue();
-		n.buffer.putInt(HEADER_OFFSET_CHECKSUM, record ? v : old);
+		if (record) b.putInt(HEADER_OFFSET_CHECKSUM, v);
 		return v;
 	}
 
+	private static void update(Adler32 adler32, ByteBuffer b, int from, int to) {
+		if (b.hasArray()) {
+			adler32.update(b.array(), b.arrayOffset() + from, to - from);
+			return;
+		}
+		// copy out of direct, mapped or read-only buffers in chunks
+		byte[] chunk = new byte[Math.min(CHECKSUM_CHUNK, to - from)];
+		ByteBuffer d = b.duplicate();
+		d.clear();
+		d.position(from);
+		while (from < to) {
+			int l = Math.min(chunk.length, to - from);
+			d.get(chunk, 0, l);
+			adler32.update(chunk, 0, l);
+			from += l;
+		}
+	}
+
 	protected void dump(PrintStream out) {
 		out.println(dump());
 	}
@@ -12,6 +12,11 @@ import net.gethos.cohesion.storage.backing.BTreeSuperNode;
 
 /**
  * Super node for the tree.
+ * <p>
+ * Besides the root and depth, the super node records the version of the node
+ * format, which is raised when nodes may use a layout that older readers can
+ * not interpret. Files written before the version was recorded have a version
+ * of zero.
  * 
  * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
  *
@@ -21,11 +26,23 @@ public class BufferSuperNode extends BufferRegion implements BTreeSuperNode {
 	private static final int HEADER_OFFSET_MAGIC = HEADER_OFFSET_RESERVED_1;
 	private static final int HEADER_OFFSET_DEPTH = HEADER_OFFSET_ITEMS;
 	private static final int HEADER_OFFSET_ROOT = HEADER_OFFSET_RIGHT_HAND_CHILD;
+	private static final int OFFSET_FORMAT_VERSION = HEADER_SIZE;
 	
 	static final byte[] MAGIC = {(byte)0x43,(byte)0x48,(byte)0x53}; // CHS - Cohesion Storage
 	static final int MAGIC_SIZE = MAGIC.length;
 	
 	public static final int SUPER_NODE_SIZE = 4096;
+	
+	/** nodes hold 64-bit child offsets */
+	public static final int FORMAT_VERSION_WIDE_CHILDREN = 0;
+	/** index nodes may hold compact 32-bit child references */
+	public static final int FORMAT_VERSION_COMPACT_CHILDREN = 1;
+	/** leaf nodes may hold keys relative to a shared prefix */
+	public static final int FORMAT_VERSION_PREFIX_COMPRESSED_LEAVES = 2;
+	/** index nodes may hold truncated separators rather than complete keys */
+	public static final int FORMAT_VERSION_TRUNCATED_SEPARATORS = 3;
+	
+	public static final int CURRENT_FORMAT_VERSION = FORMAT_VERSION_TRUNCATED_SEPARATORS;
 
 	public BufferSuperNode(ByteBuffer n) {
 		super(n);
@@ -38,6 +55,18 @@ public class BufferSuperNode extends BufferRegion implements BTreeSuperNode {
 		return new BufferSuperNode(buffer);
 	}
 	
+	/**
+	 * Allocate a super node whose buffer is taken from the given pool.
+	 */
+	public static BufferSuperNode allocate(BufferPool pool) {
+		ByteBuffer buffer = pool.acquire(SUPER_NODE_SIZE);
+		header(buffer, NodeType.SUPER, SUPER_NODE_SIZE, 0, 0, 0);
+		BufferSuperNode sn = new BufferSuperNode(buffer);
+		sn.pool = pool;
+		sn.pooled = true;
+		return sn;
+	}
+	
 	public static BufferSuperNode wrap(ByteBuffer header) {
 		BufferSuperNode sn = new BufferSuperNode(header);
 		return sn;
@@ -51,6 +80,45 @@ public class BufferSuperNode extends BufferRegion implements BTreeSuperNode {
 		buffer.putLong(HEADER_OFFSET_ROOT,root);
 	}
 
+	/**
+	 * Raise the recorded format version to that required by nodes of the given format.
+	 * <p>
+	 * The version is never lowered, since nodes written in an earlier format
+	 * may still be present.
+	 */
+	public void stamp(NodeFormat format) {
+		int required = requiredVersion(format);
+		if (required > formatVersion()) buffer.putInt(OFFSET_FORMAT_VERSION, required);
+	}
+	
+	/**
+	 * @return the lowest format version that covers every layout that the given format may create
+	 */
+	static int requiredVersion(NodeFormat format) {
+		int required = FORMAT_VERSION_WIDE_CHILDREN;
+		if (format.compactChildren()) required = Math.max(required, FORMAT_VERSION_COMPACT_CHILDREN);
+		if (format.prefixCompressedLeaves()) required = Math.max(required, FORMAT_VERSION_PREFIX_COMPRESSED_LEAVES);
+		if (format.truncatedSeparators()) required = Math.max(required, FORMAT_VERSION_TRUNCATED_SEPARATORS);
+		return required;
+	}
+	
+	/**
+	 * Version of the node format used within the tree.
+	 */
+	public int formatVersion() {
+		return buffer.getInt(OFFSET_FORMAT_VERSION);
+	}
+	
+	/**
+	 * @throws IllegalStateException if the tree was written using a newer node format
+	 */
+	public void checkFormatVersion() {
+		int version = formatVersion();
+		if (version > CURRENT_FORMAT_VERSION) {
+			throw new IllegalStateException(String.format("The node format version %d is newer than the supported version %d.", version, CURRENT_FORMAT_VERSION));
+		}
+	}
+
 	/**
 	 * Number of levels in the tree
 	 */
@@ -74,10 +142,11 @@ public class BufferSuperNode extends BufferRegion implements BTreeSuperNode {
 
 	@Override
 	public String dump() {
-		return String.format("@%8h[t=%s|c=%d|d=%4d|r=0x%8x]",
+		return String.format("@%8h[t=%s|c=%d|v=%d|d=%4d|r=0x%8x]",
 				System.identityHashCode(buffer),
 				type(),
 				capacity(),
+				formatVersion(),
 				depth(),
 				root()
 			);
@@ -16,12 +16,19 @@ import net.gethos.cohesion.storage.StorageConstants;
  */
 public class ByteBufferNodeCapacities extends BufferScaling implements NodeCapacities {
 
+	private final NodeFormat format;
+	
 	public ByteBufferNodeCapacities() {
-		super(StorageConstants.DEFAULT_NODE_CAPACITY);
+		this(StorageConstants.DEFAULT_NODE_CAPACITY);
 	}
 	
 	public ByteBufferNodeCapacities(int capacity) {
+		this(capacity, NodeFormat.DEFAULT);
+	}
+	
+	public ByteBufferNodeCapacities(int capacity, NodeFormat format) {
 		super(capacity);
+		this.format = format;
 	}
 
 	@Override
@@ -39,4 +46,9 @@ public class ByteBufferNodeCapacities extends BufferScaling implements NodeCapac
 		return isLeaf ? leafCapacity : innerCapacity;
 	}
 
+	@Override
+	public NodeFormat format() {
+		return format;
+	}
+
 }
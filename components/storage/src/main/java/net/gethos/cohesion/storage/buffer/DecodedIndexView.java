@@ -0,0 +1,132 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage.buffer;
+
+import java.nio.ByteBuffer;
+
+import net.gethos.cohesion.common.UnsignedUtils;
+import net.gethos.cohesion.storage.BTree.Key;
+import net.gethos.cohesion.storage.StorageConstants;
+
+/**
+ * An immutable, decoded snapshot of the keys and children of an index node.
+ * <p>
+ * The key fields and child offsets are held in parallel primitive arrays so
+ * that searching a (read-only) cached node does not need to pay for reading
+ * and byte-swapping each field out of the node buffer on every probe.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+final class DecodedIndexView {
+
+	private final int size;
+	private final short[] idx;
+	private final long[] idHigh;
+	private final long[] idMiddle;
+	private final int[] idLow;
+	private final short[] type;
+	private final long[] childOffset;
+
+	/**
+	 * Decode the explicit items of an index node.
+	 *
+	 * @param buffer - node buffer
+	 * @param size - number of explicit items
+	 * @param itemsOffset - absolute offset of the first item entry
+	 * @param itemEntrySize - size of each item entry
+	 * @param childOffsetInItem - offset of the child pointer within each item entry
+	 */
+	DecodedIndexView(ByteBuffer buffer, int size, int itemsOffset, int itemEntrySize, int childOffsetInItem) {
+		this.size = size;
+		this.idx = new short[size];
+		this.idHigh = new long[size];
+		this.idMiddle = new long[size];
+		this.idLow = new int[size];
+		this.type = new short[size];
+		this.childOffset = new long[size];
+
+		int pos = itemsOffset;
+		for (int i = 0; i < size; i++, pos += itemEntrySize) {
+			int p = pos;
+			idx[i]      = buffer.getShort(p); p += StorageConstants.SIZEOF_SHORT;
+			idHigh[i]   = buffer.getLong(p);  p += StorageConstants.SIZEOF_LONG;
+			idMiddle[i] = buffer.getLong(p);  p += StorageConstants.SIZEOF_LONG;
+			idLow[i]    = buffer.getInt(p);   p += StorageConstants.SIZEOF_INT;
+			type[i]     = buffer.getShort(p);
+			childOffset[i] = buffer.getLong(pos + childOffsetInItem);
+		}
+	}
+
+	/**
+	 * Decode from keys that have already been read from an index node.
+	 *
+	 * @param keys - the keys of the explicit items
+	 * @param children - the child offsets of the explicit items
+	 */
+	DecodedIndexView(Key[] keys, long[] children) {
+		this.size = keys.length;
+		this.idx = new short[size];
+		this.idHigh = new long[size];
+		this.idMiddle = new long[size];
+		this.idLow = new int[size];
+		this.type = new short[size];
+		this.childOffset = children;
+
+		for (int i = 0; i < size; i++) {
+			Key k = keys[i];
+			idx[i]      = k.idx;
+			idHigh[i]   = k.idHigh;
+			idMiddle[i] = k.idMiddle;
+			idLow[i]    = k.idLow;
+			type[i]     = k.type;
+		}
+	}
+
+	int size() {
+		return size;
+	}
+
+	long child(int i) {
+		return childOffset[i];
+	}
+
+	/**
+	 * Locate the key using the same result convention as {@link BufferNode#find(Key)}.
+	 * <p>
+	 * The search narrows a lower bound without an early exit on equality so that the
+	 * loop body only carries a single data dependent choice, and then checks for an
+	 * exact match once at the end.
+	 */
+	int find(Key key) {
+		int lo = 0;
+		int n = size;
+		while (n > 0) {
+			int half = n >>> 1;
+			int mid = lo + half;
+			boolean above = compare(mid, key) > 0;
+			lo = above ? mid + 1 : lo;
+			n  = above ? n - half - 1 : half;
+		}
+		if (lo < size && compare(lo, key) == 0) return lo;
+		return (-(lo) - 1);
+	}
+
+	/**
+	 * @return negative, zero or positive as the search key is less than, equal to, or greater than the item key
+	 */
+	private int compare(int i, Key key) {
+		int c = key.idx - idx[i];
+		if (c != 0) return c;
+		c = UnsignedUtils.compareUnsigned(key.idHigh, idHigh[i]);
+		if (c != 0) return c;
+		c = UnsignedUtils.compareUnsigned(key.idMiddle, idMiddle[i]);
+		if (c != 0) return c;
+		c = UnsignedUtils.compareUnsigned(key.idLow, idLow[i]);
+		if (c != 0) return c;
+		return key.type - type[i];
+	}
+}
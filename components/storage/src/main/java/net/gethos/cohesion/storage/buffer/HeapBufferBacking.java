@@ -21,7 +21,11 @@ public class HeapBufferBacking implements BTreeBacking {
 	private final NodeCapacities nodeCapacities;
 	
 	public HeapBufferBacking(int capacity) {
-		this.nodeCapacities = new ByteBufferNodeCapacities(capacity);
+		this(capacity, NodeFormat.DEFAULT);
+	}
+	
+	public HeapBufferBacking(int capacity, NodeFormat format) {
+		this.nodeCapacities = new ByteBufferNodeCapacities(capacity, format);
 		this.storage = new HeapBufferStorage(nodeCapacities);
 	}
 	
@@ -8,13 +8,13 @@ package net.gethos.cohesion.storage.buffer;
 import java.io.PrintStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
+import net.gethos.cohesion.common.LongHashMap;
 import net.gethos.cohesion.storage.backing.BTreeBackingTransaction;
 import net.gethos.cohesion.storage.backing.BTreeNode;
+import net.gethos.cohesion.storage.backing.OffsetAllocator;
 
 /**
  * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
@@ -24,8 +24,8 @@ public class HeapBufferStorage {
 	
 	protected static final ByteOrder NETWORK_ORDER = ByteOrder.BIG_ENDIAN;
 	
-	private final Map<Long, ByteBuffer> buffers;
-	private long freeOffsetHint;
+	private final LongHashMap<ByteBuffer> buffers;
+	private final OffsetAllocator offsets;
 	
 	/**
 	 * This holds the depth of the leaf nodes, where the depth of the root == 0.
@@ -39,12 +39,26 @@ public class HeapBufferStorage {
 	
 	private final NodeCapacities nodeCapacities;
 	
+	/**
+	 * Source of off-heap buffers, or null if the buffers are allocated in the heap.
+	 */
+	private final SlabArena arena;
+	
 	public HeapBufferStorage(NodeCapacities nodeCapacities) {
+		this(nodeCapacities, null);
+	}
+	
+	/**
+	 * @param nodeCapacities
+	 * @param arena - if not null, then all buffers are allocated from the arena, which is closed along with this storage
+	 */
+	public HeapBufferStorage(NodeCapacities nodeCapacities, SlabArena arena) {
 		this.nodeCapacities = nodeCapacities;
-		this.buffers = new HashMap<Long, ByteBuffer>();
+		this.arena = arena;
+		this.buffers = new LongHashMap<ByteBuffer>();
 		this.depth = 0;
 		this.root = 0;
-		this.freeOffsetHint = 0;
+		this.offsets = new OffsetAllocator(0, 1);
 		
 		initialise();
 	}
@@ -86,13 +100,47 @@ public class HeapBufferStorage {
 		this.root = root;
 	}
 
+	/**
+	 * Release the buffers held by the storage.
+	 * <p>
+	 * If the buffers were allocated off-heap, then their memory is released and the storage may no longer be used.
+	 */
+	public void close() {
+		if (arena != null) {
+			buffers.clear();
+			arena.close();
+		}
+	}
+	
+	private void checkOpen() {
+		if (arena != null && arena.isClosed()) throw new IllegalStateException("The storage has been closed.");
+	}
+
 	public void record(long offset, BTreeNode n) {
-		ByteBuffer b = buffers.put(offset, ((BufferNode)n).buffer);
-		assert(b != null); // we should only record buffers that where previously retrieved.
-		// Note, however, that the exact buffer may be swapped out in the node, hence we still need to put it back again.
+		checkOpen();
+		ByteBuffer updated = ((BufferNode)n).buffer;
+		if (arena == null) {
+			ByteBuffer b = buffers.put(offset, updated);
+			assert(b != null); // we should only record buffers that where previously retrieved.
+			// Note, however, that the exact buffer may be swapped out in the node, hence we still need to put it back again.
+		} else {
+			ByteBuffer b = buffers.get(offset);
+			assert(b != null); // we should only record buffers that where previously retrieved.
+			if (b != updated) {
+				// the node has switched to a heap buffer, so copy its contents back into the arena
+				assert(b.capacity() == updated.capacity());
+				b.clear();
+				ByteBuffer src = updated.duplicate();
+				src.clear();
+				b.put(src);
+				b.clear();
+				((BufferNode)n).swb(b);
+			}
+		}
 	}
 
 	public BTreeNode retrieve(long offset) {
+		checkOpen();
 		ByteBuffer n = buffers.get(offset);
 		return BufferNode.wrap(n);
 	}
@@ -107,7 +155,7 @@ public class HeapBufferStorage {
 		long l = allocBuffer(nodeCapacities.innerCapacity());
 		if (l == BTreeBackingTransaction.ALLOC_FAILED) return l;
 		ByteBuffer n = buffers.get(l);
-		BufferNode.initialiseIndex(n);
+		BufferNode.initialiseIndex(n, nodeCapacities.format());
 		return l;
 	}
 
@@ -115,25 +163,23 @@ public class HeapBufferStorage {
 		long l = allocBuffer(nodeCapacities.leafCapacity());
 		if (l == BTreeBackingTransaction.ALLOC_FAILED) return l;
 		ByteBuffer n = buffers.get(l);
-		BufferNode.initialiseLeaf(n);
+		BufferNode.initialiseLeaf(n, nodeCapacities.format());
 		return l;
 	}
 	
 	private long allocBuffer(int bufferCapacity) {
-		ByteBuffer n = ByteBuffer.allocate(bufferCapacity);
-		n.order(NETWORK_ORDER);
-		long l;
-		int wrap = 0;
-		for (l = freeOffsetHint; buffers.containsKey(l); l++) {
-			if (l == Long.MAX_VALUE) {
-				// loop back to beginning and search from 0
-				l = -1;
-				wrap++;
-				if (wrap >= 2) return BTreeBackingTransaction.ALLOC_FAILED;
-			}
+		checkOpen();
+		long l = offsets.alloc();
+		if (l == BTreeBackingTransaction.ALLOC_FAILED) return l;
+		ByteBuffer n;
+		if (arena == null) {
+			n = ByteBuffer.allocate(bufferCapacity);
+			n.order(NETWORK_ORDER);
+		} else {
+			n = arena.allocate(bufferCapacity);
 		}
-		buffers.put(l, n);
-		freeOffsetHint = l+1;
+		ByteBuffer existing = buffers.put(l, n);
+		assert(existing == null);
 		return l;
 	}
 
@@ -142,11 +188,13 @@ public class HeapBufferStorage {
 	}
 	
 	public long free(long offset, long length) {
+		checkOpen();
 		ByteBuffer n = buffers.remove(offset);
 		if (n == null) {
 			return -1;
 		} else {
-			freeOffsetHint = offset;
+			offsets.free(offset);
+			if (arena != null) arena.release(n);
 			int l = n.capacity();
 			if (length >= 0) assert(length == l);
 			return l;
@@ -159,6 +207,7 @@ public class HeapBufferStorage {
 	}
 
 	public long read(long offset, long objectOffset, ByteBuffer buffer) {
+		checkOpen();
 		ByteBuffer n = buffers.get(offset);
 		if (n == null) return 0;
 		if (objectOffset > n.capacity()) return 0;
@@ -172,6 +221,7 @@ public class HeapBufferStorage {
 	}
 	
 	public long write(long offset, long objectOffset, ByteBuffer buffer) {
+		checkOpen();
 		ByteBuffer n = buffers.get(offset);
 		if (n == null) return 0;
 		if (objectOffset > n.capacity()) return 0;
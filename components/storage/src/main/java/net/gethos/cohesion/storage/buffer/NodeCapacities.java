@@ -21,4 +21,9 @@ public interface NodeCapacities {
 
 	public int capacity(boolean isLeaf);
 
+	/**
+	 * @return the format used when creating new nodes
+	 */
+	public NodeFormat format();
+
 }
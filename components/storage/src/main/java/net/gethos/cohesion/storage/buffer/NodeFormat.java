@@ -0,0 +1,109 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage.buffer;
+
+/**
+ * Options that select the layout used when creating new nodes.
+ * <p>
+ * The choice is recorded in the header of each node, so nodes that were
+ * created with differing options can be mixed within a single tree, and
+ * trees written before an option existed remain readable.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public final class NodeFormat {
+
+	public static final NodeFormat DEFAULT = new NodeFormat(false, false, 0, false);
+
+	private final boolean prefixCompressedLeaves;
+	private final boolean truncatedSeparators;
+	private final int compactChildUnit;
+	private final boolean interpolationSearch;
+
+	private NodeFormat(boolean prefixCompressedLeaves, boolean truncatedSeparators, int compactChildUnit, boolean interpolationSearch) {
+		if (compactChildUnit < 0 || Integer.bitCount(compactChildUnit) > 1) throw new IllegalArgumentException("The child unit must be zero or a power of two: " + compactChildUnit);
+		this.prefixCompressedLeaves = prefixCompressedLeaves;
+		this.truncatedSeparators = truncatedSeparators;
+		this.compactChildUnit = compactChildUnit;
+		this.interpolationSearch = interpolationSearch;
+	}
+
+	/**
+	 * @return true if leaf keys are stored relative to a prefix shared by all keys in the leaf
+	 */
+	public boolean prefixCompressedLeaves() {
+		return prefixCompressedLeaves;
+	}
+
+	/**
+	 * @return true if index nodes store variable length separators rather than complete keys
+	 */
+	public boolean truncatedSeparators() {
+		return truncatedSeparators;
+	}
+
+	/**
+	 * @return true if index nodes store child references as 32-bit multiples of {@link #compactChildUnit()}
+	 */
+	public boolean compactChildren() {
+		return compactChildUnit > 0;
+	}
+
+	/**
+	 * @return the granularity of compact child references, or zero if child references are not compacted
+	 */
+	public int compactChildUnit() {
+		return compactChildUnit;
+	}
+
+	/**
+	 * @return true if nodes are searched by interpolating on the <code>idHigh</code> part of the key
+	 */
+	public boolean interpolationSearch() {
+		return interpolationSearch;
+	}
+
+	public NodeFormat withPrefixCompressedLeaves(boolean enable) {
+		return new NodeFormat(enable, truncatedSeparators, compactChildUnit, interpolationSearch);
+	}
+
+	public NodeFormat withTruncatedSeparators(boolean enable) {
+		return new NodeFormat(prefixCompressedLeaves, enable, compactChildUnit, interpolationSearch);
+	}
+
+	/**
+	 * Store index node child references as 32-bit page numbers.
+	 * <p>
+	 * Each index node holds its children relative to a base of its own, so that the
+	 * saving goes to additional items in each node. A child that is not a multiple of
+	 * the unit from the base causes the node to re-encode its children at a finer
+	 * granularity, and only children that then span beyond the range of 32-bit values
+	 * cause the affected node to revert to full 64-bit references.
+	 *
+	 * @param unit - the page size (a power of two), or zero to store full 64-bit references
+	 */
+	public NodeFormat withCompactChildren(int unit) {
+		return new NodeFormat(prefixCompressedLeaves, truncatedSeparators, unit, interpolationSearch);
+	}
+
+	/**
+	 * Search nodes by estimating the position of a key from its <code>idHigh</code> value.
+	 * <p>
+	 * This suits trees keyed by uniformly distributed ids (e.g. SHA1 hashes), and reverts
+	 * to a binary search within nodes where the keys turn out to be skewed. Nodes that do
+	 * not hold complete keys (e.g. prefix compressed leaves) are always searched by bisection.
+	 */
+	public NodeFormat withInterpolationSearch(boolean enable) {
+		return new NodeFormat(prefixCompressedLeaves, truncatedSeparators, compactChildUnit, enable);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("NodeFormat[prefixCompressedLeaves=%s,truncatedSeparators=%s,compactChildUnit=%d,interpolationSearch=%s]", prefixCompressedLeaves, truncatedSeparators, compactChildUnit, interpolationSearch);
+	}
+
+}
@@ -0,0 +1,64 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage.buffer;
+
+import java.io.PrintStream;
+
+import net.gethos.cohesion.storage.backing.BTreeBacking;
+import net.gethos.cohesion.storage.backing.BTreeBackingTransaction;
+import net.gethos.cohesion.storage.backing.ReadOnlyBTreeBackingTransaction;
+
+/**
+ * A backing that holds the tree nodes in memory, but outside of the heap.
+ * <p>
+ * The node buffers are carved from direct slabs (see {@link SlabArena}), so large trees do not add to
+ * the heap that is managed by the garbage collector. All of the memory is released by {@link #close()},
+ * after which the backing, and any transactions that are still open, may no longer be used.
+ * 
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class OffHeapBufferBacking implements BTreeBacking {
+
+	private final HeapBufferStorage storage;
+	private final NodeCapacities nodeCapacities;
+	
+	public OffHeapBufferBacking(int capacity) {
+		this(capacity, NodeFormat.DEFAULT);
+	}
+	
+	public OffHeapBufferBacking(int capacity, NodeFormat format) {
+		this(capacity, format, SlabArena.DEFAULT_SLAB_SIZE);
+	}
+	
+	public OffHeapBufferBacking(int capacity, NodeFormat format, int slabSize) {
+		this.nodeCapacities = new ByteBufferNodeCapacities(capacity, format);
+		this.storage = new HeapBufferStorage(nodeCapacities, new SlabArena(slabSize));
+	}
+	
+	@Override
+	public void close() {
+		storage.close();
+	}
+	
+	@Override
+	public BTreeBackingTransaction open() {
+		return new HeapBufferBackingTransaction(storage, nodeCapacities);
+	}
+	
+	@Override
+	public ReadOnlyBTreeBackingTransaction openReadOnly() {
+		return new HeapBufferBackingTransaction(storage, nodeCapacities);
+	}
+
+	/**
+	 * @param out
+	 */
+	public void dump(PrintStream out) {
+		storage.dump(out);
+	}
+
+}
@@ -0,0 +1,166 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.gethos.cohesion.common.DirectBuffers;
+import net.gethos.cohesion.storage.StorageConstants;
+
+/**
+ * Hands out buffers that are carved from large direct (off-heap) slabs.
+ * <p>
+ * Each distinct buffer size is served from its own slabs, which are divided into slots of exactly
+ * that size, and released slots are kept on a free list for reuse. Since a tree only uses a couple
+ * of node sizes, this keeps the native memory packed while keeping the node data out of the heap.
+ * Requests that are larger than a slab are given a dedicated direct buffer, which is released as
+ * soon as the buffer is returned.
+ * <p>
+ * All of the native memory is released when the arena is closed, at which point none of the
+ * buffers handed out may be used any longer.
+ * <p>
+ * The arena is not thread safe.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ */
+public class SlabArena {
+
+	public static final int DEFAULT_SLAB_SIZE = 1 << 20;
+
+	private static final byte[] ZEROS = new byte[4096];
+
+	private final int slabSize;
+	private final Map<Integer, SizeClass> classes;
+	private final List<ByteBuffer> slabs;
+	private final Map<ByteBuffer, Boolean> large;
+
+	private long reserved;
+	private boolean closed;
+
+	public SlabArena() {
+		this(DEFAULT_SLAB_SIZE);
+	}
+
+	public SlabArena(int slabSize) {
+		if (slabSize <= 0) throw new IllegalArgumentException("The slab size must be positive.");
+		this.slabSize = slabSize;
+		this.classes = new HashMap<Integer, SizeClass>();
+		this.slabs = new ArrayList<ByteBuffer>();
+		this.large = new IdentityHashMap<ByteBuffer, Boolean>();
+		this.reserved = 0;
+		this.closed = false;
+	}
+
+	private class SizeClass {
+		final int size;
+		final Deque<ByteBuffer> free;
+		ByteBuffer slab;
+
+		SizeClass(int size) {
+			this.size = size;
+			this.free = new ArrayDeque<ByteBuffer>();
+			this.slab = null;
+		}
+
+		ByteBuffer take() {
+			ByteBuffer b = free.pollFirst();
+			if (b != null) return b;
+
+			if (slab == null || slab.remaining() < size) {
+				int slots = Math.max(1, slabSize / size);
+				slab = ByteBuffer.allocateDirect(slots * size);
+				slabs.add(slab);
+				reserved += slab.capacity();
+			}
+			slab.limit(slab.position() + size);
+			b = slab.slice();
+			slab.position(slab.limit());
+			slab.limit(slab.capacity());
+			return b;
+		}
+	}
+
+	/**
+	 * Allocate a zeroed buffer of exactly <code>size</code> bytes, in network order.
+	 */
+	public ByteBuffer allocate(int size) {
+		if (closed) throw new IllegalStateException("The arena has been closed.");
+		if (size < 0) throw new IllegalArgumentException("The size must not be negative.");
+
+		ByteBuffer b;
+		if (size > slabSize || size == 0) {
+			b = ByteBuffer.allocateDirect(size);
+			large.put(b, Boolean.TRUE);
+			reserved += size;
+		} else {
+			SizeClass c = classes.get(size);
+			if (c == null) {
+				c = new SizeClass(size);
+				classes.put(size, c);
+			}
+			b = c.take();
+			zero(b);
+		}
+		b.clear();
+		b.order(StorageConstants.NETWORK_ORDER);
+		return b;
+	}
+
+	/**
+	 * Return a buffer to the arena so that its space may be reused.
+	 * <p>
+	 * The buffer must have been allocated by this arena and must not be used again.
+	 */
+	public void release(ByteBuffer b) {
+		if (closed) return;
+		if (large.remove(b) != null) {
+			reserved -= b.capacity();
+			DirectBuffers.release(b);
+			return;
+		}
+		SizeClass c = classes.get(b.capacity());
+		if (c == null) throw new IllegalArgumentException("The buffer was not allocated from this arena.");
+		c.free.addFirst(b);
+	}
+
+	/**
+	 * @return the number of bytes of native memory held by the arena
+	 */
+	public long reserved() {
+		return reserved;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Release all of the native memory held by the arena.
+	 */
+	public void close() {
+		if (closed) return;
+		closed = true;
+		classes.clear();
+		for (ByteBuffer b : slabs) DirectBuffers.release(b);
+		slabs.clear();
+		for (ByteBuffer b : large.keySet()) DirectBuffers.release(b);
+		large.clear();
+		reserved = 0;
+	}
+
+	private static void zero(ByteBuffer b) {
+		b.clear();
+		while (b.hasRemaining()) b.put(ZEROS, 0, Math.min(ZEROS.length, b.remaining()));
+		b.clear();
+	}
+}
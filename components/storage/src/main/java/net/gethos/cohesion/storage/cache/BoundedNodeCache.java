@@ -5,10 +5,19 @@
  */
 package net.gethos.cohesion.storage.cache;
 
+import net.gethos.cohesion.common.LongHashMap;
+import net.gethos.cohesion.storage.buffer.BufferIndexNode;
 import net.gethos.cohesion.storage.buffer.BufferRegion;
 
 /**
  * Simple LRU bounded node cache
+ * <p>
+ * The cache is keyed by primitive offsets and keeps its own recency list, so that
+ * a cache hit does not allocate.
+ * <p>
+ * Optionally, index nodes are decoded into primitive arrays when they enter the cache
+ * so that repeated descents through the upper levels of the tree search the decoded
+ * keys rather than the node buffer. The decoded view is dropped on invalidation.
  * 
  * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
  *
@@ -17,11 +26,36 @@ public class BoundedNodeCache implements RegionCache<BufferRegion> {
 	
 	private static final int DEFAULT_INITIAL_SIZE = 16;
 	private static final int DEFAULT_MAX_SIZE = 2000;
-		
-	private final LRUCache<Long, BufferRegion> unmodifiedNodes;
+	private static final boolean DEFAULT_DECODE_INDEX_NODES = true;
+	
+	/**
+	 * An entry in the recency list, most recently used first.
+	 */
+	private static final class Slot {
+		long offset;
+		BufferRegion region;
+		Slot prev;
+		Slot next;
+	}
+	
+	// keyed by primitive offset, so that cache hits neither box the offset nor allocate
+	private final LongHashMap<Slot> unmodifiedNodes;
+	private final int maxSize;
+	private final boolean decodeIndexNodes;
+	
+	private Slot head;
+	private Slot tail;
+	
+	public BoundedNodeCache(int initialSize, int maxSize, boolean decodeIndexNodes) {
+		this.unmodifiedNodes = new LongHashMap<Slot>(initialSize);
+		this.maxSize = maxSize;
+		this.decodeIndexNodes = decodeIndexNodes;
+		this.head = null;
+		this.tail = null;
+	}
 	
 	public BoundedNodeCache(int initialSize, int maxSize) {
-		this.unmodifiedNodes = new LRUCache<Long, BufferRegion>(initialSize, maxSize);
+		this(initialSize, maxSize, DEFAULT_DECODE_INDEX_NODES);
 	}
 	
 	public BoundedNodeCache() {
@@ -30,22 +64,78 @@ public class BoundedNodeCache implements RegionCache<BufferRegion> {
 	
 	@Override
 	public BufferRegion get(long offset) {
-		return unmodifiedNodes.get(offset);
+		Slot s = unmodifiedNodes.get(offset);
+		if (s == null) return null;
+		if (s != head) {
+			unlink(s);
+			link(s);
+		}
+		return s.region;
 	}
 	
 	@Override
 	public BufferRegion cache(long offset, BufferRegion n) {
-		return unmodifiedNodes.put(offset, n);
+		if (decodeIndexNodes && n instanceof BufferIndexNode) ((BufferIndexNode)n).decode();
+		Slot s = unmodifiedNodes.get(offset);
+		BufferRegion old = null;
+		if (s != null) {
+			old = s.region;
+			unlink(s);
+		} else if (unmodifiedNodes.size() >= maxSize && tail != null) {
+			// evict the least recently used node and reuse its slot
+			s = tail;
+			unlink(s);
+			unmodifiedNodes.remove(s.offset);
+			discard(s.region);
+		} else {
+			s = new Slot();
+		}
+		s.offset = offset;
+		s.region = n;
+		link(s);
+		unmodifiedNodes.put(offset, s);
+		if (old != n) discard(old);
+		return old;
 	}
 
 	@Override
 	public boolean invalidate(long offset) {
-		return unmodifiedNodes.remove(offset) == null ? false : true;
+		Slot s = unmodifiedNodes.remove(offset);
+		if (s == null) return false;
+		unlink(s);
+		discard(s.region);
+		return true;
 	}
 
 	@Override
 	public void clear() {
+		for (Slot s = head; s != null; s = s.next) discard(s.region);
 		unmodifiedNodes.clear();
+		head = null;
+		tail = null;
+	}
+	
+	private void link(Slot s) {
+		s.prev = null;
+		s.next = head;
+		if (head != null) head.prev = s;
+		head = s;
+		if (tail == null) tail = s;
+	}
+	
+	private void unlink(Slot s) {
+		if (s.prev != null) s.prev.next = s.next;
+		else head = s.next;
+		if (s.next != null) s.next.prev = s.prev;
+		else tail = s.prev;
+		s.prev = null;
+		s.next = null;
+	}
+	
+	private static void discard(BufferRegion n) {
+		if (n instanceof BufferIndexNode) ((BufferIndexNode)n).discardDecoded();
+		// the node may still be in use by open transactions, so its buffer is only retired
+		if (n != null) n.retire();
 	}
 	
 }
@@ -5,9 +5,7 @@
  */
 package net.gethos.cohesion.storage.cache;
 
-import java.util.HashMap;
-import java.util.Map;
-
+import net.gethos.cohesion.common.LongHashMap;
 import net.gethos.cohesion.storage.buffer.BufferNode;
 
 /**
@@ -18,10 +16,10 @@ import net.gethos.cohesion.storage.buffer.BufferNode;
  */
 public class UnboundedNodeCache implements RegionCache<BufferNode> {
 		
-	private final Map<Long, BufferNode> unmodifiedNodes;
+	private final LongHashMap<BufferNode> unmodifiedNodes;
 	
 	public UnboundedNodeCache() {
-		this.unmodifiedNodes = new HashMap<Long, BufferNode>();
+		this.unmodifiedNodes = new LongHashMap<BufferNode>();
 	}
 	
 	@Override
@@ -12,8 +12,10 @@ import net.gethos.cohesion.storage.backing.BTreeNode;
 import net.gethos.cohesion.storage.backing.ReadOnlyBTreeBackingTransaction;
 import net.gethos.cohesion.storage.buffer.BufferLeafNode;
 import net.gethos.cohesion.storage.buffer.BufferNode;
+import net.gethos.cohesion.storage.buffer.BufferPool;
 import net.gethos.cohesion.storage.buffer.BufferSuperNode;
 import net.gethos.cohesion.storage.store.ContiguousStore;
+import net.gethos.cohesion.storage.store.ViewableContiguousStore;
 
 /**
  * Provides read-only access to tree data held in a contiguous store.
@@ -38,18 +40,36 @@ public abstract class AbstractReadOnlyContiguousBackingTransaction implements Re
 
 	final ContiguousStore store;
 	
+	/**
+	 * Supplies node buffers, or null if buffers are simply allocated.
+	 */
+	final BufferPool pool;
+	private final long poolTicket;
+	
 	private boolean isOpen;
 	private Integer depth;
 	private Long root;
 	
 	private int nodeFetch;
 	
+	/**
+	 * Reused to pass a single buffer to the store, avoiding a varargs array per read.
+	 */
+	private final ByteBuffer[] single;
+	
 	public AbstractReadOnlyContiguousBackingTransaction(ContiguousStore store) {
+		this(store, null);
+	}
+	
+	public AbstractReadOnlyContiguousBackingTransaction(ContiguousStore store, BufferPool pool) {
 		this.store = store;
+		this.pool = pool;
+		this.poolTicket = pool == null ? 0 : pool.enter();
 		this.depth = null;
 		this.root = null;
 		this.isOpen = true;
 		this.nodeFetch = DEFAULT_NODE_FETCH;
+		this.single = new ByteBuffer[1];
 	}
 	
 	@Override
@@ -70,6 +90,7 @@ public abstract class AbstractReadOnlyContiguousBackingTransaction implements Re
 	public boolean close() {
 		boolean wasOpen = isOpen;
 		isOpen = false;
+		if (wasOpen && pool != null) pool.exit(poolTicket);
 		return wasOpen;
 	}
 
@@ -94,25 +115,44 @@ public abstract class AbstractReadOnlyContiguousBackingTransaction implements Re
 	
 	private void fetchSuper() {
 		if (depth == null || root == null) {
-			ByteBuffer header = ByteBuffer.allocate(BufferSuperNode.SUPER_NODE_SIZE);
+			ByteBuffer header = allocateBuffer(BufferSuperNode.SUPER_NODE_SIZE);
 			store.read(HEADER_OFFSET, header);
 			BufferSuperNode sn = BufferSuperNode.wrap(header);
-			depth = sn.depth();
-			root = sn.root();
+			try {
+				sn.checkFormatVersion();
+				depth = sn.depth();
+				root = sn.root();
+			} finally {
+				releaseBuffer(header);
+			}
 		}
 	}
 	
 	@Override
 	public long read(long offset, long objectOffset, ByteBuffer buffer) {
-		return store.read(offset + objectOffset, buffer);
+		single[0] = buffer;
+		try {
+			return store.read(offset + objectOffset, single);
+		} finally {
+			single[0] = null;
+		}
 	}
 
 	BufferNode fetch(long offset) {
-		ByteBuffer n = ByteBuffer.allocate(nodeFetch);
+		if (store instanceof ViewableContiguousStore) {
+			BufferNode v = view((ViewableContiguousStore)store, offset);
+			if (v != null) return v;
+			// otherwise, copy the node out as usual
+		}
+
+		ByteBuffer n = allocateBuffer(nodeFetch);
 		store.read(offset, n);
 		n.rewind();
 		int c = BufferNode.capacity(n);
-		if (c < MIN_NODE_FETCH) return null;
+		if (c < MIN_NODE_FETCH) {
+			releaseBuffer(n);
+			return null;
+		}
 		
 		// don't make assumptions about the node size, but adjust the fetch size for the next read
 		if (c != n.capacity()) {
@@ -120,20 +160,49 @@ public abstract class AbstractReadOnlyContiguousBackingTransaction implements Re
 				// down-size and copy
 				if (c >= MIN_NODE_FETCH) nodeFetch = c;
 				n.limit(c);
-				ByteBuffer np = ByteBuffer.allocate(c);
+				ByteBuffer np = allocateBuffer(c);
 				np.put(n);
+				releaseBuffer(n);
 				n = np;
 			} else {
 				// re-read with extra
 				if (c <= MAX_NODE_FETCH) nodeFetch = c;
-				n = ByteBuffer.allocate(c);
+				releaseBuffer(n);
+				n = allocateBuffer(c);
 				store.read(offset, n);
 			}
 			
 			n.rewind();
 		}
 		
-		return BufferNode.wrap(n);
+		return pool == null ? BufferNode.wrap(n) : BufferNode.wrap(n, pool);
+	}
+	
+	/**
+	 * Wrap the node in place, without copying it out of the store.
+	 * 
+	 * @return a borrowed view of the node, or null if the node could not be viewed
+	 */
+	private BufferNode view(ViewableContiguousStore vs, long offset) {
+		ByteBuffer n = vs.view(offset, nodeFetch);
+		if (n == null) return null;
+		n.order(StorageConstants.NETWORK_ORDER);
+		int c = BufferNode.capacity(n);
+		if (c < MIN_NODE_FETCH) return null;
+		if (c != n.capacity()) {
+			if (c <= MAX_NODE_FETCH) nodeFetch = c;
+			n = vs.view(offset, c);
+			if (n == null) return null;
+		}
+		return BufferNode.view(n, pool);
+	}
+
+	private ByteBuffer allocateBuffer(int capacity) {
+		return pool == null ? ByteBuffer.allocate(capacity) : pool.acquire(capacity);
+	}
+	
+	private void releaseBuffer(ByteBuffer b) {
+		if (pool != null) pool.release(b);
 	}
 	
 }
@@ -6,9 +6,8 @@
 package net.gethos.cohesion.storage.contiguous;
 
 import java.nio.ByteBuffer;
-import java.util.HashMap;
-import java.util.Map;
 
+import net.gethos.cohesion.common.LongHashMap;
 import net.gethos.cohesion.storage.backing.BTreeBackingTransaction;
 import net.gethos.cohesion.storage.backing.BTreeNode;
 import net.gethos.cohesion.storage.buffer.BufferNode;
@@ -26,19 +25,15 @@ import net.gethos.cohesion.storage.store.ContiguousStore;
  */
 public abstract class AbstractWritableContiguousTransaction extends AbstractWritableRootContiguousTransaction {
 
-	// For performance, it might be better to use sorted arrays below.
-	// This would reduce the allocation overhead, but would require
-	// verifying the performance characteristics. The map could be
-	// implemented by two arrays, one sorted key array and a value
-	// array with element movements shadowing the movements in the
-	// sorted array. Clearly these arrays would be extended if needed.
+	// Note, a primitive map is used so that node lookups do not allocate
+	// boxed offsets or map entries.
 
-	private final Map<Long, BufferRegion> modifiedNodes;
+	private final LongHashMap<BufferRegion> modifiedNodes;
 
 	public AbstractWritableContiguousTransaction(ContiguousStore store, RegionCache<BufferRegion> nodeCache, NodeCapacities nodeCapacities) {
 		super(store, nodeCache, nodeCapacities);
 
-		this.modifiedNodes = new HashMap<Long, BufferRegion>();
+		this.modifiedNodes = new LongHashMap<BufferRegion>();
 	}
 
 	abstract long allocateStorage(long capacity);
@@ -51,11 +46,8 @@ public abstract class AbstractWritableContiguousTransaction extends AbstractWrit
 		// 1. write back all modified nodes into the store
 		// 2. write back update depth & root, if modified, by stamping into the header in the store
 
-		// seal
-		commit_sealModified(modifiedNodes);
-
-		// writing
-		commit_writeModified(modifiedNodes);
+		// seal and write (sealing as the nodes are written, so that it may overlap with the writes)
+		commit_writeModified(modifiedNodes, true);
 
 		// stamp in header if depth or root changed
 		commit_writeRoot();
@@ -81,7 +73,7 @@ public abstract class AbstractWritableContiguousTransaction extends AbstractWrit
 		int c = isLeaf ? nodeCapacities.leafCapacity() : nodeCapacities.innerCapacity();
 		long offset = allocateStorage(c);
 		if (offset == BTreeBackingTransaction.ALLOC_FAILED) return offset;
-		BufferNode n = isLeaf ? BufferNode.allocateLeaf(c) : BufferNode.allocateIndex(c);
+		BufferNode n = BufferNode.allocate(c, isLeaf, nodeCapacities.format());
 		modifiedNodes.put(offset,n);
 
 		return offset;
@@ -6,15 +6,23 @@
 package net.gethos.cohesion.storage.contiguous;
 
 import java.nio.ByteBuffer;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Future;
 
+import net.gethos.cohesion.common.LongHashMap;
+import net.gethos.cohesion.common.LongSortedMap;
 import net.gethos.cohesion.storage.backing.BTreeBackingTransaction;
 import net.gethos.cohesion.storage.backing.BTreeNode;
+import net.gethos.cohesion.storage.buffer.BufferPool;
 import net.gethos.cohesion.storage.buffer.BufferRegion;
 import net.gethos.cohesion.storage.buffer.BufferSuperNode;
 import net.gethos.cohesion.storage.buffer.NodeCapacities;
 import net.gethos.cohesion.storage.cache.RegionCache;
+import net.gethos.cohesion.storage.store.AsyncContiguousStore;
 import net.gethos.cohesion.storage.store.ContiguousStore;
+import net.gethos.cohesion.storage.store.ContiguousStoreAdapter;
 
 /**
  * Implements tracking and updating of root details
@@ -27,6 +35,12 @@ public abstract class AbstractWritableRootContiguousTransaction extends ReadOnly
 
 	public static int PEEK_GUARD = -1;
 
+	/**
+	 * The most nodes written by a single gathering write (the usual limit on the
+	 * number of buffers in a vectored system call).
+	 */
+	static final int MAX_RUN = 1024;
+
 	private Integer depth;
 	private Long root;
 
@@ -39,7 +53,11 @@ public abstract class AbstractWritableRootContiguousTransaction extends ReadOnly
 	final RegionCache<BufferRegion> nodeCache;
 
 	public AbstractWritableRootContiguousTransaction(ContiguousStore store, RegionCache<BufferRegion> nodeCache, NodeCapacities nodeCapacities) {
-		super(store, nodeCache);
+		this(store, nodeCache, nodeCapacities, null);
+	}
+
+	public AbstractWritableRootContiguousTransaction(ContiguousStore store, RegionCache<BufferRegion> nodeCache, NodeCapacities nodeCapacities, BufferPool pool) {
+		super(store, nodeCache, pool);
 
 		this.nodeCapacities = nodeCapacities;
 		this.nodeCache = nodeCache;
@@ -85,32 +103,79 @@ public abstract class AbstractWritableRootContiguousTransaction extends ReadOnly
 		return super.commit();
 	}
 
-	void commit_sealModified(Map<Long, BufferRegion> modifiedNodes) {
-		for (BufferRegion r : modifiedNodes.values()) r.seal();
+	void commit_sealModified(LongHashMap<BufferRegion> modifiedNodes) {
+		for (LongHashMap.Cursor<BufferRegion> x = modifiedNodes.cursor(); x.advance();) x.value().seal();
 	}
 
-	void commit_writeModified(Map<Long, BufferRegion> modifiedNodes) {
-		for(Map.Entry<Long, BufferRegion> x : modifiedNodes.entrySet()) {
-			long offset = x.getKey();
-			assert(offset>=0);
-			BufferRegion n = x.getValue();
-			ByteBuffer b = n.buffer();
-			b.rewind();
-			store.write(offset,b);
+	void commit_writeModified(LongHashMap<BufferRegion> modifiedNodes) {
+		commit_writeModified(modifiedNodes, false);
+	}
+
+	/**
+	 * Write out the modified nodes.
+	 * <p>
+	 * Physically adjacent nodes are written as a single run, via a gathering write, so that
+	 * the commit becomes a few sequential writes rather than a write per node. If the store
+	 * is asynchronous, the runs are all put in flight before waiting for any of them, and any
+	 * sealing of the next run overlaps with the writing of the previous runs.
+	 *
+	 * @param seal - true if each node should be sealed just before it is written
+	 */
+	void commit_writeModified(LongHashMap<BufferRegion> modifiedNodes, boolean seal) {
+		final AsyncContiguousStore async = (store instanceof ContiguousStoreAdapter) ? ((ContiguousStoreAdapter)store).async() : null;
+		final List<Future<Long>> inflight = async == null ? null : new ArrayList<Future<Long>>();
+
+		final long[] offsets = sortedOffsets(modifiedNodes);
+		int i = 0;
+		while (i < offsets.length) {
+			assert(offsets[i]>=0);
+			int j = i;
+			long next = offsets[i];
+			while (j < offsets.length && offsets[j] == next && j - i < MAX_RUN) {
+				BufferRegion n = modifiedNodes.get(offsets[j]);
+				if (seal) n.seal();
+				ByteBuffer b = n.buffer();
+				b.rewind();
+				next += b.remaining();
+				j++;
+			}
+			ByteBuffer[] run = new ByteBuffer[j - i];
+			for (int k = i; k < j; k++) run[k - i] = modifiedNodes.get(offsets[k]).buffer();
+			if (async == null) store.write(offsets[i], run);
+			else inflight.add(async.write(offsets[i], run));
+			i = j;
+		}
+		if (async != null) {
+			for (Future<Long> f : inflight) ContiguousStoreAdapter.await(f, "Failed to write modified nodes");
+		}
+
+		for (int k = 0; k < offsets.length; k++) {
 			// either we need to invalidate the cache, or simply cache the new version
 			//			nodeCache.cache(offset, n);
-			nodeCache.invalidate(offset);
+			nodeCache.invalidate(offsets[k]);
+			// the node has been written, so a pooled buffer can be reused
+			modifiedNodes.get(offsets[k]).release();
 		}
 		modifiedNodes.clear();
 	}
 
+	private static long[] sortedOffsets(LongHashMap<BufferRegion> modifiedNodes) {
+		if (modifiedNodes instanceof LongSortedMap) return ((LongSortedMap<BufferRegion>)modifiedNodes).sortedKeys();
+		long[] offsets = new long[modifiedNodes.size()];
+		int i = 0;
+		for (LongHashMap.Cursor<BufferRegion> x = modifiedNodes.cursor(); x.advance();) offsets[i++] = x.key();
+		Arrays.sort(offsets);
+		return offsets;
+	}
+
 	BufferSuperNode commit_createRoot() {
 		// stamping
 		if (depthModified || rootModified) {
-			BufferSuperNode sn = BufferSuperNode.allocate();
+			BufferSuperNode sn = pool == null ? BufferSuperNode.allocate() : BufferSuperNode.allocate(pool);
 			sn.buffer().rewind();
 			store.read(HEADER_OFFSET, sn.buffer());
 			sn.stamp(depth,root);
+			sn.stamp(nodeCapacities.format());
 			sn.seal();
 			sn.buffer().rewind();
 			superSync = true;
@@ -123,7 +188,10 @@ public abstract class AbstractWritableRootContiguousTransaction extends ReadOnly
 	void commit_writeRoot() {
 		// stamping
 		BufferSuperNode sn = commit_createRoot();
-		if (sn != null) store.write(HEADER_OFFSET,sn.buffer());
+		if (sn != null) {
+			store.write(HEADER_OFFSET,sn.buffer());
+			sn.release();
+		}
 	}
 
 	@Override
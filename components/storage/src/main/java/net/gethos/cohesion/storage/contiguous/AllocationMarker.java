@@ -315,6 +315,7 @@ public /* TODO remove public */ enum AllocationMarker {
 		BTree.Key a0 = AllocationMarker.ALLOCATED.key(allocateStart);
 		BTree.Key f0 = AllocationMarker.FREE.key(freeStart);
 		r.writeRight(leaf);
+		l.rightSibling(BTreeLeafNode.NO_RIGHT_SIBLING);
 		l.realloc(a0, ALLOCATION_DATA_SIZE);
 		l.realloc(f0, ALLOCATION_DATA_SIZE);
 
@@ -7,6 +7,7 @@ package net.gethos.cohesion.storage.contiguous;
 
 import net.gethos.cohesion.storage.StorageConstants;
 import net.gethos.cohesion.storage.buffer.NodeCapacities;
+import net.gethos.cohesion.storage.buffer.NodeFormat;
 
 /**
  * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
@@ -14,6 +15,16 @@ import net.gethos.cohesion.storage.buffer.NodeCapacities;
  */
 public class RandomAccessNodeCapacities implements NodeCapacities {
 	
+	private final NodeFormat format;
+	
+	public RandomAccessNodeCapacities() {
+		this(NodeFormat.DEFAULT);
+	}
+	
+	public RandomAccessNodeCapacities(NodeFormat format) {
+		this.format = format;
+	}
+	
 	@Override
 	public int innerCapacity() {
 		return StorageConstants.DEFAULT_NODE_CAPACITY;
@@ -28,5 +39,10 @@ public class RandomAccessNodeCapacities implements NodeCapacities {
 	public int capacity(boolean isLeaf) {
 		return StorageConstants.DEFAULT_NODE_CAPACITY;
 	}
+
+	@Override
+	public NodeFormat format() {
+		return format;
+	}
 	
 }
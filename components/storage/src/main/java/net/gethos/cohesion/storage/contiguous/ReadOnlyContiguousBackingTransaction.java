@@ -7,6 +7,7 @@ package net.gethos.cohesion.storage.contiguous;
 
 import net.gethos.cohesion.storage.backing.BTreeNode;
 import net.gethos.cohesion.storage.backing.ReadOnlyBTreeBackingTransaction;
+import net.gethos.cohesion.storage.buffer.BufferPool;
 import net.gethos.cohesion.storage.buffer.BufferRegion;
 import net.gethos.cohesion.storage.cache.RegionCache;
 import net.gethos.cohesion.storage.store.ContiguousStore;
@@ -22,7 +23,11 @@ public class ReadOnlyContiguousBackingTransaction extends AbstractReadOnlyContig
 	private final RegionCache<BufferRegion> unmodifiedNodes;
 
 	public ReadOnlyContiguousBackingTransaction(ContiguousStore store, RegionCache<BufferRegion> nodeCache) {
-		super(store);
+		this(store, nodeCache, null);
+	}
+
+	public ReadOnlyContiguousBackingTransaction(ContiguousStore store, RegionCache<BufferRegion> nodeCache, BufferPool pool) {
+		super(store, pool);
 		this.unmodifiedNodes = nodeCache;
 	}
 
@@ -111,10 +111,18 @@ public class RegionIntegrity<R> implements Integrity<R> {
 			//				System.out.printf("> [%6d:%6d] %s%n", e.getKey(), b.capacity(), HexBuilder.toHex(b.array()));
 			//			}
 
-			// collect offsets
-			for (long o : modified.keySet()) {
-				metadata.putLong(o);
+			// collect offsets and regions, in the (stable) iteration order of the map
+			final long[] offsets = new long[count];
+			final int[] lengths = new int[count];
+			final ByteBuffer[] sources = new ByteBuffer[count + 1];
+			int k = 0;
+			for (Map.Entry<Long, R> e : modified.entrySet()) {
+				offsets[k] = e.getKey();
+				metadata.putLong(offsets[k]);
+				sources[k] = accessor.buffer(e.getValue());
+				k++;
 			}
+			assert(k == count);
 
 			// (note, while it would be tempting to write out the modified data at
 			//  the same time as calculating the hash, that would break the
@@ -124,15 +132,27 @@ public class RegionIntegrity<R> implements Integrity<R> {
 
 			// collect lengths and update modified hash
 			sha1.reset();
-			for (R r : modified.values()) {
-				ByteBuffer b = accessor.buffer(r);
+			int uncached = 0;
+			for (int i = 0; i < count; i++) {
+				ByteBuffer b = sources[i];
 				// collect lengths
 				int len = b.capacity();
 				metadata.putInt(len);
+				lengths[i] = len;
 				rlen += len;
 				// update hash
 				b.rewind();
 				sha1.update(b);
+
+				// check if the region to be modified is currently in the cache
+				ByteBuffer backupSource = null;
+				R cached = cache.get(offsets[i]);
+				if (cached != null) {
+					backupSource = accessor.buffer(cached);
+					if (backupSource.capacity() != len) backupSource = null;
+				}
+				if (backupSource == null) uncached += len;
+				sources[i] = backupSource;
 			}
 			byte[] modifiedHash = sha1.digest();
 
@@ -152,48 +172,38 @@ public class RegionIntegrity<R> implements Integrity<R> {
 			final long start = end - rlen;
 			long rpos = start;
 
-			// record backup copy of regions and update recovery hash
-			sha1.reset();
-			ByteBuffer scratch = null;
-			assert(count == modified.size());
-			for (Map.Entry<Long, R> e : modified.entrySet()) {
-				final long offset = e.getKey();
-				final int len = accessor.buffer(e.getValue()).capacity();
-
-				ByteBuffer backupSource = null;
-
-				// check if the region to be modified is currently in the cache
-				R cached = cache.get(offset);
-				if (cached != null) {
-					backupSource = accessor.buffer(cached);
-					if (backupSource.capacity() != len) backupSource = null;
-					else backupSource.rewind();
-					assert(backupSource == null || backupSource.remaining() == len) : String.format("len = %d remaining = %d",len,backupSource.remaining());
-				}
-				// if not cached, then fetch from store
-				if (backupSource == null) {
-					if (scratch == null || scratch.capacity() != len) scratch = ByteBuffer.allocate(len);
-					scratch.clear();
-					while(scratch.hasRemaining()) {
-						long l = store.read(offset+scratch.position(), scratch);
-						if (l < 0) throw new RuntimeIOException(String.format("failed to read to %d",offset));
+			// regions that are not cached are fetched from the store, with physically
+			// adjacent regions fetched by a single scattering read
+			if (uncached > 0) {
+				ByteBuffer scratch = ByteBuffer.allocate(uncached);
+				int i = 0;
+				while (i < count) {
+					if (sources[i] != null) {
+						i++;
+						continue;
 					}
-					scratch.flip();
-					backupSource = scratch;
+					int j = i;
+					long next = offsets[i];
+					while (j < count && sources[j] == null && offsets[j] == next) {
+						scratch.limit(scratch.position() + lengths[j]);
+						sources[j] = scratch.slice();
+						scratch.position(scratch.limit());
+						next += lengths[j];
+						j++;
+					}
+					read(store, offsets[i], sources, i, j - i);
+					i = j;
 				}
-				// update the recovery hash
+			}
+
+			// update the recovery hash
+			sha1.reset();
+			for (int i = 0; i < count; i++) {
+				ByteBuffer backupSource = sources[i];
+				backupSource.rewind();
 				sha1.update(backupSource);
 				backupSource.rewind();
-
-				//				System.out.printf("= [%6d:%6d] (%d) %s%n", offset, len, rpos, HexBuilder.toHex(backupSource.array()));
-
-				// now write out the copy
-				while (backupSource.hasRemaining()) {
-					long l = store.write(rpos, backupSource);
-					if (l < 0) throw new RuntimeIOException(String.format("failed to write to %d",rpos));
-					rpos += l;
-				}
-
+				//				System.out.printf("= [%6d:%6d] (%d) %s%n", offsets[i], backupSource.capacity(), rpos, HexBuilder.toHex(backupSource.array()));
 			}
 
 			//			assert (rpos == end - metadata.capacity()) : String.format("count = %d start = %d end = %d rpos = %d rlen = %d metadata.capacity = %d", count, start, end, rpos, rlen, metadata.capacity());
@@ -216,12 +226,10 @@ public class RegionIntegrity<R> implements Integrity<R> {
 			//System.out.printf("> modified count = %d%n", count);
 			//System.out.printf("> start=%d end=%d tail=%d rlen=%d %n",start,end,tail,rlen);
 
-			// finally record the metadata
-			while (metadata.hasRemaining()) {
-				long l = store.write(rpos, metadata);
-				if (l < 0) throw new RuntimeIOException(String.format("failed to write to %d",rpos));
-				rpos += l;
-			}
+			// finally record the backup copies and the metadata, which are contiguous,
+			// via gathering writes
+			sources[count] = metadata;
+			rpos = write(store, rpos, sources);
 
 			assert (rpos == end) : String.format("count = %d start = %d end = %d rpos = %d rlen = %d metadata.capacity = %d", count, start, end, rpos, rlen, metadata.capacity());
 
@@ -315,6 +323,49 @@ public class RegionIntegrity<R> implements Integrity<R> {
 		}
 	}
 
+	/**
+	 * Fill the buffers with the data found from <code>position</code> onwards.
+	 */
+	private static void read(ContiguousStore store, long position, ByteBuffer[] buffers, int from, int length) {
+		ByteBuffer[] run = (from == 0 && length == buffers.length) ? buffers : Arrays.copyOfRange(buffers, from, from + length);
+		long pos = position;
+		ByteBuffer last = run[run.length - 1];
+		while (last.hasRemaining()) {
+			long l = store.read(pos, run);
+			if (l < 0) throw new RuntimeIOException(String.format("failed to read to %d",pos));
+			pos += l;
+		}
+		for (ByteBuffer b : run) b.flip();
+	}
+
+	/**
+	 * Write out the buffers contiguously from <code>position</code> onwards, via gathering
+	 * writes of at most {@link AbstractWritableRootContiguousTransaction#MAX_RUN} buffers.
+	 *
+	 * @return the position following the data written
+	 */
+	private static long write(ContiguousStore store, long position, ByteBuffer[] buffers) {
+		long pos = position;
+		int i = 0;
+		while (i < buffers.length) {
+			final int j = Math.min(buffers.length, i + AbstractWritableRootContiguousTransaction.MAX_RUN);
+			// (a short write is continued from the first buffer that has not been drained)
+			int k = i;
+			while (k < j) {
+				if (!buffers[k].hasRemaining()) {
+					k++;
+					continue;
+				}
+				ByteBuffer[] run = (k == 0 && j == buffers.length) ? buffers : Arrays.copyOfRange(buffers, k, j);
+				long l = store.write(pos, run);
+				if (l < 0) throw new RuntimeIOException(String.format("failed to write to %d",pos));
+				pos += l;
+			}
+			i = j;
+		}
+		return pos;
+	}
+
 	private static int sizeOfMetadata(int count) {
 		return
 		+ StorageConstants.SIZEOF_INT
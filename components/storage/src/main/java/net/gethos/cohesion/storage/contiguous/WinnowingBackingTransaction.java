@@ -7,19 +7,21 @@ package net.gethos.cohesion.storage.contiguous;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Deque;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.NavigableMap;
-import java.util.TreeMap;
+import java.util.List;
 
+import net.gethos.cohesion.common.LongHashMap;
+import net.gethos.cohesion.common.LongSortedMap;
 import net.gethos.cohesion.storage.StorageConstants;
 import net.gethos.cohesion.storage.TransactionBTree;
 import net.gethos.cohesion.storage.backing.BTreeBackingTransaction;
 import net.gethos.cohesion.storage.backing.BTreeIndexNode;
+import net.gethos.cohesion.storage.backing.BTreeLeafNode;
 import net.gethos.cohesion.storage.backing.BTreeNode;
 import net.gethos.cohesion.storage.buffer.BufferNode;
+import net.gethos.cohesion.storage.buffer.BufferPool;
 import net.gethos.cohesion.storage.buffer.BufferRegion;
 import net.gethos.cohesion.storage.buffer.BufferSuperNode;
 import net.gethos.cohesion.storage.buffer.NodeCapacities;
@@ -84,17 +86,29 @@ public class WinnowingBackingTransaction extends AbstractWritableRootContiguousT
 	/**
 	 * record backed regions that are removed along with their capacities
 	 */
-	private final Map<Long, Long> removedBackedRegions;
+	private final LongHashMap<Long> removedBackedRegions;
 
 	/**
 	 * record (offsets of) "real" backed nodes that are removed along with their capacities
 	 */
-	private final Map<Long, Integer> removedBackedNodes;
+	private final LongHashMap<Integer> removedBackedNodes;
 
 	/**
 	 * record virtual and backed nodes that have been allocated or modified
 	 */
-	private final NavigableMap<Long, BufferRegion> modifiedNodes;
+	private final LongSortedMap<BufferRegion> modifiedNodes;
+
+	/**
+	 * nodes that were dropped from the modified set, or copy-on-write copies that took a private buffer
+	 * (which may not have been recorded), whose buffers are returned on commit or when the transaction closes
+	 */
+	private final List<BufferRegion> discardedNodes;
+
+	/**
+	 * collects the copy-on-write copies that take a private buffer
+	 * (each copy reports itself once, and copies that are only read are never reported)
+	 */
+	private final BufferRegion.OwnershipListener ownedNodes;
 
 	/**
 	 * manages the crash recovery integrity.
@@ -102,11 +116,22 @@ public class WinnowingBackingTransaction extends AbstractWritableRootContiguousT
 	private final Integrity<BufferRegion> integrity;
 
 	public WinnowingBackingTransaction(ContiguousStore store, RegionCache<BufferRegion> nodeCache, NodeCapacities nodeCapacities, boolean enableIntegrity) {
-		super(store, nodeCache, nodeCapacities);
+		this(store, nodeCache, nodeCapacities, enableIntegrity, null);
+	}
 
-		this.removedBackedRegions = new HashMap<Long, Long>(0);
-		this.removedBackedNodes = new HashMap<Long,Integer>();
-		this.modifiedNodes = new TreeMap<Long, BufferRegion>();
+	public WinnowingBackingTransaction(ContiguousStore store, RegionCache<BufferRegion> nodeCache, NodeCapacities nodeCapacities, boolean enableIntegrity, BufferPool pool) {
+		super(store, nodeCache, nodeCapacities, pool);
+
+		this.removedBackedRegions = new LongHashMap<Long>(0);
+		this.removedBackedNodes = new LongHashMap<Integer>();
+		this.modifiedNodes = new LongSortedMap<BufferRegion>();
+		this.discardedNodes = new ArrayList<BufferRegion>();
+		this.ownedNodes = new BufferRegion.OwnershipListener() {
+			@Override
+			public void owned(BufferRegion region) {
+				discardedNodes.add(region);
+			}
+		};
 		this.integrity = enableIntegrity ? new WinnowingIntegrity(this) : new NopIntegrity<BufferRegion>();
 	}
 
@@ -220,7 +245,7 @@ public class WinnowingBackingTransaction extends AbstractWritableRootContiguousT
 		assert(commit_totalChunkLength(chunks) == commit_totalVirtualLength());
 
 		// create remapping by assigning chunks to virtual nodes
-		final Map<Long,Long> remapping = commit_createRemapping(chunks);
+		final LongHashMap<Long> remapping = commit_createRemapping(chunks);
 		if (remapping == null) return false;
 
 		// relocate tree references to modified nodes according to node remapping
@@ -240,11 +265,13 @@ public class WinnowingBackingTransaction extends AbstractWritableRootContiguousT
 			// phase 1: record a recovery backup
 			integrity.backup(store, nodeCache, modifiedNodes);
 
-			// perform a write of all modified regions into the backing store
-			// Note, when writing out copy of modified data consider tying through to a vectored IO using GatheringByteChannel
+			// perform a write of all modified regions into the backing store (gathering adjacent regions into single writes)
 			commit_writeModified();
 		}
 
+		// the remaining copies are no longer needed, so return their buffers
+		commit_releaseDiscarded();
+
 		try {
 			return super.commit();
 		} finally {
@@ -258,12 +285,13 @@ public class WinnowingBackingTransaction extends AbstractWritableRootContiguousT
 		commit_sealModified(modifiedNodes);
 	}
 
-	private Map<Long, Long> commit_createRemapping(Deque<Range> chunks) {
-		final Map<Long,Long> remapping = new HashMap<Long, Long>();
-		for (Map.Entry<Long, BufferRegion> v : modifiedNodes.headMap(0L).entrySet()) {
-			final long vkey = v.getKey();
-			if (vkey >= 0L) continue;
-			final int len = v.getValue().buffer().capacity();
+	private LongHashMap<Long> commit_createRemapping(Deque<Range> chunks) {
+		final LongHashMap<Long> remapping = new LongHashMap<Long>();
+		// (virtual nodes have negative offsets and so sort first)
+		for (LongHashMap.Cursor<BufferRegion> v = modifiedNodes.cursor(); v.advance();) {
+			final long vkey = v.key();
+			if (vkey >= 0L) break;
+			final int len = v.value().buffer().capacity();
 
 			Range r = null;
 			while (r == null) {
@@ -276,7 +304,7 @@ public class WinnowingBackingTransaction extends AbstractWritableRootContiguousT
 			}
 
 			if (r.length < len) return null; // a chunk that would not be totally filled
-			remapping.put(vkey, r.offset);
+			remapping.put(vkey, Long.valueOf(r.offset));
 			r.offset += len;
 			r.length -= len;
 			assert(r.length >= 0);
@@ -292,10 +320,10 @@ public class WinnowingBackingTransaction extends AbstractWritableRootContiguousT
 
 	private long commit_totalVirtualLength() {
 		long length = 0;
-		for (Map.Entry<Long, BufferRegion> v : modifiedNodes.headMap(0L).entrySet()) {
-			if (v.getKey() >= 0L) continue;
+		for (LongHashMap.Cursor<BufferRegion> v = modifiedNodes.cursor(); v.advance();) {
+			if (v.key() >= 0L) break;
 			// sum up virtual node capacities
-			length += v.getValue().buffer().capacity();
+			length += v.value().buffer().capacity();
 		}
 		return length;
 	}
@@ -304,6 +332,11 @@ public class WinnowingBackingTransaction extends AbstractWritableRootContiguousT
 		commit_writeModified(modifiedNodes);
 	}
 
+	private void commit_releaseDiscarded() {
+		for (BufferRegion n : discardedNodes) n.release();
+		discardedNodes.clear();
+	}
+
 	private Range commit_allocateChunk(boolean tailOnly, long length) {
 		TransactionBTree bt = new TransactionBTree(this);
 		Range r = tailOnly ? AllocationMarker.findTail(bt) : AllocationMarker.findFree(bt, 0, length);
@@ -326,14 +359,14 @@ public class WinnowingBackingTransaction extends AbstractWritableRootContiguousT
 		// perform allocation tree updates
 		TransactionBTree bt = new TransactionBTree(this);
 		// be careful to make a copy so as not to trigger a concurrent modification to removedBackedNodes
-		Map<Long, Integer> removing = new HashMap<Long, Integer>(removedBackedNodes);
-		for (Map.Entry<Long, Integer> r : removing.entrySet()) {
-			boolean ok = AllocationMarker.freeRange(bt, r.getKey(), r.getValue());
+		LongHashMap<Integer> removing = new LongHashMap<Integer>(removedBackedNodes);
+		for (LongHashMap.Cursor<Integer> r = removing.cursor(); r.advance();) {
+			boolean ok = AllocationMarker.freeRange(bt, r.key(), r.value());
 			if (!ok) return false;
 		}
 
 		// clear handled removals
-		for (long offset : removing.keySet()) removedBackedNodes.remove(offset);
+		for (LongHashMap.Cursor<Integer> r = removing.cursor(); r.advance();) removedBackedNodes.remove(r.key());
 
 		return true;
 	}
@@ -341,8 +374,8 @@ public class WinnowingBackingTransaction extends AbstractWritableRootContiguousT
 	private boolean commit_freeRemovedRawRegions() {
 		if (!removedBackedRegions.isEmpty()) {
 			TransactionBTree bt = new TransactionBTree(this);
-			for (Map.Entry<Long, Long> e : removedBackedRegions.entrySet()) {
-				boolean ok = AllocationMarker.freeRange(bt, e.getKey(), e.getValue());
+			for (LongHashMap.Cursor<Long> e = removedBackedRegions.cursor(); e.advance();) {
+				boolean ok = AllocationMarker.freeRange(bt, e.key(), e.value());
 				if (!ok) return false;
 			}
 			removedBackedRegions.clear();
@@ -360,13 +393,14 @@ public class WinnowingBackingTransaction extends AbstractWritableRootContiguousT
 	 * <ul>
 	 *   <li>root</li>
 	 *   <li>modified index node references to children</li>
+	 *   <li>modified leaf node links to right siblings</li>
 	 *   <li>modified set itself</li>
 	 * </ul>
 	 * 
 	 * @param remapping
 	 * @return true on success
 	 */
-	private boolean commit_relocate(Map<Long, Long> remapping) {
+	private boolean commit_relocate(LongHashMap<Long> remapping) {
 
 		// remap root
 		if (root() < 0) {
@@ -375,27 +409,37 @@ public class WinnowingBackingTransaction extends AbstractWritableRootContiguousT
 			this.recordRoot(depth(), real);
 		}
 
-		for (Map.Entry<Long, Long> m : remapping.entrySet()) {
-			// remap the modified node
-			BufferRegion n = modifiedNodes.remove(m.getKey());
-			if (n != null) modifiedNodes.put(m.getValue(), n);
-
-			// remap node references
-			// FIXME brute force :(
-			for (BufferRegion i : modifiedNodes.values()) {
-				if (i instanceof BTreeIndexNode) {
-					BTreeIndexNode x = (BTreeIndexNode)i;
-					final int children = x.children();
-					for (int idx = 0; idx < children; idx++) {
-						long was = x.offset(idx);
-						if (was == m.getKey()) {
-							x.write(idx, m.getValue());
-						}
+		// remap node references
+		// (only virtual offsets are remapped and they map onto real offsets,
+		//  so a single pass over the modified nodes is sufficient)
+		for (LongHashMap.Cursor<BufferRegion> c = modifiedNodes.cursor(); c.advance();) {
+			BufferRegion i = c.value();
+			if (i instanceof BTreeIndexNode) {
+				BTreeIndexNode x = (BTreeIndexNode)i;
+				final int children = x.children();
+				for (int idx = 0; idx < children; idx++) {
+					long was = x.offset(idx);
+					if (was < 0) {
+						Long real = remapping.get(was);
+						if (real != null) x.write(idx, real);
 					}
 				}
+			} else if (i instanceof BTreeLeafNode) {
+				BTreeLeafNode x = (BTreeLeafNode)i;
+				long was = x.rightSibling();
+				if (was < 0) {
+					Long real = remapping.get(was);
+					if (real != null) x.rightSibling(real);
+				}
 			}
 		}
 
+		// remap the modified nodes
+		for (LongHashMap.Cursor<Long> m = remapping.cursor(); m.advance();) {
+			BufferRegion n = modifiedNodes.remove(m.key());
+			if (n != null) modifiedNodes.put(m.value(), n);
+		}
+
 		return true;
 	}
 
@@ -410,13 +454,15 @@ public class WinnowingBackingTransaction extends AbstractWritableRootContiguousT
 		// winnowing node allocation
 		long nextVirtualId;
 		if (!modifiedNodes.isEmpty()) {
-			long lowest = modifiedNodes.navigableKeySet().first();
+			long lowest = modifiedNodes.firstKey();
 			nextVirtualId = lowest < 0 ? lowest -1 : -1;
 		} else {
 			nextVirtualId = -1;
 		}
 		assert(nextVirtualId < 0);
-		BufferNode n = BufferNode.allocate(nodeCapacities.capacity(isLeaf), isLeaf);
+		BufferNode n = pool == null
+				? BufferNode.allocate(nodeCapacities.capacity(isLeaf), isLeaf, nodeCapacities.format())
+				: BufferNode.allocate(nodeCapacities.capacity(isLeaf), isLeaf, nodeCapacities.format(), pool);
 		modifiedNodes.put(nextVirtualId, n);
 		return nextVirtualId;
 		//		} finally {
@@ -436,15 +482,17 @@ public class WinnowingBackingTransaction extends AbstractWritableRootContiguousT
 			// free the virtual node
 			BufferRegion n = modifiedNodes.remove(offset);
 			if (n == null) throw new IllegalStateException(String.format("The virtual node @%d can not be freed if it has not been created within the context of this transaction.", offset));
-			else return n.buffer().capacity();
+			discardedNodes.add(n);
+			return n.buffer().capacity();
 		} else {
 			if (removedBackedNodes.containsKey(offset)) throw new IllegalStateException(String.format("The backed node @%d can not be freed as it has already been freed within the context of this transaction.", offset));
 
 			BufferRegion n = modifiedNodes.remove(offset);
 			if (n == null) n = (BufferNode)retrieve(offset);
+			else discardedNodes.add(n);
 
 			if (n != null) {
-				removedBackedNodes.put(offset,n.buffer().capacity());
+				removedBackedNodes.put(offset, Integer.valueOf(n.buffer().capacity()));
 				return n.buffer().capacity();
 			} else {
 				return -1;
@@ -466,7 +514,11 @@ public class WinnowingBackingTransaction extends AbstractWritableRootContiguousT
 
 		if (offset >= 0 && removedBackedNodes.containsKey(offset)) throw new IllegalStateException(String.format("The backed node @%d can not be recorded as it has already been freed within the context of this transaction.", offset));
 
-		modifiedNodes.put(offset, (BufferNode)n);
+		// the node is about to be sealed and written, so it can no longer borrow from the cache
+		BufferNode bn = (BufferNode)n;
+		bn.own();
+		BufferRegion previous = modifiedNodes.put(offset, bn);
+		if (previous != null && previous != bn) discardedNodes.add(previous);
 		//		} finally {
 		//			System.out.printf("WinnowingBackingTransaction.record(%d, %s) - end: alloc tree: %s%n", offset, n, AllocationMarker.toString(new ReadOnlyTransactionBTree(this)));
 		//		}
@@ -484,11 +536,10 @@ public class WinnowingBackingTransaction extends AbstractWritableRootContiguousT
 		BTreeNode n = (BTreeNode)modifiedNodes.get(offset);
 		if (n == null) {
 			n = super.retrieve(offset);
-			// create a clone that can be modified
-			// this ensures that the cache is left unaffected
-			if (n != null) {
-				n = ((BufferNode)n).clone();
-			}
+			// create a copy-on-write clone that can be modified
+			// this ensures that the cache is left unaffected,
+			// while nodes that are only read are never copied
+			if (n != null) n = ((BufferNode)n).borrow(pool, ownedNodes);
 		}
 
 		return n;
@@ -540,7 +591,7 @@ public class WinnowingBackingTransaction extends AbstractWritableRootContiguousT
 
 		// TODO read allocation tree to confirm that this region was in fact allocated
 
-		removedBackedRegions.put(offset, length);
+		removedBackedRegions.put(offset, Long.valueOf(length));
 
 		return length;
 	}
@@ -556,6 +607,20 @@ public class WinnowingBackingTransaction extends AbstractWritableRootContiguousT
 		return store.write(offset+objectOffset, buffer); // Note, this does not provide sufficient atomicity and isolation
 	}
 
+	/**
+	 * Returns the buffers of any nodes still held by the transaction, which are
+	 * only the nodes that were not written out if the transaction was not committed.
+	 */
+	@Override
+	public boolean close() {
+		if (isOpen()) {
+			for (LongHashMap.Cursor<BufferRegion> c = modifiedNodes.cursor(); c.advance();) c.value().release();
+			modifiedNodes.clear();
+			commit_releaseDiscarded();
+		}
+		return super.close();
+	}
+
 	// -- internal
 
 	private void checkOpen() {
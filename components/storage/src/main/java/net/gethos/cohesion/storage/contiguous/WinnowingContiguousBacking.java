@@ -8,6 +8,7 @@ package net.gethos.cohesion.storage.contiguous;
 import net.gethos.cohesion.storage.backing.BTreeBacking;
 import net.gethos.cohesion.storage.backing.BTreeBackingTransaction;
 import net.gethos.cohesion.storage.backing.ReadOnlyBTreeBackingTransaction;
+import net.gethos.cohesion.storage.buffer.BufferPool;
 import net.gethos.cohesion.storage.buffer.BufferRegion;
 import net.gethos.cohesion.storage.buffer.NodeCapacities;
 import net.gethos.cohesion.storage.cache.BoundedNodeCache;
@@ -26,6 +27,7 @@ public class WinnowingContiguousBacking implements BTreeBacking {
 	private final ContiguousStore store;
 	private final NodeCapacities nodeCapacities;
 	private final RegionCache<BufferRegion> nodeCache;
+	private final BufferPool pool;
 	private final boolean enableIntegrity;
 	private final boolean closeStore;
 
@@ -34,6 +36,7 @@ public class WinnowingContiguousBacking implements BTreeBacking {
 		this.closeStore = closeStore;
 		this.store = store;
 		this.nodeCapacities = nodeCapacities;
+		this.pool = new BufferPool();
 		this.nodeCache = new BoundedNodeCache();
 		//this.nodeCache = new UnboundedNodeCache();
 		//this.nodeCache = new TrivialNodeCache();
@@ -46,17 +49,24 @@ public class WinnowingContiguousBacking implements BTreeBacking {
 
 	@Override
 	public void close() {
-		if (closeStore) store.close();
+		// return the cached node buffers, after which any buffer still outstanding has leaked
+		// (the store is closed regardless of any leaks being reported)
+		try {
+			nodeCache.clear();
+		} finally {
+			if (closeStore) store.close();
+		}
+		if (pool.isDebug()) pool.checkLeaks();
 	}
 
 	@Override
 	public BTreeBackingTransaction open() {
-		return new WinnowingBackingTransaction(store, nodeCache, nodeCapacities, enableIntegrity);
+		return new WinnowingBackingTransaction(store, nodeCache, nodeCapacities, enableIntegrity, pool);
 	}
 
 	@Override
 	public ReadOnlyBTreeBackingTransaction openReadOnly() {
-		return new ReadOnlyContiguousBackingTransaction(store, nodeCache);
+		return new ReadOnlyContiguousBackingTransaction(store, nodeCache, pool);
 	}
 
 }
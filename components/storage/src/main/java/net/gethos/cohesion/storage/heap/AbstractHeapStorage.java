@@ -6,12 +6,12 @@
 package net.gethos.cohesion.storage.heap;
 
 import java.nio.ByteBuffer;
-import java.util.HashMap;
-import java.util.Map;
 
+import net.gethos.cohesion.common.LongHashMap;
 import net.gethos.cohesion.storage.StorageConstants;
 import net.gethos.cohesion.storage.backing.BTreeBackingTransaction;
 import net.gethos.cohesion.storage.backing.BTreeNode;
+import net.gethos.cohesion.storage.backing.OffsetAllocator;
 
 /**
  * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
@@ -20,8 +20,11 @@ import net.gethos.cohesion.storage.backing.BTreeNode;
 public abstract class AbstractHeapStorage {
 	
 	private final int capacity;
-	protected final Map<Long, HeapNode> backing;
-	private final Map<Long, ByteBuffer> raw;
+	protected final LongHashMap<HeapNode> backing;
+	private final LongHashMap<ByteBuffer> raw;
+	// clashes between 'backing' and 'raw' are prevented by making one even and the other odd
+	private final OffsetAllocator nodeOffsets;
+	private final OffsetAllocator rawOffsets;
 	
 	/**
 	 * This holds the depth of the leaf nodes, where the depth of the root == 0.
@@ -37,8 +40,10 @@ public abstract class AbstractHeapStorage {
 		this.depth = 0;
 		this.root = 0;
 		this.capacity = capacity;
-		this.backing = new HashMap<Long, HeapNode>();
-		this.raw = new HashMap<Long, ByteBuffer>();
+		this.backing = new LongHashMap<HeapNode>();
+		this.raw = new LongHashMap<ByteBuffer>();
+		this.nodeOffsets = new OffsetAllocator(0, 2);
+		this.rawOffsets = new OffsetAllocator(1, 2);
 		
 		initialise();
 	}
@@ -83,14 +88,16 @@ public abstract class AbstractHeapStorage {
 	}
 	
 	private long allocIndex() {
-		long l = findFreeNode();
+		long l = nodeOffsets.alloc();
+		if (l == BTreeBackingTransaction.ALLOC_FAILED) return l;
 		HeapIndexNode n = new HeapIndexNode(capacity);
 		backing.put(l, n);
 		return l;
 	}
 	
 	private long allocLeaf() {
-		long l = findFreeNode();
+		long l = nodeOffsets.alloc();
+		if (l == BTreeBackingTransaction.ALLOC_FAILED) return l;
 		HeapLeafNode n = new HeapLeafNode(capacity);
 		backing.put(l, n);
 		return l;
@@ -101,8 +108,11 @@ public abstract class AbstractHeapStorage {
 		HeapNode n = backing.remove(offset);
 		if (n == null) {
 			ByteBuffer bb = raw.remove(offset);
-			return bb == null ? -1 : bb.capacity();
+			if (bb == null) return -1;
+			rawOffsets.free(offset);
+			return bb.capacity();
 		} else {
+			nodeOffsets.free(offset);
 			return 1;
 		}
 	}
@@ -112,29 +122,10 @@ public abstract class AbstractHeapStorage {
 		return bb == null ? -1 : bb.capacity();
 	}
 	
-	/**
-	 * Next even offset that is free.
-	 */
-	private long findFreeNode() {
-		long l;
-		// find a free "offset" by performing a brute force search
-		for (l = 0; backing.containsKey(l); l += 2) if (l > Long.MAX_VALUE - 2) return BTreeBackingTransaction.ALLOC_FAILED;
-		return l;
-	}
-	
-	/**
-	 * Next odd offset that is free.
-	 */
-	private long findFreeBuffer() {
-		long l;
-		// find a free "offset" by performing a brute force search
-		for (l = 1; raw.containsKey(l); l += 2)  if (l > Long.MAX_VALUE - 2) return BTreeBackingTransaction.ALLOC_FAILED;
-		return l;
-	}
-
 	public long alloc(long length) {
 		if (length > Integer.MAX_VALUE) return -1;
-		long l = findFreeBuffer();
+		long l = rawOffsets.alloc();
+		if (l == BTreeBackingTransaction.ALLOC_FAILED) return l;
 		ByteBuffer bb = ByteBuffer.allocate((int)length);
 		bb.order(StorageConstants.NETWORK_ORDER);
 		raw.put(l, bb);
@@ -11,6 +11,10 @@ import net.gethos.cohesion.storage.backing.BTreeNode;
 /**
  * This backing stores nodes and data on the heap,
  * but all items are cloned before being handed out.
+ * <p>
+ * The clones are copy-on-write (see {@link HeapNode#clone()}), so a node that is
+ * only read within a transaction shares its items with the committed node, and
+ * is only copied once the transaction first changes it.
  * 
  * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
  *
@@ -10,12 +10,16 @@ import net.gethos.cohesion.storage.BTree.Key;
 import net.gethos.cohesion.storage.backing.BTreeIndexNode;
 import net.gethos.cohesion.storage.backing.BTreeNode;
 
+/**
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ */
 public class HeapIndexNode extends HeapNode implements BTreeIndexNode, Cloneable {
 	
 	private static final long NO_SUCH_OFFSET = INVALID_OFFSET;
 	private static final long NO_RIGHT_HAND_CHILD = NO_SUCH_OFFSET;
 	
-	private /* final */ HeapIndexItem[] items;
+	// item fields (in addition to the keys)
+	private long[] child;
 	
 	/**
 	 * The child that contains keys strictly greater than all keys in this node.
@@ -27,7 +31,7 @@ public class HeapIndexNode extends HeapNode implements BTreeIndexNode, Cloneable
 	
 	public HeapIndexNode(int capacity) {
 		super(capacity);
-		this.items = new HeapIndexItem[capacity];
+		this.child = new long[capacity];
 		this.rightChild = NO_RIGHT_HAND_CHILD;
 	}
 	
@@ -37,13 +41,13 @@ public class HeapIndexNode extends HeapNode implements BTreeIndexNode, Cloneable
 		s.append(String.format("{@%8h[t=%s|c=%d|n=%2d]",
 				System.identityHashCode(this),
 				"INDEX",
-				items.length,
+				capacity,
 				items()
 			));
 		int n = items();
 		for (int i = 0; i < n; i++) {
 			String x;
-			x = String.format("(@%d:%2d,&%3d)", i, key(i).idHigh, items[i].child);
+			x = String.format("(@%d:%2d,&%3d)", i, key(i).idHigh, child[i]);
 			s.append(x);
 		}
 		s.append(String.format("r=%d",rightChild));
@@ -52,16 +56,16 @@ public class HeapIndexNode extends HeapNode implements BTreeIndexNode, Cloneable
 	}
 	
 	@Override
-	public HeapNode clone() {
-//		HeapIndexNode copy = new HeapIndexNode(capacity);
-//		copy.size = this.size;
-//		copy.rightChild = this.rightChild;
-		HeapIndexNode copy = (HeapIndexNode)super.clone();
-		copy.items = new HeapIndexItem[this.items.length];
-		for (int i = 0; i < this.items.length; i++) {
-			copy.items[i] = this.items[i] == null ? null : this.items[i].clone();
-		}
-		return copy;
+	protected void unshare() {
+		super.unshare();
+		child = child.clone();
+	}
+	
+	@Override
+	protected void moveItems(int from, int to, int count) {
+		if (count <= 0 || from == to) return;
+		super.moveItems(from, to, count);
+		System.arraycopy(child, from, child, to, count);
 	}
 	
 	private boolean hasRightChild() {
@@ -76,7 +80,7 @@ public class HeapIndexNode extends HeapNode implements BTreeIndexNode, Cloneable
 	 */
 	@Override
 	public long offset(int index) {
-		if (index >= 0 && index < size) return items[index].child;
+		if (index >= 0 && index < size) return child[index];
 		if (index == size) return rightChild;
 		return NO_SUCH_OFFSET;
 	}
@@ -92,7 +96,7 @@ public class HeapIndexNode extends HeapNode implements BTreeIndexNode, Cloneable
 			}
 		}
 		
-		return items[idx].key;
+		return readKey(idx);
 	}
 	
 	@Override
@@ -103,17 +107,47 @@ public class HeapIndexNode extends HeapNode implements BTreeIndexNode, Cloneable
 	
 	@Override
 	public int alloc(Key key) {
-		HeapIndexItem index = new HeapIndexItem(key);
-		index.key = key;
-		index.child = 0;
-		return storeItem(this.items, index);
+		int idx = findKey(key);
+		if (idx >= 0) {
+			// if the key is equal, then simply replace the item
+			own();
+			writeKey(idx, key);
+			child[idx] = 0;
+			return idx;
+		}
+		
+		int insertion = -idx-1;
+		if (size >= capacity) return idx;
+		
+		own();
+		moveItems(insertion, insertion+1, size - insertion);
+		size++;
+		writeKey(insertion, key);
+		child[insertion] = 0;
+		return insertion;
 	}
 	
 	@Override
 	public boolean modify(int idx, Key key) {
 		if (idx < 0 || idx > size) return false;
 		if (idx == size) return true;
-		items[idx].key = key;
+		own();
+		writeKey(idx, key);
+		return true;
+	}
+
+	@Override
+	public int alloc(Key left, Key right) {
+		return alloc(left);
+	}
+	
+	@Override
+	public boolean modify(int idx, Key left, Key right) {
+		return modify(idx, left);
+	}
+	
+	@Override
+	public boolean hasExactKeys() {
 		return true;
 	}
 
@@ -130,18 +164,21 @@ public class HeapIndexNode extends HeapNode implements BTreeIndexNode, Cloneable
 				// Promote the right-hand-item to the right-hand-child.
 				// Note, this only happens if there was previously a right-hand-child
 //				assert(false);
-				this.rightChild = items[size-1].child;
-				items[size-1] = null;
+				this.rightChild = child[size-1];
 				size--;
 			}
 			return true;
 		}
-		return deleteItem(items, idx);
+		if (idx < 0 || idx >= size) return false;
+		own();
+		moveItems(idx+1, idx, size-idx-1);
+		size--;
+		return true;
 	}
 	
 	@Override
 	public int find(BTree.Key key) {
-		return findItem(this.items, key);
+		return findKey(key);
 	}
 	
 	@Override
@@ -152,14 +189,17 @@ public class HeapIndexNode extends HeapNode implements BTreeIndexNode, Cloneable
 			h.child = rightChild;
 			return h;
 		}
-		return items[idx];
+		HeapIndexItem h = new HeapIndexItem(readKey(idx));
+		h.child = child[idx];
+		return h;
 	}
 	
 	// @see net.gethos.cohesion.storage.BTreeIndexNode#write(int, long)
 	@Override
 	public boolean write(int idx, long data) {
 		if (idx >= 0 && idx < size) {
-			items[idx].child = data;
+			own();
+			child[idx] = data;
 			return true;
 		}
 		if (idx == size) {
@@ -187,23 +227,23 @@ public class HeapIndexNode extends HeapNode implements BTreeIndexNode, Cloneable
 			left = sl;
 			leftRequiredFree = 0;
 			right = this;
-			rightRequiredFree = requireEmpty ? this.items.length : 0;
+			rightRequiredFree = requireEmpty ? this.capacity : 0;
 		} else if (this.children() == 0 || sl.hasRightChild()) {
 			left = this;
-			leftRequiredFree = requireEmpty ? this.items.length : 0;
+			leftRequiredFree = requireEmpty ? this.capacity : 0;
 			right = sl;
 			rightRequiredFree = 0;			
 		} else {
 			if (this.rightHandKey().compareTo(sibling.rightHandKey()) < 0) {
 				left = this;
-				leftRequiredFree = requireEmpty ? this.items.length : 0;
+				leftRequiredFree = requireEmpty ? this.capacity : 0;
 				right = sl;
 				rightRequiredFree = 0;
 			} else {
 				left = sl;
 				leftRequiredFree = 0;
 				right = this;
-				rightRequiredFree = requireEmpty ? this.items.length : 0;
+				rightRequiredFree = requireEmpty ? this.capacity : 0;
 			}
 		}
 		
@@ -247,12 +287,12 @@ public class HeapIndexNode extends HeapNode implements BTreeIndexNode, Cloneable
 		}
 		
 		// create new left and right buffers
-		HeapIndexItem[] bleft = new HeapIndexItem[left.items.length];
-		HeapIndexItem[] bright = new HeapIndexItem[right.items.length];
+		HeapIndexNode bleft = new HeapIndexNode(left.capacity);
+		HeapIndexNode bright = new HeapIndexNode(right.capacity);
 
 		// total amount of space available for items, given the free space requirements
-		final int lavailable = left.items.length;
-		final int ravailable = right.items.length;
+		final int lavailable = left.capacity;
+		final int ravailable = right.capacity;
 		// amount of space available during the copy
 		int available = lavailable+ravailable-leftRequiredFree-rightRequiredFree;
 		// amount of data to balance (i.e size of all items, considering both the item data and item headers)
@@ -282,7 +322,7 @@ public class HeapIndexNode extends HeapNode implements BTreeIndexNode, Cloneable
 		int srcCount = src.items();
 		
 		// destination
-		HeapIndexItem[] dst = null;
+		HeapIndexNode dst = null;
 		int transfered = 0;
 		int dstIdx = 0;
 		
@@ -398,14 +438,15 @@ public class HeapIndexNode extends HeapNode implements BTreeIndexNode, Cloneable
 				// perform actual copy
 				if (copyItem) {
 					// insert new item
-					dst[dstPos] = new HeapIndexItem(nitemKey);
-					dst[dstPos].child = nitemChild;
+					dst.writeKey(dstPos, nitemKey);
+					dst.child[dstPos] = nitemChild;
 					if (nexists) srcIdx++;
 					ncopied = true;
 				} else {
 					int srcPos = srcIdx;
 					// copy across and update item
-					dst[dstPos] = src.items[srcPos];
+					dst.copyKey(dstPos, src, srcPos);
+					dst.child[dstPos] = src.child[srcPos];
 					srcIdx++;
 				}
 				
@@ -416,19 +457,25 @@ public class HeapIndexNode extends HeapNode implements BTreeIndexNode, Cloneable
 		}
 		
 		// copy across newly created data
-		left.items = bleft;
-		left.size = bleftSize;
-		right.items = bright;
-		right.size = brightSize;
+		bleft.size = bleftSize;
+		left.adopt(bleft);
+		bright.size = brightSize;
+		right.adopt(bright);
 		
 		return true;
 	}
 	
+	@Override
+	protected void adopt(HeapNode other) {
+		super.adopt(other);
+		this.child = ((HeapIndexNode)other).child;
+	}
+	
 	@Override
 	public boolean isCompressibleWith(BTreeNode sibling) {
 		return ((
-					(this.size + ((HeapIndexNode)sibling).size <= this.items.length)
-					|| (this.size + ((HeapIndexNode)sibling).size <= ((HeapIndexNode)sibling).items.length)
+					(this.size + ((HeapIndexNode)sibling).size <= this.capacity)
+					|| (this.size + ((HeapIndexNode)sibling).size <= ((HeapIndexNode)sibling).capacity)
 				) && (
 				    !((HeapIndexNode)sibling).hasRightChild() || !this.hasRightChild())
 				);
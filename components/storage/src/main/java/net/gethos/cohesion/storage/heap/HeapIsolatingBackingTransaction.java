@@ -8,9 +8,8 @@ package net.gethos.cohesion.storage.heap;
 import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.Deque;
-import java.util.HashMap;
-import java.util.Map;
 
+import net.gethos.cohesion.common.LongHashMap;
 import net.gethos.cohesion.storage.backing.BTreeBackingTransaction;
 import net.gethos.cohesion.storage.backing.BTreeNode;
 
@@ -24,8 +23,8 @@ import net.gethos.cohesion.storage.backing.BTreeNode;
 public class HeapIsolatingBackingTransaction implements BTreeBackingTransaction {
 	
 	private final AbstractHeapStorage storage;
-	private final Map<Long,BTreeNode> modified;
-	private final Map<Long,BTreeNode> unmodified;
+	private final LongHashMap<BTreeNode> modified;
+	private final LongHashMap<BTreeNode> unmodified;
 	private final Deque<Long> removed;
 	private final Deque<Long> allocated;
 	
@@ -38,8 +37,8 @@ public class HeapIsolatingBackingTransaction implements BTreeBackingTransaction
 		this.storage = storage;
 		this.isOpen = true;
 		this.isCommited = false;
-		this.modified = new HashMap<Long, BTreeNode>();
-		this.unmodified = new HashMap<Long, BTreeNode>();
+		this.modified = new LongHashMap<BTreeNode>();
+		this.unmodified = new LongHashMap<BTreeNode>();
 		this.removed = new ArrayDeque<Long>();
 		this.allocated = new ArrayDeque<Long>();
 		this.modifiedDepth = null;
@@ -53,8 +52,8 @@ public class HeapIsolatingBackingTransaction implements BTreeBackingTransaction
 	
 	@Override
 	public boolean commit() {
-		for (Map.Entry<Long, BTreeNode> x : modified.entrySet()) {
-			storage.record(x.getKey(), x.getValue());	
+		for (LongHashMap.Cursor<BTreeNode> x = modified.cursor(); x.advance();) {
+			storage.record(x.key(), x.value());
 		}
 		// Note, nodes that were modified earlier in the transaction,
 		//       could get removed later on. So, the remove must be
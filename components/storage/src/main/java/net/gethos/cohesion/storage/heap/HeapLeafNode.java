@@ -6,19 +6,44 @@
 package net.gethos.cohesion.storage.heap;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import net.gethos.cohesion.storage.BTree;
 import net.gethos.cohesion.storage.BTree.Key;
 import net.gethos.cohesion.storage.backing.BTreeLeafNode;
 import net.gethos.cohesion.storage.backing.BTreeNode;
 
+/**
+ * The item data of a leaf is packed into a single arena. Data that is freed, by
+ * deleting or growing an item, is left in place until the arena is compacted.
+ * 
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ */
 public class HeapLeafNode extends HeapNode implements BTreeLeafNode, Cloneable {
 	
-	private /* final */ HeapLeafItem[] items;
+	private static final int MIN_ARENA = 64;
+	
+	// item fields (in addition to the keys)
+	private byte[] flags;
+	private int[] dataOffset;
+	private int[] dataLength;
+	
+	// item data
+	private byte[] data;
+	private int dataUsed;
+	private int dataGarbage;
+	
+	private long rightSibling;
 	
 	public HeapLeafNode(int capacity) {
 		super(capacity);
-		this.items = new HeapLeafItem[capacity];
+		this.flags = new byte[capacity];
+		this.dataOffset = new int[capacity];
+		this.dataLength = new int[capacity];
+		this.data = new byte[0];
+		this.dataUsed = 0;
+		this.dataGarbage = 0;
+		this.rightSibling = UNKNOWN_RIGHT_SIBLING;
 	}
 	
 	@Override
@@ -27,7 +52,7 @@ public class HeapLeafNode extends HeapNode implements BTreeLeafNode, Cloneable {
 		s.append(String.format("{@%8h[t=%s|c=%d|n=%2d]",
 				System.identityHashCode(this),
 				"LEAF",
-				items.length,
+				capacity,
 				items()
 			));
 		int n = items();
@@ -41,48 +66,123 @@ public class HeapLeafNode extends HeapNode implements BTreeLeafNode, Cloneable {
 	}
 	
 	@Override
-	public HeapNode clone() {
-//		HeapLeafNode copy = new HeapLeafNode(capacity);
-//		copy.size = this.size;
-		HeapLeafNode copy = (HeapLeafNode)super.clone();
-		copy.items = new HeapLeafItem[this.items.length];
-		for (int i = 0; i < this.items.length; i++) {
-			copy.items[i] = this.items[i] == null ? null : this.items[i].clone();
+	protected void unshare() {
+		super.unshare();
+		flags = flags.clone();
+		dataOffset = dataOffset.clone();
+		dataLength = dataLength.clone();
+		data = Arrays.copyOf(data, dataUsed);
+	}
+	
+	@Override
+	protected void moveItems(int from, int to, int count) {
+		if (count <= 0 || from == to) return;
+		super.moveItems(from, to, count);
+		System.arraycopy(flags, from, flags, to, count);
+		System.arraycopy(dataOffset, from, dataOffset, to, count);
+		System.arraycopy(dataLength, from, dataLength, to, count);
+	}
+	
+	/**
+	 * Reserve zeroed space at the end of the arena.
+	 * 
+	 * @return the offset of the space
+	 */
+	private int reserve(int length) {
+		if (dataUsed + length > data.length) {
+			if (dataGarbage > 0) compact();
+			if (dataUsed + length > data.length) {
+				int grown = Math.max(MIN_ARENA, Math.max(dataUsed + length, data.length * 2));
+				data = Arrays.copyOf(data, grown);
+			}
 		}
-		return copy;
+		int o = dataUsed;
+		Arrays.fill(data, o, o + length, (byte)0);
+		dataUsed += length;
+		return o;
+	}
+	
+	/**
+	 * Pack the item data to the start of the arena, dropping any freed data.
+	 */
+	private void compact() {
+		byte[] packed = new byte[data.length];
+		int o = 0;
+		for (int i = 0; i < size; i++) {
+			System.arraycopy(data, dataOffset[i], packed, o, dataLength[i]);
+			dataOffset[i] = o;
+			o += dataLength[i];
+		}
+		data = packed;
+		dataUsed = o;
+		dataGarbage = 0;
+	}
+	
+	private void release(int idx) {
+		if (dataOffset[idx] + dataLength[idx] == dataUsed) dataUsed -= dataLength[idx];
+		else dataGarbage += dataLength[idx];
 	}
 	
 	@Override
 	public int realloc(Key key, int length) {
-		int idx = findItem(items, key);
-		if (idx >= 0) {
-			return realloc(idx,length);
-		} else {
-			HeapLeafItem index = new HeapLeafItem(key,length);
-			return storeItem(this.items, index);	
-		}
+		int idx = findKey(key);
+		if (idx >= 0) return realloc(idx,length);
+		
+		int insertion = -idx-1;
+		if (size >= capacity) return idx;
+		
+		own();
+		moveItems(insertion, insertion+1, size - insertion);
+		size++;
+		writeKey(insertion, key);
+		flags[insertion] = Flags.NONE.mask;
+		dataOffset[insertion] = 0;
+		dataLength[insertion] = 0;
+		dataOffset[insertion] = reserve(length);
+		dataLength[insertion] = length;
+		return insertion;
 	}
 	
 	@Override
 	public int realloc(int idx, int length) {
-		HeapLeafItem item = this.items[idx];
-		item.realloc(length);
+		int was = dataLength[idx];
+		if (length == was) return idx;
+		own();
+		int o = dataOffset[idx];
+		if (length < was) {
+			// shrink in place
+			if (o + was == dataUsed) dataUsed -= was - length;
+			else dataGarbage += was - length;
+		} else if (o + was == dataUsed && o + length <= data.length) {
+			// extend in place at the end of the arena
+			Arrays.fill(data, o + was, o + length, (byte)0);
+			dataUsed = o + length;
+		} else {
+			// move the data to the end of the arena
+			// (note, reserving may compact the arena and so move the existing data)
+			int r = reserve(length);
+			System.arraycopy(data, dataOffset[idx], data, r, was);
+			dataGarbage += was;
+			dataOffset[idx] = r;
+		}
+		dataLength[idx] = length;
 		return idx;
 	}
 	
 	@Override
 	public int size(int idx) {
-		return this.items[idx].size;
+		return dataLength[idx];
 	}
 	
 	@Override
 	public byte flags(int idx) {
-		return this.items[idx].flags;
+		return flags[idx];
 	}
 	
 	@Override
 	public void flags(int idx, byte flags) {
-		this.items[idx].flags = flags;
+		own();
+		this.flags[idx] = flags;
 	}
 	
 	@Override
@@ -90,52 +190,78 @@ public class HeapLeafNode extends HeapNode implements BTreeLeafNode, Cloneable {
 		return size;
 	}
 	
+	@Override
+	public long rightSibling() {
+		return rightSibling;
+	}
+	
+	@Override
+	public void rightSibling(long offset) {
+		this.rightSibling = offset;
+	}
+	
 	@Override
 	public boolean delete(int idx) {
-		return deleteItem(this.items, idx);
+		if (idx < 0 || idx >= size) return false;
+		
+		own();
+		release(idx);
+		moveItems(idx+1, idx, size-idx-1);
+		size--;
+		if (size == 0) {
+			dataUsed = 0;
+			dataGarbage = 0;
+		}
+		
+		return true;
 	}
 	
 	@Override
 	public int find(BTree.Key key) {
-		return findItem(this.items, key);
+		return findKey(key);
 	}
 	
 	@Override
 	public BTreeNodeItem item(int idx) {
-		return items[idx];
+		HeapLeafItem item = new HeapLeafItem(readKey(idx), dataLength[idx]);
+		System.arraycopy(data, dataOffset[idx], item.data, 0, dataLength[idx]);
+		item.flags = flags[idx];
+		return item;
 	}
 
 	@Override
 	public boolean modify(int idx, Key key) {
 		if (idx < 0 || idx >= size) return false;
-		items[idx].key = key;
+		own();
+		writeKey(idx, key);
 		return true;
 	}
 
 	@Override
 	public Key key(int idx) {
 		if (idx < 0 || idx >= size) return null;
-		return items[idx].key;
+		return readKey(idx);
 	}
 
 	@Override
 	public int write(int idx, long objectOffset, ByteBuffer buffer) {
-		int l = items[idx].data.length - (int)objectOffset;
+		int l = dataLength[idx] - (int)objectOffset;
 		if (l <= 0) return 0;
 		if (buffer.remaining() < l) l = buffer.remaining();
 		
-		buffer.get(items[idx].data, (int)objectOffset, l);
+		own();
+		buffer.get(data, dataOffset[idx] + (int)objectOffset, l);
 		
 		return l;
 	}
 
 	@Override
 	public int read(int idx, long objectOffset, ByteBuffer buffer) {
-		int l = items[idx].data.length - (int)objectOffset;
+		int l = dataLength[idx] - (int)objectOffset;
 		if (l <= 0) return 0;
 		if (buffer.remaining() < l) l = buffer.remaining();
 		
-		buffer.put(items[idx].data, (int)objectOffset, l);
+		buffer.put(data, dataOffset[idx] + (int)objectOffset, l);
 		
 		return l;
 	}
@@ -158,23 +284,23 @@ public class HeapLeafNode extends HeapNode implements BTreeLeafNode, Cloneable {
 			left = sl;
 			leftRequiredFree = 0;
 			right = this;
-			rightRequiredFree = requireEmpty ? this.items.length : 0;
+			rightRequiredFree = requireEmpty ? this.capacity : 0;
 		} else if (this.children() == 0) {
 			left = this;
-			leftRequiredFree = requireEmpty ? this.items.length : 0;
+			leftRequiredFree = requireEmpty ? this.capacity : 0;
 			right = sl;
 			rightRequiredFree = 0;			
 		} else {
 			if (this.rightHandKey().compareTo(sibling.rightHandKey()) < 0) {
 				left = this;
-				leftRequiredFree = requireEmpty ? this.items.length : 0;
+				leftRequiredFree = requireEmpty ? this.capacity : 0;
 				right = sl;
 				rightRequiredFree = 0;
 			} else {
 				left = sl;
 				leftRequiredFree = 0;
 				right = this;
-				rightRequiredFree = requireEmpty ? this.items.length : 0;
+				rightRequiredFree = requireEmpty ? this.capacity : 0;
 			}
 		}
 		
@@ -218,12 +344,12 @@ public class HeapLeafNode extends HeapNode implements BTreeLeafNode, Cloneable {
 		}
 		
 		// create new left and right buffers
-		HeapLeafItem[] bleft = new HeapLeafItem[left.items.length];
-		HeapLeafItem[] bright = new HeapLeafItem[right.items.length];
+		HeapLeafNode bleft = new HeapLeafNode(left.capacity);
+		HeapLeafNode bright = new HeapLeafNode(right.capacity);
 
 		// total amount of space available for items, given the free space requirements
-		final int lavailable = left.items.length;
-		final int ravailable = right.items.length;
+		final int lavailable = left.capacity;
+		final int ravailable = right.capacity;
 		// amount of space available during the copy
 		int available = lavailable+ravailable-leftRequiredFree-rightRequiredFree;
 		// amount of data to balance (i.e size of all items, considering both the item data and item headers)
@@ -253,7 +379,7 @@ public class HeapLeafNode extends HeapNode implements BTreeLeafNode, Cloneable {
 		int srcCount = src.items();
 		
 		// destination
-		HeapLeafItem[] dst = null;
+		HeapLeafNode dst = null;
 		int transfered = 0;
 		int dstIdx = 0;
 		
@@ -357,13 +483,13 @@ public class HeapLeafNode extends HeapNode implements BTreeLeafNode, Cloneable {
 				// perform actual copy
 				if (copyItem) {
 					// insert new item
-					dst[dstPos] = new HeapLeafItem(nitemKey, nitemSize);
+					dst.put(dstPos, nitemKey, nitemSize);
 					if (nexists) srcIdx++;
 					ncopied = true;
 				} else {
 					int srcPos = srcIdx;
 					// copy across and update item
-					dst[dstPos] = src.items[srcPos];
+					dst.copyItem(dstPos, src, srcPos);
 					srcIdx++;
 				}
 				
@@ -374,19 +500,54 @@ public class HeapLeafNode extends HeapNode implements BTreeLeafNode, Cloneable {
 		}
 		
 		// copy across newly created data
-		left.items = bleft;
-		left.size = bleftSize;
-		right.items = bright;
-		right.size = brightSize;
+		bleft.size = bleftSize;
+		left.adopt(bleft);
+		bright.size = brightSize;
+		right.adopt(bright);
 		
 		return true;
 	}
 
+	/**
+	 * Place a new, zeroed, item at the <code>i<sup>th</sup></code> position of a scratch node that is being filled in order.
+	 */
+	private void put(int i, Key key, int length) {
+		writeKey(i, key);
+		flags[i] = Flags.NONE.mask;
+		dataOffset[i] = reserve(length);
+		dataLength[i] = length;
+	}
+	
+	/**
+	 * Copy an item into the <code>i<sup>th</sup></code> position of a scratch node that is being filled in order.
+	 */
+	private void copyItem(int i, HeapLeafNode src, int srcIdx) {
+		copyKey(i, src, srcIdx);
+		flags[i] = src.flags[srcIdx];
+		int l = src.dataLength[srcIdx];
+		int o = reserve(l);
+		System.arraycopy(src.data, src.dataOffset[srcIdx], data, o, l);
+		dataOffset[i] = o;
+		dataLength[i] = l;
+	}
+	
+	@Override
+	protected void adopt(HeapNode other) {
+		super.adopt(other);
+		HeapLeafNode x = (HeapLeafNode)other;
+		this.flags = x.flags;
+		this.dataOffset = x.dataOffset;
+		this.dataLength = x.dataLength;
+		this.data = x.data;
+		this.dataUsed = x.dataUsed;
+		this.dataGarbage = x.dataGarbage;
+	}
+
 	@Override
 	public boolean isCompressibleWith(BTreeNode sibling) {
 		return (
-				   (this.size + ((HeapLeafNode)sibling).size <= this.items.length)
-				|| (this.size + ((HeapLeafNode)sibling).size <= ((HeapLeafNode)sibling).items.length)
+				   (this.size + ((HeapLeafNode)sibling).size <= this.capacity)
+				|| (this.size + ((HeapLeafNode)sibling).size <= ((HeapLeafNode)sibling).capacity)
 				);
 	}
-}
\ No newline at end of file
+}
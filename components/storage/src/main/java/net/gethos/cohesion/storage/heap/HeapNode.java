@@ -5,11 +5,29 @@
  */
 package net.gethos.cohesion.storage.heap;
 
+import net.gethos.cohesion.common.UnsignedUtils;
 import net.gethos.cohesion.storage.BTree;
 import net.gethos.cohesion.storage.backing.BTreeNode;
 
 
+/**
+ * Heap nodes hold their items in parallel arrays, one array per item field,
+ * rather than as an array of item objects. So a node costs a fixed number of
+ * objects irrespective of the number of items it holds, and a node is copied
+ * by copying its arrays.
+ * <p>
+ * A clone shares the arrays with the node it was cloned from, and the arrays are
+ * only copied once either node is first changed (copy-on-write). So a clone that is
+ * only read from costs no more than the node object itself.
+ * 
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ */
 public abstract class HeapNode implements BTreeNode, Cloneable {
+
+	/**
+	 * Below this size a linear search is used to find a key.
+	 */
+	private static final int BINARY_SEARCH_THRESHOLD = 9;
 	
 	/**
 	 * Either interpreted as the block size, or as the order (m).
@@ -22,11 +40,32 @@ public abstract class HeapNode implements BTreeNode, Cloneable {
 	protected final int half;
 	
 	protected int size;
+
+	// item keys
+	private short[] keyIdx;
+	private long[] keyIdHigh;
+	private long[] keyIdMiddle;
+	private int[] keyIdLow;
+	private short[] keyType;
+	private long[] keyParameter;
+	
+	/**
+	 * Set if the item arrays may be referenced by another node,
+	 * in which case they must be copied before they are changed.
+	 */
+	private boolean shared;
 	
 	public HeapNode(int capacity) {
 		this.capacity = capacity;
 		this.half = (capacity/2) + (capacity%2); // divide by 2 and round up, i.e. Math.ceil(capacity/2.0);
 		this.size = 0;
+		this.keyIdx = new short[capacity];
+		this.keyIdHigh = new long[capacity];
+		this.keyIdMiddle = new long[capacity];
+		this.keyIdLow = new int[capacity];
+		this.keyType = new short[capacity];
+		this.keyParameter = new long[capacity];
+		this.shared = false;
 	}
 	
 	protected int items() {
@@ -56,14 +95,48 @@ public abstract class HeapNode implements BTreeNode, Cloneable {
 		return size >= capacity;
 	}
 	
+	/**
+	 * Create a copy-on-write copy of the node.
+	 * <p>
+	 * The copy shares the item arrays with this node, so both are marked as shared
+	 * and whichever is changed first takes its own copy of the arrays.
+	 */
 	@Override
 	public HeapNode clone() {
 		try {
-			return (HeapNode)super.clone();
+			HeapNode copy = (HeapNode)super.clone();
+			this.shared = true;
+			copy.shared = true;
+			return copy;
 		} catch (CloneNotSupportedException e) {
 			throw new RuntimeException("Clone is supported",e);
 		}
 	}
+	
+	/**
+	 * Ensure that the item arrays are not shared with any other node.
+	 * <p>
+	 * This must be invoked before the item arrays are changed.
+	 */
+	protected final void own() {
+		if (!shared) return;
+		unshare();
+		shared = false;
+	}
+	
+	/**
+	 * Replace the item arrays with private copies.
+	 * <p>
+	 * Subclasses extend this to copy their other item fields.
+	 */
+	protected void unshare() {
+		keyIdx = keyIdx.clone();
+		keyIdHigh = keyIdHigh.clone();
+		keyIdMiddle = keyIdMiddle.clone();
+		keyIdLow = keyIdLow.clone();
+		keyType = keyType.clone();
+		keyParameter = keyParameter.clone();
+	}
 
 	/**
 	 * @return number of children referenced
@@ -92,89 +165,125 @@ public abstract class HeapNode implements BTreeNode, Cloneable {
 	public abstract boolean delete(int idx);
 
 	/**
-	 * Fetch an item from the node.
+	 * Fetch a copy of an item from the node.
+	 * <p>
+	 * Note, the item is detached from the node, so changes to the item are not reflected in the node.
 	 * 
 	 * @param idx
 	 * @return the <code>idx<sup>th</sup></code> item
 	 */
 	public abstract BTreeNodeItem item(int idx);
-	
+
+	/**
+	 * Materialise the key of an explicit item.
+	 */
+	protected BTree.Key readKey(int i) {
+		BTree.Key k = new BTree.Key();
+		k.idx = keyIdx[i];
+		k.idHigh = keyIdHigh[i];
+		k.idMiddle = keyIdMiddle[i];
+		k.idLow = keyIdLow[i];
+		k.type = keyType[i];
+		k.parameter = keyParameter[i];
+		return k;
+	}
+
+	protected void writeKey(int i, BTree.Key k) {
+		keyIdx[i] = k.idx;
+		keyIdHigh[i] = k.idHigh;
+		keyIdMiddle[i] = k.idMiddle;
+		keyIdLow[i] = k.idLow;
+		keyType[i] = k.type;
+		keyParameter[i] = k.parameter;
+	}
+
 	/**
-	 * Store an item into the items array. The result leaves the items array stored according to the item key.
+	 * Compare the key of an explicit item with a search key, following {@link BTree.Key#compareTo(BTree.Key)}.
 	 * 
-	 * @param <T>
-	 * @param items
-	 * @param item
-	 * @return the index at which the item was stored or (-(insertion)-1) if the node capacity has been reached as the item could not be stored.
-	 */
-	protected <T extends BTreeNodeItem> int storeItem(T[] items, T item) {
-		
-		// perform a linear search within the node to find the insertion point
-		// (TODO consider using a binary search if the size is greater than 16 or so)
-		int insertion = 0;
-		for (insertion = 0; insertion < size; insertion++) {
-			int c = items[insertion].key.compareTo(item.key);
-			if (c == 0) {
-				// if the key is equal, then simply replace the item
-				items[insertion] = item;
-				return insertion;
-			}
-			if (c < 0) continue;
-			else break;
-		}
-		
-		// if we are full then 
-		if (size >= capacity) {
-			return (-(insertion) - 1);
-		}
-		
-		// at this point 'insertion' is the correct position for the new item,
-		// either within the array or equal to 'size'.
-		System.arraycopy(items, insertion, items, insertion+1, size - insertion);
-		items[insertion] = item;
-		size++;
-		return insertion;
+	 * @return negative, zero or positive as the item key is less than, equal to, or greater than the search key
+	 */
+	protected int compareKey(int i, BTree.Key key) {
+		int c = keyIdx[i] - key.idx;
+		if (c != 0) return c;
+		c = UnsignedUtils.compareUnsigned(keyIdHigh[i], key.idHigh);
+		if (c != 0) return c;
+		c = UnsignedUtils.compareUnsigned(keyIdMiddle[i], key.idMiddle);
+		if (c != 0) return c;
+		c = UnsignedUtils.compareUnsigned(keyIdLow[i], key.idLow);
+		if (c != 0) return c;
+		return keyType[i] - key.type;
 	}
-	
+
 	/**
 	 * Search for an item in the node.
 	 * 
-	 * @param <T>
-	 * @param items
 	 * @param key
 	 * @return The index of the item, or (-(insertion)-1) if the item does not exit.
 	 */
-	protected <T extends BTreeNodeItem> int findItem(T[] items, BTree.Key key) {
-		
-		// perform a linear search within the node to find the insertion point
-		// (TODO consider using a binary search if the size is greater than 16 or so)
-		int insertion = 0;
-		for (insertion = 0; insertion < size; insertion++) {
-			int c = items[insertion].key.compareTo(key);
-			if (c == 0) {
-				// if the key exists then return the position
-				return insertion;
+	protected int findKey(BTree.Key key) {
+		if (size < BINARY_SEARCH_THRESHOLD) {
+			// perform a linear search within the node to find the insertion point
+			int insertion;
+			for (insertion = 0; insertion < size; insertion++) {
+				int c = compareKey(insertion, key);
+				if (c == 0) return insertion;
+				if (c > 0) break; // found the first key larger than the key being searched for
 			}
-			if (c > 0) break; // found the first key larger than the key being searched for
+			return (-(insertion) - 1);
+		}
+
+		int min = 0;
+		int max = size - 1;
+		while (min <= max) {
+			int mid = (min + max) >>> 1;
+			int c = compareKey(mid, key);
+			if (c == 0) return mid;
+			if (c < 0) min = mid + 1;
+			else max = mid - 1;
 		}
-		
-		// the key does not exist, so return the position that it would be inserted into
-		return (-(insertion) - 1);
+		return (-(min) - 1);
 	}
-	
+
 	/**
-	 * Remove a single item from the node.
-	 * 
-	 * @param idx
+	 * Move <code>count</code> items from position <code>from</code> to position <code>to</code>,
+	 * where the source and destination may overlap.
+	 * <p>
+	 * Subclasses extend this to move the other item fields along with the keys.
+	 */
+	protected void moveItems(int from, int to, int count) {
+		if (count <= 0 || from == to) return;
+		System.arraycopy(keyIdx, from, keyIdx, to, count);
+		System.arraycopy(keyIdHigh, from, keyIdHigh, to, count);
+		System.arraycopy(keyIdMiddle, from, keyIdMiddle, to, count);
+		System.arraycopy(keyIdLow, from, keyIdLow, to, count);
+		System.arraycopy(keyType, from, keyType, to, count);
+		System.arraycopy(keyParameter, from, keyParameter, to, count);
+	}
+
+	/**
+	 * Copy the key of an item from another node.
+	 */
+	protected void copyKey(int i, HeapNode src, int srcIdx) {
+		keyIdx[i] = src.keyIdx[srcIdx];
+		keyIdHigh[i] = src.keyIdHigh[srcIdx];
+		keyIdMiddle[i] = src.keyIdMiddle[srcIdx];
+		keyIdLow[i] = src.keyIdLow[srcIdx];
+		keyType[i] = src.keyType[srcIdx];
+		keyParameter[i] = src.keyParameter[srcIdx];
+	}
+
+	/**
+	 * Take over the item arrays of another node, typically a scratch node used while balancing.
 	 */
-	protected <T> boolean deleteItem(T[] items, int idx) {
-		if (idx < 0 || idx >= size) return false;
-		
-		System.arraycopy(items, idx+1, items, idx, size-idx-1);
-		size--;
-		items[size] = null;
-		
-		return true;
+	protected void adopt(HeapNode other) {
+		this.keyIdx = other.keyIdx;
+		this.keyIdHigh = other.keyIdHigh;
+		this.keyIdMiddle = other.keyIdMiddle;
+		this.keyIdLow = other.keyIdLow;
+		this.keyType = other.keyType;
+		this.keyParameter = other.keyParameter;
+		this.size = other.size;
+		this.shared = other.shared;
 	}
 	
 	/**
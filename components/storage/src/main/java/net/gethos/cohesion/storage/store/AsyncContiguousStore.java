@@ -0,0 +1,77 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage.store;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Future;
+
+/**
+ * Provides asynchronous access to data stored in a single
+ * contiguous region.
+ * <p>
+ * Several reads and writes may be in flight at once, so that a device that
+ * only reaches its full throughput with a deep queue can be kept busy. The
+ * buffers passed to a request belong to the store until its future completes.
+ * <p>
+ * Failures are reported by the future, as an {@link java.util.concurrent.ExecutionException}.
+ *
+ * @see ContiguousStoreAdapter
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public interface AsyncContiguousStore {
+
+	/**
+	 * Write data to the store.
+	 * <p>
+	 * The store is automatically grown to accommodate at least the highest byte written.
+	 *
+	 * @param position - offset to which to start writing
+	 * @param buffers - buffers to drain
+	 * @return the number of bytes written, once the write is complete
+	 */
+	public Future<Long> write(long position, ByteBuffer... buffers);
+
+	/**
+	 * Read data from the store.
+	 *
+	 * @param position - offset from which to start reading
+	 * @param buffers - buffers to fill
+	 * @return the number of bytes read, or -1 if the position is at or beyond the end of the store
+	 */
+	public Future<Long> read(long position, ByteBuffer... buffers);
+
+	/**
+	 * Force flush data to disk i.e. <code>fsync()</code>
+	 * <p>
+	 * Note, only writes that have completed are guaranteed to be flushed.
+	 */
+	public Future<Void> force();
+
+	/**
+	 * Truncate (grow or shrink) the store to the closest
+	 * boundary size, that is larger or equal to the given size.
+	 *
+	 * @param length
+	 * @return the new size.
+	 */
+	public long truncate(long length);
+
+	/**
+	 * Query the size of the underlying storage.
+	 *
+	 * @return underlying storage size in bytes.
+	 */
+	public long size();
+
+	/**
+	 * Close the store.
+	 * <p>
+	 * Note, no implicit flush is performed.
+	 */
+	public void close();
+}
@@ -0,0 +1,278 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import net.gethos.cohesion.storage.RuntimeIOException;
+
+/**
+ * Contiguous storage via an asynchronous file channel.
+ * <p>
+ * Each buffer of a request is issued to the channel as its own positional read or write,
+ * so a single scattered or gathered request, as well as several independent requests, may
+ * be in flight at once. The completions, and flushing (which the channel only offers
+ * synchronously), are handled by a small pool of daemon threads owned by the store.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class AsynchronousFileContiguousStore implements AsyncContiguousStore {
+
+	public static final int DEFAULT_THREADS = 4;
+
+	private final File storeFile;
+	private final ExecutorService executor;
+	private final AsynchronousFileChannel storeChannel;
+	private final boolean force;
+
+	private final ByteBuffer zero;
+
+	private volatile boolean closed;
+
+	public AsynchronousFileContiguousStore(File storeFile, boolean sync, int initialCapacity) {
+		this(storeFile, sync, initialCapacity, DEFAULT_THREADS);
+	}
+
+	/**
+	 * @param storeFile - the file to hold the store, which is created if it does not exist
+	 * @param sync - true if {@link #force()} should flush the file to disk
+	 * @param initialCapacity - the initial size of a new store
+	 * @param threads - the number of threads that handle completions
+	 */
+	public AsynchronousFileContiguousStore(File storeFile, boolean sync, int initialCapacity, int threads) {
+		if (threads <= 0) throw new IllegalArgumentException("At least one thread is required.");
+		this.storeFile = storeFile;
+		this.force = sync;
+		this.zero = ByteBuffer.allocate(1);
+		this.closed = false;
+		this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "store-" + AsynchronousFileContiguousStore.this.storeFile.getName());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		AsynchronousFileChannel channel = null;
+		try {
+			channel = AsynchronousFileChannel.open(storeFile.toPath(),
+					EnumSet.of(StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE),
+					executor);
+			this.storeChannel = channel;
+
+			if (storeChannel.size() == 0) {
+				// initialise empty store
+				truncate(initialCapacity);
+			}
+		} catch (IOException e) {
+			if (channel != null) try {
+				channel.close();
+			} catch (IOException io) {
+				throw new RuntimeIOException("Failed to close during error state", io);
+			}
+			executor.shutdown();
+			throw new RuntimeIOException("Failed to open store", e);
+		}
+	}
+
+	@Override
+	public void close() {
+		if (closed) return;
+		closed = true;
+		try {
+			storeChannel.close();
+		} catch (IOException e) {
+			throw new RuntimeIOException("Failed to close store", e);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Override
+	public Future<Long> write(long position, ByteBuffer... buffers) {
+		return new Transfer(true, position, buffers).start();
+	}
+
+	@Override
+	public Future<Long> read(long position, ByteBuffer... buffers) {
+		return new Transfer(false, position, buffers).start();
+	}
+
+	@Override
+	public Future<Void> force() {
+		if (!force) return StoreFuture.completed(null);
+		return executor.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws IOException {
+				storeChannel.force(false);
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public synchronized long truncate(long length) {
+		final long boundary = RandomAccessContiguousStore.boundary(length);
+		try {
+			long size = storeChannel.size();
+			if (boundary > size) {
+				// grow, by writing at the new EOF position
+				zero.rewind();
+				while (zero.hasRemaining()) storeChannel.write(zero, boundary - 1).get();
+			} else if (boundary < size) {
+				// shrink
+				storeChannel.truncate(boundary);
+			}
+		} catch (IOException e) {
+			throw new RuntimeIOException("Failed to resize store", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeIOException("Failed to resize store", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeIOException("Interrupted while resizing store", e);
+		}
+		return boundary;
+	}
+
+	@Override
+	public long size() {
+		try {
+			return storeChannel.size();
+		} catch (IOException e) {
+			throw new RuntimeIOException("Failed to read store size.", e);
+		}
+	}
+
+	/**
+	 * A read or write of several buffers, each of which is transferred independently.
+	 */
+	private class Transfer {
+
+		private final boolean write;
+		private final ByteBuffer[] buffers;
+		private final int[] starts;
+		private final StoreFuture<Long> future;
+
+		private final long position;
+		private int pending;
+		private boolean eof;
+
+		Transfer(boolean write, long position, ByteBuffer[] buffers) {
+			if (position < 0) throw new IllegalArgumentException("The position: " + position + " is negative.");
+			this.write = write;
+			this.position = position;
+			this.buffers = buffers;
+			this.starts = new int[buffers.length];
+			this.future = new StoreFuture<Long>();
+			this.pending = 0;
+			this.eof = false;
+		}
+
+		Future<Long> start() {
+			if (closed) throw new IllegalStateException("The store is closed.");
+			Part[] parts = new Part[buffers.length];
+			int count = 0;
+			synchronized (this) {
+				long p = position;
+				for (int i = 0; i < buffers.length; i++) {
+					ByteBuffer b = buffers[i];
+					starts[i] = b.position();
+					if (b.hasRemaining()) parts[count++] = new Part(this, b, p);
+					p += b.remaining();
+				}
+				pending = count;
+			}
+			if (count == 0) {
+				future.complete(Long.valueOf(0));
+			} else {
+				// (the count of pending parts is complete before any of them are issued)
+				for (int i = 0; i < count; i++) parts[i].issue();
+			}
+			return future;
+		}
+
+		synchronized void done(boolean reachedEnd) {
+			if (reachedEnd) eof = true;
+			if (--pending > 0) return;
+			long l = 0;
+			for (int i = 0; i < buffers.length; i++) l += buffers[i].position() - starts[i];
+			future.complete(Long.valueOf((l == 0 && eof) ? -1 : l));
+		}
+
+		void fail(Throwable e) {
+			future.fail(e);
+		}
+	}
+
+	/**
+	 * The transfer of a single buffer, which is reissued until the buffer is drained (or filled).
+	 */
+	private class Part implements CompletionHandler<Integer, Void> {
+
+		private final Transfer transfer;
+		private final ByteBuffer buffer;
+		private long position;
+
+		Part(Transfer transfer, ByteBuffer buffer, long position) {
+			this.transfer = transfer;
+			this.buffer = buffer;
+			this.position = position;
+		}
+
+		void issue() {
+			try {
+				if (transfer.write) storeChannel.write(buffer, position, null, this);
+				else storeChannel.read(buffer, position, null, this);
+			} catch (RuntimeException e) {
+				// e.g. the channel has been closed
+				transfer.fail(e);
+			}
+		}
+
+		@Override
+		public void completed(Integer n, Void attachment) {
+			if (n < 0) {
+				// end-of-file
+				transfer.done(true);
+				return;
+			}
+			position += n;
+			if (buffer.hasRemaining()) issue();
+			else transfer.done(false);
+		}
+
+		@Override
+		public void failed(Throwable e, Void attachment) {
+			transfer.fail(e);
+		}
+	}
+
+	public static AsynchronousFileContiguousStore createTemporaryStore(boolean sync) {
+		File tmpFile;
+		try {
+			tmpFile = File.createTempFile("ContiguousBacking_", ".store");
+			tmpFile.deleteOnExit();
+		} catch (IOException e) {
+			throw new RuntimeIOException("Failed to create tempory file backed store.",e);
+		}
+
+		return new AsynchronousFileContiguousStore(tmpFile, sync, 4096*4);
+	}
+}
@@ -11,13 +11,21 @@ import java.nio.ByteBuffer;
 /**
  * A store for a tree that is held in a single
  * large ByteBuffer.
+ * <p>
+ * Note, when the store grows its data is moved to a new buffer, so views
+ * obtained earlier continue to show the data as it was before the move.
+ * <p>
+ * Accesses copy directly to and from the backing array (or, failing that, work on their own
+ * duplicate of the buffer), rather than using the position and limit of the shared buffer,
+ * so reads may proceed concurrently. Writes and resizing are
+ * serialised, so that no write is lost while the data is moved to a larger buffer.
  * 
  * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
  *
  */
-public class ByteBufferContiguousStore implements ContiguousStore {
+public class ByteBufferContiguousStore implements ViewableContiguousStore {
 
-	private ByteBuffer data;
+	private volatile ByteBuffer data;
 	
 	public ByteBufferContiguousStore(ByteBuffer data) {
 		this.data = data;
@@ -33,7 +41,7 @@ public class ByteBufferContiguousStore implements ContiguousStore {
 	}
 
 	@Override
-	public long write(long position, ByteBuffer... buffers) {
+	public synchronized long write(long position, ByteBuffer... buffers) {
 		if (position < 0 || position > Integer.MAX_VALUE) throw new ArrayIndexOutOfBoundsException("The position: " + position + " is too large.");
 		long l = 0;
 		for (ByteBuffer b : buffers) {
@@ -47,10 +55,21 @@ public class ByteBufferContiguousStore implements ContiguousStore {
 			boundary <<= 4;
 			truncate(boundary);
 		}
-		data.clear();
-		data.position((int)position);
-		for (ByteBuffer b : buffers) {
-			data.put(b);
+		ByteBuffer d = data;
+		if (d.hasArray()) {
+			int p = d.arrayOffset() + (int)position;
+			for (ByteBuffer b : buffers) {
+				int r = b.remaining();
+				b.get(d.array(), p, r);
+				p += r;
+			}
+		} else {
+			d = d.duplicate();
+			d.clear();
+			d.position((int)position);
+			for (ByteBuffer b : buffers) {
+				d.put(b);
+			}
 		}
 		return l;
 	}
@@ -60,27 +79,51 @@ public class ByteBufferContiguousStore implements ContiguousStore {
 		if (position < 0 || position > Integer.MAX_VALUE) throw new ArrayIndexOutOfBoundsException("The position: " + position + " is too large.");
 		long l = 0;
 		int p = (int)position;
-		data.clear();
-		data.position(p);
-		for (ByteBuffer b : buffers) {
-			int r = b.remaining();
-			l += r;
-			p += r;
-			data.limit(p);
-			b.put(data);
+		ByteBuffer d = data;
+		if (d.hasArray()) {
+			// copy straight out of the backing array, which does not allocate
+			p += d.arrayOffset();
+			for (ByteBuffer b : buffers) {
+				int r = b.remaining();
+				l += r;
+				b.put(d.array(), p, r);
+				p += r;
+			}
+		} else {
+			d = d.duplicate();
+			d.clear();
+			d.position(p);
+			for (ByteBuffer b : buffers) {
+				int r = b.remaining();
+				l += r;
+				p += r;
+				d.limit(p);
+				b.put(d);
+			}
 		}
 		return l;
 	}
 
 	@Override
-	public long truncate(long length) {
+	public ByteBuffer view(long position, int length) {
+		ByteBuffer d = data;
+		if (position < 0 || length < 0 || position + length > d.capacity()) return null;
+		ByteBuffer v = d.asReadOnlyBuffer();
+		v.limit((int)position + length);
+		v.position((int)position);
+		return v.slice();
+	}
+
+	@Override
+	public synchronized long truncate(long length) {
 		if (length < 0 || length > Integer.MAX_VALUE) throw new IllegalArgumentException("The length: " + length + " is larger than the maximum memory backed tree can be: " + Integer.MAX_VALUE);
 		int len = (int)length;
-		data.clear();
-		if (data.capacity() != len) {
+		ByteBuffer d = data.duplicate();
+		d.clear();
+		if (d.capacity() != len) {
 			ByteBuffer t = ByteBuffer.allocate(len);
-			if (data.remaining() > len) data.limit(len);
-			t.put(data);
+			if (d.remaining() > len) d.limit(len);
+			t.put(d);
 			data = t;
 		}
 		return data.capacity();
@@ -0,0 +1,81 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage.store;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import net.gethos.cohesion.storage.RuntimeIOException;
+
+/**
+ * Presents an {@link AsyncContiguousStore} as a (blocking) {@link ContiguousStore}.
+ * <p>
+ * Callers that know of the adapter may reach the asynchronous store via {@link #async()},
+ * in order to keep several requests in flight, for example while writing out a commit.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class ContiguousStoreAdapter implements ContiguousStore {
+
+	private final AsyncContiguousStore async;
+
+	public ContiguousStoreAdapter(AsyncContiguousStore async) {
+		this.async = async;
+	}
+
+	/**
+	 * @return the underlying asynchronous store
+	 */
+	public AsyncContiguousStore async() {
+		return async;
+	}
+
+	@Override
+	public long write(long position, ByteBuffer... buffers) {
+		return await(async.write(position, buffers), "Failed to write to store").longValue();
+	}
+
+	@Override
+	public long read(long position, ByteBuffer... buffers) {
+		return await(async.read(position, buffers), "Failed to read from store").longValue();
+	}
+
+	@Override
+	public long truncate(long length) {
+		return async.truncate(length);
+	}
+
+	@Override
+	public long size() {
+		return async.size();
+	}
+
+	@Override
+	public void force() {
+		await(async.force(), "Failed flush data to store");
+	}
+
+	@Override
+	public void close() {
+		async.close();
+	}
+
+	/**
+	 * Wait for a request to complete, reporting failure as a {@link RuntimeIOException}.
+	 */
+	public static <V> V await(Future<V> request, String message) {
+		try {
+			return request.get();
+		} catch (ExecutionException e) {
+			throw new RuntimeIOException(message, e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeIOException(message, e);
+		}
+	}
+}
@@ -0,0 +1,437 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+import net.gethos.cohesion.storage.RuntimeIOException;
+import net.gethos.cohesion.storage.buffer.BufferPool;
+
+/**
+ * Contiguous storage via a file opened for direct I/O, bypassing the operating system page cache.
+ * <p>
+ * When a tree has its own node cache, caching the same nodes again in the page cache only takes
+ * memory away from the node cache (and from other files). Direct I/O requires that transfers be
+ * whole blocks, at block aligned file offsets, to and from block aligned memory. So, each request
+ * is widened to the blocks that it touches and passed, in chunks of at most 64KiB, through an aligned
+ * direct buffer drawn from a pool. A write that only covers part of its first or last block first
+ * reads in the rest of the block (or zeros, beyond the end of the file), so that the whole block can
+ * be written back.
+ * <p>
+ * Direct I/O is requested via <code>com.sun.nio.file.ExtendedOpenOption.DIRECT</code>, which is
+ * looked up reflectively, as it is neither part of every runtime nor supported by every file system
+ * (e.g. <code>tmpfs</code>). If it is not available, the file is opened normally, and the store
+ * behaves the same, but via the page cache (see {@link #isDirect()}).
+ * <p>
+ * Writes (and resizing) are serialised, since a partial block write is a read-modify-write of the
+ * block. Reads may proceed concurrently.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class DirectContiguousStore implements ContiguousStore {
+
+	public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+	/**
+	 * The largest aligned buffer, and so the largest single transfer to or from the file.
+	 */
+	private static final int MAX_POOLED_SIZE = 64 * 1024;
+
+	private static final OpenOption DIRECT = directOption();
+	private static final Method ALIGNED_SLICE = method(ByteBuffer.class, "alignedSlice", int.class);
+	private static final Method BLOCK_SIZE = method(FileStore.class, "getBlockSize");
+
+	private final File storeFile;
+	private final FileChannel storeChannel;
+	private final boolean force;
+	private final boolean direct;
+	private final int block;
+	private final BufferPool pool;
+
+	private volatile boolean closed;
+
+	public DirectContiguousStore(File storeFile, boolean sync, int initialCapacity) {
+		this.storeFile = storeFile;
+		this.force = sync;
+		this.closed = false;
+
+		Path path = storeFile.toPath();
+		FileChannel channel = null;
+		boolean isDirect = false;
+		try {
+			if (DIRECT != null && ALIGNED_SLICE != null) {
+				try {
+					channel = open(path, DIRECT);
+					isDirect = true;
+				} catch (IOException e) {
+					// the file system does not support direct I/O
+				} catch (UnsupportedOperationException e) {
+					// nor does the platform
+				}
+			}
+			if (channel == null) channel = open(path, null);
+			this.storeChannel = channel;
+			this.direct = isDirect;
+			this.block = blockSize(path);
+			this.pool = new AlignedBufferPool(block);
+
+			if (storeChannel.size() == 0) {
+				// initialise empty store
+				truncate(initialCapacity);
+			}
+		} catch (IOException e) {
+			if (channel != null) try {
+				channel.close();
+			} catch (IOException io) {
+				throw new RuntimeIOException("Failed to close during error state", io);
+			}
+			throw new RuntimeIOException("Failed to open store", e);
+		}
+	}
+
+	/**
+	 * @return true if the file is accessed via direct I/O, rather than via the page cache
+	 */
+	public boolean isDirect() {
+		return direct;
+	}
+
+	/**
+	 * @return the size of the blocks to which transfers are aligned
+	 */
+	public int blockSize() {
+		return block;
+	}
+
+	@Override
+	public void close() {
+		if (closed) return;
+		closed = true;
+		try {
+			storeChannel.close();
+		} catch (IOException e) {
+			throw new RuntimeIOException("Failed to close store", e);
+		}
+	}
+
+	@Override
+	public synchronized long write(long position, ByteBuffer... buffers) {
+		checkOpen();
+		if (position < 0) throw new IllegalArgumentException("The position: " + position + " is negative.");
+		long l = 0;
+		for (ByteBuffer b : buffers) l += b.remaining();
+		if (l == 0) return 0;
+
+		final long end = position + l;
+		final long size = size();
+		ByteBuffer a = acquire(ceil(end) - floor(position));
+		try {
+			int i = 0;
+			long p = position;
+			while (p < end) {
+				final long start = floor(p);
+				final int length = (int)Math.min(ceil(end) - start, a.capacity());
+				final long stop = Math.min(end, start + length);
+
+				// pad out partial blocks at either end with the data already in the store
+				boolean head = p != start;
+				boolean tail = stop != start + length;
+				if (head) pad(a, 0, start);
+				if (tail && !(head && length == block)) pad(a, length - block, start + length - block);
+
+				a.limit((int)(stop - start));
+				a.position((int)(p - start));
+				i = gather(buffers, i, a);
+
+				a.limit(length);
+				a.position(0);
+				while (a.hasRemaining()) storeChannel.write(a, start + a.position());
+				p = stop;
+			}
+
+			// the writes only extend the store to the last block written, so grow
+			// it on to the next allocation boundary, as for the other file stores
+			if (ceil(end) > size) truncate(end);
+			return l;
+		} catch (IOException e) {
+			throw new RuntimeIOException("Failed to write to store", e);
+		} finally {
+			release(a);
+		}
+	}
+
+	@Override
+	public long read(long position, ByteBuffer... buffers) {
+		checkOpen();
+		if (position < 0) throw new IllegalArgumentException("The position: " + position + " is negative.");
+		long l = 0;
+		for (ByteBuffer b : buffers) l += b.remaining();
+		if (l == 0) return 0;
+
+		final long end = position + l;
+		ByteBuffer a = acquire(ceil(end) - floor(position));
+		try {
+			int i = 0;
+			long r = 0;
+			long p = position;
+			while (p < end) {
+				final long start = floor(p);
+				final int length = (int)Math.min(ceil(end) - start, a.capacity());
+				int n = fill(a, 0, length, start);
+				int o = (int)(p - start);
+				if (n <= o) break; // end-of-file
+
+				a.limit((int)Math.min(n, end - start));
+				a.position(o);
+				i = scatter(a, buffers, i);
+				r += a.limit() - o;
+				p = start + a.limit();
+				if (n < length) break; // end-of-file
+			}
+			return r == 0 ? -1 : r;
+		} catch (IOException e) {
+			throw new RuntimeIOException("Failed to read from store", e);
+		} finally {
+			release(a);
+		}
+	}
+
+	@Override
+	public synchronized long truncate(long length) {
+		checkOpen();
+		final long boundary = ceil(RandomAccessContiguousStore.boundary(length));
+		try {
+			long size = storeChannel.size();
+			if (boundary > size) {
+				// grow, by writing the last block (which may hold the tail of the existing data)
+				ByteBuffer a = acquire(block);
+				try {
+					fill(a, 0, block, boundary - block);
+					a.clear();
+					while (a.hasRemaining()) storeChannel.write(a, boundary - block + a.position());
+				} finally {
+					release(a);
+				}
+			} else if (boundary < size) {
+				// shrink
+				storeChannel.truncate(boundary);
+			}
+		} catch (IOException e) {
+			throw new RuntimeIOException("Failed to resize store", e);
+		}
+		return boundary;
+	}
+
+	@Override
+	public long size() {
+		try {
+			return storeChannel.size();
+		} catch (IOException e) {
+			throw new RuntimeIOException("Failed to read store size.", e);
+		}
+	}
+
+	@Override
+	public void force() {
+		try {
+			if (force) storeChannel.force(false);
+		} catch (IOException e) {
+			throw new RuntimeIOException("Failed flush data to store", e);
+		}
+	}
+
+	/**
+	 * Read whole blocks into <code>length</code> bytes of the buffer from offset <code>o</code>, stopping short at the end of the file.
+	 *
+	 * @return the offset in the buffer of the first byte not read
+	 */
+	private int fill(ByteBuffer a, int o, int length, long position) throws IOException {
+		ByteBuffer d = a.duplicate();
+		d.limit(o + length);
+		d.position(o);
+		while (d.hasRemaining()) {
+			int r = storeChannel.read(d, position + d.position() - o);
+			// (a short block can only be the end of the file)
+			if (r <= 0 || (d.position() - o) % block != 0) break;
+		}
+		return d.position();
+	}
+
+	/**
+	 * Read the block at <code>position</code> into the buffer from offset <code>o</code>, with zeros beyond the end of the file.
+	 */
+	private void pad(ByteBuffer a, int o, long position) throws IOException {
+		for (int n = fill(a, o, block, position); n < o + block; n++) a.put(n, (byte)0);
+	}
+
+	/**
+	 * Move bytes from the buffers, starting at index <code>i</code>, into <code>a</code> until it is full.
+	 *
+	 * @return the index of the first buffer with bytes remaining
+	 */
+	private static int gather(ByteBuffer[] buffers, int i, ByteBuffer a) {
+		while (a.hasRemaining() && i < buffers.length) {
+			ByteBuffer b = buffers[i];
+			if (!b.hasRemaining()) {
+				i++;
+				continue;
+			}
+			int limit = b.limit();
+			b.limit(b.position() + Math.min(b.remaining(), a.remaining()));
+			a.put(b);
+			b.limit(limit);
+		}
+		return i;
+	}
+
+	/**
+	 * Move bytes from <code>a</code> into the buffers, starting at index <code>i</code>, until it is drained.
+	 *
+	 * @return the index of the first buffer with space remaining
+	 */
+	private static int scatter(ByteBuffer a, ByteBuffer[] buffers, int i) {
+		while (a.hasRemaining() && i < buffers.length) {
+			ByteBuffer b = buffers[i];
+			if (!b.hasRemaining()) {
+				i++;
+				continue;
+			}
+			int limit = a.limit();
+			a.limit(a.position() + Math.min(b.remaining(), a.remaining()));
+			b.put(a);
+			a.limit(limit);
+		}
+		return i;
+	}
+
+	private long floor(long position) {
+		return position - position % block;
+	}
+
+	private long ceil(long position) {
+		long r = position % block;
+		return r == 0 ? position : position + (block - r);
+	}
+
+	/**
+	 * @return an aligned buffer for a transfer of the given number of whole blocks, or for a chunk of it
+	 */
+	private ByteBuffer acquire(long size) {
+		return pool.acquire((int)Math.min(size, MAX_POOLED_SIZE));
+	}
+
+	private void release(ByteBuffer a) {
+		pool.release(a);
+	}
+
+	private void checkOpen() {
+		if (closed) throw new IllegalStateException("The store is closed.");
+	}
+
+	/**
+	 * A pool of direct buffers, aligned to the block size.
+	 */
+	private static class AlignedBufferPool extends BufferPool {
+
+		private final int alignment;
+
+		AlignedBufferPool(int alignment) {
+			super(4, false);
+			this.alignment = alignment;
+		}
+
+		@Override
+		protected ByteBuffer allocate(int size) {
+			return aligned(size, alignment);
+		}
+
+		@Override
+		protected boolean accepts(ByteBuffer b) {
+			return b.isDirect();
+		}
+	}
+
+	private static ByteBuffer aligned(int size, int alignment) {
+		if (ALIGNED_SLICE == null) return ByteBuffer.allocateDirect(size);
+		ByteBuffer b = ByteBuffer.allocateDirect(size + alignment);
+		try {
+			ByteBuffer a = (ByteBuffer)ALIGNED_SLICE.invoke(b, alignment);
+			a.limit(size);
+			return a.slice();
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException("Unable to align buffer", e);
+		} catch (InvocationTargetException e) {
+			throw new IllegalStateException("Unable to align buffer", e.getCause());
+		}
+	}
+
+	private static FileChannel open(Path path, OpenOption extra) throws IOException {
+		Set<OpenOption> options = new HashSet<OpenOption>();
+		options.add(StandardOpenOption.READ);
+		options.add(StandardOpenOption.WRITE);
+		options.add(StandardOpenOption.CREATE);
+		if (extra != null) options.add(extra);
+		return FileChannel.open(path, options);
+	}
+
+	private static int blockSize(Path path) {
+		if (BLOCK_SIZE == null) return DEFAULT_BLOCK_SIZE;
+		try {
+			long size = ((Long)BLOCK_SIZE.invoke(Files.getFileStore(path))).longValue();
+			// (only a power of two, that can be handled in a single buffer, is of use)
+			if (size <= DEFAULT_BLOCK_SIZE || size > MAX_POOLED_SIZE || Long.bitCount(size) != 1) return DEFAULT_BLOCK_SIZE;
+			return (int)size;
+		} catch (Exception e) {
+			return DEFAULT_BLOCK_SIZE;
+		}
+	}
+
+	private static OpenOption directOption() {
+		try {
+			Class<?> c = Class.forName("com.sun.nio.file.ExtendedOpenOption");
+			for (Object o : c.getEnumConstants()) {
+				if ("DIRECT".equals(((Enum<?>)o).name())) return (OpenOption)o;
+			}
+		} catch (ClassNotFoundException e) {
+			// not available in this runtime
+		}
+		return null;
+	}
+
+	private static Method method(Class<?> c, String name, Class<?>... parameters) {
+		try {
+			return c.getMethod(name, parameters);
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	public static ContiguousStore createTemporaryStore(boolean sync) {
+		File tmpFile;
+		try {
+			tmpFile = File.createTempFile("ContiguousBacking_", ".store");
+			tmpFile.deleteOnExit();
+		} catch (IOException e) {
+			throw new RuntimeIOException("Failed to create tempory file backed store.",e);
+		}
+
+		ContiguousStore store = new DirectContiguousStore(tmpFile, sync, 4096*4);
+		return store;
+	}
+}
@@ -0,0 +1,277 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import net.gethos.cohesion.common.DirectBuffers;
+import net.gethos.cohesion.storage.RuntimeIOException;
+
+/**
+ * Contiguous storage via a memory mapped file.
+ * <p>
+ * The file is mapped as a sequence of fixed size segments, so that the store is not limited
+ * by the 2GiB reach of a single buffer. Reads and writes are then simply copies to and from
+ * the page cache, rather than a system call per access. As the store grows, the last (partial)
+ * segment is remapped and further segments are mapped as required.
+ * <p>
+ * Regions that lie within a single segment can be viewed in place (see {@link #view(long, int)}).
+ * Once a view has been handed out, mappings are no longer released eagerly, but are left to the
+ * garbage collector, since the memory behind a released mapping must not be accessed. For
+ * the same reason, the file itself is then no longer shrunk.
+ * <p>
+ * Unlike {@link RandomAccessContiguousStore}, this is not safe for concurrent use.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class MappedContiguousStore implements ViewableContiguousStore {
+
+	public static final int DEFAULT_SEGMENT_SIZE = 1 << 30; // 1GiB
+
+	private final File storeFile;
+	private final RandomAccessFile storeRandomAccess;
+	private final FileChannel storeChannel;
+
+	private final boolean force;
+	private final int segmentSize;
+
+	/**
+	 * The mapped segments, where all but the last cover exactly <code>segmentSize</code> bytes.
+	 */
+	private MappedByteBuffer[] segments;
+	private int segmentCount;
+
+	/**
+	 * Position of the first byte beyond the highest byte provisioned (and mapped).
+	 */
+	private long highAllocMark;
+
+	/**
+	 * Set once a view over a segment has been handed out.
+	 */
+	private boolean viewed;
+
+	private boolean closed;
+
+	public MappedContiguousStore(File storeFile, boolean sync, int initialCapacity) {
+		this(storeFile, sync, initialCapacity, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * @param storeFile - the file to map, which is created if it does not exist
+	 * @param sync - true if {@link #force()} should flush the mapped segments to disk
+	 * @param initialCapacity - the initial size of a new store
+	 * @param segmentSize - the size of each mapped segment
+	 */
+	public MappedContiguousStore(File storeFile, boolean sync, int initialCapacity, int segmentSize) {
+		if (segmentSize <= 0) throw new IllegalArgumentException("The segment size must be positive.");
+		this.storeFile = storeFile;
+		this.force = sync;
+		this.segmentSize = segmentSize;
+		this.segments = new MappedByteBuffer[4];
+		this.segmentCount = 0;
+		this.highAllocMark = 0;
+		this.viewed = false;
+		this.closed = false;
+
+		RandomAccessFile rf = null;
+		try {
+			if (!storeFile.exists()) {
+				boolean ret = storeFile.createNewFile();
+				if (!ret && !storeFile.exists()) throw new RuntimeIOException("Unable to create store file: " + storeFile);
+			}
+			rf = new RandomAccessFile(this.storeFile, "rw");
+			this.storeRandomAccess = rf;
+			this.storeChannel = rf.getChannel();
+
+			long size = storeChannel.size();
+			if (size == 0) {
+				// initialise empty store
+				storeChannel.truncate(0);
+				size = initialCapacity;
+			}
+			remap(size);
+
+		} catch (IOException e) {
+			if (rf != null) try {
+				rf.close();
+			} catch (IOException io) {
+				throw new RuntimeIOException("Failed to close during error state", io);
+			}
+			throw new RuntimeIOException("Failed to open store", e);
+		}
+	}
+
+	@Override
+	public void close() {
+		if (closed) return;
+		closed = true;
+		unmap(0);
+		try {
+			storeRandomAccess.close();
+		} catch (IOException e) {
+			throw new RuntimeIOException("Failed to close store", e);
+		}
+	}
+
+	@Override
+	public long write(long position, ByteBuffer... buffers) {
+		checkOpen();
+		if (position < 0) throw new IllegalArgumentException("The position: " + position + " is negative.");
+		long l = 0;
+		for (ByteBuffer b : buffers) l += b.remaining();
+
+		// grow the store (and the mapping) before writing beyond the end
+		long writeMark = position + l;
+		if (writeMark > highAllocMark) truncate(writeMark);
+
+		long p = position;
+		for (ByteBuffer b : buffers) {
+			while (b.hasRemaining()) {
+				MappedByteBuffer s = segments[(int)(p / segmentSize)];
+				int o = (int)(p % segmentSize);
+				int n = Math.min(b.remaining(), s.capacity() - o);
+				s.clear();
+				s.position(o);
+				int limit = b.limit();
+				b.limit(b.position() + n);
+				s.put(b);
+				b.limit(limit);
+				p += n;
+			}
+		}
+		return l;
+	}
+
+	@Override
+	public long read(long position, ByteBuffer... buffers) {
+		checkOpen();
+		if (position < 0) throw new IllegalArgumentException("The position: " + position + " is negative.");
+		if (position >= highAllocMark) return -1; // as per end-of-file
+
+		long p = position;
+		for (ByteBuffer b : buffers) {
+			while (b.hasRemaining() && p < highAllocMark) {
+				MappedByteBuffer s = segments[(int)(p / segmentSize)];
+				int o = (int)(p % segmentSize);
+				int n = Math.min(b.remaining(), s.capacity() - o);
+				s.clear();
+				s.position(o);
+				s.limit(o + n);
+				b.put(s);
+				p += n;
+			}
+		}
+		return p - position;
+	}
+
+	@Override
+	public ByteBuffer view(long position, int length) {
+		checkOpen();
+		if (position < 0 || length < 0 || position + length > highAllocMark) return null;
+		int i = (int)(position / segmentSize);
+		int o = (int)(position % segmentSize);
+		MappedByteBuffer s = segments[i];
+		if (o + length > s.capacity()) return null; // spans segments
+		viewed = true;
+		ByteBuffer v = s.asReadOnlyBuffer();
+		v.limit(o + length);
+		v.position(o);
+		return v.slice();
+	}
+
+	@Override
+	public long truncate(long length) {
+		checkOpen();
+		final long boundary = RandomAccessContiguousStore.boundary(length);
+		if (boundary == highAllocMark) return boundary; // no change
+		try {
+			remap(boundary);
+		} catch (IOException e) {
+			throw new RuntimeIOException("Failed to resize store", e);
+		}
+		return boundary;
+	}
+
+	@Override
+	public long size() {
+		return highAllocMark;
+	}
+
+	@Override
+	public void force() {
+		if (!force) return;
+		checkOpen();
+		for (int i = 0; i < segmentCount; i++) segments[i].force();
+	}
+
+	/**
+	 * @return the number of mapped segments
+	 */
+	public int segments() {
+		return segmentCount;
+	}
+
+	/**
+	 * Resize the file and map it, keeping the mappings of whole segments that are unaffected.
+	 */
+	private void remap(long size) throws IOException {
+		int full = (int)(Math.min(size, highAllocMark) / segmentSize);
+		// any trailing partial segment, and segments beyond the new size, must be remapped
+		unmap(full);
+
+		// Note, the file must not be shrunk while regions beyond the new end are still mapped,
+		//       which, once views have been handed out, can only be known to the garbage collector
+		if (size < storeChannel.size() && !viewed) storeChannel.truncate(size);
+
+		int required = (int)((size + segmentSize - 1) / segmentSize);
+		if (required > segments.length) segments = Arrays.copyOf(segments, Math.max(required, 2*segments.length));
+		for (int i = segmentCount; i < required; i++) {
+			long base = (long)i * segmentSize;
+			long length = Math.min(segmentSize, size - base);
+			// mapping beyond the end of the file grows the file
+			segments[i] = storeChannel.map(FileChannel.MapMode.READ_WRITE, base, length);
+		}
+		segmentCount = required;
+		highAllocMark = size;
+	}
+
+	/**
+	 * Release the mappings of segment <code>from</code> onward.
+	 */
+	private void unmap(int from) {
+		for (int i = from; i < segmentCount; i++) {
+			if (force) segments[i].force();
+			if (!viewed) DirectBuffers.release(segments[i]);
+			segments[i] = null;
+		}
+		if (from < segmentCount) segmentCount = from;
+	}
+
+	private void checkOpen() {
+		if (closed) throw new IllegalStateException("The store is closed.");
+	}
+
+	public static ContiguousStore createTemporaryStore(boolean sync) {
+		File tmpFile;
+		try {
+			tmpFile = File.createTempFile("ContiguousBacking_", ".store");
+			tmpFile.deleteOnExit();
+		} catch (IOException e) {
+			throw new RuntimeIOException("Failed to create tempory file backed store.",e);
+		}
+
+		ContiguousStore store = new MappedContiguousStore(tmpFile, sync, 4096*4);
+		return store;
+	}
+}
@@ -10,11 +10,15 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.gethos.cohesion.storage.RuntimeIOException;
 
 /**
  * Contiguous storage via a random access file.
+ * <p>
+ * Reads and writes use positional channel access, rather than the shared channel position,
+ * so that several threads may read from (and write to distinct regions of) the store at once.
  *
  * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
  *
@@ -32,12 +36,12 @@ public class RandomAccessContiguousStore implements ContiguousStore {
 	/**
 	 * Position of the first byte beyond the highest byte provisioned.
 	 */
-	private volatile long highAllocMark;
+	private final AtomicLong highAllocMark;
 
 	/**
 	 * Position of the first byte beyond the highest byte written.
 	 */
-	private volatile long highWriteMark;
+	private final AtomicLong highWriteMark;
 
 	private volatile boolean closed;
 
@@ -45,6 +49,8 @@ public class RandomAccessContiguousStore implements ContiguousStore {
 
 	public RandomAccessContiguousStore(File storeFile, boolean sync, int initialCapacity) {
 		this.zero = ByteBuffer.allocate(1);
+		this.highAllocMark = new AtomicLong();
+		this.highWriteMark = new AtomicLong();
 		this.closed = false;
 		this.storeFile = storeFile;
 		this.force = sync;
@@ -65,8 +71,8 @@ public class RandomAccessContiguousStore implements ContiguousStore {
 				this.storeChannel = new RandomAccessFile(this.storeFile, "rw").getChannel();
 			}
 
-			highAllocMark = storeChannel.size();
-			highWriteMark = highAllocMark;
+			highAllocMark.set(storeChannel.size());
+			highWriteMark.set(highAllocMark.get());
 
 		} catch (IOException e) {
 			if (rf != null) try {
@@ -98,21 +104,27 @@ public class RandomAccessContiguousStore implements ContiguousStore {
 	@Override
 	public long write(long offset, ByteBuffer... buffers) {
 		try {
-			assert(highWriteMark <= highAllocMark);
-
-			storeChannel.position(offset);
-			long l = storeChannel.write(buffers);
+			long l = 0;
+			if (buffers.length == 1) {
+				ByteBuffer b = buffers[0];
+				while (b.hasRemaining()) l += storeChannel.write(b, offset + l);
+			} else {
+				// a gathering write has no positional form, so the channel position is claimed
+				// for the duration (positional reads and writes are unaffected by it)
+				long r = 0;
+				for (ByteBuffer b : buffers) r += b.remaining();
+				synchronized (storeChannel) {
+					storeChannel.position(offset);
+					while (l < r) l += storeChannel.write(buffers);
+				}
+			}
 
 			long writeMark = offset + l;
 			// if we write beyond the end of the file
 			// then grow the file to the next allocation boundary
-			if (writeMark > highWriteMark) {
-				highWriteMark = writeMark;
-				truncate(highWriteMark);
-			}
+			if (raise(highWriteMark, writeMark)) grow(writeMark);
 
-			assert(writeMark <= highWriteMark);
-			assert(highWriteMark <= highAllocMark);
+			assert(writeMark <= highWriteMark.get());
 
 			return l;
 		} catch (IOException e) {
@@ -123,29 +135,37 @@ public class RandomAccessContiguousStore implements ContiguousStore {
 	@Override
 	public long read(long position, ByteBuffer... buffers) {
 		try {
-			storeChannel.position(position);
-			return storeChannel.read(buffers);
+			long l = 0;
+			for (ByteBuffer b : buffers) {
+				while (b.hasRemaining()) {
+					int r = storeChannel.read(b, position + l);
+					if (r < 0) return l == 0 ? -1 : l; // end-of-file
+					l += r;
+				}
+			}
+			return l;
 		} catch (IOException e) {
 			throw new RuntimeIOException("Failed to write to store", e);
 		}
 	}
 
 	@Override
-	public long truncate(long length) {
+	public synchronized long truncate(long length) {
 
 		final long boundary = boundary(length);
 
 		truncate:
 			try {
 
-				if (highAllocMark == boundary) break truncate; // no change
+				if (highAllocMark.get() == boundary) break truncate; // no change
 
 				// Unfortunately, FileChannel.truncate(len) this does not behave like Unix truncate, so we need to perform a write to grow the file
 
-				if (boundary > highAllocMark) {
+				if (boundary > highAllocMark.get()) {
 					// grow
 					// write at the new EOF position to force the file to grow
-					if (boundary > highWriteMark) {
+					// (unless a concurrent write has already reached it)
+					if (boundary > storeChannel.size()) {
 						zero.rewind();
 						while(zero.hasRemaining()) storeChannel.write(zero, boundary-1);
 					}
@@ -155,8 +175,8 @@ public class RandomAccessContiguousStore implements ContiguousStore {
 				}
 
 				// trim the high markers
-				highAllocMark = boundary;
-				if (highWriteMark > highAllocMark) highWriteMark = highAllocMark;
+				highAllocMark.set(boundary);
+				lower(highWriteMark, boundary);
 
 
 			} catch (IOException e) {
@@ -166,6 +186,25 @@ public class RandomAccessContiguousStore implements ContiguousStore {
 			return boundary;
 	}
 
+	/**
+	 * Grow the file to the allocation boundary beyond <code>writeMark</code>.
+	 * <p>
+	 * Unlike {@link #truncate(long)}, this never shrinks the file, so a write that
+	 * completes after a concurrent write further along can not cut the file short.
+	 */
+	private synchronized void grow(long writeMark) throws IOException {
+		final long boundary = boundary(writeMark);
+		if (boundary <= highAllocMark.get()) return;
+
+		// write at the new EOF position to force the file to grow
+		// (unless a concurrent write has already reached it)
+		if (boundary > storeChannel.size()) {
+			zero.rewind();
+			while(zero.hasRemaining()) storeChannel.write(zero, boundary-1);
+		}
+		highAllocMark.set(boundary);
+	}
+
 	@Override
 	public long size() {
 		try {
@@ -186,7 +225,31 @@ public class RandomAccessContiguousStore implements ContiguousStore {
 		}
 	}
 
-	private static long boundary(long min) {
+	/**
+	 * Raise the mark to at least <code>v</code>.
+	 *
+	 * @return true if the mark was raised
+	 */
+	private static boolean raise(AtomicLong mark, long v) {
+		while (true) {
+			long m = mark.get();
+			if (m >= v) return false;
+			if (mark.compareAndSet(m, v)) return true;
+		}
+	}
+
+	/**
+	 * Lower the mark to at most <code>v</code>.
+	 */
+	private static void lower(AtomicLong mark, long v) {
+		while (true) {
+			long m = mark.get();
+			if (m <= v) return;
+			if (mark.compareAndSet(m, v)) return;
+		}
+	}
+
+	static long boundary(long min) {
 		// calculate the rounded length
 		long allocBlock = min/ALLOC_SCALING;
 		if (allocBlock < ALLOC_ROUNDING) allocBlock = ALLOC_ROUNDING;
@@ -0,0 +1,221 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage.store;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import net.gethos.cohesion.common.DirectBuffers;
+
+/**
+ * A store for a tree that is held in memory, as a sequence of fixed size segments.
+ * <p>
+ * Unlike {@link ByteBufferContiguousStore}, the store is not limited to 2GiB and growing
+ * the store simply appends segments, rather than copying the whole store into a larger
+ * buffer. Reads and writes may span segment boundaries. Regions that lie within a single
+ * segment can be viewed in place, and since segments never move, views remain attached to
+ * the store as it grows.
+ * <p>
+ * As for {@link ByteBufferContiguousStore}, accesses copy directly to and from the backing
+ * arrays (or, failing that, work on their own duplicates of the segments), rather than using
+ * the position and limit of the shared segments, so reads may proceed concurrently. Writes and
+ * resizing are serialised, and a grown store is only published once its segments are in place.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class SegmentedContiguousStore implements ViewableContiguousStore {
+
+	public static final int DEFAULT_SEGMENT_SIZE = 1 << 20; // 1MiB
+
+	private final int segmentSize;
+	private final boolean direct;
+
+	private volatile ByteBuffer[] segments;
+	private int segmentCount;
+
+	/**
+	 * The length of the store, which may end part way through the last segment.
+	 */
+	private volatile long size;
+
+	/**
+	 * Set once a view over a segment has been handed out.
+	 */
+	private volatile boolean viewed;
+
+	private volatile boolean closed;
+
+	public SegmentedContiguousStore(long capacity) {
+		this(capacity, DEFAULT_SEGMENT_SIZE, false);
+	}
+
+	/**
+	 * @param capacity - the initial length of the store
+	 * @param segmentSize - the size of each segment
+	 * @param direct - true if the segments should be allocated outside of the heap
+	 */
+	public SegmentedContiguousStore(long capacity, int segmentSize, boolean direct) {
+		if (segmentSize <= 0) throw new IllegalArgumentException("The segment size must be positive.");
+		this.segmentSize = segmentSize;
+		this.direct = direct;
+		this.segments = new ByteBuffer[16];
+		this.segmentCount = 0;
+		this.size = 0;
+		this.viewed = false;
+		this.closed = false;
+		truncate(capacity);
+	}
+
+	@Override
+	public synchronized void close() {
+		if (closed) return;
+		closed = true;
+		// direct segments are only released if no views of them could still be in use
+		if (direct && !viewed) {
+			for (int i = 0; i < segmentCount; i++) DirectBuffers.release(segments[i]);
+		}
+		segments = null;
+		segmentCount = 0;
+	}
+
+	@Override
+	public synchronized long write(long position, ByteBuffer... buffers) {
+		checkOpen();
+		if (position < 0) throw new IllegalArgumentException("The position: " + position + " is negative.");
+		long l = 0;
+		for (ByteBuffer b : buffers) l += b.remaining();
+
+		// grow by whole segments, so that appending does not trigger a resize on every write
+		final long required = position + l;
+		if (required > size) truncate(round(required));
+
+		long p = position;
+		for (ByteBuffer b : buffers) {
+			while (b.hasRemaining()) {
+				ByteBuffer s = segments[(int)(p / segmentSize)];
+				int o = (int)(p % segmentSize);
+				int n = Math.min(b.remaining(), segmentSize - o);
+				if (s.hasArray()) {
+					b.get(s.array(), s.arrayOffset() + o, n);
+				} else {
+					ByteBuffer d = s.duplicate();
+					d.clear();
+					d.position(o);
+					int limit = b.limit();
+					b.limit(b.position() + n);
+					d.put(b);
+					b.limit(limit);
+				}
+				p += n;
+			}
+		}
+		return l;
+	}
+
+	@Override
+	public long read(long position, ByteBuffer... buffers) {
+		checkOpen();
+		if (position < 0) throw new IllegalArgumentException("The position: " + position + " is negative.");
+		// (the size is published after the segments that it covers)
+		final long end = size;
+		final ByteBuffer[] segs = segments;
+		if (position >= end) return -1; // as per end-of-file
+
+		long p = position;
+		for (ByteBuffer b : buffers) {
+			while (b.hasRemaining() && p < end) {
+				ByteBuffer s = segs[(int)(p / segmentSize)];
+				int o = (int)(p % segmentSize);
+				int n = (int)Math.min(Math.min(b.remaining(), segmentSize - o), end - p);
+				if (s.hasArray()) {
+					// copy straight out of the backing array, which does not allocate
+					b.put(s.array(), s.arrayOffset() + o, n);
+				} else {
+					ByteBuffer d = s.duplicate();
+					d.limit(o + n);
+					d.position(o);
+					b.put(d);
+				}
+				p += n;
+			}
+		}
+		return p - position;
+	}
+
+	@Override
+	public ByteBuffer view(long position, int length) {
+		checkOpen();
+		if (position < 0 || length < 0 || position + length > size) return null;
+		int o = (int)(position % segmentSize);
+		if (o + length > segmentSize) return null; // spans segments
+		viewed = true;
+		ByteBuffer v = segments[(int)(position / segmentSize)].asReadOnlyBuffer();
+		v.limit(o + length);
+		v.position(o);
+		return v.slice();
+	}
+
+	@Override
+	public synchronized long truncate(long length) {
+		checkOpen();
+		if (length < 0) throw new IllegalArgumentException("The length: " + length + " is negative.");
+		if (length == size) return size;
+
+		int required = (int)((length + segmentSize - 1) / segmentSize);
+		if (length < size) {
+			// drop whole segments beyond the end
+			for (int i = required; i < segmentCount; i++) {
+				if (direct && !viewed) DirectBuffers.release(segments[i]);
+				segments[i] = null;
+			}
+			segmentCount = Math.min(segmentCount, required);
+			// and clear the tail of the last segment, so that the store reads as zero if it grows again
+			int o = (int)(length % segmentSize);
+			if (o > 0) {
+				ByteBuffer s = segments[required - 1];
+				for (int i = o; i < segmentSize; i++) s.put(i, (byte)0);
+			}
+		} else {
+			ByteBuffer[] grown = segments;
+			if (required > grown.length) grown = Arrays.copyOf(grown, Math.max(required, 2*grown.length));
+			for (int i = segmentCount; i < required; i++) grown[i] = allocate();
+			segments = grown;
+			segmentCount = required;
+		}
+		size = length;
+		return size;
+	}
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public void force() {
+	}
+
+	/**
+	 * @return the number of allocated segments
+	 */
+	public int segments() {
+		return segmentCount;
+	}
+
+	private ByteBuffer allocate() {
+		return direct ? ByteBuffer.allocateDirect(segmentSize) : ByteBuffer.allocate(segmentSize);
+	}
+
+	private long round(long length) {
+		long r = length % segmentSize;
+		return r == 0 ? length : length + (segmentSize - r);
+	}
+
+	private void checkOpen() {
+		if (closed) throw new IllegalStateException("The store is closed.");
+	}
+}
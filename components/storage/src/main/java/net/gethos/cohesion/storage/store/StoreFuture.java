@@ -0,0 +1,89 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage.store;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The result of an asynchronous store request, completed by whichever thread finishes the request.
+ * <p>
+ * Requests can not be cancelled, since the store may already be writing from (or reading into)
+ * the buffers of the request.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+final class StoreFuture<V> implements Future<V> {
+
+	private boolean done;
+	private V value;
+	private Throwable failure;
+
+	StoreFuture() {
+		this.done = false;
+	}
+
+	static <V> StoreFuture<V> completed(V value) {
+		StoreFuture<V> f = new StoreFuture<V>();
+		f.complete(value);
+		return f;
+	}
+
+	synchronized void complete(V value) {
+		if (done) return;
+		this.value = value;
+		this.done = true;
+		notifyAll();
+	}
+
+	synchronized void fail(Throwable failure) {
+		if (done) return;
+		this.failure = failure;
+		this.done = true;
+		notifyAll();
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return false;
+	}
+
+	@Override
+	public synchronized boolean isDone() {
+		return done;
+	}
+
+	@Override
+	public synchronized V get() throws InterruptedException, ExecutionException {
+		while (!done) wait();
+		return result();
+	}
+
+	@Override
+	public synchronized V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		long remaining = unit.toNanos(timeout);
+		final long deadline = System.nanoTime() + remaining;
+		while (!done) {
+			if (remaining <= 0) throw new TimeoutException();
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+			remaining = deadline - System.nanoTime();
+		}
+		return result();
+	}
+
+	private V result() throws ExecutionException {
+		if (failure != null) throw new ExecutionException(failure);
+		return value;
+	}
+}
@@ -0,0 +1,32 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage.store;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A contiguous store whose data is held in buffers (e.g. mapped or direct buffers), so that
+ * regions can be read in place rather than being copied out.
+ * 
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public interface ViewableContiguousStore extends ContiguousStore {
+
+	/**
+	 * Obtain a read-only view of a region of the store, without copying the data.
+	 * <p>
+	 * The view reflects later writes to the same region, so a caller must not rely on the
+	 * contents of the view once the region may have been rewritten.
+	 * 
+	 * @param position - offset of the start of the region
+	 * @param length - length of the region
+	 * @return a read-only buffer over the region, with position zero and capacity <code>length</code>,
+	 *         or null if the region can not be viewed in place (e.g. it lies beyond the end of the store)
+	 */
+	public ByteBuffer view(long position, int length);
+
+}
@@ -0,0 +1,119 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.common;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LongHashMapTest {
+
+	private static final int TEST_COUNT = 20000;
+
+	/**
+	 * Apply random operations to both the primitive map and a reference map.
+	 */
+	@Test
+	public void matchesHashMap() {
+		Random random = new Random(1234);
+		LongHashMap<String> m = new LongHashMap<String>();
+		Map<Long, String> expected = new HashMap<Long, String>();
+
+		for (int i = 0; i < TEST_COUNT; i++) {
+			// a narrow key range forces collisions, updates and removals, including the zero key
+			long key = random.nextInt(2000) - 1000;
+			if (random.nextInt(3) == 0) {
+				assertEquals(expected.remove(key), m.remove(key));
+			} else {
+				String v = "v" + i;
+				assertEquals(expected.put(key, v), m.put(key, v));
+			}
+			assertEquals(expected.size(), m.size());
+		}
+
+		for (long key = -1000; key < 1000; key++) {
+			assertEquals(expected.containsKey(key), m.containsKey(key));
+			assertEquals(expected.get(key), m.get(key));
+		}
+
+		int count = 0;
+		for (LongHashMap.Cursor<String> c = m.cursor(); c.advance();) {
+			assertEquals(expected.get(c.key()), c.value());
+			count++;
+		}
+		assertEquals(expected.size(), count);
+		assertEquals(expected, m);
+	}
+
+	@Test
+	public void extremeKeys() {
+		LongHashMap<String> m = new LongHashMap<String>();
+		long[] keys = new long[]{0L, Long.MIN_VALUE, Long.MAX_VALUE, -1L, 1L};
+		for (long k : keys) assertNull(m.put(k, Long.toString(k)));
+		assertEquals(keys.length, m.size());
+		for (long k : keys) assertEquals(Long.toString(k), m.get(k));
+		for (long k : keys) assertEquals(Long.toString(k), m.remove(k));
+		assertTrue(m.isEmpty());
+	}
+
+	@Test
+	public void cursorReplacesValues() {
+		LongHashMap<String> m = new LongHashMap<String>();
+		for (long k = 0; k < 100; k++) m.put(k, "a");
+		for (LongHashMap.Cursor<String> c = m.cursor(); c.advance();) c.value("b" + c.key());
+		for (long k = 0; k < 100; k++) assertEquals("b" + k, m.get(k));
+	}
+
+	@Test
+	public void copy() {
+		LongHashMap<String> m = new LongHashMap<String>();
+		for (long k = -50; k < 50; k++) m.put(k, Long.toString(k));
+		LongHashMap<String> c = new LongHashMap<String>(m);
+		m.clear();
+		assertTrue(m.isEmpty());
+		assertNull(m.get(0L));
+		assertEquals(100, c.size());
+		for (long k = -50; k < 50; k++) assertEquals(Long.toString(k), c.get(k));
+	}
+
+	@Test
+	public void sortedOrder() {
+		Random random = new Random(4321);
+		LongSortedMap<Long> m = new LongSortedMap<Long>();
+		for (int i = 0; i < TEST_COUNT; i++) {
+			long key = random.nextInt(5000) - 2500;
+			if (random.nextInt(4) == 0) m.remove(key);
+			else m.put(key, Long.valueOf(key));
+
+			if (i % 1000 == 0 && !m.isEmpty()) {
+				long[] keys = m.sortedKeys();
+				assertEquals(keys[0], m.firstKey());
+			}
+		}
+
+		long previous = Long.MIN_VALUE;
+		int count = 0;
+		for (LongHashMap.Cursor<Long> c = m.cursor(); c.advance();) {
+			assertTrue(count == 0 || c.key() > previous);
+			assertEquals(c.key(), c.value().longValue());
+			previous = c.key();
+			count++;
+		}
+		assertEquals(m.size(), count);
+
+		// the lowest key is tracked across removals
+		long[] keys = m.sortedKeys().clone();
+		for (int i = 0; i < keys.length; i++) {
+			assertEquals(keys[i], m.firstKey());
+			m.remove(keys[i]);
+		}
+		assertTrue(m.isEmpty());
+	}
+}
@@ -11,6 +11,7 @@ import java.util.Random;
 
 import net.gethos.cohesion.storage.backing.BTreeBacking;
 import net.gethos.cohesion.storage.buffer.HeapBufferBacking;
+import net.gethos.cohesion.storage.buffer.OffHeapBufferBacking;
 import net.gethos.cohesion.storage.contiguous.WinnowingContiguousByteBufferBacking;
 import net.gethos.cohesion.storage.contiguous.WinnowingContiguousFileBacking;
 import net.gethos.cohesion.storage.heap.HeapBacking;
@@ -50,6 +51,7 @@ public class BTreeBulkTest extends BTreeTestBase {
 		runs.add(new Object[]{HeapBacking.class, HeapBacking.class.getSimpleName()});
 		runs.add(new Object[]{HeapCloneBacking.class, HeapCloneBacking.class.getSimpleName()});
 		runs.add(new Object[]{HeapBufferBacking.class, HeapBufferBacking.class.getSimpleName()});
+		runs.add(new Object[]{OffHeapBufferBacking.class, OffHeapBufferBacking.class.getSimpleName()});
 		runs.add(new Object[]{WinnowingContiguousByteBufferBacking.class, WinnowingContiguousByteBufferBacking.class.getSimpleName()});
 		runs.add(new Object[]{WinnowingContiguousFileBacking.class, WinnowingContiguousFileBacking.class.getSimpleName()});
 
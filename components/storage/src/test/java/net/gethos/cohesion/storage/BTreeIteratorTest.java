@@ -19,6 +19,8 @@ import java.util.TreeSet;
 import net.gethos.cohesion.common.UnsignedUtils;
 import net.gethos.cohesion.storage.backing.BTreeBacking;
 import net.gethos.cohesion.storage.buffer.HeapBufferBacking;
+import net.gethos.cohesion.storage.buffer.PrefixCompressedHeapBufferBacking;
+import net.gethos.cohesion.storage.buffer.TruncatedSeparatorHeapBufferBacking;
 import net.gethos.cohesion.storage.heap.HeapCloneBacking;
 
 import static org.junit.Assert.*;
@@ -54,6 +56,9 @@ public class BTreeIteratorTest extends BTreeTestBase {
 		runs.add(new Object[]{HeapCloneBacking.class,35000,2});
 		runs.add(new Object[]{HeapBufferBacking.class,100,1});
 		runs.add(new Object[]{HeapBufferBacking.class,35000,2});
+		runs.add(new Object[]{PrefixCompressedHeapBufferBacking.class,35000,2});
+		runs.add(new Object[]{TruncatedSeparatorHeapBufferBacking.class,35000,1});
+		runs.add(new Object[]{TruncatedSeparatorHeapBufferBacking.class,100000,2});
 		
 		return runs;
 	}
@@ -5,6 +5,9 @@
  */
 package net.gethos.cohesion.storage;
 
+import java.nio.ByteBuffer;
+import java.util.Random;
+
 import org.junit.Test;
 
 import static org.junit.Assert.*;
@@ -45,4 +48,66 @@ public class BTreeKeyTest {
 		assert(c < 0);
 	}
 	
+	@Test
+	public void separator() {
+		Random random = new Random(7);
+		for (int i = 0; i < 1000; i++) {
+			BTree.Key a = randomKey(random);
+			BTree.Key b = randomKey(random);
+			int c = a.compareTo(b);
+			if (c == 0) continue;
+			BTree.Key left = c < 0 ? a : b;
+			BTree.Key right = c < 0 ? b : a;
+			
+			int length = BTree.Key.separatorLength(left, right);
+			BTree.Key s = BTree.Key.separator(left, length);
+			assertTrue(left + " < " + s, left.compareTo(s) <= 0);
+			assertTrue(s + " < " + right, s.compareTo(right) < 0);
+			
+			// no shorter separator will do
+			if (length > 0) assertTrue(BTree.Key.separator(left, length-1).compareTo(right) >= 0);
+		}
+		
+		assertEquals(0, BTree.Key.separatorLength(BTree.Key.MAX_KEY, null));
+		assertEquals(BTree.Key.COMPARABLE_SIZE, BTree.Key.separatorLength(BTree.Key.MIN_KEY, null));
+	}
+
+	private static BTree.Key randomKey(Random random) {
+		// choose from a small range of values, so that keys share prefixes
+		BTree.Key k = new BTree.Key();
+		k.idx = (short)(random.nextInt(3) - 1);
+		k.idHigh = random.nextInt(3) - 1;
+		k.idMiddle = random.nextBoolean() ? random.nextLong() : 0;
+		k.idLow = random.nextInt(3) - 1;
+		k.type = (short)(random.nextInt(3) - 1);
+		k.parameter = random.nextLong();
+		return k;
+	}
+
+	@Test
+	public void compareInBuffer() {
+		BTree.Key[] keys = {
+			BTree.Key.MIN_KEY,
+			BTree.Key.MAX_KEY,
+			new BTree.Key(),
+			BTree.Key.parseKey("0001:0000000000000000000000000000000000000001:0001:0000000000000000"),
+			BTree.Key.parseKey("0001:8000000000000000000000000000000000000000:0001:0000000000000000"),
+			BTree.Key.parseKey("0001:0000000000000000800000000000000000000000:0001:0000000000000000"),
+			BTree.Key.parseKey("0001:0000000000000000000000000000000080000000:0001:0000000000000000"),
+			BTree.Key.parseKey("0001:0000000000000000000000000000000080000000:8000:0000000000000000"),
+			BTree.Key.parseKey("8000:0000000000000000000000000000000000000000:0000:ffffffffffffffff"),
+		};
+
+		int offset = 3;
+		ByteBuffer data = ByteBuffer.allocate(offset + BTree.Key.SIZE);
+		data.order(StorageConstants.NETWORK_ORDER);
+		for (BTree.Key stored : keys) {
+			stored.write(data, offset);
+			for (BTree.Key probe : keys) {
+				int expected = Integer.signum(probe.compareTo(stored));
+				assertEquals(probe + " vs " + stored, expected, Integer.signum(probe.compareTo(data, offset)));
+			}
+		}
+	}
+
 }
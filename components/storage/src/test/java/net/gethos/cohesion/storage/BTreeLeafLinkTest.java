@@ -0,0 +1,244 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import net.gethos.cohesion.storage.backing.BTreeBacking;
+import net.gethos.cohesion.storage.backing.BTreeBackingTransaction;
+import net.gethos.cohesion.storage.backing.BTreeLeafNode;
+import net.gethos.cohesion.storage.backing.BTreeNode;
+import net.gethos.cohesion.storage.backing.ReadOnlyDelegateBackingTransaction;
+import net.gethos.cohesion.storage.buffer.CompactChildHeapBufferBacking;
+import net.gethos.cohesion.storage.buffer.HeapBufferBacking;
+import net.gethos.cohesion.storage.buffer.OffHeapBufferBacking;
+import net.gethos.cohesion.storage.buffer.PrefixCompressedHeapBufferBacking;
+import net.gethos.cohesion.storage.buffer.TruncatedSeparatorHeapBufferBacking;
+import net.gethos.cohesion.storage.contiguous.WinnowingContiguousByteBufferBacking;
+import net.gethos.cohesion.storage.heap.HeapBacking;
+import net.gethos.cohesion.storage.heap.HeapCloneBacking;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+@RunWith(Parameterized.class)
+public class BTreeLeafLinkTest extends BTreeTestBase {
+
+	private static final int TEST_CAPACITY = 20;
+	private static final int TEST_COUNT = 3000;
+	private static final int CHECK_INTERVAL = 250;
+
+	private final Class<? extends BTreeBacking> backingClass;
+	private final SplitPolicy splitPolicy;
+
+	public BTreeLeafLinkTest(Class<? extends BTreeBacking> backingClass, SplitPolicy splitPolicy) {
+		this.backingClass = backingClass;
+		this.splitPolicy = splitPolicy;
+	}
+
+	@Parameters
+	public static Collection<Object[]> parameters() {
+		ArrayList<Object[]> runs = new ArrayList<Object[]>();
+
+		runs.add(new Object[]{HeapBacking.class, SplitPolicy.BALANCED});
+		runs.add(new Object[]{HeapCloneBacking.class, SplitPolicy.BALANCED});
+		runs.add(new Object[]{HeapBufferBacking.class, SplitPolicy.BALANCED});
+		runs.add(new Object[]{HeapBufferBacking.class, SplitPolicy.APPEND});
+		runs.add(new Object[]{OffHeapBufferBacking.class, SplitPolicy.BALANCED});
+		runs.add(new Object[]{PrefixCompressedHeapBufferBacking.class, SplitPolicy.BALANCED});
+		runs.add(new Object[]{TruncatedSeparatorHeapBufferBacking.class, SplitPolicy.BALANCED});
+		runs.add(new Object[]{CompactChildHeapBufferBacking.class, SplitPolicy.BALANCED});
+		runs.add(new Object[]{WinnowingContiguousByteBufferBacking.class, SplitPolicy.BALANCED});
+		runs.add(new Object[]{WinnowingContiguousByteBufferBacking.class, SplitPolicy.APPEND});
+
+		return runs;
+	}
+
+	private Random random;
+
+	@Override
+	protected Random random() {
+		return random;
+	}
+
+	@Before
+	public void setUp() {
+		this.random = new Random(4321);
+	}
+
+	private BackedBTree newBTreeInstance() {
+		try {
+			return new BackedBTree(newBackingInstance(backingClass, TEST_CAPACITY), splitPolicy);
+		} catch (Throwable e) {
+			throw new RuntimeException("failed to create BTree", e);
+		}
+	}
+
+	/**
+	 * Check that the leaf links follow the leaves while the tree is split and merged.
+	 */
+	@Test
+	public void storeAndDelete() {
+		BackedBTree btree = newBTreeInstance();
+
+		List<Long> ids = new ArrayList<Long>();
+		for (long id = 0; id < TEST_COUNT; id++) ids.add(splitPolicy == SplitPolicy.APPEND ? id : 2*id);
+		if (splitPolicy != SplitPolicy.APPEND) Collections.shuffle(ids, random);
+
+		List<Long> stored = new ArrayList<Long>();
+		for (long id : ids) {
+			storeFetchOne(btree, id);
+			stored.add(id);
+			if (stored.size() % CHECK_INTERVAL == 0) checkLinks(btree, stored);
+		}
+		checkLinks(btree, stored);
+
+		Collections.shuffle(ids, random);
+		for (long id : ids) {
+			BTreeTransaction t = btree.open();
+			try {
+				assertNotNull(t.delete(createKey(id)));
+				t.commit();
+			} finally {
+				t.close();
+			}
+			stored.remove(Long.valueOf(id));
+			if (stored.size() % CHECK_INTERVAL == 0) checkLinks(btree, stored);
+		}
+		checkLinks(btree, stored);
+	}
+
+	/**
+	 * Check that a range walk moves directly from leaf to leaf.
+	 */
+	@Test
+	public void walkFetchesLeaves() {
+		BackedBTree btree = newBTreeInstance();
+		List<Long> ids = new ArrayList<Long>();
+		for (long id = 0; id < TEST_COUNT; id++) ids.add(id);
+		Collections.shuffle(ids, random);
+		for (long id : ids) storeFetchOne(btree, id);
+
+		final int[] retrieved = new int[1];
+		BTreeBackingTransaction bt = btree.backing().open();
+		try {
+			ReadOnlyTransactionBTree t = new ReadOnlyTransactionBTree(new ReadOnlyDelegateBackingTransaction(bt) {
+				@Override
+				public BTreeNode retrieve(long offset) {
+					retrieved[0]++;
+					return super.retrieve(offset);
+				}
+			});
+
+			final int[] leaves = new int[1];
+			final int depth = bt.depth();
+			t.visit(new ReadOnlyTransactionBTree.BTreeNodeVisitor() {
+				@Override
+				public void visit(int level, long offset, BTreeNode n) {
+					if (level == depth) leaves[0]++;
+				}
+			});
+
+			int count = 0;
+			retrieved[0] = 0;
+			for (BTree.Key k : t.range(createKey(0), createKey(-1L))) {
+				assertEquals(createKey(count), k);
+				count++;
+			}
+			assertEquals(TEST_COUNT, count);
+
+			// one fetch per item and per leaf, plus the initial descent
+			assertTrue(retrieved[0] <= TEST_COUNT + leaves[0] + depth + 1);
+		} finally {
+			bt.close();
+		}
+	}
+
+	/**
+	 * Check that a range walk falls back to the index nodes for leaves that are not linked,
+	 * as is the case for leaves written before the leaves were linked.
+	 */
+	@Test
+	public void walkUnknownLinks() {
+		BackedBTree btree = newBTreeInstance();
+		for (long id = 0; id < TEST_COUNT; id++) storeFetchOne(btree, id);
+
+		BTreeBackingTransaction bt = btree.backing().open();
+		try {
+			final List<Long> offsets = new ArrayList<Long>();
+			final int depth = bt.depth();
+			new ReadOnlyTransactionBTree(bt).visit(new ReadOnlyTransactionBTree.BTreeNodeVisitor() {
+				@Override
+				public void visit(int level, long offset, BTreeNode n) {
+					if (level == depth) offsets.add(offset);
+				}
+			});
+			for (int i = 0; i < offsets.size(); i += 3) {
+				BTreeLeafNode n = (BTreeLeafNode)bt.retrieve(offsets.get(i));
+				n.rightSibling(BTreeLeafNode.UNKNOWN_RIGHT_SIBLING);
+				bt.record(offsets.get(i), n);
+			}
+			assertTrue(bt.commit());
+		} finally {
+			bt.close();
+		}
+
+		ReadOnlyBTreeTransaction t = btree.openReadOnly();
+		try {
+			int count = 0;
+			for (BTree.Key k : t.range(createKey(0), createKey(-1L))) {
+				assertEquals(createKey(count), k);
+				count++;
+			}
+			assertEquals(TEST_COUNT, count);
+		} finally {
+			t.close();
+		}
+	}
+
+	private void checkLinks(BackedBTree btree, List<Long> stored) {
+		ReadOnlyBTreeTransaction rt = btree.openReadOnly();
+		try {
+			ReadOnlyTransactionBTree t = (ReadOnlyTransactionBTree)rt;
+			final int depth = btree.depth();
+			final List<Long> offsets = new ArrayList<Long>();
+			final List<BTreeLeafNode> leaves = new ArrayList<BTreeLeafNode>();
+			t.visit(new ReadOnlyTransactionBTree.BTreeNodeVisitor() {
+				@Override
+				public void visit(int level, long offset, BTreeNode n) {
+					if (level == depth) {
+						offsets.add(offset);
+						leaves.add((BTreeLeafNode)n);
+					}
+				}
+			});
+
+			for (int i = 0; i < leaves.size(); i++) {
+				long expected = i+1 < leaves.size() ? offsets.get(i+1) : BTreeLeafNode.NO_RIGHT_SIBLING;
+				assertEquals("leaf " + i + " of " + leaves.size(), expected, leaves.get(i).rightSibling());
+			}
+
+			int count = 0;
+			for (@SuppressWarnings("unused") BTree.Key k : t.range(createKey(0), createKey(-1L))) count++;
+			assertEquals(stored.size(), count);
+		} finally {
+			rt.close();
+		}
+	}
+}
@@ -0,0 +1,133 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import net.gethos.cohesion.storage.backing.BTreeLeafNode;
+import net.gethos.cohesion.storage.contiguous.WinnowingContiguousByteBufferBacking;
+
+/**
+ * Checks that point lookups via caller supplied holders reach an allocation free steady state,
+ * for both inline and external items, once the nodes on the path are cached.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class BTreeLookupAllocationTest {
+
+	private static final int ITEMS = 2000;
+	private static final int INLINE_SIZE = 16;
+	private static final int EXTERNAL_SIZE = 8192;
+
+	private static final int WARMUP = 20;
+	private static final int ROUNDS = 10;
+
+	/**
+	 * Allowance for the measurement itself, which is independent of the number of lookups.
+	 */
+	private static final long SLACK = 1024;
+
+	private BTree btree;
+
+	@Before
+	public void setUp() {
+		btree = new BackedBTree(new WinnowingContiguousByteBufferBacking(0));
+		BTreeTransaction t = btree.open();
+		ByteBuffer small = ByteBuffer.allocate(INLINE_SIZE);
+		ByteBuffer large = ByteBuffer.allocate(EXTERNAL_SIZE);
+		for (int i = 0; i < ITEMS; i++) {
+			ByteBuffer b = (i % 2 == 0) ? small : large;
+			b.clear();
+			b.putInt(0, i);
+			assertNotNull(t.store(BTree.Key.key(1, i), 0, b));
+		}
+		t.commit();
+		t.close();
+	}
+
+	@Test
+	public void holders() {
+		ReadOnlyBTreeTransaction r = btree.openReadOnly();
+		BTree.Reference ref = new BTree.Reference();
+		BTree.Stat stat = new BTree.Stat();
+
+		assertTrue(r.search(BTree.Key.key(1, 7), ref));
+		assertEquals(EXTERNAL_SIZE, ref.size);
+		assertTrue(r.stat(BTree.Key.key(1, 7), stat));
+		assertTrue((stat.itemFlags & BTreeLeafNode.Flags.EXTERNAL.mask) != 0);
+		assertEquals(EXTERNAL_SIZE, stat.externalSize);
+		assertEquals(ref.offset, stat.itemNodeOffset);
+		assertEquals(ref.index, stat.itemIndex);
+
+		assertTrue(r.search(BTree.Key.key(1, 8), ref));
+		assertEquals(INLINE_SIZE, ref.size);
+		assertEquals(r.search(BTree.Key.key(1, 8)), ref);
+
+		// misses leave the holders as they were
+		assertFalse(r.search(BTree.Key.key(1, ITEMS), ref));
+		assertFalse(r.stat(BTree.Key.key(1, ITEMS), stat));
+		assertEquals(INLINE_SIZE, ref.size);
+		assertEquals(EXTERNAL_SIZE, stat.externalSize);
+
+		r.close();
+	}
+
+	@Test
+	public void zeroAllocation() {
+		java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(mx instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean tmx = (com.sun.management.ThreadMXBean)mx;
+		Assume.assumeTrue(tmx.isThreadAllocatedMemorySupported());
+		tmx.setThreadAllocatedMemoryEnabled(true);
+
+		ReadOnlyBTreeTransaction r = btree.openReadOnly();
+
+		// all lookup state is allocated up front
+		BTree.Key[] keys = new BTree.Key[ITEMS];
+		for (int i = 0; i < ITEMS; i++) keys[i] = BTree.Key.key(1, i);
+		BTree.Reference ref = new BTree.Reference();
+		BTree.Stat stat = new BTree.Stat();
+		ByteBuffer data = ByteBuffer.allocate(EXTERNAL_SIZE);
+		long thread = Thread.currentThread().getId();
+
+		for (int w = 0; w < WARMUP; w++) assertEquals(ITEMS, lookup(r, keys, ref, stat, data));
+
+		// (the checks are tallied rather than asserted, since the assertions themselves may box)
+		int found = 0;
+		long before = tmx.getThreadAllocatedBytes(thread);
+		for (int w = 0; w < ROUNDS; w++) found += lookup(r, keys, ref, stat, data);
+		long allocated = tmx.getThreadAllocatedBytes(thread) - before;
+
+		assertEquals(ROUNDS * ITEMS, found);
+		assertTrue(String.format("%d bytes allocated during %d lookups", allocated, ROUNDS * ITEMS), allocated < SLACK);
+
+		r.close();
+	}
+
+	/**
+	 * @return the number of keys that were found with the expected data
+	 */
+	private static int lookup(ReadOnlyBTreeTransaction r, BTree.Key[] keys, BTree.Reference ref, BTree.Stat stat, ByteBuffer data) {
+		int found = 0;
+		for (int i = 0; i < keys.length; i++) {
+			data.clear();
+			int l = r.fetch(keys[i], 0, data, ref);
+			if (l != ((i % 2 == 0) ? INLINE_SIZE : EXTERNAL_SIZE)) continue;
+			if (data.getInt(0) != i) continue;
+			if (!r.stat(keys[i], stat) || stat.itemIndex != ref.index) continue;
+			found++;
+		}
+		return found;
+	}
+}
@@ -0,0 +1,206 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import net.gethos.cohesion.storage.backing.BTreeBacking;
+import net.gethos.cohesion.storage.buffer.ByteBufferNodeCapacities;
+import net.gethos.cohesion.storage.buffer.HeapBufferBacking;
+import net.gethos.cohesion.storage.buffer.PrefixCompressedHeapBufferBacking;
+import net.gethos.cohesion.storage.contiguous.WinnowingContiguousBacking;
+import net.gethos.cohesion.storage.contiguous.WinnowingContiguousByteBufferBacking;
+import net.gethos.cohesion.storage.heap.HeapBacking;
+import net.gethos.cohesion.storage.store.ByteBufferContiguousStore;
+import net.gethos.cohesion.storage.store.ContiguousStore;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+@RunWith(Parameterized.class)
+public class BTreeSplitPolicyTest extends BTreeTestBase {
+
+	private static final int TEST_CAPACITY = 20;
+	private static final int APPEND_COUNT = 5000;
+
+	private final Class<? extends BTreeBacking> backingClass;
+
+	public BTreeSplitPolicyTest(Class<? extends BTreeBacking> backingClass) {
+		this.backingClass = backingClass;
+	}
+
+	@Parameters
+	public static Collection<Object[]> parameters() {
+		ArrayList<Object[]> runs = new ArrayList<Object[]>();
+
+		runs.add(new Object[]{HeapBacking.class});
+		runs.add(new Object[]{HeapBufferBacking.class});
+		runs.add(new Object[]{PrefixCompressedHeapBufferBacking.class});
+		runs.add(new Object[]{WinnowingContiguousByteBufferBacking.class});
+
+		return runs;
+	}
+
+	private Random random;
+
+	@Override
+	protected Random random() {
+		return random;
+	}
+
+	@Before
+	public void setUp() {
+		this.random = new Random(1234);
+	}
+
+	private BTree newBTreeInstance(SplitPolicy splitPolicy) {
+		try {
+			return new BackedBTree(newBackingInstance(backingClass, TEST_CAPACITY), splitPolicy);
+		} catch (Throwable e) {
+			throw new RuntimeException("failed to create BTree", e);
+		}
+	}
+
+	@Test
+	public void append() {
+		BTree btree = newBTreeInstance(SplitPolicy.APPEND);
+		for (long id = 0; id < APPEND_COUNT; id++) storeFetchOne(btree, id);
+		checkAll(btree, APPEND_COUNT);
+	}
+
+	@Test
+	public void appendAndDelete() {
+		buildAndDelete(newBTreeInstance(SplitPolicy.APPEND), APPEND_COUNT, false);
+	}
+
+	@Test
+	public void appendThenRandom() {
+		BTree btree = newBTreeInstance(SplitPolicy.APPEND);
+		for (long id = 0; id < APPEND_COUNT; id += 2) storeFetchOne(btree, id);
+
+		// fill in the gaps, which now land within full leaves
+		List<Long> ids = new ArrayList<Long>();
+		for (long id = 1; id < APPEND_COUNT; id += 2) ids.add(id);
+		Collections.shuffle(ids, random);
+		for (long id : ids) storeFetchOne(btree, id);
+
+		checkAll(btree, APPEND_COUNT);
+	}
+
+	private void checkAll(BTree btree, int count) {
+		ReadOnlyBTreeTransaction t = btree.openReadOnly();
+		try {
+			for (long id = 0; id < count; id++) {
+				assertNotNull("missing: " + id, t.search(createKey(id)));
+			}
+		} finally {
+			t.close();
+		}
+	}
+
+	/**
+	 * Compare the space used and the volume written while appending, under each policy.
+	 */
+	@Test
+	public void bulkAppend() {
+		if (backingClass != WinnowingContiguousByteBufferBacking.class) return;
+
+		CountingContiguousStore balanced = bulkAppend(SplitPolicy.BALANCED);
+		CountingContiguousStore append = bulkAppend(SplitPolicy.APPEND);
+
+//		System.out.printf("balanced: extent=%d written=%d%n", balanced.extent, balanced.written);
+//		System.out.printf("append:   extent=%d written=%d%n", append.extent, append.written);
+
+		// the leaves are close to full rather than half full
+		assertTrue(append.extent * 10 < balanced.extent * 7);
+		assertTrue(append.written < balanced.written);
+	}
+
+	private CountingContiguousStore bulkAppend(SplitPolicy splitPolicy) {
+		CountingContiguousStore store = new CountingContiguousStore(new ByteBufferContiguousStore(4096*4));
+		BTree btree = new BackedBTree(new WinnowingContiguousBacking(store, new ByteBufferNodeCapacities(), true, false, true), splitPolicy);
+		try {
+			// append in batches, as a bulk load would
+			final int batch = 100;
+			ByteBuffer value = ByteBuffer.allocate(100);
+			for (long id = 0; id < 100*batch; ) {
+				BTreeTransaction t = btree.open();
+				for (int i = 0; i < batch; i++, id++) {
+					value.clear();
+					assertNotNull(t.store(createKey(id), 0, value));
+				}
+				assertTrue(t.commit());
+			}
+			checkAll(btree, 100*batch);
+		} finally {
+			btree.close();
+		}
+		return store;
+	}
+
+	/**
+	 * Track the extent of, and number of bytes written to, a store.
+	 */
+	private static class CountingContiguousStore implements ContiguousStore {
+
+		private final ContiguousStore store;
+
+		long extent;
+		long written;
+
+		CountingContiguousStore(ContiguousStore store) {
+			this.store = store;
+		}
+
+		@Override
+		public long write(long position, ByteBuffer... buffers) {
+			long l = store.write(position, buffers);
+			written += l;
+			extent = Math.max(extent, position + l);
+			return l;
+		}
+
+		@Override
+		public long read(long position, ByteBuffer... buffers) {
+			return store.read(position, buffers);
+		}
+
+		@Override
+		public long truncate(long length) {
+			return store.truncate(length);
+		}
+
+		@Override
+		public long size() {
+			return store.size();
+		}
+
+		@Override
+		public void force() {
+			store.force();
+		}
+
+		@Override
+		public void close() {
+			store.close();
+		}
+	}
+
+}
@@ -21,8 +21,17 @@ import org.junit.runners.Parameterized.Parameters;
 import static org.junit.Assert.*;
 
 import net.gethos.cohesion.storage.backing.BTreeBacking;
+import net.gethos.cohesion.storage.buffer.CompactChildHeapBufferBacking;
 import net.gethos.cohesion.storage.buffer.HeapBufferBacking;
+import net.gethos.cohesion.storage.buffer.OffHeapBufferBacking;
+import net.gethos.cohesion.storage.buffer.InterpolationSearchHeapBufferBacking;
+import net.gethos.cohesion.storage.buffer.PrefixCompressedHeapBufferBacking;
+import net.gethos.cohesion.storage.buffer.TruncatedSeparatorHeapBufferBacking;
+import net.gethos.cohesion.storage.contiguous.CompactChildContiguousByteBufferBacking;
+import net.gethos.cohesion.storage.contiguous.PrefixCompressedContiguousByteBufferBacking;
+import net.gethos.cohesion.storage.contiguous.TruncatedSeparatorContiguousByteBufferBacking;
 import net.gethos.cohesion.storage.contiguous.WinnowingContiguousByteBufferBacking;
+import net.gethos.cohesion.storage.contiguous.WinnowingContiguousSegmentedBacking;
 import net.gethos.cohesion.storage.heap.HeapBacking;
 import net.gethos.cohesion.storage.heap.HeapCloneBacking;
 
@@ -49,7 +58,16 @@ public class BTreeTest extends BTreeTestBase {
 		runs.add(new Object[]{HeapBacking.class});
 		runs.add(new Object[]{HeapCloneBacking.class});
 		runs.add(new Object[]{HeapBufferBacking.class});
+		runs.add(new Object[]{OffHeapBufferBacking.class});
 		runs.add(new Object[]{WinnowingContiguousByteBufferBacking.class});	
+		runs.add(new Object[]{WinnowingContiguousSegmentedBacking.class});
+		runs.add(new Object[]{PrefixCompressedHeapBufferBacking.class});
+		runs.add(new Object[]{PrefixCompressedContiguousByteBufferBacking.class});
+		runs.add(new Object[]{TruncatedSeparatorHeapBufferBacking.class});
+		runs.add(new Object[]{TruncatedSeparatorContiguousByteBufferBacking.class});
+		runs.add(new Object[]{CompactChildHeapBufferBacking.class});
+		runs.add(new Object[]{CompactChildContiguousByteBufferBacking.class});
+		runs.add(new Object[]{InterpolationSearchHeapBufferBacking.class});
 		
 		return runs;
 	}
@@ -5,6 +5,7 @@
  */
 package net.gethos.cohesion.storage;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -12,10 +13,21 @@ import java.util.List;
 import java.util.Random;
 
 import net.gethos.cohesion.storage.backing.BTreeBacking;
+import net.gethos.cohesion.storage.buffer.CompactChildHeapBufferBacking;
 import net.gethos.cohesion.storage.buffer.HeapBufferBacking;
+import net.gethos.cohesion.storage.buffer.InterpolationSearchHeapBufferBacking;
+import net.gethos.cohesion.storage.buffer.PrefixCompressedHeapBufferBacking;
+import net.gethos.cohesion.storage.buffer.TruncatedSeparatorHeapBufferBacking;
 import net.gethos.cohesion.storage.contiguous.SynchronousContinguousFileBacking;
+import net.gethos.cohesion.storage.contiguous.CompactChildContiguousByteBufferBacking;
+import net.gethos.cohesion.storage.contiguous.PrefixCompressedContiguousByteBufferBacking;
+import net.gethos.cohesion.storage.contiguous.TruncatedSeparatorContiguousByteBufferBacking;
 import net.gethos.cohesion.storage.contiguous.WinnowingContiguousByteBufferBacking;
+import net.gethos.cohesion.storage.contiguous.WinnowingContiguousSegmentedBacking;
 import net.gethos.cohesion.storage.contiguous.WinnowingContiguousFileBacking;
+import net.gethos.cohesion.storage.contiguous.WinnowingContiguousMappedBacking;
+import net.gethos.cohesion.storage.contiguous.WinnowingContiguousAsyncBacking;
+import net.gethos.cohesion.storage.contiguous.WinnowingContiguousDirectBacking;
 import net.gethos.cohesion.storage.heap.HeapBacking;
 import net.gethos.cohesion.storage.heap.HeapCloneBacking;
 
@@ -25,9 +37,12 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 import org.junit.runners.Parameterized.Parameters;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
@@ -54,7 +69,18 @@ public class BTreeTransactionBulkTest extends BTreeTestBase {
 		runs.add(new Object[] { HeapCloneBacking.class, 10000 });
 		runs.add(new Object[] { HeapBufferBacking.class, 10000 });
 		runs.add(new Object[] { WinnowingContiguousByteBufferBacking.class, 10000 });
+		runs.add(new Object[] { WinnowingContiguousSegmentedBacking.class, 10000 });
+		runs.add(new Object[] { PrefixCompressedHeapBufferBacking.class, 10000 });
+		runs.add(new Object[] { PrefixCompressedContiguousByteBufferBacking.class, 10000 });
+		runs.add(new Object[] { TruncatedSeparatorHeapBufferBacking.class, 10000 });
+		runs.add(new Object[] { TruncatedSeparatorContiguousByteBufferBacking.class, 10000 });
+		runs.add(new Object[] { CompactChildHeapBufferBacking.class, 10000 });
+		runs.add(new Object[] { CompactChildContiguousByteBufferBacking.class, 10000 });
+		runs.add(new Object[] { InterpolationSearchHeapBufferBacking.class, 10000 });
 		runs.add(new Object[] { WinnowingContiguousFileBacking.class, 10000 });
+		runs.add(new Object[] { WinnowingContiguousMappedBacking.class, 10000 });
+		runs.add(new Object[] { WinnowingContiguousAsyncBacking.class, 10000 });
+		runs.add(new Object[] { WinnowingContiguousDirectBacking.class, 10000 });
 		runs.add(new Object[] { SynchronousContinguousFileBacking.class, 1000 });
 
 		return runs;
@@ -94,6 +120,96 @@ public class BTreeTransactionBulkTest extends BTreeTestBase {
 //		System.out.printf("force-count=%d", net.gethos.cohesion.storage.store.RandomAccessContiguousStore.fcount);
 	}
 
+	/**
+	 * Store sorted batches of items, that land among the items of earlier batches,
+	 * and replace some of the existing items.
+	 */
+	@Test
+	public void storeAllInBatches() {
+		BTree btree = newBTreeInstance(backingClass, TEST_CAPACITY_BIG);
+
+		final int elements = 4000;
+		final int batch = 400;
+		List<Long> ids = new ArrayList<Long>();
+		for (int i = 0; i < elements; i++) ids.add((long)i);
+		Collections.shuffle(ids, random);
+
+		byte[][] expected = new byte[elements][];
+		for (int from = 0; from < elements; from += batch) {
+			List<Long> sorted = new ArrayList<Long>(ids.subList(from, from + batch));
+			// replace some of the items stored by the previous batch
+			if (from > 0) sorted.addAll(ids.subList(from - batch/4, from));
+			Collections.sort(sorted);
+
+			BTree.Key[] keys = new BTree.Key[sorted.size()];
+			ByteBuffer[] buffers = new ByteBuffer[sorted.size()];
+			for (int i = 0; i < keys.length; i++) {
+				int id = (int)(long)sorted.get(i);
+				// the occasional item is too large to be held in a node
+				byte[] data = random(i % 97 == 0 ? 5000 : random.nextInt(40));
+				expected[id] = data;
+				keys[i] = createKey(id);
+				buffers[i] = ByteBuffer.wrap(data);
+			}
+
+			BTreeTransaction bt = btree.open();
+			try {
+				assertEquals(keys.length, bt.storeAll(keys, buffers));
+				assertTrue(bt.commit());
+			} finally {
+				bt.close();
+			}
+		}
+
+		ReadOnlyBTreeTransaction rt = btree.openReadOnly();
+		try {
+			for (int id = 0; id < elements; id++) {
+				BTree.Reference ref = rt.search(createKey(id));
+				assertNotNull("missing: " + id, ref);
+				assertEquals(expected[id].length, ref.size);
+				ByteBuffer data = ByteBuffer.allocate(expected[id].length);
+				rt.fetch(ref, 0, data);
+				assertArrayEquals("data for: " + id, expected[id], data.array());
+			}
+		} finally {
+			rt.close();
+		}
+	}
+
+	@Test
+	public void truncateAll() {
+		BTree btree = newBTreeInstance(backingClass, TEST_CAPACITY_BIG);
+
+		final int elements = 2000;
+		BTree.Key[] keys = new BTree.Key[elements];
+		long[] lengths = new long[elements];
+		for (int i = 0; i < elements; i++) {
+			keys[i] = createKey(2*i);
+			lengths[i] = i % 10;
+		}
+
+		BTreeTransaction bt = btree.open();
+		try {
+			assertEquals(elements, bt.truncateAll(keys, lengths));
+			for (int i = 0; i < elements; i++) {
+				BTree.Reference ref = bt.search(keys[i]);
+				assertNotNull(ref);
+				assertEquals(lengths[i], ref.size);
+			}
+
+			// the keys must be sorted
+			BTree.Key[] unsorted = { createKey(3), createKey(1) };
+			try {
+				bt.truncateAll(unsorted, new long[2]);
+				fail("unsorted keys were accepted");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		} finally {
+			bt.close();
+		}
+	}
+
 	protected void buildAndDelete(BTree btree, int elements, int chunk, boolean deleteInSameOrder) {
 		Counters c = new Counters();
 
@@ -0,0 +1,69 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage.backing;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class OffsetAllocatorTest {
+
+	private static final int TEST_COUNT = 10000;
+
+	@Test
+	public void progression() {
+		OffsetAllocator a = new OffsetAllocator(1, 2);
+		for (int i = 0; i < TEST_COUNT; i++) assertEquals(1 + 2L*i, a.alloc());
+		assertEquals(0, a.available());
+	}
+
+	@Test
+	public void recycle() {
+		OffsetAllocator a = new OffsetAllocator(0, 2);
+		for (int i = 0; i < TEST_COUNT; i++) a.alloc();
+		a.free(10);
+		a.free(4);
+		assertEquals(2, a.available());
+		assertEquals(4, a.alloc());
+		assertEquals(10, a.alloc());
+		assertEquals(2L*TEST_COUNT, a.alloc());
+	}
+
+	@Test
+	public void noDuplicates() {
+		Random random = new Random(1234);
+		OffsetAllocator a = new OffsetAllocator(0, 1);
+		Set<Long> used = new HashSet<Long>();
+		for (int i = 0; i < TEST_COUNT; i++) {
+			if (!used.isEmpty() && random.nextInt(3) == 0) {
+				Long l = used.iterator().next();
+				used.remove(l);
+				a.free(l);
+			} else {
+				long l = a.alloc();
+				assertTrue(used.add(l));
+			}
+		}
+		assertTrue(used.size() + a.available() > 0);
+	}
+
+	@Test
+	public void exhausted() {
+		OffsetAllocator a = new OffsetAllocator(Long.MAX_VALUE - 3, 2);
+		assertEquals(Long.MAX_VALUE - 3, a.alloc());
+		assertEquals(BTreeBackingTransaction.ALLOC_FAILED, a.alloc());
+		a.free(Long.MAX_VALUE - 3);
+		assertEquals(Long.MAX_VALUE - 3, a.alloc());
+	}
+}
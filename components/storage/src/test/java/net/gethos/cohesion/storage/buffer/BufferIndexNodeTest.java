@@ -113,4 +113,250 @@ public class BufferIndexNodeTest {
 		assertEquals(123L,s.rightChild());
 	}
 	
+	@Test
+	public void truncatedSeparators() {
+		BufferIndexNode n = truncatedNode();
+		assertTrue(n.isTruncated());
+		assertFalse(n.hasExactKeys());
+		
+		// separate each corpus key from its successor
+		int count = corpusCopy.items();
+		for (int i = 0; i < count; i++) {
+			BTree.Key left = corpusCopy.key(i);
+			BTree.Key right = i+1 < count ? corpusCopy.key(i+1) : null;
+			int ni = n.alloc(left, right);
+			assertTrue(ni >= 0);
+			n.write(ni, 1000L + i);
+		}
+		assertEquals(count, n.items());
+		assertTrue(n.used() < corpusCopy.used()/2);
+		
+		for (int i = 0; i < count; i++) {
+			// each key is routed to the child that it was separated into
+			int x = n.find(corpusCopy.key(i));
+			if (x < 0) x = -x-1;
+			assertEquals(i, x);
+			assertEquals(1000L + i, n.offset(x));
+			
+			BTree.Key separator = n.key(i);
+			assertTrue(separator.compareTo(corpusCopy.key(i)) >= 0);
+			if (i+1 < count) assertTrue(separator.compareTo(corpusCopy.key(i+1)) < 0);
+		}
+		
+		// the decoded view agrees with the node
+		n.decode();
+		for (int i = 0; i < count; i++) assertEquals(i, n.find(n.key(i)));
+		
+		// modifying to a longer separator repacks the node
+		BTree.Key longer = corpusCopy.key(5);
+		assertTrue(n.modify(5, longer));
+		assertFalse(n.isDecoded());
+		assertEquals(longer, n.key(5));
+		assertEquals(1005L, n.offset(5));
+		
+		// deleting retains the order and children of the remaining items
+		assertTrue(n.delete(0));
+		assertEquals(count-1, n.items());
+		for (int i = 0; i < count-1; i++) assertEquals(1000L + i + 1, n.offset(i));
+		assertEquals(4, n.find(longer));
+	}
+	
+	@Test
+	public void truncatedBalance() {
+		BufferIndexNode a = truncatedNode();
+		BufferIndexNode b = emptyNode();
+		
+		// fill a legacy node and push it into a truncated node
+		for (int i = 0; i < corpusCopy.items(); i++) {
+			int ni = b.alloc(corpusCopy.key(i));
+			b.write(ni, 1000L + i);
+		}
+		b.writeRight(123L);
+		
+		assertTrue(b.isCompressibleWith(a));
+		assertTrue(b.balance(a, true));
+		assertEquals(0, b.children());
+		assertEquals(corpusCopy.items(), a.items());
+		assertEquals(123L, a.rightChild());
+		for (int i = 0; i < a.items(); i++) {
+			assertEquals(i, a.find(corpusCopy.key(i)));
+			assertEquals(1000L + i, a.offset(i));
+		}
+		
+		// and share it back again
+		assertTrue(b.balance(a, false));
+		assertEquals(corpusCopy.items(), a.items() + b.items());
+		assertTrue(a.items() > 0 && b.items() > 0);
+		BufferIndexNode left = a.rightHandKey().compareTo(b.rightHandKey()) < 0 ? a : b;
+		BufferIndexNode right = left == a ? b : a;
+		for (int i = 0; i < corpusCopy.items(); i++) {
+			BufferIndexNode n = i < left.items() ? left : right;
+			int x = n.find(corpusCopy.key(i));
+			assertTrue(x >= 0);
+			assertEquals(1000L + i, n.offset(x));
+		}
+		assertEquals(123L, right.rightChild());
+	}
+	
+	private BufferIndexNode truncatedNode() {
+		return BufferNode.allocateIndex(StorageConstants.DEFAULT_NODE_CAPACITY, NodeFormat.DEFAULT.withTruncatedSeparators(true));
+	}
+
+	@Test
+	public void compactChildren() {
+		final int unit = StorageConstants.DEFAULT_NODE_CAPACITY;
+		BufferIndexNode n = BufferNode.allocateIndex(StorageConstants.DEFAULT_NODE_CAPACITY, NodeFormat.DEFAULT.withCompactChildren(unit));
+		assertTrue(n.isCompact());
+
+		// page numbers, virtual (negative) nodes and a page number beyond 32-bit offsets
+		long[] children = { 0L, unit, -1L, -42L, (long)unit * Integer.MAX_VALUE };
+		for (int i = 0; i < corpusCopy.items(); i++) {
+			int ni = n.alloc(corpusCopy.key(i));
+			assertTrue(ni >= 0);
+			n.write(ni, children[i % children.length]);
+		}
+		n.writeRight(7L);
+
+		// the saved bytes are available for additional items
+		assertTrue(n.free() > corpusCopy.free());
+
+		for (int i = 0; i < corpusCopy.items(); i++) {
+			assertEquals(children[i % children.length], n.offset(i));
+		}
+		assertEquals(7L, n.offset(n.items()));
+
+		// a child that is not at a page boundary, while the children span beyond 32-bit offsets, forces 64-bit children
+		n.write(3, 12345L);
+		assertFalse(n.isCompact());
+		assertEquals(corpusCopy.free(), n.free());
+		assertEquals(12345L, n.offset(3));
+		for (int i = 0; i < corpusCopy.items(); i++) {
+			assertEquals(corpusCopy.key(i), n.key(i));
+			if (i != 3) assertEquals(children[i % children.length], n.offset(i));
+		}
+	}
+
+	@Test
+	public void compactFull() {
+		final int unit = StorageConstants.DEFAULT_NODE_CAPACITY;
+		BufferIndexNode wide = emptyNode();
+		BufferIndexNode compact = BufferNode.allocateIndex(StorageConstants.DEFAULT_NODE_CAPACITY, NodeFormat.DEFAULT.withCompactChildren(unit));
+
+		// the saved bytes go to additional items
+		int wideItems = fill(wide);
+		int compactItems = fill(compact);
+		assertTrue(compact.isCompact());
+		assertTrue(compactItems > wideItems);
+
+		// once full, page numbers and then a child that is not at a page boundary are still held compactly
+		for (int i = 0; i < compactItems; i++) compact.write(i, unit * (i + 1L));
+		final long unaligned = unit * 7L + 100;
+		compact.write(0, unaligned);
+		assertTrue(compact.isCompact());
+		assertEquals(unaligned, compact.offset(0));
+		for (int i = 1; i < compactItems; i++) {
+			assertEquals(unit * (i + 1L), compact.offset(compact.find(sequentialKey(i))));
+		}
+
+		// as is a child below all of the others
+		compact.write(1, -5L);
+		compact.write(2, 12L);
+		assertTrue(compact.isCompact());
+		assertEquals(unaligned, compact.offset(0));
+		assertEquals(-5L, compact.offset(1));
+		assertEquals(12L, compact.offset(2));
+		for (int i = 3; i < compactItems; i++) assertEquals(unit * (i + 1L), compact.offset(i));
+
+		// only children spanning beyond 32-bit offsets at that granularity would need 64-bit children
+		try {
+			compact.write(3, (long)unit * Integer.MAX_VALUE);
+			fail("The full node can not revert to 64-bit children.");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void compactTruncatedFull() {
+		final int unit = StorageConstants.DEFAULT_NODE_CAPACITY;
+		BufferIndexNode wide = truncatedNode();
+		BufferIndexNode compact = BufferNode.allocateIndex(StorageConstants.DEFAULT_NODE_CAPACITY, NodeFormat.DEFAULT.withCompactChildren(unit).withTruncatedSeparators(true));
+
+		int wideItems = fill(wide);
+		int compactItems = fill(compact);
+		assertTrue(compact.isCompact());
+		assertTrue(compact.isTruncated());
+		assertTrue(compactItems > wideItems);
+
+		// the separators are packed against the base of the children
+		for (int i = 0; i < compactItems; i++) compact.write(i, unit * 3L + i);
+		for (int i = 0; i < compactItems; i++) {
+			assertEquals(unit * 3L + i, compact.offset(i));
+			assertEquals(i, compact.find(sequentialKey(i)));
+		}
+		assertTrue(compact.delete(0));
+		assertEquals(unit * 3L + 1, compact.offset(0));
+		assertEquals(0, compact.find(sequentialKey(1)));
+	}
+
+	/**
+	 * Fill the node with virtual children.
+	 */
+	private static int fill(BufferIndexNode n) {
+		int i = 0;
+		while (!n.isFull()) {
+			int ni = n.alloc(sequentialKey(i));
+			assertTrue(ni >= 0);
+			n.write(ni, -1000L - i);
+			i++;
+		}
+		return i;
+	}
+
+	private static BTree.Key sequentialKey(int i) {
+		BTree.Key k = new BTree.Key();
+		k.idx = 1;
+		k.idHigh = i;
+		return k;
+	}
+	
+	@Test
+	public void decodedFind() {
+		BufferIndexNode n = corpusCopy;
+		for (int i = 0; i < n.items(); i++) n.write(i, 1000L + i);
+		
+		String[] probes = {
+			"0000:ffffffffffffffffffffffffffffffffffffffff:7fff:0000000000000000",
+			"0001:0000000000000000000000000000000000000000:0000:0000000000000000",
+			"0001:e9c5e5c772394522aff438bbee3a94284b84f69f:0000:0000000000000000",
+			"0001:ecec1690ad594f685e1707138c4187f079ec941e:0000:0000000000000000",
+			"0001:ecec1690ad594f685e1707138c4187f079ec941e:0001:0000000000000000",
+			"0001:f281b791b14f901ee31f818cb1ade76937a99db9:0000:0000000000000000",
+			"0001:f2a8b917cf143f1ab0ed02a5fad83c6c9d953c12:0000:0000000000000000",
+			"0001:ffffffffffffffffffffffffffffffffffffffff:0000:0000000000000000",
+			"0002:0000000000000000000000000000000000000000:0000:0000000000000000",
+		};
+		
+		int[] expected = new int[probes.length];
+		for (int i = 0; i < probes.length; i++) expected[i] = n.find(BTree.Key.parseKey(probes[i]));
+		
+		n.decode();
+		assertTrue(n.isDecoded());
+		for (int i = 0; i < probes.length; i++) assertEquals(probes[i], expected[i], n.find(BTree.Key.parseKey(probes[i])));
+		for (int i = 0; i < n.items(); i++) {
+			assertEquals(i, n.find(n.key(i)));
+			assertEquals(1000L + i, n.offset(i));
+		}
+		
+		// any modification drops the decoded view
+		n.write(0, 42L);
+		assertFalse(n.isDecoded());
+		assertEquals(42L, n.offset(0));
+		
+		n.decode();
+		addItem(n, "0001:0000000000000000000000000000000000000001:0000:0000000000000000");
+		assertFalse(n.isDecoded());
+		assertEquals(0, n.find(BTree.Key.parseKey("0001:0000000000000000000000000000000000000001:0000:0000000000000000")));
+	}
+	
 }
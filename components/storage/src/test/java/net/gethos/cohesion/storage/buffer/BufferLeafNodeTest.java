@@ -5,6 +5,12 @@
  */
 package net.gethos.cohesion.storage.buffer;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
 import net.gethos.cohesion.storage.BTree;
 import net.gethos.cohesion.storage.StorageConstants;
 
@@ -136,6 +142,64 @@ public class BufferLeafNodeTest {
 		balance(emptyNode, populatedNode, TEST_DATA_SIZE, 0, true);
 	}
 	
+	@Test
+	public void borrow() {
+		BufferLeafNode n = populatedNode();
+		writeFill(n, 3, n.size(3), 7);
+
+		BufferLeafNode b = (BufferLeafNode)n.borrow();
+		assertTrue(b.isBorrowed());
+		assertTrue(b.buffer().isReadOnly());
+		assertEquals(n.items(), b.items());
+		assertEquals(n.key(3), b.key(3));
+		ByteBuffer data = ByteBuffer.allocate(b.size(3));
+		b.read(3, 0, data);
+		assertEquals(7, data.get(0));
+		assertTrue(b.isBorrowed());
+
+		// the first change takes a private copy, leaving the lender unaffected
+		writeFill(b, 3, b.size(3), 9);
+		assertTrue(b.delete(0));
+		assertFalse(b.isBorrowed());
+		assertEquals(n.items() - 1, b.items());
+		data.clear();
+		n.read(3, 0, data);
+		assertEquals(7, data.get(0));
+
+		// balancing a borrowed node also copies it first
+		BufferLeafNode l = (BufferLeafNode)populatedNode().borrow();
+		balance(emptyNode(), l, TEST_DATA_SIZE, 0, true);
+		assertFalse(l.isBorrowed());
+	}
+
+	@Test
+	public void borrowOwned() {
+		final List<BufferRegion> owned = new ArrayList<BufferRegion>();
+		BufferRegion.OwnershipListener listener = new BufferRegion.OwnershipListener() {
+			@Override
+			public void owned(BufferRegion region) {
+				owned.add(region);
+			}
+		};
+		BufferPool pool = new BufferPool(4, true);
+		BufferLeafNode n = populatedNode();
+
+		// copies that are only read are not reported
+		BufferLeafNode b = (BufferLeafNode)n.borrow(pool, listener);
+		assertEquals(n.key(3), b.key(3));
+		assertTrue(owned.isEmpty());
+		assertEquals(0, pool.outstanding());
+
+		// a copy that takes a private buffer is reported once
+		assertTrue(b.delete(0));
+		assertTrue(b.delete(0));
+		assertEquals(1, owned.size());
+		assertSame(b, owned.get(0));
+		assertEquals(1, pool.outstanding());
+		b.release();
+		pool.checkLeaks();
+	}
+
 	@Test
 	public void senarios() {
 		balance(populatedNode(), emptyNode(), TEST_DATA_SIZE, 0, true);
@@ -179,6 +243,210 @@ public class BufferLeafNodeTest {
 		assertTrue(ok);
 	}
 	
+	@Test
+	public void prefixCompressedFill() {
+		BufferLeafNode plain = emptyNode();
+		BufferLeafNode compressed = compressedNode();
+
+		int plainCount = fill(plain);
+		int compressedCount = fill(compressed);
+
+		assertEquals(0, plain.prefix());
+		assertTrue(compressed.prefix() > 0);
+		assertTrue(String.format("plain=%d compressed=%d", plainCount, compressedCount), compressedCount > plainCount);
+
+		for (int i = 0; i < compressedCount; i++) {
+			BTree.Key k = sequentialKey(i);
+			int idx = compressed.find(k);
+			assertEquals(i, idx);
+			assertEquals(k, compressed.key(idx));
+			assertEquals(8, compressed.size(idx));
+		}
+		assertEquals(-1, compressed.find(BTree.Key.MIN_KEY));
+		assertEquals(-compressedCount-1, compressed.find(BTree.Key.MAX_KEY));
+	}
+
+	@Test
+	public void prefixCompressedOutsidePrefix() {
+		BufferLeafNode compressed = compressedNode();
+		int count = fill(compressed);
+		int p = compressed.prefix();
+		assertTrue(p > 0);
+
+		// make room, and then insert a key that does not share the prefix
+		int half = count/2;
+		for (int i = 0; i < half; i++) assertTrue(compressed.delete(compressed.find(sequentialKey(i))));
+		BTree.Key outside = BTree.Key.parseKey("0002:0000000000000000000000000000000000000000:0000:0000000000000000");
+		assertTrue(compressed.realloc(outside, 8) >= 0);
+		assertTrue(compressed.prefix() < p);
+
+		for (int i = half; i < count; i++) assertEquals(sequentialKey(i), compressed.key(compressed.find(sequentialKey(i))));
+		assertEquals(outside, compressed.key(compressed.find(outside)));
+
+		// modifying a key to fall outside of the prefix must also be retained
+		BTree.Key moved = BTree.Key.parseKey("0003:0000000000000000000000000000000000000000:0000:0000000000000000");
+		assertTrue(compressed.modify(compressed.find(outside), moved));
+		assertEquals(moved, compressed.key(compressed.find(moved)));
+	}
+
+	@Test
+	public void prefixCompressedBalance() {
+		BufferLeafNode a = compressedNode();
+		BufferLeafNode b = compressedNode();
+		int count = fill(b);
+
+		BTree.Key k = sequentialKey(count);
+		boolean ok = a.balance(b, k, 8, ITEM_REQUIRED);
+		assertTrue(ok);
+		assertTrue(a.prefix() > 0);
+		assertTrue(b.prefix() > 0);
+		assertTrue(a.free() >= ITEM_REQUIRED);
+
+		for (int i = 0; i < count; i++) {
+			BTree.Key ki = sequentialKey(i);
+			boolean inA = a.find(ki) >= 0;
+			boolean inB = b.find(ki) >= 0;
+			assertTrue(inA ^ inB);
+			BufferLeafNode n = inA ? a : b;
+			assertEquals(ki, n.key(n.find(ki)));
+		}
+	}
+
+	@Test
+	public void interpolationSearch() {
+		Random random = new Random(3);
+		
+		// uniformly distributed ids
+		checkInterpolationSearch(random, false);
+		
+		// ids clustered at the low end of the range, with a single outlier
+		checkInterpolationSearch(random, true);
+	}
+	
+	private void checkInterpolationSearch(Random random, boolean skewed) {
+		BufferLeafNode plain = BufferNode.allocateLeaf(StorageConstants.DEFAULT_NODE_CAPACITY);
+		BufferLeafNode interpolated = BufferNode.allocateLeaf(StorageConstants.DEFAULT_NODE_CAPACITY, NodeFormat.DEFAULT.withInterpolationSearch(true));
+		assertTrue(interpolated.isInterpolationSearch());
+		
+		BTree.Key[] probes = new BTree.Key[200];
+		int stored = 0;
+		for (int i = 0; i < probes.length; i++) {
+			BTree.Key k = new BTree.Key();
+			k.idx = 1;
+			k.idHigh = skewed ? (i == 0 ? -1L : random.nextInt(1000)) : random.nextLong();
+			k.idMiddle = random.nextLong();
+			probes[i] = k;
+			
+			// only store every second key, so that half of the probes are absent
+			if (i % 2 == 0 && plain.realloc(k, 8) >= 0) {
+				assertTrue(interpolated.realloc(k, 8) >= 0);
+				stored++;
+			}
+		}
+		assertTrue(stored > 20);
+		
+		for (BTree.Key k : probes) {
+			assertEquals(plain.find(k), interpolated.find(k));
+		}
+		BTree.Key other = new BTree.Key();
+		other.idx = 2;
+		assertEquals(plain.find(other), interpolated.find(other));
+		assertEquals(plain.find(BTree.Key.MIN_KEY), interpolated.find(BTree.Key.MIN_KEY));
+		assertEquals(plain.find(BTree.Key.MAX_KEY), interpolated.find(BTree.Key.MAX_KEY));
+	}
+	
+	@Test
+	public void resizeInPlace() {
+		resizeInPlace(BufferNode.allocateLeaf(StorageConstants.DEFAULT_NODE_CAPACITY));
+		resizeInPlace(compressedNode());
+	}
+	
+	private void resizeInPlace(BufferLeafNode n) {
+		Random random = new Random(5);
+		
+		// each item holds its own id in every byte, with a model of the expected sizes
+		int count = 40;
+		int[] sizes = new int[count];
+		for (int i = 0; i < count; i++) {
+			sizes[i] = random.nextInt(40);
+			int x = n.realloc(sequentialKey(i), sizes[i]);
+			assertTrue(x >= 0);
+			writeFill(n, x, sizes[i], i);
+		}
+		
+		ByteBuffer original = n.buffer();
+		for (int step = 0; step < 200; step++) {
+			int i = random.nextInt(count);
+			BTree.Key k = sequentialKey(i);
+			int x = n.find(k);
+			if (random.nextInt(4) == 0) {
+				// delete, or re-insert
+				if (x >= 0) {
+					assertTrue(n.delete(x));
+					sizes[i] = -1;
+				} else {
+					sizes[i] = random.nextInt(40);
+					x = n.realloc(k, sizes[i]);
+					assertTrue(x >= 0);
+					writeFill(n, x, sizes[i], i);
+				}
+			} else if (x >= 0) {
+				// resize, retaining the leading data
+				int size = random.nextInt(80);
+				assertEquals(x, n.realloc(x, size));
+				ByteBuffer data = ByteBuffer.allocate(size);
+				n.read(x, 0, data);
+				for (int b = 0; b < size; b++) assertEquals(b < sizes[i] ? (byte)i : 0, data.get(b));
+				writeFill(n, x, size, i);
+				sizes[i] = size;
+			}
+			
+			// check all the items and the free space accounting
+			int used = 0;
+			for (int j = 0; j < count; j++) {
+				x = n.find(sequentialKey(j));
+				assertEquals(sizes[j] >= 0, x >= 0);
+				if (x < 0) continue;
+				assertEquals(sizes[j], n.size(x));
+				ByteBuffer data = ByteBuffer.allocate(sizes[j]);
+				n.read(x, 0, data);
+				for (int b = 0; b < sizes[j]; b++) assertEquals((byte)j, data.get(b));
+				used += BufferLeafNode.ITEM_ENTRY_SIZE - n.prefix() + sizes[j];
+			}
+			assertEquals(n.capacity() - BufferNode.HEADER_SIZE - n.prefix() - used, n.free());
+		}
+		
+		// the node was never rebuilt into a new buffer
+		assertSame(original, n.buffer());
+	}
+	
+	private static void writeFill(BufferLeafNode n, int idx, int size, int value) {
+		byte[] data = new byte[size];
+		Arrays.fill(data, (byte)value);
+		assertEquals(size, n.write(idx, 0, ByteBuffer.wrap(data)));
+	}
+	
+	private static final int ITEM_REQUIRED = BufferLeafNode.ITEM_ENTRY_SIZE + 8;
+
+	private BufferLeafNode compressedNode() {
+		return BufferNode.allocateLeaf(StorageConstants.DEFAULT_NODE_CAPACITY, NodeFormat.DEFAULT.withPrefixCompressedLeaves(true));
+	}
+
+	private BTree.Key sequentialKey(int i) {
+		BTree.Key k = BTree.Key.parseKey("0001:00000000000000a5000000000000000000000000:0000:0000000000000000");
+		k.idLow = i;
+		return k;
+	}
+
+	/**
+	 * Add small sequential items until the node is full.
+	 */
+	private int fill(BufferLeafNode node) {
+		int i = 0;
+		while (node.realloc(sequentialKey(i), 8) >= 0) i++;
+		return i;
+	}
+
 	public void balance(BufferLeafNode a, BufferLeafNode b, int nItemDataSize, int aRequired, boolean expectBalance) {
 		
 //		System.out.printf("Before...%n");
@@ -0,0 +1,164 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage.buffer;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import net.gethos.cohesion.storage.BTree;
+import net.gethos.cohesion.storage.BTreeTransaction;
+import net.gethos.cohesion.storage.BackedBTree;
+import net.gethos.cohesion.storage.ReadOnlyBTreeTransaction;
+import net.gethos.cohesion.storage.contiguous.WinnowingContiguousBacking;
+import net.gethos.cohesion.storage.store.ByteBufferContiguousStore;
+
+/**
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class BufferPoolTest {
+
+	@Test
+	public void reuse() {
+		BufferPool pool = new BufferPool(4, true);
+
+		ByteBuffer a = pool.acquire(4096);
+		assertEquals(4096, a.capacity());
+		a.putLong(0, 0x0102030405060708L);
+		pool.release(a);
+		assertEquals(1, pool.retained());
+
+		// the same buffer is handed out again, zeroed
+		ByteBuffer b = pool.acquire(4096);
+		assertSame(a, b);
+		assertEquals(0L, b.getLong(0));
+
+		// other sizes are kept apart
+		ByteBuffer c = pool.acquire(1024);
+		assertNotSame(a, c);
+		assertEquals(2, pool.outstanding());
+
+		pool.release(b);
+		pool.release(c);
+		assertEquals(0, pool.outstanding());
+		pool.checkLeaks();
+	}
+
+	@Test
+	public void retire() {
+		BufferPool pool = new BufferPool(4, true);
+
+		ByteBuffer a = pool.acquire(4096);
+		long t1 = pool.enter();
+		pool.retire(a);
+		long t2 = pool.enter();
+
+		// the first transaction may still be reading the buffer
+		assertNotSame(a, pool.acquire(4096));
+
+		pool.exit(t1);
+		assertSame(a, pool.acquire(4096));
+
+		pool.exit(t2);
+		try {
+			pool.exit(t2);
+			fail("a transaction should only exit once");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void leaks() {
+		BufferPool pool = new BufferPool(4, true);
+		ByteBuffer a = pool.acquire(4096);
+		try {
+			pool.checkLeaks();
+			fail("the outstanding buffer should be reported");
+		} catch (IllegalStateException e) {
+			assertNotNull(e.getCause());
+		}
+
+		pool.release(a);
+		try {
+			pool.release(a);
+			fail("a buffer should only be returned once");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		pool.checkLeaks();
+	}
+
+	@Test
+	public void backing() {
+		WinnowingContiguousBacking backing = new WinnowingContiguousBacking(new ByteBufferContiguousStore(4096 * 4), new ByteBufferNodeCapacities(), true, false, true);
+		BTree btree = new BackedBTree(backing);
+
+		final int count = 2000;
+		ByteBuffer data = ByteBuffer.allocate(16);
+		for (int i = 0; i < count; i += 100) {
+			BTreeTransaction t = btree.open();
+			for (int j = i; j < i + 100; j++) {
+				data.clear();
+				data.putInt(0, j);
+				assertNotNull(t.store(BTree.Key.key(1, j), 0, data));
+			}
+			if (i % 300 != 0) t.commit(); // roll back some transactions
+			t.close();
+		}
+
+		ReadOnlyBTreeTransaction r = btree.openReadOnly();
+		for (int i = 0; i < count; i++) {
+			data.clear();
+			boolean committed = (i / 100) % 3 != 0;
+			assertEquals(committed ? 16 : 0, r.fetch(BTree.Key.key(1, i), 0, data));
+			if (committed) assertEquals(i, data.getInt(0));
+		}
+		r.close();
+
+		for (int i = 100; i < count; i += 300) {
+			BTreeTransaction t = btree.open();
+			for (int j = i; j < i + 100; j++) assertNotNull(t.delete(BTree.Key.key(1, j)));
+			t.commit();
+			t.close();
+		}
+
+		// with debug enabled, closing reports any node buffer that was not returned to the pool
+		btree.close();
+	}
+
+	@Test
+	public void leakedBacking() {
+		final boolean[] closed = new boolean[1];
+		ByteBufferContiguousStore store = new ByteBufferContiguousStore(4096 * 4) {
+			@Override
+			public void close() {
+				closed[0] = true;
+				super.close();
+			}
+		};
+		WinnowingContiguousBacking backing = new WinnowingContiguousBacking(store, new ByteBufferNodeCapacities(), true, false, true);
+		BTree btree = new BackedBTree(backing);
+
+		// a transaction that is never closed holds on to its node buffers
+		BTreeTransaction t = btree.open();
+		ByteBuffer data = ByteBuffer.allocate(16);
+		for (int i = 0; i < 100; i++) assertNotNull(t.store(BTree.Key.key(1, i), 0, data.duplicate()));
+
+		boolean reported = false;
+		try {
+			btree.close();
+		} catch (IllegalStateException e) {
+			reported = true;
+		}
+		// the store is closed even when the leak is reported
+		assertTrue(closed[0]);
+		assertEquals(new BufferPool().isDebug(), reported);
+	}
+}
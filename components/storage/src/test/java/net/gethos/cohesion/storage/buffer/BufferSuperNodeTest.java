@@ -0,0 +1,68 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage.buffer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class BufferSuperNodeTest {
+
+	@Test
+	public void formatVersion() {
+		BufferSuperNode sn = BufferSuperNode.allocate();
+		assertEquals(BufferSuperNode.FORMAT_VERSION_WIDE_CHILDREN, sn.formatVersion());
+
+		sn.stamp(NodeFormat.DEFAULT);
+		assertEquals(BufferSuperNode.FORMAT_VERSION_WIDE_CHILDREN, sn.formatVersion());
+
+		sn.stamp(NodeFormat.DEFAULT.withCompactChildren(4096));
+		assertEquals(BufferSuperNode.FORMAT_VERSION_COMPACT_CHILDREN, sn.formatVersion());
+		sn.checkFormatVersion();
+
+		// never lowered, since compact nodes may remain
+		sn.stamp(NodeFormat.DEFAULT);
+		assertEquals(BufferSuperNode.FORMAT_VERSION_COMPACT_CHILDREN, sn.formatVersion());
+	}
+
+	@Test
+	public void prefixCompressedVersion() {
+		BufferSuperNode sn = BufferSuperNode.allocate();
+		sn.stamp(NodeFormat.DEFAULT.withCompactChildren(4096));
+		sn.stamp(NodeFormat.DEFAULT.withPrefixCompressedLeaves(true));
+		assertEquals(BufferSuperNode.FORMAT_VERSION_PREFIX_COMPRESSED_LEAVES, sn.formatVersion());
+		sn.checkFormatVersion();
+
+		// a reader that only knows of compact children rejects the tree
+		assertTrue(sn.formatVersion() > BufferSuperNode.FORMAT_VERSION_COMPACT_CHILDREN);
+		assertEquals(BufferSuperNode.FORMAT_VERSION_PREFIX_COMPRESSED_LEAVES, BufferSuperNode.requiredVersion(NodeFormat.DEFAULT.withPrefixCompressedLeaves(true).withCompactChildren(4096)));
+	}
+
+	@Test
+	public void truncatedSeparatorVersion() {
+		BufferSuperNode sn = BufferSuperNode.allocate();
+		sn.stamp(NodeFormat.DEFAULT.withTruncatedSeparators(true));
+		assertEquals(BufferSuperNode.FORMAT_VERSION_TRUNCATED_SEPARATORS, sn.formatVersion());
+		sn.checkFormatVersion();
+
+		// a reader that only knows of prefix-compressed leaves rejects the tree
+		assertTrue(sn.formatVersion() > BufferSuperNode.FORMAT_VERSION_PREFIX_COMPRESSED_LEAVES);
+		sn.stamp(NodeFormat.DEFAULT.withPrefixCompressedLeaves(true));
+		assertEquals(BufferSuperNode.FORMAT_VERSION_TRUNCATED_SEPARATORS, sn.formatVersion());
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void newerFormatVersion() {
+		BufferSuperNode sn = BufferSuperNode.allocate();
+		sn.buffer().putInt(BufferSuperNode.HEADER_SIZE, BufferSuperNode.CURRENT_FORMAT_VERSION + 1);
+		sn.checkFormatVersion();
+	}
+
+}
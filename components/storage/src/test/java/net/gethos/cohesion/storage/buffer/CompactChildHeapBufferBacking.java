@@ -0,0 +1,18 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage.buffer;
+
+/**
+ * Heap buffer backing with compact index children.
+ * 
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class CompactChildHeapBufferBacking extends HeapBufferBacking {
+	public CompactChildHeapBufferBacking(int capacity) {
+		super(capacity, NodeFormat.DEFAULT.withCompactChildren(1).withTruncatedSeparators(true));
+	}
+}
@@ -0,0 +1,18 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage.buffer;
+
+/**
+ * Heap buffer backing with nodes searched by interpolation.
+ * 
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class InterpolationSearchHeapBufferBacking extends HeapBufferBacking {
+	public InterpolationSearchHeapBufferBacking(int capacity) {
+		super(capacity, NodeFormat.DEFAULT.withInterpolationSearch(true));
+	}
+}
@@ -0,0 +1,18 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage.buffer;
+
+/**
+ * Heap buffer backing with prefix compressed leaves.
+ * 
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class PrefixCompressedHeapBufferBacking extends HeapBufferBacking {
+	public PrefixCompressedHeapBufferBacking(int capacity) {
+		super(capacity, NodeFormat.DEFAULT.withPrefixCompressedLeaves(true));
+	}
+}
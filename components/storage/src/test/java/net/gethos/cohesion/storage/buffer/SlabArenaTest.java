@@ -0,0 +1,107 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage.buffer;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import net.gethos.cohesion.storage.StorageConstants;
+import net.gethos.cohesion.storage.backing.BTreeBackingTransaction;
+
+/**
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class SlabArenaTest {
+
+	@Test
+	public void reuse() {
+		SlabArena arena = new SlabArena(4096);
+
+		ByteBuffer a = arena.allocate(1024);
+		ByteBuffer b = arena.allocate(1024);
+		assertTrue(a.isDirect());
+		assertEquals(1024, a.capacity());
+		assertEquals(StorageConstants.NETWORK_ORDER, a.order());
+		assertEquals(4096, arena.reserved());
+
+		a.putLong(0, 0x0102030405060708L);
+		arena.release(a);
+
+		// the released slot is handed out again, zeroed
+		ByteBuffer c = arena.allocate(1024);
+		assertEquals(0L, c.getLong(0));
+		assertEquals(4096, arena.reserved());
+
+		// fill the slab and spill over into a second one
+		arena.allocate(1024);
+		arena.allocate(1024);
+		assertEquals(4096, arena.reserved());
+		arena.allocate(1024);
+		assertEquals(8192, arena.reserved());
+
+		arena.release(b);
+		arena.close();
+	}
+
+	@Test
+	public void large() {
+		SlabArena arena = new SlabArena(4096);
+
+		ByteBuffer l = arena.allocate(10000);
+		assertEquals(10000, l.capacity());
+		assertEquals(10000, arena.reserved());
+
+		arena.release(l);
+		assertEquals(0, arena.reserved());
+
+		arena.close();
+	}
+
+	@Test
+	public void close() {
+		SlabArena arena = new SlabArena(4096);
+		arena.allocate(512);
+		arena.allocate(8192);
+		assertTrue(arena.reserved() > 0);
+
+		arena.close();
+		assertTrue(arena.isClosed());
+		assertEquals(0, arena.reserved());
+
+		try {
+			arena.allocate(512);
+			fail("allocation from a closed arena should fail");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void backingClose() {
+		OffHeapBufferBacking backing = new OffHeapBufferBacking(4096);
+		BTreeBackingTransaction t = backing.open();
+		long offset = t.alloc(true);
+		assertNotNull(t.retrieve(offset));
+		t.commit();
+		t.close();
+
+		backing.close();
+
+		t = backing.open();
+		try {
+			t.retrieve(offset);
+			fail("a closed backing should not be readable");
+		} catch (IllegalStateException e) {
+			// expected
+		} finally {
+			t.close();
+		}
+	}
+}
@@ -0,0 +1,18 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage.buffer;
+
+/**
+ * Heap buffer backing with truncated index separators.
+ * 
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class TruncatedSeparatorHeapBufferBacking extends HeapBufferBacking {
+	public TruncatedSeparatorHeapBufferBacking(int capacity) {
+		super(capacity, NodeFormat.DEFAULT.withTruncatedSeparators(true));
+	}
+}
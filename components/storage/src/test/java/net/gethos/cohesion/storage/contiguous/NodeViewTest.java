@@ -0,0 +1,105 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage.contiguous;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import net.gethos.cohesion.storage.BTree;
+import net.gethos.cohesion.storage.BTreeTransaction;
+import net.gethos.cohesion.storage.BackedBTree;
+import net.gethos.cohesion.storage.ReadOnlyBTreeTransaction;
+import net.gethos.cohesion.storage.backing.BTreeNode;
+import net.gethos.cohesion.storage.backing.ReadOnlyBTreeBackingTransaction;
+import net.gethos.cohesion.storage.buffer.BufferNode;
+import net.gethos.cohesion.storage.buffer.BufferRegion;
+import net.gethos.cohesion.storage.store.MappedContiguousStore;
+
+/**
+ * Checks that nodes are read in place from a mapped store, and only copied when changed.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class NodeViewTest {
+
+	private File tmpFile;
+	private WinnowingContiguousBacking backing;
+	private BTree btree;
+
+	@Before
+	public void setUp() throws IOException {
+		tmpFile = File.createTempFile("NodeViewTest_", ".store");
+		tmpFile.deleteOnExit();
+		tmpFile.delete();
+		backing = new WinnowingContiguousBacking(new MappedContiguousStore(tmpFile, false, 4096*4), new RandomAccessNodeCapacities(), true, true, true);
+		btree = new BackedBTree(backing);
+
+		BTreeTransaction t = btree.open();
+		ByteBuffer data = ByteBuffer.allocate(64);
+		for (int i = 0; i < 500; i++) {
+			data.clear();
+			data.putInt(0, i);
+			assertNotNull(t.store(BTree.Key.key(1, i), 0, data));
+		}
+		t.commit();
+		t.close();
+	}
+
+	@After
+	public void tearDown() {
+		btree.close();
+		tmpFile.delete();
+	}
+
+	@Test
+	public void view() {
+		ReadOnlyBTreeBackingTransaction r = backing.openReadOnly();
+		BTreeNode n = r.retrieve(r.root());
+		assertNotNull(n);
+		BufferNode bn = (BufferNode)n;
+		assertTrue(bn.isBorrowed());
+		assertTrue(bn.buffer().isDirect());
+		assertTrue(bn.buffer().isReadOnly());
+
+		// the recorded checksum can be verified against the view
+		assertEquals(bn.checksum(), BufferRegion.checksum(bn));
+		r.close();
+	}
+
+	@Test
+	public void copyOnWrite() {
+		BTreeTransaction t = btree.open();
+		for (int i = 0; i < 500; i += 2) assertNotNull(t.delete(BTree.Key.key(1, i)));
+
+		// readers are unaffected by the uncommitted changes
+		ReadOnlyBTreeTransaction r = btree.openReadOnly();
+		ByteBuffer data = ByteBuffer.allocate(64);
+		for (int i = 0; i < 500; i++) {
+			data.clear();
+			assertEquals(64, r.fetch(BTree.Key.key(1, i), 0, data));
+			assertEquals(i, data.getInt(0));
+		}
+		r.close();
+
+		t.commit();
+		t.close();
+
+		r = btree.openReadOnly();
+		for (int i = 0; i < 500; i++) {
+			data.clear();
+			assertEquals(i % 2 == 0 ? 0 : 64, r.fetch(BTree.Key.key(1, i), 0, data));
+		}
+		r.close();
+	}
+}
@@ -0,0 +1,25 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage.contiguous;
+
+import net.gethos.cohesion.storage.StorageConstants;
+import net.gethos.cohesion.storage.buffer.ByteBufferNodeCapacities;
+import net.gethos.cohesion.storage.buffer.NodeFormat;
+import net.gethos.cohesion.storage.store.ByteBufferContiguousStore;
+
+/**
+ * Winnowing backing held in a byte buffer, with prefix compressed leaves.
+ * 
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class PrefixCompressedContiguousByteBufferBacking extends WinnowingContiguousBacking {
+	public PrefixCompressedContiguousByteBufferBacking(int x) {
+		super(new ByteBufferContiguousStore(4096*4),
+				new ByteBufferNodeCapacities(StorageConstants.DEFAULT_NODE_CAPACITY, NodeFormat.DEFAULT.withPrefixCompressedLeaves(true)),
+				true,false,true);
+	}
+}
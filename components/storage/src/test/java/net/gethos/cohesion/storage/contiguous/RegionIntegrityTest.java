@@ -12,6 +12,7 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.TreeMap;
 
 import net.gethos.cohesion.common.HexBuilder;
 import net.gethos.cohesion.storage.RuntimeIOException;
@@ -145,6 +146,52 @@ public class RegionIntegrityTest {
 		assertTrue(rcmp,Arrays.equals(backup.recoveryHash, calculatedRecoveryHash));
 	}
 
+	@Test
+	public void backupCoalesced() {
+		// adjacent regions, in offset order, that are not cached
+		Map<Long, ByteBuffer> adjacentInitial = new TreeMap<Long, ByteBuffer>();
+		Map<Long, ByteBuffer> adjacentModified = new TreeMap<Long, ByteBuffer>();
+		long pos = TEST_MAX_GAP;
+		for (int i = 0; i < TEST_COUNT_REGION; i++) {
+			int len = rand(TEST_MIN_REGION, TEST_MAX_REGION);
+			byte[] data = new byte[len];
+			Arrays.fill(data, (byte)i);
+			adjacentInitial.put(pos, ByteBuffer.wrap(data.clone()));
+			Arrays.fill(data, (byte)(i + TEST_COUNT_REGION));
+			adjacentModified.put(pos, ByteBuffer.wrap(data));
+			pos += len;
+		}
+
+		writeRegions(adjacentInitial);
+		store.reads = 0;
+		store.writes = 0;
+		allocation.tail = pos;
+		integrity.backup(store, cache, adjacentModified);
+
+		// the backup copies are fetched by a single read, and recorded along with the metadata by a single write
+		assertEquals(1, store.reads);
+		assertEquals(1, store.writes);
+
+		writeRegions(adjacentModified);
+		integrity.commit(store);
+		assertEquals(Integrity.RecoveryState.VALID, integrity.verify(store));
+	}
+
+	@Test
+	public void backupShortWrites() {
+		// the store only accepts part of each write
+		store.maxWrite = 50;
+		store.writes = 0;
+		performUpdate(initial, modified, Long.MAX_VALUE);
+		store.maxWrite = Long.MAX_VALUE;
+		assertTrue(store.writes > 1);
+
+		assertEquals(Integrity.RecoveryState.VALID, integrity.verify(store));
+		RegionIntegrity<ByteBuffer>.Backup backup = integrity.new Backup();
+		backup.load(store);
+		assertEquals(modified.size(), backup.count);
+	}
+
 	@Test
 	public void verifyGood() {
 		performUpdate(initial, modified, Long.MAX_VALUE);
@@ -268,11 +315,16 @@ public class RegionIntegrityTest {
 
 		public long goodRemaining;
 		public long goodCount;
+		public long maxWrite;
+
+		public int reads;
+		public int writes;
 
 		public FailableContiguousStore(ContiguousStore delegate) {
 			this.delegate = delegate;
 			this.goodRemaining = Long.MAX_VALUE;
 			this.goodCount = 0;
+			this.maxWrite = Long.MAX_VALUE;
 		}
 
 		public void trigger(long remaining) {
@@ -282,12 +334,13 @@ public class RegionIntegrityTest {
 
 		@Override
 		public long write(long position, ByteBuffer... buffers) {
+			writes++;
 
 			int[] oldPositions = new int[buffers.length];
 			int[] oldLimits = new int[buffers.length];
 
-			long r = goodRemaining;
-			// limit buffers to simulate failed write
+			long r = Math.min(goodRemaining, maxWrite);
+			// limit buffers to simulate failed (or short) write
 			for (int i = 0; i < buffers.length; i++) {
 				oldPositions[i] = buffers[i].position();
 				oldLimits[i] = buffers[i].limit();
@@ -318,6 +371,7 @@ public class RegionIntegrityTest {
 
 		@Override
 		public long read(long position, ByteBuffer... buffers) {
+			reads++;
 			return delegate.read(position, buffers);
 		}
 
@@ -0,0 +1,22 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage.contiguous;
+
+import net.gethos.cohesion.storage.store.AsynchronousFileContiguousStore;
+import net.gethos.cohesion.storage.store.ContiguousStoreAdapter;
+
+/**
+ * Implements a BTree backing which uses a single backing region stored in a file accessed via asynchronous I/O
+ * and additionally maintains its own allocation tree within the tree itself.
+ * 
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class WinnowingContiguousAsyncBacking extends WinnowingContiguousBacking {
+	public WinnowingContiguousAsyncBacking(int x) {
+		super(new ContiguousStoreAdapter(AsynchronousFileContiguousStore.createTemporaryStore(false)), new RandomAccessNodeCapacities(), true, false, true);
+	}
+}
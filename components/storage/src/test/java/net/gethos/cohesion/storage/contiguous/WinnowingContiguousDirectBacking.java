@@ -0,0 +1,21 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage.contiguous;
+
+import net.gethos.cohesion.storage.store.DirectContiguousStore;
+
+/**
+ * Implements a BTree backing which uses a single backing region stored in a file accessed via direct I/O
+ * and additionally maintains its own allocation tree within the tree itself.
+ * 
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class WinnowingContiguousDirectBacking extends WinnowingContiguousBacking {
+	public WinnowingContiguousDirectBacking(int x) {
+		super(DirectContiguousStore.createTemporaryStore(false), new RandomAccessNodeCapacities(), true, false, true);
+	}
+}
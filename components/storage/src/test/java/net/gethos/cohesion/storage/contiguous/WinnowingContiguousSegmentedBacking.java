@@ -0,0 +1,23 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage.contiguous;
+
+import net.gethos.cohesion.storage.buffer.ByteBufferNodeCapacities;
+import net.gethos.cohesion.storage.store.SegmentedContiguousStore;
+
+/**
+ * Implements a BTree backing which uses a single backing region stored in small heap segments,
+ * so that many nodes span segment boundaries, and additionally maintains its own allocation
+ * tree within the tree itself.
+ * 
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class WinnowingContiguousSegmentedBacking extends WinnowingContiguousBacking {
+	public WinnowingContiguousSegmentedBacking(int x) {
+		super(new SegmentedContiguousStore(4096*4, 4096*3, false), new ByteBufferNodeCapacities(),true,false,true);
+	}
+}
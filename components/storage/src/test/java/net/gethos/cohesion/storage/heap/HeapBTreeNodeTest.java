@@ -5,6 +5,8 @@
  */
 package net.gethos.cohesion.storage.heap;
 
+import java.nio.ByteBuffer;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -334,6 +336,90 @@ public class HeapBTreeNodeTest {
 		for (int i = 0; i < parentUpdated.length; i++) assertEquals(i,parent.find(key(parentUpdated[i])));
 	}
 
+	/**
+	 * Check that item data survives resizing, deletion and the resulting compaction of the leaf data,
+	 * and that a clone does not share data with the original.
+	 */
+	@Test
+	public void leafData() {
+		final int count = 20;
+		HeapLeafNode n = new HeapLeafNode(count);
+		for (long k = 0; k < count; k++) {
+			int idx = n.realloc(key(k), TEST_LENGTH);
+			fill(n, idx, k);
+		}
+		for (int round = 1; round <= 3; round++) {
+			for (long k = 0; k < count; k += 2) {
+				int idx = n.find(key(k));
+				n.realloc(idx, TEST_LENGTH * (round + 1));
+				assertEquals(TEST_LENGTH * (round + 1), n.size(idx));
+				// the existing data is kept and the extension is zeroed
+				ByteBuffer b = ByteBuffer.allocate(n.size(idx));
+				n.read(idx, 0, b);
+				for (int i = 0; i < b.capacity(); i++) assertEquals(i < TEST_LENGTH ? (byte)(k + i) : 0, b.get(i));
+				n.realloc(idx, TEST_LENGTH);
+			}
+			for (long k = 1; k < count; k += 4) {
+				assertTrue(n.delete(n.find(key(k))));
+				fill(n, n.realloc(key(k), TEST_LENGTH), k);
+			}
+		}
+
+		HeapLeafNode copy = (HeapLeafNode)n.clone();
+		fill(n, n.find(key(0)), 100);
+
+		for (long k = 0; k < count; k++) {
+			check(n, n.find(key(k)), k == 0 ? 100 : k);
+			check(copy, copy.find(key(k)), k);
+		}
+	}
+
+	@Test
+	public void copyOnWrite() {
+		HeapLeafNode n = new HeapLeafNode(TEST_CAPACITY);
+		for (long k = 0; k < TEST_CAPACITY; k++) fill(n, n.realloc(key(k), TEST_LENGTH), k);
+
+		// changes to the copy are not seen by the original
+		HeapLeafNode copy = (HeapLeafNode)n.clone();
+		fill(copy, copy.find(key(1)), 100);
+		assertTrue(copy.delete(copy.find(key(3))));
+		copy.realloc(copy.find(key(0)), TEST_LENGTH * 2);
+		assertEquals(TEST_CAPACITY, n.children());
+		for (long k = 0; k < TEST_CAPACITY; k++) {
+			check(n, n.find(key(k)), k);
+			assertEquals(TEST_LENGTH, n.size(n.find(key(k))));
+		}
+
+		// nor are changes to the original seen by a copy
+		copy = (HeapLeafNode)n.clone();
+		fill(n, n.find(key(2)), 200);
+		check(copy, copy.find(key(2)), 2);
+		check(n, n.find(key(2)), 200);
+
+		HeapIndexNode i = new HeapIndexNode(TEST_CAPACITY);
+		for (long k : new long[]{2,9,1,4}) storeIndex(i, key(k), DUMMY_CHILD_OFFSET_BASE + k);
+		HeapIndexNode icopy = (HeapIndexNode)i.clone();
+		assertTrue(icopy.write(0, 1234L));
+		assertTrue(icopy.delete(1));
+		assertEquals(4, i.children());
+		assertEquals(DUMMY_CHILD_OFFSET_BASE + 1, i.offset(0));
+		assertEquals(DUMMY_CHILD_OFFSET_BASE + 2, i.offset(1));
+	}
+
+	private void fill(HeapLeafNode n, int idx, long seed) {
+		ByteBuffer b = ByteBuffer.allocate(n.size(idx));
+		for (int i = 0; i < b.capacity(); i++) b.put((byte)(seed + i));
+		b.flip();
+		assertEquals(b.capacity(), n.write(idx, 0, b));
+	}
+
+	private void check(HeapLeafNode n, int idx, long seed) {
+		assertTrue(idx >= 0);
+		ByteBuffer b = ByteBuffer.allocate(n.size(idx));
+		assertEquals(b.capacity(), n.read(idx, 0, b));
+		for (int i = 0; i < b.capacity(); i++) assertEquals((byte)(seed + i), b.get(i));
+	}
+
 	protected String keyList(BTreeNode n) {
 		StringBuilder s = new StringBuilder();
 		s.append("[");
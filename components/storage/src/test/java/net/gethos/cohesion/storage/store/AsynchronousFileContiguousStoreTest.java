@@ -0,0 +1,123 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class AsynchronousFileContiguousStoreTest {
+
+	private static final int BLOCK_SIZE = 4096;
+	private static final int BLOCKS = 64;
+
+	private File tmpFile;
+	private AsynchronousFileContiguousStore store;
+
+	@Before
+	public void setUp() throws IOException {
+		tmpFile = File.createTempFile("AsynchronousFileContiguousStoreTest_", ".store");
+		tmpFile.deleteOnExit();
+		store = new AsynchronousFileContiguousStore(tmpFile, true, BLOCK_SIZE);
+	}
+
+	@After
+	public void tearDown() {
+		store.close();
+		tmpFile.delete();
+	}
+
+	@Test
+	public void inflight() throws InterruptedException, ExecutionException {
+		// put all the writes in flight before waiting on any of them
+		List<Future<Long>> writes = new ArrayList<Future<Long>>();
+		for (int i = 0; i < BLOCKS; i++) writes.add(store.write((long)i * BLOCK_SIZE, block(i)));
+		for (Future<Long> f : writes) assertEquals(BLOCK_SIZE, f.get().longValue());
+		store.force().get();
+		assertTrue(store.size() >= BLOCKS * BLOCK_SIZE);
+
+		// and likewise the reads, in reverse order
+		ByteBuffer[] in = new ByteBuffer[BLOCKS];
+		List<Future<Long>> reads = new ArrayList<Future<Long>>();
+		for (int i = BLOCKS - 1; i >= 0; i--) {
+			in[i] = ByteBuffer.allocate(BLOCK_SIZE);
+			reads.add(store.read((long)i * BLOCK_SIZE, in[i]));
+		}
+		for (Future<Long> f : reads) assertEquals(BLOCK_SIZE, f.get().longValue());
+		for (int i = 0; i < BLOCKS; i++) {
+			in[i].flip();
+			assertEquals(block(i), in[i]);
+		}
+	}
+
+	@Test
+	public void scatterGather() throws InterruptedException, ExecutionException {
+		ByteBuffer a = block(1);
+		ByteBuffer b = block(2);
+		ByteBuffer c = ByteBuffer.allocate(10);
+		assertEquals(2 * BLOCK_SIZE + 10, store.write(100, a, b, c).get().longValue());
+
+		ByteBuffer x = ByteBuffer.allocate(BLOCK_SIZE + 10);
+		ByteBuffer y = ByteBuffer.allocate(BLOCK_SIZE);
+		assertEquals(2 * BLOCK_SIZE + 10, store.read(100, x, y).get().longValue());
+		x.flip();
+		y.flip();
+		for (int i = 0; i < BLOCK_SIZE; i++) assertEquals(1, x.get(i));
+		for (int i = 0; i < 10; i++) assertEquals(2, x.get(BLOCK_SIZE + i));
+		for (int i = 0; i < BLOCK_SIZE - 10; i++) assertEquals(2, y.get(i));
+		for (int i = BLOCK_SIZE - 10; i < BLOCK_SIZE; i++) assertEquals(0, y.get(i));
+	}
+
+	@Test
+	public void endOfFile() throws InterruptedException, ExecutionException {
+		long size = store.size();
+		ByteBuffer in = ByteBuffer.allocate(100);
+		assertEquals(-1, store.read(size, in).get().longValue());
+		in.clear();
+		assertEquals(10, store.read(size - 10, in).get().longValue());
+
+		// nothing to transfer
+		in.position(in.limit());
+		assertEquals(0, store.read(0, in).get().longValue());
+	}
+
+	@Test
+	public void adapter() {
+		ContiguousStoreAdapter adapter = new ContiguousStoreAdapter(store);
+		assertSame(store, adapter.async());
+
+		long size = adapter.truncate(3 * BLOCK_SIZE);
+		assertTrue(size >= 3 * BLOCK_SIZE);
+		assertEquals(size, adapter.size());
+
+		assertEquals(BLOCK_SIZE, adapter.write(BLOCK_SIZE, block(7)));
+		ByteBuffer in = ByteBuffer.allocate(BLOCK_SIZE);
+		assertEquals(BLOCK_SIZE, adapter.read(BLOCK_SIZE, in));
+		in.flip();
+		assertEquals(block(7), in);
+		adapter.force();
+	}
+
+	private static ByteBuffer block(int block) {
+		byte[] data = new byte[BLOCK_SIZE];
+		java.util.Arrays.fill(data, (byte)block);
+		return ByteBuffer.wrap(data);
+	}
+}
@@ -0,0 +1,182 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage.store;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that several threads may read from a store at once, while another
+ * thread appends to it, without any external locking.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class ConcurrentContiguousStoreTest {
+
+	private static final int BLOCK_SIZE = 512;
+	private static final int INITIAL_BLOCKS = 64;
+	private static final int APPENDED_BLOCKS = 256;
+	private static final int READERS = 4;
+	private static final int READS = 5000;
+	private static final int WRITERS = 4;
+
+	@Test
+	public void randomAccess() throws InterruptedException {
+		ContiguousStore store = RandomAccessContiguousStore.createTemporaryStore(false);
+		concurrent(store);
+		store.close();
+	}
+
+	@Test
+	public void randomAccessWriters() throws InterruptedException {
+		ContiguousStore store = RandomAccessContiguousStore.createTemporaryStore(false);
+		writers(store);
+		store.close();
+	}
+
+	@Test
+	public void byteBuffer() throws InterruptedException {
+		ContiguousStore store = new ByteBufferContiguousStore(BLOCK_SIZE);
+		concurrent(store);
+		store.close();
+	}
+
+	@Test
+	public void segmented() throws InterruptedException {
+		// segments that are not a multiple of the block size, so that some reads span segments
+		ContiguousStore store = new SegmentedContiguousStore(BLOCK_SIZE, 3 * BLOCK_SIZE + 100, false);
+		concurrent(store);
+		store.close();
+	}
+
+	@Test
+	public void segmentedDirect() throws InterruptedException {
+		ContiguousStore store = new SegmentedContiguousStore(BLOCK_SIZE, 3 * BLOCK_SIZE + 100, true);
+		concurrent(store);
+		store.close();
+	}
+
+	private void concurrent(final ContiguousStore store) throws InterruptedException {
+		for (int i = 0; i < INITIAL_BLOCKS; i++) assertEquals(BLOCK_SIZE, store.write(position(i), block(i)));
+
+		final AtomicInteger written = new AtomicInteger(INITIAL_BLOCKS);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+		Thread[] threads = new Thread[READERS + 1];
+		threads[0] = new Thread() {
+			@Override
+			public void run() {
+				try {
+					for (int i = INITIAL_BLOCKS; i < INITIAL_BLOCKS + APPENDED_BLOCKS; i++) {
+						// appending grows the store while the readers are active
+						store.write(position(i), block(i));
+						written.set(i + 1);
+					}
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				}
+			}
+		};
+		for (int t = 1; t <= READERS; t++) {
+			final long seed = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						Random rnd = new Random(seed);
+						ByteBuffer head = ByteBuffer.allocate(BLOCK_SIZE / 4);
+						ByteBuffer tail = ByteBuffer.allocate(BLOCK_SIZE - head.capacity());
+						for (int r = 0; r < READS && failure.get() == null; r++) {
+							int i = rnd.nextInt(written.get());
+							head.clear();
+							tail.clear();
+							long l = store.read(position(i), head, tail);
+							if (l != BLOCK_SIZE) throw new AssertionError("Short read of block " + i + ": " + l);
+							check(i, head);
+							check(i, tail);
+						}
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			};
+		}
+
+		for (Thread t : threads) t.start();
+		for (Thread t : threads) t.join();
+
+		if (failure.get() != null) throw new AssertionError(failure.get());
+
+		ByteBuffer b = ByteBuffer.allocate(BLOCK_SIZE);
+		for (int i = 0; i < INITIAL_BLOCKS + APPENDED_BLOCKS; i++) {
+			b.clear();
+			assertEquals(BLOCK_SIZE, store.read(position(i), b));
+			check(i, b);
+		}
+	}
+
+	/**
+	 * Several threads extend the store at once, each writing its own blocks.
+	 */
+	private void writers(final ContiguousStore store) throws InterruptedException {
+		final int blocks = INITIAL_BLOCKS + APPENDED_BLOCKS;
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+		Thread[] threads = new Thread[WRITERS];
+		for (int t = 0; t < WRITERS; t++) {
+			final int first = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = first; i < blocks; i += WRITERS) {
+							if (store.write(position(i), block(i)) != BLOCK_SIZE) throw new AssertionError("Short write of block " + i);
+						}
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			};
+		}
+
+		for (Thread t : threads) t.start();
+		for (Thread t : threads) t.join();
+
+		if (failure.get() != null) throw new AssertionError(failure.get());
+
+		assertTrue(store.size() >= position(blocks));
+		ByteBuffer b = ByteBuffer.allocate(BLOCK_SIZE);
+		for (int i = 0; i < blocks; i++) {
+			b.clear();
+			assertEquals(BLOCK_SIZE, store.read(position(i), b));
+			check(i, b);
+		}
+	}
+
+	private static long position(int block) {
+		return (long)block * BLOCK_SIZE;
+	}
+
+	private static ByteBuffer block(int block) {
+		ByteBuffer b = ByteBuffer.allocate(BLOCK_SIZE);
+		while (b.hasRemaining()) b.putInt(block);
+		b.flip();
+		return b;
+	}
+
+	private static void check(int block, ByteBuffer b) {
+		for (int j = 0; j < b.capacity(); j += 4) {
+			if (b.getInt(j) != block) throw new AssertionError("Block " + block + " read as " + b.getInt(j) + " at " + j);
+		}
+	}
+}
@@ -0,0 +1,189 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Note, whether the file is actually accessed via direct I/O depends on the runtime and the file
+ * system holding the temporary directory, but the block aligned access is exercised either way.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class DirectContiguousStoreTest {
+
+	private File tmpFile;
+	private DirectContiguousStore store;
+	private int block;
+
+	@Before
+	public void setUp() throws IOException {
+		tmpFile = File.createTempFile("DirectContiguousStoreTest_", ".store");
+		tmpFile.deleteOnExit();
+		store = new DirectContiguousStore(tmpFile, true, 4096);
+		block = store.blockSize();
+	}
+
+	@After
+	public void tearDown() {
+		store.close();
+		tmpFile.delete();
+	}
+
+	@Test
+	public void aligned() {
+		assertEquals(0, store.size() % block);
+
+		ByteBuffer out = pattern(2*block, 1);
+		assertEquals(out.capacity(), store.write(block, out));
+		assertEquals(0, store.size() % block);
+
+		ByteBuffer in = ByteBuffer.allocate(out.capacity());
+		assertEquals(in.capacity(), store.read(block, in));
+		out.flip();
+		in.flip();
+		assertEquals(out, in);
+	}
+
+	@Test
+	public void padding() {
+		// surround the region with data that must survive the partial block writes
+		ByteBuffer background = pattern(4*block, 7);
+		store.write(0, background);
+
+		// a write within a single block
+		ByteBuffer small = pattern(100, 1);
+		assertEquals(100, store.write(block + 10, small));
+
+		// and a write spanning blocks, with partial blocks at both ends
+		ByteBuffer large = pattern(block + 200, 2);
+		assertEquals(block + 200, store.write(2*block - 100, large));
+		assertEquals(0, store.size() % block);
+
+		ByteBuffer in = ByteBuffer.allocate(4*block);
+		assertEquals(in.capacity(), store.read(0, in));
+		for (int i = 0; i < in.capacity(); i++) {
+			byte expected;
+			if (i >= block + 10 && i < block + 110) expected = small.get(i - (block + 10));
+			else if (i >= 2*block - 100 && i < 3*block + 100) expected = large.get(i - (2*block - 100));
+			else expected = background.get(i);
+			assertEquals("byte " + i, expected, in.get(i));
+		}
+
+		// unaligned, scattered reads
+		ByteBuffer a = ByteBuffer.allocate(50);
+		ByteBuffer b = ByteBuffer.allocate(block);
+		assertEquals(a.capacity() + b.capacity(), store.read(block + 60, a, b));
+		for (int i = 0; i < a.capacity(); i++) assertEquals(in.get(block + 60 + i), a.get(i));
+		for (int i = 0; i < b.capacity(); i++) assertEquals(in.get(block + 110 + i), b.get(i));
+	}
+
+	@Test
+	public void large() {
+		// transfers of several pooled buffers, with partial blocks at both ends
+		final int length = 5*64*1024 + 300;
+		ByteBuffer background = pattern(length + 4*block, 9);
+		store.write(0, background);
+
+		ByteBuffer a = pattern(1000, 1);
+		ByteBuffer b = pattern(length - 1000, 2);
+		assertEquals(length, store.write(block + 17, a, b));
+
+		ByteBuffer in = ByteBuffer.allocate(length + 4*block);
+		assertEquals(in.capacity(), store.read(0, in));
+		for (int i = 0; i < in.capacity(); i++) {
+			byte expected;
+			if (i >= block + 17 && i < block + 1017) expected = a.get(i - (block + 17));
+			else if (i >= block + 1017 && i < block + 17 + length) expected = b.get(i - (block + 1017));
+			else expected = background.get(i);
+			assertEquals("byte " + i, expected, in.get(i));
+		}
+
+		// and a large scattered read
+		ByteBuffer x = ByteBuffer.allocate(3);
+		ByteBuffer y = ByteBuffer.allocate(length);
+		assertEquals(x.capacity() + y.capacity(), store.read(block + 14, x, y));
+		for (int i = 0; i < x.capacity(); i++) assertEquals(in.get(block + 14 + i), x.get(i));
+		for (int i = 0; i < y.capacity(); i++) assertEquals(in.get(block + 17 + i), y.get(i));
+
+		// a large read that runs off the end of the store
+		ByteBuffer tail = ByteBuffer.allocate(length);
+		long size = store.size();
+		assertEquals(100, store.read(size - 100, tail));
+	}
+
+	@Test
+	public void growth() {
+		long size = store.size();
+
+		// a write beyond the end is padded with zeros
+		ByteBuffer out = pattern(10, 3);
+		long position = size + 3*block + 5;
+		assertEquals(10, store.write(position, out));
+		assertTrue(store.size() >= position + 10);
+		assertEquals(0, store.size() % block);
+
+		ByteBuffer in = ByteBuffer.allocate(3*block + 15);
+		assertEquals(in.capacity(), store.read(size, in));
+		for (int i = 0; i < 3*block + 5; i++) assertEquals(0, in.get(i));
+		for (int i = 0; i < 10; i++) assertEquals(out.get(i), in.get(3*block + 5 + i));
+
+		// reads stop at the end of the store
+		in.clear();
+		assertEquals(10, store.read(store.size() - 10, in));
+		in.clear();
+		assertEquals(-1, store.read(store.size(), in));
+
+		// shrinking keeps the store block aligned
+		long shrunk = store.truncate(block + 1);
+		assertEquals(0, shrunk % block);
+		assertEquals(shrunk, store.size());
+	}
+
+	@Test
+	public void allocationBoundary() {
+		// a write beyond the end grows the store to the allocation boundary
+		long position = store.size() + 5*block + 1;
+		store.write(position, pattern(10, 4));
+		long boundary = RandomAccessContiguousStore.boundary(position + 10);
+		assertTrue(boundary > position + 10);
+		assertEquals(boundary + (block - boundary % block) % block, store.size());
+	}
+
+	@Test
+	public void reopen() {
+		ByteBuffer out = pattern(block + 33, 5);
+		store.write(77, out);
+		long size = store.size();
+		store.close();
+
+		assertEquals(size, tmpFile.length());
+
+		store = new DirectContiguousStore(tmpFile, false, 4096);
+		assertEquals(size, store.size());
+		ByteBuffer in = ByteBuffer.allocate(out.capacity());
+		assertEquals(in.capacity(), store.read(77, in));
+		out.flip();
+		in.flip();
+		assertEquals(out, in);
+	}
+
+	private static ByteBuffer pattern(int length, int seed) {
+		ByteBuffer b = ByteBuffer.allocate(length);
+		for (int i = 0; i < length; i++) b.put((byte)(i * 31 + seed));
+		b.flip();
+		return b;
+	}
+}
@@ -0,0 +1,126 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class MappedContiguousStoreTest {
+
+	private static final int SEGMENT_SIZE = 8192;
+
+	private File tmpFile;
+	private MappedContiguousStore store;
+
+	@Before
+	public void setUp() throws IOException {
+		tmpFile = File.createTempFile("MappedContiguousStoreTest_", ".store");
+		tmpFile.deleteOnExit();
+		store = new MappedContiguousStore(tmpFile, true, 4096, SEGMENT_SIZE);
+	}
+
+	@After
+	public void tearDown() {
+		store.close();
+		tmpFile.delete();
+	}
+
+	@Test
+	public void spanning() {
+		assertEquals(4096, store.size());
+		assertEquals(1, store.segments());
+
+		// write across several segment boundaries, growing the store
+		ByteBuffer out = pattern(3*SEGMENT_SIZE);
+		long position = SEGMENT_SIZE - 100;
+		assertEquals(out.capacity(), store.write(position, out));
+		assertTrue(store.size() >= position + out.capacity());
+		assertEquals((store.size() + SEGMENT_SIZE - 1) / SEGMENT_SIZE, store.segments());
+
+		ByteBuffer in = ByteBuffer.allocate(out.capacity());
+		assertEquals(in.capacity(), store.read(position, in));
+		out.flip();
+		in.flip();
+		assertEquals(out, in);
+
+		// scattered read of the same data
+		ByteBuffer a = ByteBuffer.allocate(150);
+		ByteBuffer b = ByteBuffer.allocate(SEGMENT_SIZE);
+		assertEquals(a.capacity() + b.capacity(), store.read(position, a, b));
+		for (int i = 0; i < a.capacity(); i++) assertEquals(out.get(i), a.get(i));
+		for (int i = 0; i < b.capacity(); i++) assertEquals(out.get(a.capacity() + i), b.get(i));
+
+		store.force();
+	}
+
+	@Test
+	public void reopen() {
+		ByteBuffer out = pattern(2*SEGMENT_SIZE);
+		store.write(1000, out);
+		long size = store.size();
+		store.close();
+
+		assertEquals(size, tmpFile.length());
+
+		store = new MappedContiguousStore(tmpFile, false, 4096, SEGMENT_SIZE);
+		assertEquals(size, store.size());
+		ByteBuffer in = ByteBuffer.allocate(out.capacity());
+		assertEquals(in.capacity(), store.read(1000, in));
+		out.flip();
+		in.flip();
+		assertEquals(out, in);
+	}
+
+	@Test
+	public void shrink() {
+		ByteBuffer out = pattern(4*SEGMENT_SIZE);
+		store.write(0, out);
+		assertTrue(store.segments() >= 4);
+
+		long size = store.truncate(SEGMENT_SIZE + 10);
+		assertTrue(size >= SEGMENT_SIZE + 10);
+		assertEquals(size, store.size());
+		assertEquals(size, tmpFile.length());
+		assertEquals(2, store.segments());
+
+		// the data that remains is intact
+		ByteBuffer in = ByteBuffer.allocate(SEGMENT_SIZE + 10);
+		assertEquals(in.capacity(), store.read(0, in));
+		for (int i = 0; i < in.capacity(); i++) assertEquals(out.get(i), in.get(i));
+
+		// and reads beyond the end find nothing
+		in.clear();
+		assertEquals(-1, store.read(size, in));
+	}
+
+	@Test
+	public void closed() {
+		store.close();
+		try {
+			store.read(0, ByteBuffer.allocate(16));
+			fail("a closed store should not be readable");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	private static ByteBuffer pattern(int size) {
+		ByteBuffer b = ByteBuffer.allocate(size);
+		for (int i = 0; i < size; i++) b.put(i, (byte)(i * 31 + (i >> 8)));
+		return b;
+	}
+}
@@ -0,0 +1,116 @@
+/**
+ * Cohesion Framework - Storage Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.storage.store;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class SegmentedContiguousStoreTest {
+
+	private static final int SEGMENT_SIZE = 4096;
+
+	@Test
+	public void spanning() {
+		spanning(false);
+	}
+
+	@Test
+	public void spanningDirect() {
+		spanning(true);
+	}
+
+	private void spanning(boolean direct) {
+		SegmentedContiguousStore store = new SegmentedContiguousStore(100, SEGMENT_SIZE, direct);
+		assertEquals(100, store.size());
+		assertEquals(1, store.segments());
+
+		// write across several segment boundaries, growing the store by whole segments
+		ByteBuffer out = pattern(3*SEGMENT_SIZE);
+		long position = SEGMENT_SIZE - 10;
+		assertEquals(out.capacity(), store.write(position, out));
+		assertEquals(4*SEGMENT_SIZE, store.size());
+		assertEquals(4, store.segments());
+
+		ByteBuffer in = ByteBuffer.allocate(out.capacity());
+		assertEquals(in.capacity(), store.read(position, in));
+		out.flip();
+		in.flip();
+		assertEquals(out, in);
+
+		// scattered read of the same data
+		ByteBuffer a = ByteBuffer.allocate(20);
+		ByteBuffer b = ByteBuffer.allocate(SEGMENT_SIZE);
+		assertEquals(a.capacity() + b.capacity(), store.read(position, a, b));
+		for (int i = 0; i < a.capacity(); i++) assertEquals(out.get(i), a.get(i));
+		for (int i = 0; i < b.capacity(); i++) assertEquals(out.get(a.capacity() + i), b.get(i));
+
+		// reads stop at the end of the store
+		in.clear();
+		assertEquals(10, store.read(store.size() - 10, in));
+		in.clear();
+		assertEquals(-1, store.read(store.size(), in));
+
+		store.close();
+	}
+
+	@Test
+	public void views() {
+		SegmentedContiguousStore store = new SegmentedContiguousStore(SEGMENT_SIZE, SEGMENT_SIZE, false);
+		ByteBuffer out = pattern(100);
+		store.write(200, out);
+
+		ByteBuffer v = store.view(200, 100);
+		assertNotNull(v);
+		assertTrue(v.isReadOnly());
+		assertEquals(100, v.capacity());
+		out.flip();
+		assertEquals(out, v);
+
+		// regions that span segments can not be viewed
+		assertNull(store.view(SEGMENT_SIZE - 10, 20));
+		assertNull(store.view(store.size() - 10, 20));
+
+		// growing the store leaves existing views attached
+		store.write(10*SEGMENT_SIZE, pattern(SEGMENT_SIZE));
+		store.write(200, ByteBuffer.wrap(new byte[] { 42 }));
+		assertEquals(42, v.get(0));
+
+		store.close();
+	}
+
+	@Test
+	public void shrink() {
+		SegmentedContiguousStore store = new SegmentedContiguousStore(0, SEGMENT_SIZE, false);
+		ByteBuffer out = pattern(4*SEGMENT_SIZE);
+		store.write(0, out);
+		assertEquals(4, store.segments());
+
+		assertEquals(SEGMENT_SIZE + 10, store.truncate(SEGMENT_SIZE + 10));
+		assertEquals(2, store.segments());
+
+		// the data that remains is intact, and the store reads as zero once grown again
+		store.truncate(3*SEGMENT_SIZE);
+		ByteBuffer in = ByteBuffer.allocate(3*SEGMENT_SIZE);
+		assertEquals(in.capacity(), store.read(0, in));
+		for (int i = 0; i < SEGMENT_SIZE + 10; i++) assertEquals(out.get(i), in.get(i));
+		for (int i = SEGMENT_SIZE + 10; i < in.capacity(); i++) assertEquals(0, in.get(i));
+
+		store.close();
+	}
+
+	private static ByteBuffer pattern(int size) {
+		ByteBuffer b = ByteBuffer.allocate(size);
+		for (int i = 0; i < size; i++) b.put(i, (byte)(i * 31 + (i >> 8)));
+		return b;
+	}
+}